@@ -0,0 +1,239 @@
+package org.rmatil.sync.event.aggregator.benchmarks;
+
+import org.rmatil.sync.event.aggregator.core.events.*;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.version.api.DeleteType;
+import org.rmatil.sync.version.api.IObjectManager;
+import org.rmatil.sync.version.api.PathType;
+import org.rmatil.sync.version.core.model.Delete;
+import org.rmatil.sync.version.core.model.PathObject;
+import org.rmatil.sync.version.core.model.Version;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Generates synthetic batches of events as they are passed
+ * to the modifiers and aggregators after being collected by the path watcher.
+ * <p>
+ * Batches are generated deterministically for the same parameters:
+ * <ul>
+ * <li>The number of events in the batch</li>
+ * <li>The mix of create, modify, delete and move events as relative weights, e.g. <code>40:40:15:5</code></li>
+ * <li>The number of directories in which the files are nested</li>
+ * <li>The ratio of events reusing the hash of another event, i.e. candidates for moves and ignored modifications</li>
+ * </ul>
+ * Besides the events, the generator records the versions the object store
+ * would contain for modified and deleted paths, see {@link EventBatchGenerator#populate(IObjectManager)}.
+ */
+public class EventBatchGenerator {
+
+    /**
+     * The number of children per directory
+     */
+    protected static final int FAN_OUT = 8;
+
+    protected static final long SEED = 42L;
+
+    protected final int batchSize;
+
+    /**
+     * The weights of create, modify, delete and move events
+     */
+    protected final int[] mix;
+
+    protected final int pathDepth;
+
+    protected final double duplicateHashRatio;
+
+    /**
+     * The events by their relative path
+     */
+    protected final List<IEvent> events;
+
+    /**
+     * The hash of the last version stored in the object store by their relative path
+     */
+    protected final Map<String, String> storedVersions;
+
+    /**
+     * @param batchSize          The number of events to generate
+     * @param mix                The weights of create, modify, delete and move events separated by a colon
+     * @param pathDepth          The number of directories in which files are nested
+     * @param duplicateHashRatio The ratio of events reusing the hash of another event
+     */
+    public EventBatchGenerator(int batchSize, String mix, int pathDepth, double duplicateHashRatio) {
+        this.batchSize = batchSize;
+        this.mix = parseMix(mix);
+        this.pathDepth = pathDepth;
+        this.duplicateHashRatio = duplicateHashRatio;
+        this.events = new ArrayList<>(batchSize);
+        this.storedVersions = new HashMap<>();
+
+        this.generate();
+    }
+
+    /**
+     * Returns a new list of the generated events having paths resolved against the given root.
+     * Use an empty path to get paths relative to the synchronized folder.
+     *
+     * @param rootDir The directory against which the paths are resolved
+     *
+     * @return The generated events
+     */
+    public List<IEvent> getEvents(Path rootDir) {
+        List<IEvent> resolvedEvents = new ArrayList<>(this.events.size());
+        for (IEvent event : this.events) {
+            switch (event.getEventName()) {
+                case CreateEvent.EVENT_NAME:
+                    resolvedEvents.add(new CreateEvent(rootDir.resolve(event.getPath()), event.getName(), event.getHash(), event.getTimestamp()));
+                    break;
+                case ModifyEvent.EVENT_NAME:
+                    resolvedEvents.add(new ModifyEvent(rootDir.resolve(event.getPath()), event.getName(), event.getHash(), event.getTimestamp()));
+                    break;
+                case DeleteEvent.EVENT_NAME:
+                    resolvedEvents.add(new DeleteEvent(rootDir.resolve(event.getPath()), event.getName(), event.getHash(), event.getTimestamp()));
+                    break;
+                case MoveEvent.EVENT_NAME:
+                    MoveEvent moveEvent = (MoveEvent) event;
+                    resolvedEvents.add(new MoveEvent(rootDir.resolve(moveEvent.getPath()), rootDir.resolve(moveEvent.getNewPath()), moveEvent.getName(), moveEvent.getHash(), moveEvent.getTimestamp()));
+            }
+        }
+
+        return resolvedEvents;
+    }
+
+    /**
+     * Writes the versions of all modified and deleted paths to the given object manager
+     *
+     * @param objectManager The object manager to populate
+     *
+     * @throws InputOutputException If writing failed
+     */
+    public void populate(IObjectManager objectManager)
+            throws InputOutputException {
+        for (Map.Entry<String, String> entry : this.storedVersions.entrySet()) {
+            Path path = Paths.get(entry.getKey());
+            String parent = (null == path.getParent()) ? "" : path.getParent().toString();
+
+            List<Version> versions = new ArrayList<>();
+            versions.add(new Version(entry.getValue()));
+
+            objectManager.writeObject(new PathObject(
+                    path.getFileName().toString(),
+                    parent,
+                    PathType.FILE,
+                    null,
+                    false,
+                    new Delete(DeleteType.EXISTENT, new ArrayList<>()),
+                    null,
+                    new HashSet<>(),
+                    versions
+            ));
+        }
+    }
+
+    protected void generate() {
+        Random random = new Random(SEED);
+
+        int totalWeight = 0;
+        for (int weight : this.mix) {
+            totalWeight += weight;
+        }
+
+        List<Path> existingPaths = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        long timestamp = 1000000L;
+        int fileCounter = 0;
+
+        for (int i = 0; i < this.batchSize; i++) {
+            int type = this.chooseType(random.nextInt(totalWeight));
+            timestamp += random.nextInt(3);
+
+            // changes of existing files require a known path
+            if (type > 0 && existingPaths.isEmpty()) {
+                type = 0;
+            }
+
+            switch (type) {
+                case 0: {
+                    Path path = this.createPath(random, fileCounter++);
+                    String hash = this.chooseHash(random, hashes);
+                    existingPaths.add(path);
+                    this.events.add(new CreateEvent(path, path.getFileName().toString(), hash, timestamp));
+                    break;
+                }
+                case 1: {
+                    Path path = existingPaths.get(random.nextInt(existingPaths.size()));
+                    String hash = this.chooseHash(random, hashes);
+                    // half of the modifications are already known by the object store
+                    this.storedVersions.put(path.toString(), random.nextBoolean() ? hash : newHash(hashes));
+                    this.events.add(new ModifyEvent(path, path.getFileName().toString(), hash, timestamp));
+                    break;
+                }
+                case 2: {
+                    Path path = existingPaths.remove(random.nextInt(existingPaths.size()));
+                    // the deleted file may have the content of another one, i.e. it is moved
+                    this.storedVersions.put(path.toString(), this.chooseHash(random, hashes));
+                    this.events.add(new DeleteEvent(path, path.getFileName().toString(), null, timestamp));
+                    break;
+                }
+                default: {
+                    Path path = existingPaths.remove(random.nextInt(existingPaths.size()));
+                    Path newPath = this.createPath(random, fileCounter++);
+                    existingPaths.add(newPath);
+                    this.events.add(new MoveEvent(path, newPath, newPath.getFileName().toString(), this.chooseHash(random, hashes), timestamp));
+                }
+            }
+        }
+    }
+
+    protected int chooseType(int value) {
+        int type = 0;
+        while (value >= this.mix[type]) {
+            value -= this.mix[type];
+            type++;
+        }
+
+        return type;
+    }
+
+    protected Path createPath(Random random, int fileNumber) {
+        Path path = Paths.get("");
+        for (int depth = 0; depth < this.pathDepth; depth++) {
+            path = path.resolve("dir" + random.nextInt(FAN_OUT));
+        }
+
+        return path.resolve("file" + fileNumber + ".txt");
+    }
+
+    protected String chooseHash(Random random, List<String> hashes) {
+        if (! hashes.isEmpty() && random.nextDouble() < this.duplicateHashRatio) {
+            return hashes.get(random.nextInt(hashes.size()));
+        }
+
+        return newHash(hashes);
+    }
+
+    protected static String newHash(List<String> hashes) {
+        String hash = String.format("%064x", hashes.size() + 1);
+        hashes.add(hash);
+
+        return hash;
+    }
+
+    protected static int[] parseMix(String mix) {
+        String[] weights = mix.split(":");
+        if (4 != weights.length) {
+            throw new IllegalArgumentException("The mix must contain the weights of create, modify, delete and move events");
+        }
+
+        int[] parsedWeights = new int[4];
+        for (int i = 0; i < weights.length; i++) {
+            parsedWeights[i] = Integer.parseInt(weights[i]);
+        }
+
+        return parsedWeights;
+    }
+}
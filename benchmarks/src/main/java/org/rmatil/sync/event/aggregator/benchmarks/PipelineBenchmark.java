@@ -0,0 +1,120 @@
+package org.rmatil.sync.event.aggregator.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.rmatil.sync.event.aggregator.api.IEventListener;
+import org.rmatil.sync.event.aggregator.core.EventAggregator;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.test.mocks.MockPathWatcherFactory;
+import org.rmatil.sync.event.aggregator.test.mocks.ObjectManagerMock;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link EventAggregator#onChange(List)}
+ * passing batches through the default chain of modifiers and aggregators.
+ * Each invocation waits until its batch is delivered to the listener,
+ * so that batches do not pile up in the queue of its dispatcher
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    /**
+     * The maximum time to wait for the delivery of a batch (in seconds)
+     */
+    protected static final long DELIVERY_TIMEOUT = 10L;
+
+    /**
+     * Keeps the number of events emitted by the aggregator.
+     * Events are delivered on the thread of the listener's dispatcher
+     */
+    protected static class CountingListener implements IEventListener {
+
+        protected volatile int nrOfEvents;
+
+        /**
+         * Released once the next batch is delivered
+         */
+        protected volatile CountDownLatch delivered = new CountDownLatch(1);
+
+        @Override
+        public void onChange(List<IEvent> changes) {
+            this.nrOfEvents = changes.size();
+            this.delivered.countDown();
+        }
+    }
+
+    @Param({"100", "1000", "10000"})
+    public int batchSize;
+
+    @Param({"40:40:15:5", "10:10:70:10"})
+    public String mix;
+
+    @Param({"1", "5"})
+    public int pathDepth;
+
+    @Param({"0.0", "0.5"})
+    public double duplicateHashRatio;
+
+    protected EventAggregator eventAggregator;
+
+    protected CountingListener listener;
+
+    protected List<IEvent> events;
+
+    protected Path objectStoreDir;
+
+    @Setup(Level.Trial)
+    public void setUp()
+            throws InputOutputException, IOException {
+        EventBatchGenerator generator = new EventBatchGenerator(this.batchSize, this.mix, this.pathDepth, this.duplicateHashRatio);
+
+        ObjectManagerMock objectManager = new ObjectManagerMock();
+        generator.populate(objectManager);
+
+        this.objectStoreDir = Files.createTempDirectory("sync-event-aggregator-benchmark");
+
+        // the aggregator is not started: batches are passed directly to onChange
+        this.eventAggregator = new EventAggregator(Stages.ROOT_DIR, new MockPathWatcherFactory());
+        this.listener = new CountingListener();
+        this.eventAggregator.addListener(this.listener);
+        Stages.addDefaultChain(this.eventAggregator, objectManager, Stages.createObjectStore(this.objectStoreDir));
+
+        this.events = generator.getEvents(Stages.ROOT_DIR);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+            throws IOException {
+        // shuts down the dispatcher threads of the listeners and the threads of the modifiers,
+        // so that they do not pile up across the trials of the fork
+        this.eventAggregator.stop();
+        Stages.delete(this.objectStoreDir);
+    }
+
+    @Benchmark
+    public int onChange()
+            throws InterruptedException {
+        CountDownLatch delivered = new CountDownLatch(1);
+        this.listener.delivered = delivered;
+
+        this.eventAggregator.onChange(new ArrayList<>(this.events));
+
+        if (! delivered.await(DELIVERY_TIMEOUT, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("The batch was not delivered within " + DELIVERY_TIMEOUT + "s");
+        }
+
+        return this.listener.nrOfEvents;
+    }
+}
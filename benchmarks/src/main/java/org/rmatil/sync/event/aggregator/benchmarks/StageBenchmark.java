@@ -0,0 +1,85 @@
+package org.rmatil.sync.event.aggregator.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.test.mocks.ObjectManagerMock;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measures the throughput of each built-in modifier and aggregator
+ * in isolation, i.e. the number of batches processed per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+
+    @Param({
+            "RelativePathModifier",
+            "AddDirectoryContentModifier",
+            "IgnoreDirectoryModifier",
+            "IgnorePathsModifier",
+            "IgnoreSameHashModifier",
+            "FixFileSystemCreationModifier",
+            "EmptyHashAggregator",
+            "HistoryMoveAggregator"
+    })
+    public String stage;
+
+    @Param({"100", "1000", "10000"})
+    public int batchSize;
+
+    @Param({"40:40:15:5"})
+    public String mix;
+
+    @Param({"3"})
+    public int pathDepth;
+
+    @Param({"0.1"})
+    public double duplicateHashRatio;
+
+    protected Function<List<IEvent>, List<IEvent>> stageFunction;
+
+    protected List<IEvent> events;
+
+    protected Path objectStoreDir;
+
+    @Setup(Level.Trial)
+    public void setUp()
+            throws InputOutputException, IOException {
+        EventBatchGenerator generator = new EventBatchGenerator(this.batchSize, this.mix, this.pathDepth, this.duplicateHashRatio);
+
+        ObjectManagerMock objectManager = new ObjectManagerMock();
+        generator.populate(objectManager);
+
+        this.objectStoreDir = Files.createTempDirectory("sync-event-aggregator-benchmark");
+        this.stageFunction = Stages.create(this.stage, objectManager, Stages.createObjectStore(this.objectStoreDir));
+
+        // only the first modifier gets absolute paths, all others relative ones
+        this.events = generator.getEvents("RelativePathModifier".equals(this.stage) ? Stages.ROOT_DIR : Paths.get(""));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+            throws IOException {
+        Stages.delete(this.objectStoreDir);
+    }
+
+    @Benchmark
+    public List<IEvent> stage() {
+        // stages may sort the list in place
+        return this.stageFunction.apply(new ArrayList<>(this.events));
+    }
+}
@@ -0,0 +1,146 @@
+package org.rmatil.sync.event.aggregator.benchmarks;
+
+import org.rmatil.sync.event.aggregator.api.IEventAggregator;
+import org.rmatil.sync.event.aggregator.core.aggregator.EmptyHashAggregator;
+import org.rmatil.sync.event.aggregator.core.aggregator.HistoryMoveAggregator;
+import org.rmatil.sync.event.aggregator.core.aggregator.IAggregator;
+import org.rmatil.sync.event.aggregator.core.cache.VersionHashCache;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.modifier.*;
+import org.rmatil.sync.persistence.core.tree.local.LocalStorageAdapter;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.version.api.IObjectManager;
+import org.rmatil.sync.version.api.IObjectStore;
+import org.rmatil.sync.version.core.ObjectStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Creates the built-in modifiers and aggregators
+ * configured as in the usage example of the README
+ */
+public final class Stages {
+
+    /**
+     * The root of the synchronized folder. It does not have to exist
+     */
+    public static final Path ROOT_DIR = Paths.get("/tmp/sync-event-aggregator-benchmark");
+
+    private Stages() {
+    }
+
+    /**
+     * Creates the modifier or aggregator having the given simple class name
+     *
+     * @param stage         The simple class name of the modifier or aggregator
+     * @param objectManager The object manager to use
+     * @param objectStore   The object store used to look up the children of deleted directories
+     *
+     * @return A function applying the modifier or aggregator
+     */
+    public static Function<List<IEvent>, List<IEvent>> create(String stage, IObjectManager objectManager, IObjectStore objectStore) {
+        switch (stage) {
+            case "RelativePathModifier":
+                return new RelativePathModifier(ROOT_DIR)::modify;
+            case "AddDirectoryContentModifier":
+                return new AddDirectoryContentModifier(ROOT_DIR, objectStore)::modify;
+            case "IgnoreDirectoryModifier":
+                return new IgnoreDirectoryModifier(ROOT_DIR)::modify;
+            case "IgnorePathsModifier":
+                return createIgnorePathsModifier()::modify;
+            case "IgnoreSameHashModifier":
+                return new IgnoreSameHashModifier(objectManager)::modify;
+            case "FixFileSystemCreationModifier":
+                return new FixFileSystemCreationModifier()::modify;
+            case "EmptyHashAggregator":
+                return new EmptyHashAggregator()::aggregate;
+            case "HistoryMoveAggregator":
+                return new HistoryMoveAggregator(objectManager)::aggregate;
+            default:
+                throw new IllegalArgumentException("Unknown stage " + stage);
+        }
+    }
+
+    /**
+     * Adds the default chain of modifiers and aggregators to the given event aggregator
+     *
+     * @param eventAggregator The event aggregator
+     * @param objectManager   The object manager to use
+     * @param objectStore     The object store used to look up the children of deleted directories
+     */
+    public static void addDefaultChain(IEventAggregator eventAggregator, IObjectManager objectManager, IObjectStore objectStore) {
+        VersionHashCache versionHashCache = new VersionHashCache(objectManager);
+
+        eventAggregator.setVersionHashCache(versionHashCache);
+
+        eventAggregator.addModifier(new RelativePathModifier(ROOT_DIR));
+        eventAggregator.addModifier(new AddDirectoryContentModifier(ROOT_DIR, objectStore, versionHashCache));
+        eventAggregator.addModifier(new IgnoreDirectoryModifier(ROOT_DIR));
+        eventAggregator.addModifier(createIgnorePathsModifier());
+        eventAggregator.addModifier(new IgnoreSameHashModifier(versionHashCache));
+
+        IAggregator historyMoveAggregator = new HistoryMoveAggregator(versionHashCache);
+        eventAggregator.addAggregator(historyMoveAggregator);
+    }
+
+    /**
+     * Creates an empty object store in the given directory.
+     * The generated batches only delete files, so it does not have to contain their versions
+     *
+     * @param directory The directory in which the object store is created
+     *
+     * @return The object store
+     *
+     * @throws InputOutputException If creating the object store failed
+     */
+    public static IObjectStore createObjectStore(Path directory)
+            throws InputOutputException {
+        return new ObjectStore(
+                new LocalStorageAdapter(directory),
+                "index.json",
+                "object",
+                new LocalStorageAdapter(directory)
+        );
+    }
+
+    /**
+     * Deletes the given directory and all its contents
+     *
+     * @param directory The directory to delete
+     *
+     * @throws IOException If deleting failed
+     */
+    public static void delete(Path directory)
+            throws IOException {
+        if (null == directory || ! Files.exists(directory)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    protected static IgnorePathsModifier createIgnorePathsModifier() {
+        List<Path> ignoredPaths = new ArrayList<>();
+        ignoredPaths.add(Paths.get(".sync"));
+
+        List<String> ignoredPatterns = new ArrayList<>();
+        ignoredPatterns.add("**/*.DS_Store");
+        ignoredPatterns.add("**.swp");
+        ignoredPatterns.add("**Thumbs.db");
+        ignoredPatterns.add(".sync/*");
+
+        return new IgnorePathsModifier(ignoredPaths, ignoredPatterns);
+    }
+}
@@ -1,6 +1,20 @@
 package org.rmatil.sync.event.aggregator.api;
 
+import org.rmatil.sync.event.aggregator.core.EmissionMode;
+import org.rmatil.sync.event.aggregator.core.FlushPolicy;
+import org.rmatil.sync.event.aggregator.core.ListenerDispatcher;
+import org.rmatil.sync.event.aggregator.core.OverflowPolicy;
+import org.rmatil.sync.event.aggregator.core.SubtreeRescanner;
 import org.rmatil.sync.event.aggregator.core.aggregator.IAggregator;
+import org.rmatil.sync.event.aggregator.core.cache.VersionHashCache;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentChunker;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentHashCache;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingMode;
+import org.rmatil.sync.event.aggregator.core.hashing.MerkleTree;
+import org.rmatil.sync.event.aggregator.core.hashing.WriteStabilityTracker;
+import org.rmatil.sync.event.aggregator.core.index.FileIndex;
+import org.rmatil.sync.event.aggregator.core.index.FileKeyTracker;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
 import org.rmatil.sync.event.aggregator.core.modifier.IModifier;
 
 import java.io.IOException;
@@ -21,19 +35,44 @@ import java.util.List;
 public interface IEventAggregator {
 
     /**
-     * Add an event listener
+     * Add an event listener. Events are delivered to it on its own thread
+     * using the default overflow policy and queue size of {@link ListenerDispatcher}
      *
      * @param eventListener The event listener which should be called on various eventBag
      */
     void addListener(IEventListener eventListener);
 
     /**
-     * Remove the given event listener
+     * Add an event listener. Events are delivered to it on its own thread,
+     * so that a slow listener does not delay other ones. If more than the given number
+     * of batches wait for the listener, further batches are handled by the overflow policy
+     *
+     * @param eventListener  The event listener which should be called on various eventBag
+     * @param overflowPolicy The policy applied once the queue of the listener is full
+     * @param queueSize      The maximum number of batches waiting for the listener
+     *
+     * @throws IllegalArgumentException If the queue size is not positive
+     */
+    void addListener(IEventListener eventListener, OverflowPolicy overflowPolicy, int queueSize);
+
+    /**
+     * Remove the given event listener. Batches already waiting
+     * for the listener are still delivered
      *
      * @param eventListener The event listener which should be removed
      */
     void removeListener(IEventListener eventListener);
 
+    /**
+     * Returns the dispatcher delivering events to the given listener,
+     * e.g. to inspect how far it lags behind or how many events were dropped
+     *
+     * @param eventListener The event listener
+     *
+     * @return The dispatcher or null, if the listener is not registered
+     */
+    ListenerDispatcher getListenerDispatcher(IEventListener eventListener);
+
     /**
      * Returns the list of all registered event listeners
      *
@@ -84,19 +123,328 @@ public interface IEventAggregator {
     List<IModifier> getModifiers();
 
     /**
-     * Set the interval in which eventBag are aggregated
+     * Set the maximum time events are held back until they are aggregated.
+     * Replaces the maximum latency of the current flush policy,
+     * the quiet period is shortened if it exceeds the given interval.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
      *
      * @param milliSeconds The interval in milliseconds
+     *
+     * @see IEventAggregator#setFlushPolicy(FlushPolicy)
      */
     void setAggregationInterval(long milliSeconds);
 
     /**
-     * Returns the interval in which eventBag are aggregated
+     * Returns the maximum time events are held back until they are aggregated
      *
      * @return The interval in milliseconds
      */
     long getAggregationInterval();
 
+    /**
+     * Set the policy defining when pending events are aggregated:
+     * After a quiet period without further events, after a maximum latency
+     * or once a maximum number of events is pending, whatever comes first.
+     * While no events are pending, the event aggregator stays idle.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param flushPolicy The flush policy
+     */
+    void setFlushPolicy(FlushPolicy flushPolicy);
+
+    /**
+     * Returns the policy defining when pending events are aggregated
+     *
+     * @return The flush policy
+     */
+    FlushPolicy getFlushPolicy();
+
+    /**
+     * Set whether pending events are propagated all at once according to the flush policy
+     * or each path on its own, as soon as no further event arrived for it within the quiet period.
+     * Defaults to {@link EmissionMode#BATCH}.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param emissionMode The emission mode
+     */
+    void setEmissionMode(EmissionMode emissionMode);
+
+    /**
+     * Returns whether pending events are propagated all at once or each path on its own
+     *
+     * @return The emission mode
+     */
+    EmissionMode getEmissionMode();
+
+    /**
+     * Set the time around a deletion or creation in which a corresponding one
+     * is propagated together with it, so that moves are detected by the aggregators.
+     * Only used in {@link EmissionMode#STREAMING}, in which deleted paths
+     * wait at least for this time before they are propagated.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param milliSeconds The move correlation window in milliseconds
+     *
+     * @throws IllegalArgumentException If the window is negative
+     */
+    void setMoveCorrelationWindow(long milliSeconds);
+
+    /**
+     * Returns the time around a deletion or creation in which a corresponding one is propagated together with it
+     *
+     * @return The move correlation window in milliseconds
+     */
+    long getMoveCorrelationWindow();
+
+    /**
+     * Set the number of threads computing hashes of changed path elements.
+     * Hashes are computed on demand: Events which are dropped by
+     * a modifier are not hashed at all.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param poolSize The number of hashing threads
+     */
+    void setHashingPoolSize(int poolSize);
+
+    /**
+     * Returns the number of threads computing hashes of changed path elements
+     *
+     * @return The number of hashing threads
+     */
+    int getHashingPoolSize();
+
+    /**
+     * Set the maximum number of hash computations which may wait for
+     * a hashing thread. If exceeded, the hash is computed on the thread
+     * aggregating the flushed events, which throttles the aggregation.
+     * Hashes are computed lazily, hence the thread notifying about changes never computes them.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param queueSize The maximum number of pending hash computations
+     */
+    void setHashingQueueSize(int queueSize);
+
+    /**
+     * Returns the maximum number of hash computations which may wait for a hashing thread
+     *
+     * @return The maximum number of pending hash computations
+     */
+    int getHashingQueueSize();
+
+    /**
+     * Set the cache used to look up the hashes of files which did not change
+     * since they were hashed the last time. If the cache is persisted,
+     * it is loaded on start and saved on stop.
+     * <p>
+     * A cached hash is trusted as long as the file key, size and modification time of the file
+     * did not change, i.e. a file rewritten without changing any of them is not read again.
+     * By default, no cache is used and the contents of all files are read.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param contentHashCache The cache or null, if all files should be read
+     */
+    void setContentHashCache(ContentHashCache contentHashCache);
+
+    /**
+     * Returns the cache used to look up the hashes of unchanged files
+     *
+     * @return The cache or null, if all files are read
+     */
+    ContentHashCache getContentHashCache();
+
+    /**
+     * Set the tree maintaining the hashes of all elements below the watched root.
+     * Directory hashes are then derived from the hashes of their children,
+     * so that a change only rehashes the changed element and its parent directories
+     * instead of the whole subtree of a created or modified directory.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param merkleTree The tree or null, if directories should be hashed as a whole
+     */
+    void setMerkleTree(MerkleTree merkleTree);
+
+    /**
+     * Returns the tree maintaining the hashes of all elements below the watched root
+     *
+     * @return The tree or null, if directories are hashed as a whole
+     */
+    MerkleTree getMerkleTree();
+
+    /**
+     * Set the tracker deferring the events of files which are still being written,
+     * e.g. while a large file is copied into the watched folder. Such files are
+     * only hashed once their size and modification time did not change within
+     * the stability interval of the tracker, instead of on each flush.
+     * Hashes of files changing while being hashed are computed again.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param writeStabilityTracker The tracker or null, if files should be hashed regardless of whether they are being written
+     */
+    void setWriteStabilityTracker(WriteStabilityTracker writeStabilityTracker);
+
+    /**
+     * Returns the tracker deferring the events of files which are still being written
+     *
+     * @return The tracker or null, if files are hashed regardless of whether they are being written
+     */
+    WriteStabilityTracker getWriteStabilityTracker();
+
+    /**
+     * Set the chunker splitting created and modified files into content-defined chunks.
+     * The hashes of the chunks are attached to the events (see {@link org.rmatil.sync.event.aggregator.core.events.IEvent#getChunks()}),
+     * so that listeners only have to transfer the chunks which changed.
+     * Chunks which did not change since the previous version of a file are not hashed again.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param contentChunker The chunker or null, if no chunks should be computed
+     */
+    void setContentChunker(ContentChunker contentChunker);
+
+    /**
+     * Returns the chunker splitting created and modified files into content-defined chunks
+     *
+     * @return The chunker or null, if no chunks are computed
+     */
+    ContentChunker getContentChunker();
+
+    /**
+     * Set the tracker detecting renames by the file key of the renamed path element.
+     * The identities of all path elements within the root are recorded on start.
+     * A deletion and a creation of the same path element are propagated as move
+     * without hashing it or looking up the hash of the deleted one in the object store.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param fileKeyTracker The tracker or null, if renames should be detected by the hashes of the path elements only
+     */
+    void setFileKeyTracker(FileKeyTracker fileKeyTracker);
+
+    /**
+     * Returns the tracker detecting renames by the file key of the renamed path element
+     *
+     * @return The tracker or null, if renames are detected by the hashes of the path elements only
+     */
+    FileKeyTracker getFileKeyTracker();
+
+    /**
+     * Set whether modifiers compare events by a fast non-cryptographic digest.
+     * The hash of the configured hashing algorithm is then only computed
+     * for events passing all modifiers or which are compared to stored versions.
+     * Defaults to {@link HashingMode#FULL}.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param hashingMode The hashing mode
+     */
+    void setHashingMode(HashingMode hashingMode);
+
+    /**
+     * Returns whether modifiers compare events by a fast non-cryptographic digest
+     *
+     * @return The hashing mode
+     */
+    HashingMode getHashingMode();
+
+    /**
+     * Set the maximum number of pending events. Once exceeded, e.g. while copying
+     * a huge directory, the pending events are collapsed into the directories containing them.
+     * Further events within these directories are discarded and their changes
+     * are computed by the subtree rescanner on the next flush instead.
+     * Requires a subtree rescanner to be set, otherwise the number is not limited.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param maxPendingEvents The maximum number of pending events
+     *
+     * @throws IllegalArgumentException If the maximum is not positive
+     */
+    void setMaxPendingEvents(int maxPendingEvents);
+
+    /**
+     * Returns the maximum number of pending events
+     *
+     * @return The maximum number of pending events
+     */
+    int getMaxPendingEvents();
+
+    /**
+     * Set the rescanner computing the changes within directories
+     * whose events were discarded since too many events were pending.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param subtreeRescanner The rescanner or null, if the number of pending events should not be limited
+     */
+    void setSubtreeRescanner(SubtreeRescanner subtreeRescanner);
+
+    /**
+     * Returns the rescanner computing the changes within directories whose events were discarded
+     *
+     * @return The rescanner or null, if the number of pending events is not limited
+     */
+    SubtreeRescanner getSubtreeRescanner();
+
+    /**
+     * Set the index persisting the state of the watched folder as propagated to the listeners.
+     * On start, the folder is compared with the index and only the changes which happened
+     * while the event aggregator was not running are propagated, instead of rehashing the whole folder.
+     * The index is persisted on stop.
+     * <p>
+     * <i>Note</i>: Takes effect on the next start of the event aggregator
+     *
+     * @param fileIndex The index or null, if changes while not running should not be detected
+     */
+    void setFileIndex(FileIndex fileIndex);
+
+    /**
+     * Returns the index persisting the state of the watched folder
+     *
+     * @return The index or null, if changes while not running are not detected
+     */
+    FileIndex getFileIndex();
+
+    /**
+     * Set the cache of the last versions used by the modifiers and aggregators.
+     * Before the listeners are notified about aggregated events, the cached versions
+     * of all affected paths are invalidated, since the listeners store new versions for them
+     * (see {@link VersionHashCache#onEmit(List)}).
+     * Its reads of the object manager are recorded in the metrics of the event aggregator.
+     *
+     * @param versionHashCache The cache or null, if no cache is used
+     */
+    void setVersionHashCache(VersionHashCache versionHashCache);
+
+    /**
+     * Returns the cache of the last versions invalidated on emitting events
+     *
+     * @return The cache or null, if no cache is used
+     */
+    VersionHashCache getVersionHashCache();
+
+    /**
+     * Returns the metrics of the pipeline: The latency and the number of
+     * incoming and outgoing events of each modifier and aggregator, the number
+     * of pending events, the end-to-end delay and the time spent reading from the object manager.
+     * Collected for the whole lifetime of the event aggregator, also across restarts.
+     * The hashing speed covers all event aggregators of the JVM and is exposed by the
+     * {@link org.rmatil.sync.event.aggregator.core.metrics.HashingMetrics} instead.
+     * <p>
+     * The metrics can be exposed via JMX using {@link PipelineMetrics#registerMBean(String)}
+     *
+     * @return The metrics
+     */
+    PipelineMetrics getMetrics();
+
     /**
      * Start the event aggregator.
      * <p>
@@ -109,7 +457,8 @@ public interface IEventAggregator {
             throws IOException;
 
     /**
-     * Stop the event aggregator.
+     * Stop the event aggregator. Pending events which are not flushed yet are dropped.
+     * Once a running aggregation completed, all modifiers are stopped (see {@link IModifier#stop()}).
      * <p>
      * <i>Note</i>: No eventBag are propagated to the registered event listener
      * anymore after this call
@@ -0,0 +1,191 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The threads shared by many event aggregators running in the same JVM.
+ * Without a runtime, each event aggregator starts its own threads
+ * for scheduling flushes, hashing and notifying listeners, most of which are idle.
+ * <p>
+ * A runtime provides
+ * <ul>
+ * <li>a scheduler timing the flushes of pending events (see {@link FlushScheduler})</li>
+ * <li>a hashing pool computing the hashes of changed files</li>
+ * <li>an aggregation pool running the aggregation of flushed events</li>
+ * <li>a dispatch pool notifying the listeners</li>
+ * </ul>
+ * Each event aggregator gets its own lanes on the pools (see {@link FairExecutor}).
+ * Lanes are served round robin and each one uses at most its quota of threads,
+ * so that a single event aggregator with a burst of changes does not starve the others.
+ * <p>
+ * Aggregation and dispatch run on separate pools, since an aggregation waits for the delivery to
+ * slow listeners (see {@link OverflowPolicy#BLOCK}). Sharing a pool, aggregations waiting for
+ * listeners could occupy all its threads and the deliveries they wait for would never run.
+ * <p>
+ * The runtime is shut down independently of the event aggregators using it.
+ *
+ * @see EventAggregator#EventAggregator(java.nio.file.Path, org.rmatil.sync.event.aggregator.core.pathwatcher.IPathWatcherFactory, AggregatorRuntime)
+ */
+public class AggregatorRuntime {
+
+    /**
+     * The default number of threads of the scheduler
+     */
+    public static final int DEFAULT_SCHEDULER_THREADS = 1;
+
+    /**
+     * The default number of threads of the hashing pool
+     */
+    public static final int DEFAULT_HASHING_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default number of threads of the dispatch pool
+     */
+    public static final int DEFAULT_DISPATCH_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default number of threads of the aggregation pool
+     */
+    public static final int DEFAULT_AGGREGATION_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default maximum number of hashing threads used by a single event aggregator
+     */
+    public static final int DEFAULT_HASHING_QUOTA = Math.max(1, DEFAULT_HASHING_THREADS / 2);
+
+    /**
+     * The default maximum number of dispatch threads used by the listeners of a single event aggregator
+     */
+    public static final int DEFAULT_DISPATCH_QUOTA = 2;
+
+    protected final ScheduledThreadPoolExecutor scheduler;
+
+    protected final FairExecutor hashingPool;
+
+    protected final FairExecutor aggregationPool;
+
+    protected final FairExecutor dispatchPool;
+
+    protected final int hashingQuota;
+
+    protected final int dispatchQuota;
+
+    public AggregatorRuntime() {
+        this(DEFAULT_SCHEDULER_THREADS, DEFAULT_HASHING_THREADS, DEFAULT_AGGREGATION_THREADS, DEFAULT_DISPATCH_THREADS, DEFAULT_HASHING_QUOTA, DEFAULT_DISPATCH_QUOTA);
+    }
+
+    /**
+     * Uses as many aggregation threads as dispatch threads
+     *
+     * @param schedulerThreads The number of threads of the scheduler
+     * @param hashingThreads   The number of threads of the hashing pool
+     * @param dispatchThreads  The number of threads of the dispatch pool
+     * @param hashingQuota     The maximum number of hashing threads used by a single event aggregator
+     * @param dispatchQuota    The maximum number of dispatch threads used by the listeners of a single event aggregator
+     *
+     * @throws IllegalArgumentException If any of the values is not positive
+     */
+    public AggregatorRuntime(int schedulerThreads, int hashingThreads, int dispatchThreads, int hashingQuota, int dispatchQuota) {
+        this(schedulerThreads, hashingThreads, dispatchThreads, dispatchThreads, hashingQuota, dispatchQuota);
+    }
+
+    /**
+     * @param schedulerThreads The number of threads of the scheduler
+     * @param hashingThreads     The number of threads of the hashing pool
+     * @param aggregationThreads The number of threads of the aggregation pool
+     * @param dispatchThreads    The number of threads of the dispatch pool
+     * @param hashingQuota       The maximum number of hashing threads used by a single event aggregator
+     * @param dispatchQuota      The maximum number of dispatch threads used by the listeners of a single event aggregator
+     *
+     * @throws IllegalArgumentException If any of the values is not positive
+     */
+    public AggregatorRuntime(int schedulerThreads, int hashingThreads, int aggregationThreads, int dispatchThreads, int hashingQuota, int dispatchQuota) {
+        if (schedulerThreads < 1 || hashingQuota < 1 || dispatchQuota < 1) {
+            throw new IllegalArgumentException("The number of threads and the quotas must be at least 1");
+        }
+
+        this.scheduler = new ScheduledThreadPoolExecutor(
+                schedulerThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("event-aggregator-scheduler-%d").build()
+        );
+        // checks are cancelled frequently if the batch size is reached
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler.setKeepAliveTime(FairExecutor.KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS);
+        this.scheduler.allowCoreThreadTimeOut(true);
+
+        this.hashingPool = new FairExecutor(hashingThreads, "event-aggregator-hashing-%d");
+        this.aggregationPool = new FairExecutor(aggregationThreads, "event-aggregator-aggregation-%d");
+        this.dispatchPool = new FairExecutor(dispatchThreads, "event-aggregator-dispatch-%d");
+        this.hashingQuota = hashingQuota;
+        this.dispatchQuota = dispatchQuota;
+    }
+
+    /**
+     * Returns the scheduler timing the flushes of pending events
+     *
+     * @return The scheduler
+     */
+    public ScheduledExecutorService getScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * Returns the pool computing the hashes of changed files
+     *
+     * @return The hashing pool
+     */
+    public FairExecutor getHashingPool() {
+        return this.hashingPool;
+    }
+
+    /**
+     * Returns the pool running the aggregation of flushed events
+     *
+     * @return The aggregation pool
+     */
+    public FairExecutor getAggregationPool() {
+        return this.aggregationPool;
+    }
+
+    /**
+     * Returns the pool notifying the listeners
+     *
+     * @return The dispatch pool
+     */
+    public FairExecutor getDispatchPool() {
+        return this.dispatchPool;
+    }
+
+    /**
+     * Returns the maximum number of hashing threads used by a single event aggregator
+     *
+     * @return The hashing quota
+     */
+    public int getHashingQuota() {
+        return this.hashingQuota;
+    }
+
+    /**
+     * Returns the maximum number of dispatch threads used by the listeners of a single event aggregator
+     *
+     * @return The dispatch quota
+     */
+    public int getDispatchQuota() {
+        return this.dispatchQuota;
+    }
+
+    /**
+     * Stops all threads of the runtime once their queued tasks are completed.
+     * Event aggregators using the runtime should be stopped before.
+     */
+    public void shutdown() {
+        this.scheduler.shutdown();
+        this.hashingPool.shutdown();
+        this.aggregationPool.shutdown();
+        this.dispatchPool.shutdown();
+    }
+}
@@ -0,0 +1,22 @@
+package org.rmatil.sync.event.aggregator.core;
+
+/**
+ * Defines when pending events are propagated through
+ * the modifiers and aggregators of an event aggregator
+ */
+public enum EmissionMode {
+
+    /**
+     * All pending events are propagated at once according to the
+     * {@link FlushPolicy} (see {@link FlushScheduler})
+     */
+    BATCH,
+
+    /**
+     * The events of each path are propagated as soon as the path settled,
+     * i.e. no further event arrived for it within the quiet period of the {@link FlushPolicy}.
+     * Deletions and creations within the move correlation window are propagated together,
+     * so that moves are still detected (see {@link StreamingFlushScheduler})
+     */
+    STREAMING
+}
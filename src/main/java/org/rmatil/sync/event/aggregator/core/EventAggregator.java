@@ -4,7 +4,17 @@ import name.mitterdorfer.perlock.PathWatcher;
 import org.rmatil.sync.event.aggregator.api.IEventAggregator;
 import org.rmatil.sync.event.aggregator.api.IEventListener;
 import org.rmatil.sync.event.aggregator.core.aggregator.IAggregator;
+import org.rmatil.sync.event.aggregator.core.cache.VersionHashCache;
 import org.rmatil.sync.event.aggregator.core.events.*;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentChunker;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentHashCache;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingMode;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.core.hashing.MerkleTree;
+import org.rmatil.sync.event.aggregator.core.hashing.WriteStabilityTracker;
+import org.rmatil.sync.event.aggregator.core.index.FileIndex;
+import org.rmatil.sync.event.aggregator.core.index.FileKeyTracker;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
 import org.rmatil.sync.event.aggregator.core.modifier.IModifier;
 import org.rmatil.sync.event.aggregator.core.pathwatcher.IPathWatcherFactory;
 import org.slf4j.Logger;
@@ -12,8 +22,9 @@ import org.slf4j.Logger;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -29,9 +40,14 @@ public class EventAggregator implements IEventListener, IEventAggregator {
 
     protected final static int     NUMBER_OF_PATHS_TO_WATCH     = 1;
     protected final static boolean CREATE_RECURSIVE_WATCHER     = true;
-    protected final static long    DEFAULT_AGGREGATION_INTERVAL = 5000L;
     protected final static long    TIME_GAP_LIFE_CYCLE          = 100L;
 
+    /**
+     * The maximum time to wait on stopping until pending events
+     * are aggregated and handled by all listeners (in milliseconds)
+     */
+    protected final static long    TERMINATION_TIMEOUT          = 5000L;
+
     /**
      * The thread executor for the path watcher service.
      * The path watcher does live in another thread.
@@ -40,10 +56,16 @@ public class EventAggregator implements IEventListener, IEventAggregator {
 
     /**
      * The scheduled thread executor for this aggregator.
-     * Used to propagate all events in the specified time interval
+     * Used to propagate pending events according to the flush policy
      */
     protected ScheduledExecutorService aggregationExecutorService;
 
+    /**
+     * The service computing the hashes of events
+     * which passed all modifiers in parallel
+     */
+    protected HashingService hashingService;
+
     /**
      * The path watcher instance used to watch path changes
      */
@@ -65,6 +87,12 @@ public class EventAggregator implements IEventListener, IEventAggregator {
      */
     protected List<IEventListener> eventListener;
 
+    /**
+     * The dispatcher delivering the aggregated events
+     * on a separate thread by each event listener
+     */
+    protected Map<IEventListener, ListenerDispatcher> listenerDispatchers;
+
     /**
      * A list of modifiers which are able to modify the list
      * of events which are propagated further
@@ -78,35 +106,203 @@ public class EventAggregator implements IEventListener, IEventAggregator {
     protected List<IAggregator> aggregators;
 
     /**
-     * The interval in which the events are aggregated
+     * Defines when pending events are aggregated
+     */
+    protected FlushPolicy flushPolicy;
+
+    /**
+     * Whether pending events are propagated all at once or each path on its own
+     */
+    protected EmissionMode emissionMode;
+
+    /**
+     * The time in milliseconds around a deletion or creation
+     * in which a corresponding one is propagated together with it
+     */
+    protected long moveCorrelationWindow;
+
+    /**
+     * The number of threads computing hashes
+     */
+    protected int hashingPoolSize;
+
+    /**
+     * The maximum number of hash computations waiting for a thread
      */
-    protected long aggregationInterval;
+    protected int hashingQueueSize;
+
+    /**
+     * The cache of hashes of unchanged files. May be null
+     */
+    protected ContentHashCache contentHashCache;
+
+    /**
+     * The hashes of directories derived from their children. May be null
+     */
+    protected MerkleTree merkleTree;
+
+    /**
+     * Defers the events of files which are still being written. May be null
+     */
+    protected WriteStabilityTracker writeStabilityTracker;
+
+    /**
+     * Splits created and modified files into content-defined chunks. May be null
+     */
+    protected ContentChunker contentChunker;
+
+    /**
+     * Detects renames by the file key of the renamed path element. May be null
+     */
+    protected FileKeyTracker fileKeyTracker;
+
+    /**
+     * Whether events are compared by a fast digest within the pipeline
+     */
+    protected HashingMode hashingMode;
+
+    /**
+     * The maximum number of pending events
+     */
+    protected int maxPendingEvents;
+
+    /**
+     * Computes the changes within directories whose events were discarded. May be null
+     */
+    protected SubtreeRescanner subtreeRescanner;
+
+    /**
+     * The persisted state of the watched folder used to find changes
+     * which happened while not running. May be null
+     */
+    protected FileIndex fileIndex;
+
+    /**
+     * The cache of the last versions to invalidate on emitting events. May be null
+     */
+    protected VersionHashCache versionHashCache;
+
+    /**
+     * The metrics of the pipeline
+     */
+    protected PipelineMetrics metrics;
 
     protected IPathWatcherFactory pathWatcherFactory;
 
+    /**
+     * The threads shared with other event aggregators. May be null
+     */
+    protected AggregatorRuntime runtime;
+
+    /**
+     * The lane of the shared aggregation pool on which flushed events are aggregated.
+     * Created on each start. Null if no runtime is used
+     */
+    protected FairExecutor.Lane aggregationLane;
+
+    /**
+     * The lane of the shared dispatch pool on which listeners are notified.
+     * Null if no runtime is used
+     */
+    protected FairExecutor.Lane dispatchLane;
+
     /**
      * The root path element which is being watched
      *
      * @param rootPath The root path to watch
      */
     public EventAggregator(Path rootPath, IPathWatcherFactory pathWatcherFactory) {
+        this(rootPath, pathWatcherFactory, null);
+    }
+
+    /**
+     * The root path element which is being watched using the threads of the given runtime.
+     * Flushes are then scheduled on its scheduler, hashes are computed on its hashing pool,
+     * flushed events are aggregated on its aggregation pool and listeners are notified on its dispatch pool,
+     * each limited by the quotas of the runtime.
+     * The hashing pool size is ignored in this case.
+     *
+     * @param rootPath           The root path to watch
+     * @param pathWatcherFactory The factory creating the path watcher
+     * @param runtime            The threads shared with other event aggregators or null, if this one should start its own threads
+     */
+    public EventAggregator(Path rootPath, IPathWatcherFactory pathWatcherFactory, AggregatorRuntime runtime) {
         this.rootPath = rootPath;
-        this.aggregationInterval = DEFAULT_AGGREGATION_INTERVAL;
+        this.flushPolicy = new FlushPolicy();
+        this.emissionMode = EmissionMode.BATCH;
+        this.moveCorrelationWindow = StreamingFlushScheduler.DEFAULT_MOVE_CORRELATION_WINDOW;
+        this.hashingPoolSize = HashingService.DEFAULT_POOL_SIZE;
+        this.hashingQueueSize = HashingService.DEFAULT_QUEUE_SIZE;
+        this.contentHashCache = null;
+        this.hashingMode = HashingMode.FULL;
+        this.maxPendingEvents = Integer.MAX_VALUE;
         this.pathEventListener = new PathEventListener();
+        this.metrics = new PipelineMetrics(this.pathEventListener::getEstimatedNrOfPendingEvents);
         this.pathWatcherFactory = pathWatcherFactory;
         // add this as listener to aggregate events
         this.pathEventListener.addListener(this);
         this.eventListener = new ArrayList<>();
+        this.listenerDispatchers = new ConcurrentHashMap<>();
         this.aggregators = new ArrayList<>();
         this.modifiers = new ArrayList<>();
+        this.runtime = runtime;
+
+        if (null != runtime) {
+            this.dispatchLane = runtime.getDispatchPool().newLane(runtime.getDispatchQuota(), Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Shuts down all listener dispatchers and waits until they delivered their pending batches,
+     * but at the latest until the given deadline. Each dispatcher is replaced by a new one,
+     * which does not start a thread until events are dispatched after a restart
+     *
+     * @param deadline The time until which to wait for the listeners in milliseconds
+     */
+    protected void stopListenerDispatchers(long deadline) {
+        for (ListenerDispatcher listenerDispatcher : this.listenerDispatchers.values()) {
+            listenerDispatcher.shutdown();
+        }
+
+        for (Map.Entry<IEventListener, ListenerDispatcher> entry : this.listenerDispatchers.entrySet()) {
+            ListenerDispatcher listenerDispatcher = entry.getValue();
+            try {
+                if (! listenerDispatcher.awaitTermination(Math.max(0L, deadline - System.currentTimeMillis()))) {
+                    logger.warn("Listener " + entry.getKey().getClass().getName() + " did not handle its pending events within " + TERMINATION_TIMEOUT + "ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while waiting for listener " + entry.getKey().getClass().getName() + ". Message: " + e.getMessage());
+            }
+
+            entry.setValue(new ListenerDispatcher(entry.getKey(), listenerDispatcher.getOverflowPolicy(), listenerDispatcher.getQueueSize(), this.dispatchLane));
+        }
     }
 
     public void addListener(IEventListener eventListener) {
+        this.addListener(eventListener, ListenerDispatcher.DEFAULT_OVERFLOW_POLICY, ListenerDispatcher.DEFAULT_QUEUE_SIZE);
+    }
+
+    public void addListener(IEventListener eventListener, OverflowPolicy overflowPolicy, int queueSize) {
+        ListenerDispatcher previousDispatcher = this.listenerDispatchers.put(eventListener, new ListenerDispatcher(eventListener, overflowPolicy, queueSize, this.dispatchLane));
+        if (null != previousDispatcher) {
+            previousDispatcher.shutdown();
+        }
+
         this.eventListener.add(eventListener);
     }
 
     public void removeListener(IEventListener eventListener) {
         this.eventListener.remove(eventListener);
+
+        ListenerDispatcher listenerDispatcher = this.listenerDispatchers.remove(eventListener);
+        if (null != listenerDispatcher) {
+            listenerDispatcher.shutdown();
+        }
+    }
+
+    public ListenerDispatcher getListenerDispatcher(IEventListener eventListener) {
+        return this.listenerDispatchers.get(eventListener);
     }
 
     public List<IEventListener> getListeners() {
@@ -115,10 +311,12 @@ public class EventAggregator implements IEventListener, IEventAggregator {
 
     public void addAggregator(IAggregator aggregator) {
         this.aggregators.add(aggregator);
+        aggregator.setMetrics(this.metrics);
     }
 
     public void removeAggregator(IAggregator aggregator) {
         this.aggregators.remove(aggregator);
+        this.metrics.removeStage(aggregator);
     }
 
     public List<IAggregator> getAggregators() {
@@ -127,10 +325,15 @@ public class EventAggregator implements IEventListener, IEventAggregator {
 
     public void addModifier(IModifier modifier) {
         this.modifiers.add(modifier);
+        modifier.setMetrics(this.metrics);
+        if (null != this.hashingService) {
+            modifier.setHashingService(this.hashingService);
+        }
     }
 
     public void removeModifier(IModifier modifier) {
         this.modifiers.remove(modifier);
+        this.metrics.removeStage(modifier);
     }
 
     public List<IModifier> getModifiers() {
@@ -138,16 +341,228 @@ public class EventAggregator implements IEventListener, IEventAggregator {
     }
 
     public void setAggregationInterval(long milliSeconds) {
-        this.aggregationInterval = milliSeconds;
+        this.flushPolicy = new FlushPolicy(
+                Math.min(this.flushPolicy.getQuietPeriod(), milliSeconds),
+                milliSeconds,
+                this.flushPolicy.getMaxBatchSize()
+        );
     }
 
     public long getAggregationInterval() {
-        return this.aggregationInterval;
+        return this.flushPolicy.getMaxLatency();
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return this.flushPolicy;
+    }
+
+    public void setEmissionMode(EmissionMode emissionMode) {
+        this.emissionMode = emissionMode;
+    }
+
+    public EmissionMode getEmissionMode() {
+        return this.emissionMode;
+    }
+
+    public void setMoveCorrelationWindow(long milliSeconds) {
+        if (milliSeconds < 0) {
+            throw new IllegalArgumentException("The move correlation window must not be negative");
+        }
+
+        this.moveCorrelationWindow = milliSeconds;
+    }
+
+    public long getMoveCorrelationWindow() {
+        return this.moveCorrelationWindow;
+    }
+
+    public void setHashingPoolSize(int poolSize) {
+        this.hashingPoolSize = poolSize;
+    }
+
+    public int getHashingPoolSize() {
+        return this.hashingPoolSize;
+    }
+
+    public void setHashingQueueSize(int queueSize) {
+        this.hashingQueueSize = queueSize;
+    }
+
+    public int getHashingQueueSize() {
+        return this.hashingQueueSize;
+    }
+
+    public void setContentHashCache(ContentHashCache contentHashCache) {
+        this.contentHashCache = contentHashCache;
+    }
+
+    public ContentHashCache getContentHashCache() {
+        return this.contentHashCache;
+    }
+
+    public void setMerkleTree(MerkleTree merkleTree) {
+        this.merkleTree = merkleTree;
+    }
+
+    public MerkleTree getMerkleTree() {
+        return this.merkleTree;
+    }
+
+    public void setWriteStabilityTracker(WriteStabilityTracker writeStabilityTracker) {
+        this.writeStabilityTracker = writeStabilityTracker;
+    }
+
+    public WriteStabilityTracker getWriteStabilityTracker() {
+        return this.writeStabilityTracker;
+    }
+
+    public void setContentChunker(ContentChunker contentChunker) {
+        this.contentChunker = contentChunker;
+    }
+
+    public ContentChunker getContentChunker() {
+        return this.contentChunker;
+    }
+
+    public void setFileKeyTracker(FileKeyTracker fileKeyTracker) {
+        this.fileKeyTracker = fileKeyTracker;
+    }
+
+    public FileKeyTracker getFileKeyTracker() {
+        return this.fileKeyTracker;
+    }
+
+    public void setHashingMode(HashingMode hashingMode) {
+        this.hashingMode = hashingMode;
+    }
+
+    public HashingMode getHashingMode() {
+        return this.hashingMode;
+    }
+
+    public void setMaxPendingEvents(int maxPendingEvents) {
+        if (maxPendingEvents < 1) {
+            throw new IllegalArgumentException("The maximum number of pending events must be at least 1");
+        }
+
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    public int getMaxPendingEvents() {
+        return this.maxPendingEvents;
+    }
+
+    public void setSubtreeRescanner(SubtreeRescanner subtreeRescanner) {
+        this.subtreeRescanner = subtreeRescanner;
+        if (null != subtreeRescanner) {
+            subtreeRescanner.setMetrics(this.metrics);
+        }
+    }
+
+    public SubtreeRescanner getSubtreeRescanner() {
+        return this.subtreeRescanner;
+    }
+
+    public void setFileIndex(FileIndex fileIndex) {
+        this.fileIndex = fileIndex;
+    }
+
+    public FileIndex getFileIndex() {
+        return this.fileIndex;
+    }
+
+    public void setVersionHashCache(VersionHashCache versionHashCache) {
+        this.versionHashCache = versionHashCache;
+        if (null != versionHashCache) {
+            versionHashCache.setMetrics(this.metrics);
+        }
+    }
+
+    public VersionHashCache getVersionHashCache() {
+        return this.versionHashCache;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the threads shared with other event aggregators
+     *
+     * @return The runtime or null, if this event aggregator starts its own threads
+     */
+    public AggregatorRuntime getRuntime() {
+        return this.runtime;
     }
 
     public void start()
             throws IOException {
         logger.trace("Starting EventAggregator...");
+        if (null != this.contentHashCache) {
+            try {
+                this.contentHashCache.load();
+            } catch (IOException e) {
+                logger.error("Could not load the persisted hash cache. Message: " + e.getMessage());
+            }
+        }
+
+        if (null != this.fileIndex) {
+            try {
+                this.fileIndex.load();
+            } catch (IOException e) {
+                logger.error("Could not load the persisted file index. Message: " + e.getMessage());
+            }
+        }
+
+        if (null != this.runtime) {
+            this.hashingService = new HashingService(this.runtime.getHashingPool().newLane(this.runtime.getHashingQuota(), this.hashingQueueSize), this.contentHashCache);
+        } else {
+            this.hashingService = new HashingService(this.hashingPoolSize, this.hashingQueueSize, this.contentHashCache);
+        }
+
+        // modifiers hash on the threads of this event aggregator, within the quota of the runtime if one is used
+        for (IModifier modifier : this.modifiers) {
+            modifier.setHashingService(this.hashingService);
+        }
+
+        this.pathEventListener.setContentHashCache(this.contentHashCache);
+        this.pathEventListener.setHashingMode(this.hashingMode);
+        this.pathEventListener.setMerkleTree(this.merkleTree);
+        this.pathEventListener.setWriteStabilityTracker(this.writeStabilityTracker);
+        this.pathEventListener.setContentChunker(this.contentChunker);
+        this.pathEventListener.setFileKeyTracker(this.fileKeyTracker);
+        this.pathEventListener.setMaxPendingEvents(this.maxPendingEvents);
+        this.pathEventListener.setSubtreeRescanner(this.subtreeRescanner);
+
+        // flush pending events only once they arrive, i.e. do not wake up while idle.
+        // Set before starting the path watcher, so that no event misses to schedule a flush
+        long moveCorrelationWindow = this.moveCorrelationWindow;
+        if (null != this.runtime) {
+            // a single flush of this aggregator runs at a time
+            // aggregations wait for slow listeners, hence they must not occupy the threads delivering to them
+            FairExecutor.Lane aggregationLane = this.runtime.getAggregationPool().newLane(1, Integer.MAX_VALUE);
+            this.aggregationLane = aggregationLane;
+
+            // the shared scheduler only times the flush, which runs on the aggregation pool.
+            // Flushes handed over after stopping are dropped instead of being run by the scheduler
+            if (EmissionMode.STREAMING == this.emissionMode) {
+                this.pathEventListener.setFlushScheduler(new StreamingFlushScheduler(this.runtime.getScheduler(), this.flushPolicy, moveCorrelationWindow, paths -> aggregationLane.offer(() -> this.pathEventListener.flush(paths, moveCorrelationWindow))));
+            } else {
+                this.pathEventListener.setFlushScheduler(new FlushScheduler(this.runtime.getScheduler(), this.flushPolicy, () -> aggregationLane.offer(this.pathEventListener)));
+            }
+        } else {
+            this.aggregationExecutorService = Executors.newSingleThreadScheduledExecutor();
+            if (EmissionMode.STREAMING == this.emissionMode) {
+                this.pathEventListener.setFlushScheduler(new StreamingFlushScheduler(this.aggregationExecutorService, this.flushPolicy, moveCorrelationWindow, paths -> this.pathEventListener.flush(paths, moveCorrelationWindow)));
+            } else {
+                this.pathEventListener.setFlushScheduler(new FlushScheduler(this.aggregationExecutorService, this.flushPolicy, this.pathEventListener));
+            }
+        }
+
         this.pathWatcherExecutorService = Executors.newFixedThreadPool(EventAggregator.NUMBER_OF_PATHS_TO_WATCH);
 
         if (CREATE_RECURSIVE_WATCHER) {
@@ -173,9 +588,16 @@ public class EventAggregator implements IEventListener, IEventAggregator {
             logger.error("Could not wait for path watcher to start. Message: " + e.getMessage());
         }
 
-        // schedule the pathEventListener to notify us if he has events on the fixed interval
-        this.aggregationExecutorService = Executors.newSingleThreadScheduledExecutor();
-        this.aggregationExecutorService.scheduleAtFixedRate(this.pathEventListener, 0, this.aggregationInterval, TimeUnit.MILLISECONDS);
+        if (null != this.fileKeyTracker) {
+            // renames of elements created or modified afterwards are detected by their recorded identity as well
+            this.fileKeyTracker.track(this.rootPath);
+        }
+
+        if (null != this.fileIndex) {
+            // the path watcher is running: changes after the walk are reported by it,
+            // changes while not running or starting by the index
+            this.fileIndex.reconcile(this.pathEventListener);
+        }
 
         logger.trace("Completed starting EventAggregator");
     }
@@ -192,37 +614,147 @@ public class EventAggregator implements IEventListener, IEventAggregator {
             this.pathWatcherExecutorService.shutdown();
         }
 
+        // a check already queued on a shared scheduler must not flush anymore
+        FlushScheduler flushScheduler = this.pathEventListener.getFlushScheduler();
+        if (null != flushScheduler) {
+            flushScheduler.cancel();
+        }
+        this.pathEventListener.setFlushScheduler(null);
+
+        long terminationDeadline = System.currentTimeMillis() + TERMINATION_TIMEOUT;
+
+        if (null != this.aggregationLane) {
+            this.aggregationLane.shutdown();
+            try {
+                // a running flush still dispatches its events
+                if (! this.aggregationLane.awaitTermination(TERMINATION_TIMEOUT)) {
+                    logger.warn("The aggregation did not complete within " + TERMINATION_TIMEOUT + "ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while waiting for the aggregation to complete. Message: " + e.getMessage());
+            }
+        }
+
         if (null != this.aggregationExecutorService) {
             this.aggregationExecutorService.shutdown();
+            try {
+                // a running flush still dispatches its events
+                this.aggregationExecutorService.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while waiting for the aggregation to complete. Message: " + e.getMessage());
+            }
+        }
+
+        this.stopListenerDispatchers(terminationDeadline);
+
+        // no flush runs anymore
+        for (IModifier modifier : this.modifiers) {
+            modifier.stop();
+        }
+
+        if (null != this.hashingService) {
+            this.hashingService.shutdown();
+        }
+
+        if (null != this.contentHashCache) {
+            try {
+                this.contentHashCache.save();
+            } catch (IOException e) {
+                logger.error("Could not persist the hash cache. Message: " + e.getMessage());
+            }
+        }
+
+        if (null != this.fileIndex) {
+            try {
+                this.fileIndex.save();
+            } catch (IOException e) {
+                logger.error("Could not persist the file index. Message: " + e.getMessage());
+            }
         }
     }
 
     public void onChange(List<IEvent> events) {
-        // sort events according to their timestamp
-        Collections.sort(events);
+        // the batch indexes the events by their path and hash
+        // so that modifiers and aggregators do not have to scan all events
+        EventBatch batch = new EventBatch(events);
+        this.metrics.recordBatch(batch.size());
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Got " + batch.size() + " events before modifying");
+        }
 
-        logger.trace("Got " + events.size() + " events before modifying");
         for (IModifier modifier : modifiers) {
-            events = modifier.modify(events);
-            logger.trace("Got " + events.size() + " events after modifying with " + modifier.getClass().getName());
+            int nrOfEvents = batch.size();
+            long start = System.nanoTime();
+            batch = modifier.modify(batch);
+            this.metrics.recordStage(modifier, System.nanoTime() - start, nrOfEvents, batch.size());
+
+            if (logger.isTraceEnabled()) {
+                logger.trace("Got " + batch.size() + " events after modifying with " + modifier.getClass().getName());
+            }
+        }
+
+        // hashes are computed lazily: events dropped by a modifier were not hashed at all
+        // (or only by their fast digest). Compute the hashes of the remaining ones
+        // in parallel before aggregators and listeners access them
+        if (null != this.hashingService) {
+            long start = System.nanoTime();
+            this.hashingService.resolve(batch.getEvents());
+            this.metrics.recordStage(PipelineMetrics.HASHING_STAGE, System.nanoTime() - start, batch.size(), batch.size());
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Got " + batch.size() + " before aggregating");
         }
 
-        logger.trace("Got " + events.size() + " before aggregating");
         for (IAggregator aggregator : aggregators) {
-            events = aggregator.aggregate(events);
-            logger.trace("Got " + events.size() + " after aggregating with " + aggregator.getClass().getName());
+            int nrOfEvents = batch.size();
+            long start = System.nanoTime();
+            batch = aggregator.aggregate(batch);
+            this.metrics.recordStage(aggregator, System.nanoTime() - start, nrOfEvents, batch.size());
+
+            if (logger.isTraceEnabled()) {
+                logger.trace("Got " + batch.size() + " after aggregating with " + aggregator.getClass().getName());
+            }
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Got " + batch.size() + " before notifying listeners");
         }
 
-        logger.trace("Got " + events.size() + " before notifying listeners");
         // do not notify about empty events
-        if (events.isEmpty()) {
+        if (batch.isEmpty()) {
             return;
         }
 
-        // notify all event listeners for the made changes
-        for (IEventListener listener : this.eventListener) {
-            listener.onChange(events);
+        List<IEvent> aggregatedEvents = batch.getEvents();
+        this.metrics.recordEmitted(aggregatedEvents, System.currentTimeMillis());
+
+        if (null != this.fileIndex) {
+            // the listeners know about these changes now
+            this.fileIndex.update(aggregatedEvents);
         }
 
+        VersionHashCache versionHashCache = this.versionHashCache;
+        if (null != versionHashCache) {
+            // before any listener may store a new version, so that
+            // the next flush does not use the previous one
+            versionHashCache.onEmit(aggregatedEvents);
+        }
+
+        // notify all event listeners for the made changes,
+        // each one on its own thread so that a slow one does not delay the others
+        long start = System.nanoTime();
+        for (IEventListener listener : this.eventListener) {
+            ListenerDispatcher listenerDispatcher = this.listenerDispatchers.get(listener);
+            if (null != listenerDispatcher) {
+                listenerDispatcher.dispatch(aggregatedEvents);
+            } else {
+                listener.onChange(aggregatedEvents);
+            }
+        }
+        this.metrics.recordStage(PipelineMetrics.LISTENER_STAGE, System.nanoTime() - start, aggregatedEvents.size(), aggregatedEvents.size());
     }
 }
@@ -0,0 +1,280 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Holds the pending events of the filesystem keyed by their path.
+ * Events for the same path are collapsed on arrival:
+ * <p>
+ * <ul>
+ * <li>CreateEvent followed by ModifyEvents: CreateEvent</li>
+ * <li>Multiple ModifyEvents: Last ModifyEvent</li>
+ * <li>CreateEvent followed by a DeleteEvent: No event at all</li>
+ * <li>ModifyEvent followed by a DeleteEvent: DeleteEvent</li>
+ * <li>DeleteEvent followed by a CreateEvent: Both events, since they may be part of a move</li>
+ * </ul>
+ * <p>
+ * Therefore, the number of events held is bounded by the number
+ * of distinct paths and not by the number of notifications received.
+ * <p>
+ * <i>Note</i>: This class is not thread-safe
+ */
+public class EventBag {
+
+    /**
+     * The pending events of a single path
+     */
+    protected static class Entry {
+
+        /**
+         * A DeleteEvent which happened before the current event
+         * or null, if there is none
+         */
+        protected IEvent delete;
+
+        /**
+         * The latest relevant event of the path
+         */
+        protected IEvent current;
+
+        protected Entry(IEvent current) {
+            this.current = current;
+        }
+    }
+
+    /**
+     * The pending events by their path
+     */
+    protected final Map<Path, Entry> entries;
+
+    /**
+     * Events which are not collapsed, e.g. MoveEvents
+     */
+    protected final List<IEvent> otherEvents;
+
+    /**
+     * The number of events currently held
+     */
+    protected int size;
+
+    public EventBag() {
+        this.entries = new LinkedHashMap<>();
+        this.otherEvents = new ArrayList<>();
+        this.size = 0;
+    }
+
+    /**
+     * Adds the given event, collapsing it with
+     * the already pending events of the same path
+     *
+     * @param event The event to add
+     */
+    public void add(IEvent event) {
+        Path path = event.getPath();
+        Entry entry = this.entries.get(path);
+
+        switch (event.getEventName()) {
+            case CreateEvent.EVENT_NAME:
+                if (null == entry) {
+                    this.put(path, event);
+                } else if (entry.current instanceof DeleteEvent) {
+                    // the path was deleted and created again
+                    entry.delete = entry.current;
+                    entry.current = event;
+                    this.size++;
+                } else if (! (entry.current instanceof CreateEvent)) {
+                    entry.current = event;
+                }
+                break;
+            case ModifyEvent.EVENT_NAME:
+                if (null == entry) {
+                    this.put(path, event);
+                } else if (entry.current instanceof DeleteEvent) {
+                    entry.delete = entry.current;
+                    entry.current = event;
+                    this.size++;
+                } else if (entry.current instanceof ModifyEvent) {
+                    // only the last modification is relevant
+                    entry.current = event;
+                }
+                // a modification of a created path is covered by the CreateEvent
+                break;
+            case DeleteEvent.EVENT_NAME:
+                if (null == entry) {
+                    this.put(path, event);
+                } else if (null != entry.delete) {
+                    // the path was deleted, created and deleted again
+                    entry.current = entry.delete;
+                    entry.delete = null;
+                    this.size--;
+                } else if (entry.current instanceof CreateEvent) {
+                    // the path was only created temporarily
+                    this.entries.remove(path);
+                    this.size--;
+                } else if (entry.current instanceof ModifyEvent) {
+                    entry.current = event;
+                }
+                break;
+            default:
+                this.otherEvents.add(event);
+                this.size++;
+        }
+    }
+
+    /**
+     * Adds the given events as if they happened before all pending
+     * events of their paths, e.g. to put back events which were not propagated yet
+     *
+     * @param events The events to add, sorted by their timestamp
+     */
+    public void addBefore(List<IEvent> events) {
+        Map<Path, Entry> laterEntries = new HashMap<>();
+        for (IEvent event : events) {
+            Path path = event.getPath();
+            if (! laterEntries.containsKey(path)) {
+                Entry entry = this.entries.remove(path);
+                laterEntries.put(path, entry);
+
+                if (null != entry) {
+                    this.size -= (null == entry.delete) ? 1 : 2;
+                }
+            }
+        }
+
+        for (IEvent event : events) {
+            this.add(event);
+        }
+
+        for (Entry entry : laterEntries.values()) {
+            if (null == entry) {
+                continue;
+            }
+
+            if (null != entry.delete) {
+                this.add(entry.delete);
+            }
+
+            this.add(entry.current);
+        }
+    }
+
+    /**
+     * Returns all pending events sorted by their timestamp
+     *
+     * @return The pending events
+     */
+    public List<IEvent> getEvents() {
+        List<IEvent> events = new ArrayList<>(this.size);
+        for (Entry entry : this.entries.values()) {
+            this.addTo(events, entry);
+        }
+
+        events.addAll(this.otherEvents);
+        Collections.sort(events);
+
+        return events;
+    }
+
+    /**
+     * Removes and returns all pending events of the given path
+     *
+     * @param path The path of the events
+     *
+     * @return The removed events, an empty list if there are none
+     */
+    public List<IEvent> remove(Path path) {
+        List<IEvent> events = new ArrayList<>();
+
+        Entry entry = this.entries.remove(path);
+        if (null != entry) {
+            this.addTo(events, entry);
+        }
+
+        for (Iterator<IEvent> iterator = this.otherEvents.iterator(); iterator.hasNext(); ) {
+            IEvent event = iterator.next();
+            if (path.equals(event.getPath())) {
+                events.add(event);
+                iterator.remove();
+            }
+        }
+
+        this.size -= events.size();
+
+        return events;
+    }
+
+    /**
+     * Removes and returns the pending events of all paths which were
+     * deleted or created within the given time range, i.e. which may be part of a move
+     *
+     * @param from The start of the time range in milliseconds
+     * @param to   The end of the time range in milliseconds (inclusive)
+     *
+     * @return The removed events, an empty list if there are none
+     */
+    public List<IEvent> removeMoveCandidates(long from, long to) {
+        List<IEvent> events = new ArrayList<>();
+
+        for (Iterator<Entry> iterator = this.entries.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (EventBag.isMoveCandidate(entry.delete, from, to) || EventBag.isMoveCandidate(entry.current, from, to)) {
+                this.addTo(events, entry);
+                iterator.remove();
+            }
+        }
+
+        this.size -= events.size();
+
+        return events;
+    }
+
+    /**
+     * Returns the number of pending events
+     *
+     * @return The number of pending events
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns whether no events are pending
+     *
+     * @return True, if no events are pending
+     */
+    public boolean isEmpty() {
+        return 0 == this.size;
+    }
+
+    /**
+     * Removes all pending events
+     */
+    public void clear() {
+        this.entries.clear();
+        this.otherEvents.clear();
+        this.size = 0;
+    }
+
+    protected void put(Path path, IEvent event) {
+        this.entries.put(path, new Entry(event));
+        this.size++;
+    }
+
+    protected void addTo(List<IEvent> events, Entry entry) {
+        if (null != entry.delete) {
+            events.add(entry.delete);
+        }
+
+        events.add(entry.current);
+    }
+
+    protected static boolean isMoveCandidate(IEvent event, long from, long to) {
+        return (event instanceof DeleteEvent || event instanceof CreateEvent) && event.getTimestamp() >= from && event.getTimestamp() <= to;
+    }
+}
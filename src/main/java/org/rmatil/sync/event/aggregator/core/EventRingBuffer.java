@@ -0,0 +1,158 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue of events which may be filled by multiple
+ * threads concurrently but only be drained by a single one at a time.
+ * <p>
+ * All slots are allocated upfront. Producers claim a slot by
+ * incrementing the tail and publish the event by advancing the sequence
+ * of the slot, hence they neither lock nor wait for the consumer. Once all
+ * slots are taken, {@link EventRingBuffer#offer(IEvent)} fails instead of blocking,
+ * leaving it up to the producer how to handle the overflow.
+ * <p>
+ * <i>Note</i>: {@link EventRingBuffer#drain(Consumer)} must not be invoked concurrently
+ */
+public class EventRingBuffer {
+
+    /**
+     * The events, indexed by their sequence modulo the capacity
+     */
+    protected final AtomicReferenceArray<IEvent> slots;
+
+    /**
+     * The sequence each slot expects next. Equal to the sequence of a producer
+     * if the slot is free and one more than that if the event is published
+     */
+    protected final AtomicLongArray sequences;
+
+    protected final int mask;
+
+    /**
+     * The sequence of the next slot to claim by a producer
+     */
+    protected final AtomicLong tail;
+
+    /**
+     * The sequence of the next slot to drain. Only written by the consumer
+     */
+    protected volatile long head;
+
+    /**
+     * @param capacity The number of slots, rounded up to the next power of two
+     *
+     * @throws IllegalArgumentException If the capacity is not positive or too large
+     */
+    public EventRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("The capacity of the ring buffer must be between 1 and " + (1 << 30));
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.head = 0L;
+    }
+
+    /**
+     * Appends the given event, if there is a free slot
+     *
+     * @param event The event to append
+     *
+     * @return False, if all slots are taken and the event was not appended
+     */
+    public boolean offer(IEvent event) {
+        while (true) {
+            long sequence = this.tail.get();
+            int index = (int) sequence & this.mask;
+            long slotSequence = this.sequences.get(index);
+
+            if (slotSequence == sequence) {
+                if (this.tail.compareAndSet(sequence, sequence + 1)) {
+                    this.slots.lazySet(index, event);
+                    // publishes the event to the consumer
+                    this.sequences.set(index, sequence + 1);
+                    return true;
+                }
+            } else if (slotSequence < sequence) {
+                // the slot still holds an event of the previous round
+                return false;
+            }
+
+            // another producer claimed the slot in the meantime
+        }
+    }
+
+    /**
+     * Passes all published events to the given consumer in the order
+     * their slots were claimed and frees their slots.
+     * Events appended while draining are left for the next invocation.
+     *
+     * @param consumer The consumer of the events
+     *
+     * @return The number of drained events
+     */
+    public int drain(Consumer<IEvent> consumer) {
+        long head = this.head;
+        long end = this.tail.get();
+        int nrOfEvents = 0;
+
+        try {
+            while (head < end) {
+                int index = (int) head & this.mask;
+                if (this.sequences.get(index) != head + 1) {
+                    // the producer claimed the slot but did not publish its event yet
+                    break;
+                }
+
+                IEvent event = this.slots.get(index);
+                this.slots.lazySet(index, null);
+                // frees the slot for the producers of the next round
+                this.sequences.set(index, head + this.mask + 1);
+
+                head++;
+                nrOfEvents++;
+                consumer.accept(event);
+            }
+        } finally {
+            this.head = head;
+        }
+
+        return nrOfEvents;
+    }
+
+    /**
+     * Returns the number of events which are not drained yet.
+     * Only an estimate while events are appended concurrently
+     *
+     * @return The number of pending events
+     */
+    public int size() {
+        return (int) Math.max(0L, this.tail.get() - this.head);
+    }
+
+    /**
+     * Returns the number of slots
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+}
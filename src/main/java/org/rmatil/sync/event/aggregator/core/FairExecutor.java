@@ -0,0 +1,293 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of threads shared by multiple independent users, e.g. many event aggregators.
+ * <p>
+ * Each user submits its tasks to its own {@link Lane}. A lane runs at most
+ * its quota of tasks at the same time. After each task, a lane yields
+ * its thread and queues up behind the tasks of all other lanes.
+ * Hence, lanes are served round robin, and a user submitting many tasks
+ * at once does not delay the others for more than a single task per thread.
+ * <p>
+ * Idle threads terminate after a while and are started again on demand.
+ */
+public class FairExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FairExecutor.class);
+
+    /**
+     * The time after which idle threads terminate (in milliseconds)
+     */
+    protected static final long KEEP_ALIVE_TIME = 60000L;
+
+    /**
+     * The tasks of a single user of the pool.
+     * Tasks of the same lane start in the order of their submission.
+     */
+    public class Lane implements Executor {
+
+        protected final int quota;
+
+        protected final int capacity;
+
+        /**
+         * The tasks waiting for a thread. Guarded by this
+         */
+        protected final Queue<Runnable> tasks;
+
+        /**
+         * The number of threads serving this lane. Guarded by this
+         */
+        protected int nrOfRunningTasks;
+
+        /**
+         * Guarded by this
+         */
+        protected boolean isShutdown;
+
+        protected Lane(int quota, int capacity) {
+            this.quota = quota;
+            this.capacity = capacity;
+            this.tasks = new ArrayDeque<>();
+        }
+
+        /**
+         * Queues the given task. If the lane already holds the maximum number
+         * of waiting tasks or is shut down, the task is run on the calling thread.
+         *
+         * @param task The task to run
+         */
+        @Override
+        public void execute(Runnable task) {
+            if (! this.queue(task)) {
+                // throttle the caller instead of growing the queue without limit
+                task.run();
+            }
+        }
+
+        /**
+         * Queues the given task unless the lane already holds the maximum
+         * number of waiting tasks or is shut down
+         *
+         * @param task The task to run
+         *
+         * @return True, if the task is queued. False, if it is neither queued nor run
+         */
+        public boolean offer(Runnable task) {
+            return this.queue(task);
+        }
+
+        protected boolean queue(Runnable task) {
+            boolean isQueued = false;
+            boolean isStarting = false;
+
+            synchronized (this) {
+                if (! this.isShutdown && this.tasks.size() < this.capacity) {
+                    this.tasks.add(task);
+                    isQueued = true;
+
+                    if (this.nrOfRunningTasks < this.quota) {
+                        this.nrOfRunningTasks++;
+                        isStarting = true;
+                    }
+                }
+            }
+
+            if (! isQueued) {
+                return false;
+            }
+
+            if (isStarting && ! FairExecutor.this.submit(this::serve)) {
+                // the pool is shut down: the caller has to run the queued tasks itself
+                this.serve();
+            }
+
+            return true;
+        }
+
+        /**
+         * Runs the next task of this lane and queues up again behind the other lanes.
+         * Continues on the calling thread, if the pool is shut down.
+         */
+        protected void serve() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    task = this.tasks.poll();
+                    if (null == task) {
+                        this.nrOfRunningTasks--;
+                        this.notifyAll();
+                        return;
+                    }
+                }
+
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Task failed. Message: " + e.getMessage(), e);
+                }
+
+                synchronized (this) {
+                    if (this.tasks.isEmpty()) {
+                        this.nrOfRunningTasks--;
+                        this.notifyAll();
+                        return;
+                    }
+                }
+
+                if (FairExecutor.this.submit(this::serve)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns the maximum number of tasks of this lane running at the same time
+         *
+         * @return The quota of threads
+         */
+        public int getQuota() {
+            return this.quota;
+        }
+
+        /**
+         * Returns the maximum number of tasks waiting for a thread
+         *
+         * @return The capacity of the lane
+         */
+        public int getCapacity() {
+            return this.capacity;
+        }
+
+        /**
+         * Returns the number of tasks waiting for a thread
+         *
+         * @return The number of queued tasks
+         */
+        public synchronized int getQueueSize() {
+            return this.tasks.size();
+        }
+
+        /**
+         * Runs tasks submitted from now on on the calling thread.
+         * Already queued tasks are still completed.
+         */
+        public synchronized void shutdown() {
+            this.isShutdown = true;
+        }
+
+        /**
+         * Waits until the lane is shut down and all its queued and running tasks are completed
+         *
+         * @param timeout The maximum time to wait in milliseconds
+         *
+         * @return True, if the lane terminated. False, if the timeout elapsed before
+         *
+         * @throws InterruptedException If interrupted while waiting
+         */
+        public synchronized boolean awaitTermination(long timeout)
+                throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (! this.isShutdown || ! this.tasks.isEmpty() || this.nrOfRunningTasks > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                this.wait(remaining);
+            }
+
+            return true;
+        }
+    }
+
+    protected final ThreadPoolExecutor executorService;
+
+    /**
+     * @param nrOfThreads The maximum number of threads
+     * @param nameFormat  The format of the thread names, e.g. <code>hashing-%d</code>
+     *
+     * @throws IllegalArgumentException If the number of threads is not positive
+     */
+    public FairExecutor(int nrOfThreads, String nameFormat) {
+        if (nrOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+
+        // holds at most one entry per running lane and thread of its quota
+        this.executorService = new ThreadPoolExecutor(
+                nrOfThreads,
+                nrOfThreads,
+                KEEP_ALIVE_TIME,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build()
+        );
+        this.executorService.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates a new lane
+     *
+     * @param quota    The maximum number of tasks of the lane running at the same time
+     * @param capacity The maximum number of tasks waiting for a thread. Further tasks are run by the caller
+     *
+     * @return The lane
+     *
+     * @throws IllegalArgumentException If the quota or the capacity is not positive
+     */
+    public Lane newLane(int quota, int capacity) {
+        if (quota < 1 || capacity < 1) {
+            throw new IllegalArgumentException("The quota and the capacity must be at least 1");
+        }
+
+        return new Lane(quota, capacity);
+    }
+
+    /**
+     * Returns the maximum number of threads
+     *
+     * @return The number of threads
+     */
+    public int getNrOfThreads() {
+        return this.executorService.getMaximumPoolSize();
+    }
+
+    /**
+     * Stops all threads once the queued tasks are completed.
+     * Tasks submitted afterwards are run by the submitting thread.
+     */
+    public void shutdown() {
+        this.executorService.shutdown();
+    }
+
+    /**
+     * Returns whether the pool is shut down
+     *
+     * @return True, if shut down
+     */
+    public boolean isShutdown() {
+        return this.executorService.isShutdown();
+    }
+
+    protected boolean submit(Runnable runnable) {
+        try {
+            this.executorService.execute(runnable);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.rmatil.sync.event.aggregator.core;
+
+/**
+ * Defines when pending events are flushed to the event aggregator.
+ * Pending events are flushed as soon as any of the following applies:
+ * <ul>
+ * <li>No further event arrived within the quiet period</li>
+ * <li>The first pending event waits for the maximum latency</li>
+ * <li>The maximum number of pending events is reached</li>
+ * </ul>
+ * Therefore, a single change is propagated after the quiet period,
+ * while a bulk operation is propagated in as few batches as possible.
+ * <p>
+ * Instances are immutable.
+ *
+ * @see FlushScheduler
+ */
+public class FlushPolicy {
+
+    /**
+     * The default quiet period in milliseconds
+     */
+    public static final long DEFAULT_QUIET_PERIOD = 500L;
+
+    /**
+     * The default maximum latency in milliseconds
+     */
+    public static final long DEFAULT_MAX_LATENCY = 5000L;
+
+    /**
+     * The default maximum number of pending events
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10000;
+
+    protected final long quietPeriod;
+
+    protected final long maxLatency;
+
+    protected final int maxBatchSize;
+
+    public FlushPolicy() {
+        this(DEFAULT_QUIET_PERIOD, DEFAULT_MAX_LATENCY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param quietPeriod  The time without any further event after which pending events are flushed (in milliseconds)
+     * @param maxLatency   The maximum time the first pending event waits until it is flushed (in milliseconds)
+     * @param maxBatchSize The number of pending events on which they are flushed immediately
+     *
+     * @throws IllegalArgumentException If any of the values is not positive or the quiet period exceeds the maximum latency
+     */
+    public FlushPolicy(long quietPeriod, long maxLatency, int maxBatchSize) {
+        if (quietPeriod < 1 || maxLatency < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("The quiet period, maximum latency and maximum batch size must be positive");
+        }
+
+        if (quietPeriod > maxLatency) {
+            throw new IllegalArgumentException("The quiet period must not exceed the maximum latency");
+        }
+
+        this.quietPeriod = quietPeriod;
+        this.maxLatency = maxLatency;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the time without any further event after which pending events are flushed
+     *
+     * @return The quiet period in milliseconds
+     */
+    public long getQuietPeriod() {
+        return this.quietPeriod;
+    }
+
+    /**
+     * Returns the maximum time the first pending event waits until it is flushed
+     *
+     * @return The maximum latency in milliseconds
+     */
+    public long getMaxLatency() {
+        return this.maxLatency;
+    }
+
+    /**
+     * Returns the number of pending events on which they are flushed immediately
+     *
+     * @return The maximum batch size
+     */
+    public int getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+}
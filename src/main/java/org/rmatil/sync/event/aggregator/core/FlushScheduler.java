@@ -0,0 +1,207 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Schedules the flush of pending events according to a {@link FlushPolicy}.
+ * <p>
+ * A check is only scheduled once an event arrives. When it runs, it either
+ * flushes the pending events or reschedules itself to the next deadline
+ * of the quiet period or the maximum latency. Hence, no task is scheduled
+ * at all while there are no pending events.
+ * <p>
+ * Notifying about an event does not take a lock, unless it is the first pending
+ * event or the one reaching the maximum batch size, i.e. unless a check has to be scheduled.
+ */
+public class FlushScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlushScheduler.class);
+
+    protected final ScheduledExecutorService executorService;
+
+    protected final FlushPolicy flushPolicy;
+
+    /**
+     * Flushes the pending events
+     */
+    protected final Runnable flush;
+
+    /**
+     * Whether there are events which are not flushed yet. Only set under the lock of this,
+     * along with the time of the first event. Only the thread setting it schedules a check
+     */
+    protected final AtomicBoolean hasPendingEvents;
+
+    /**
+     * Whether the maximum batch size has been reached.
+     * Only the thread setting it schedules an immediate check
+     */
+    protected final AtomicBoolean isBatchFull;
+
+    /**
+     * The time of the first pending event (in nanoseconds).
+     * Guarded by this, as is setting the pending events flag
+     */
+    protected long firstEventTime;
+
+    /**
+     * The time of the last pending event (in nanoseconds)
+     */
+    protected volatile long lastEventTime;
+
+    /**
+     * The next check. Null if none is scheduled. Guarded by this
+     */
+    protected ScheduledFuture<?> scheduledCheck;
+
+    /**
+     * Whether no further check is scheduled or run. Guarded by this
+     */
+    protected boolean isCancelled;
+
+    /**
+     * @param executorService The executor on which the checks and the flush are run
+     * @param flushPolicy     The policy defining when to flush
+     * @param flush           Flushes the pending events
+     */
+    public FlushScheduler(ScheduledExecutorService executorService, FlushPolicy flushPolicy, Runnable flush) {
+        this.executorService = executorService;
+        this.flushPolicy = flushPolicy;
+        this.flush = flush;
+        this.hasPendingEvents = new AtomicBoolean(false);
+        this.isBatchFull = new AtomicBoolean(false);
+    }
+
+    /**
+     * Notifies the scheduler about the given new pending event
+     *
+     * @param event             The new event
+     * @param nrOfPendingEvents The number of pending events including the new one
+     */
+    public void onEvent(IEvent event, int nrOfPendingEvents) {
+        this.onEvent(nrOfPendingEvents);
+    }
+
+    /**
+     * Notifies the scheduler about a new pending event
+     *
+     * @param nrOfPendingEvents The number of pending events including the new one
+     */
+    public void onEvent(int nrOfPendingEvents) {
+        long now = System.nanoTime();
+        // a scheduled check takes the last event into account once it runs
+        this.lastEventTime = now;
+
+        if (! this.hasPendingEvents.get()) {
+            synchronized (this) {
+                // a check must not see the flag along with the time of the previous batch
+                if (! this.hasPendingEvents.get()) {
+                    this.firstEventTime = now;
+                    this.hasPendingEvents.set(true);
+
+                    if (null == this.scheduledCheck) {
+                        this.schedule(TimeUnit.MILLISECONDS.toNanos(this.flushPolicy.getQuietPeriod()));
+                    }
+                }
+            }
+        }
+
+        if (nrOfPendingEvents >= this.flushPolicy.getMaxBatchSize() && ! this.isBatchFull.get() && this.isBatchFull.compareAndSet(false, true)) {
+            synchronized (this) {
+                if (null != this.scheduledCheck) {
+                    this.scheduledCheck.cancel(false);
+                }
+
+                this.schedule(0L);
+            }
+        }
+    }
+
+    /**
+     * Returns the policy defining when to flush
+     *
+     * @return The flush policy
+     */
+    public FlushPolicy getFlushPolicy() {
+        return this.flushPolicy;
+    }
+
+    /**
+     * Returns whether a check of the pending events is scheduled
+     *
+     * @return True, if a check is scheduled
+     */
+    public synchronized boolean isScheduled() {
+        return null != this.scheduledCheck;
+    }
+
+    /**
+     * Cancels the scheduled check. No check is scheduled or run afterwards, hence
+     * the pending events are not flushed anymore. A flush already started is completed.
+     */
+    public synchronized void cancel() {
+        this.isCancelled = true;
+
+        if (null != this.scheduledCheck) {
+            this.scheduledCheck.cancel(false);
+            this.scheduledCheck = null;
+        }
+    }
+
+    /**
+     * Returns whether the scheduler is cancelled
+     *
+     * @return True, if no further check is run
+     */
+    public synchronized boolean isCancelled() {
+        return this.isCancelled;
+    }
+
+    protected void check() {
+        synchronized (this) {
+            this.scheduledCheck = null;
+
+            if (this.isCancelled || ! this.hasPendingEvents.get()) {
+                return;
+            }
+
+            if (! this.isBatchFull.get()) {
+                long now = System.nanoTime();
+                long quietDeadline = this.lastEventTime + TimeUnit.MILLISECONDS.toNanos(this.flushPolicy.getQuietPeriod());
+                long latencyDeadline = this.firstEventTime + TimeUnit.MILLISECONDS.toNanos(this.flushPolicy.getMaxLatency());
+                long deadline = Math.min(quietDeadline, latencyDeadline);
+
+                if (now - deadline < 0) {
+                    this.schedule(deadline - now);
+                    return;
+                }
+            }
+
+            // events arriving from now on are flushed by this or the next flush
+            this.isBatchFull.set(false);
+            this.hasPendingEvents.set(false);
+        }
+
+        this.flush.run();
+    }
+
+    protected void schedule(long delayNanos) {
+        if (this.isCancelled) {
+            return;
+        }
+
+        try {
+            this.scheduledCheck = this.executorService.schedule(this::check, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.trace("Not scheduling a flush since the executor is shut down");
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.rmatil.sync.event.aggregator.api.IEventListener;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers batches of aggregated events to a single listener on its own thread,
+ * so that a slow listener neither delays other listeners nor the aggregation
+ * of further events. Batches are delivered in the order they were dispatched.
+ * <p>
+ * At most a fixed number of batches are queued. If the queue is full,
+ * a new batch is handled according to the {@link OverflowPolicy}.
+ * <p>
+ * Batches are either delivered on a thread owned by the dispatcher, which terminates
+ * while idle, or on a shared executor. In the latter case, the dispatcher submits
+ * one delivery per batch so that other listeners sharing the executor are served in between.
+ */
+public class ListenerDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListenerDispatcher.class);
+
+    /**
+     * The default maximum number of queued batches
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+
+    /**
+     * The default policy applied once the queue is full
+     */
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+
+    /**
+     * The time after which an idle delivering thread terminates (in milliseconds)
+     */
+    protected static final long KEEP_ALIVE_TIME = 60000L;
+
+    /**
+     * A batch waiting to be delivered
+     */
+    protected static class PendingBatch {
+
+        protected List<IEvent> events;
+
+        /**
+         * The time the batch was dispatched in milliseconds
+         */
+        protected final long timestamp;
+
+        protected PendingBatch(List<IEvent> events, long timestamp) {
+            this.events = events;
+            this.timestamp = timestamp;
+        }
+    }
+
+    protected final IEventListener listener;
+
+    protected final OverflowPolicy overflowPolicy;
+
+    protected final int queueSize;
+
+    /**
+     * The batches waiting to be delivered. Guarded by this
+     */
+    protected final Deque<PendingBatch> pendingBatches;
+
+    /**
+     * The number of events in all pending batches. Guarded by this
+     */
+    protected int nrOfPendingEvents;
+
+    /**
+     * The batch currently being delivered or null. Guarded by this
+     */
+    protected PendingBatch deliveringBatch;
+
+    /**
+     * Whether a delivery of pending batches is submitted to the executor. Guarded by this
+     */
+    protected boolean isDelivering;
+
+    /**
+     * Whether further batches are dropped. Guarded by this
+     */
+    protected boolean isShutdown;
+
+    /**
+     * The executor delivering the batches
+     */
+    protected final Executor executor;
+
+    /**
+     * The executor owned by this dispatcher. Null if the executor is shared
+     */
+    protected final ThreadPoolExecutor executorService;
+
+    protected final LongAdder deliveredBatches;
+
+    protected final LongAdder coalescedBatches;
+
+    protected final LongAdder droppedBatches;
+
+    protected final LongAdder droppedEvents;
+
+    /**
+     * @param listener The listener to deliver events to
+     */
+    public ListenerDispatcher(IEventListener listener) {
+        this(listener, DEFAULT_OVERFLOW_POLICY, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param listener       The listener to deliver events to
+     * @param overflowPolicy The policy applied once the queue is full
+     * @param queueSize      The maximum number of queued batches
+     *
+     * @throws IllegalArgumentException If the queue size is not positive
+     */
+    public ListenerDispatcher(IEventListener listener, OverflowPolicy overflowPolicy, int queueSize) {
+        this(listener, overflowPolicy, queueSize, null);
+    }
+
+    /**
+     * @param listener       The listener to deliver events to
+     * @param overflowPolicy The policy applied once the queue is full
+     * @param queueSize      The maximum number of queued batches
+     * @param executor       The executor delivering the batches, e.g. a lane of a shared pool
+     *                       (see {@link AggregatorRuntime#getDispatchPool()}). If null, the dispatcher uses its own thread
+     *
+     * @throws IllegalArgumentException If the queue size is not positive
+     */
+    public ListenerDispatcher(IEventListener listener, OverflowPolicy overflowPolicy, int queueSize, Executor executor) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("The queue size must be at least 1");
+        }
+
+        this.listener = listener;
+        this.overflowPolicy = overflowPolicy;
+        this.queueSize = queueSize;
+        this.pendingBatches = new ArrayDeque<>(queueSize);
+
+        if (null == executor) {
+            this.executorService = new ThreadPoolExecutor(
+                    1,
+                    1,
+                    KEEP_ALIVE_TIME,
+                    TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("event-aggregator-listener-%d").build()
+            );
+            this.executorService.allowCoreThreadTimeOut(true);
+            this.executor = this.executorService;
+        } else {
+            this.executorService = null;
+            this.executor = executor;
+        }
+
+        this.deliveredBatches = new LongAdder();
+        this.coalescedBatches = new LongAdder();
+        this.droppedBatches = new LongAdder();
+        this.droppedEvents = new LongAdder();
+    }
+
+    /**
+     * Queues the given batch of events for the delivery to the listener.
+     * Depending on the overflow policy, this blocks while the queue is full.
+     *
+     * @param events The events to deliver
+     */
+    public void dispatch(List<IEvent> events) {
+        synchronized (this) {
+            if (this.isShutdown) {
+                this.drop(events);
+                return;
+            }
+
+            while (this.pendingBatches.size() >= this.queueSize) {
+                switch (this.overflowPolicy) {
+                    case BLOCK:
+                        try {
+                            this.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            logger.error("Interrupted while waiting for listener " + this.listener.getClass().getName() + ". Dropping " + events.size() + " events");
+                            this.drop(events);
+                            return;
+                        }
+
+                        if (this.isShutdown) {
+                            this.drop(events);
+                            return;
+                        }
+                        break;
+                    case COALESCE:
+                        // the listener may still hold a reference to a batch already taken from the queue,
+                        // but not to the pending ones
+                        PendingBatch lastBatch = this.pendingBatches.getLast();
+                        List<IEvent> coalescedEvents = new ArrayList<>(lastBatch.events.size() + events.size());
+                        coalescedEvents.addAll(lastBatch.events);
+                        coalescedEvents.addAll(events);
+                        lastBatch.events = coalescedEvents;
+                        this.nrOfPendingEvents += events.size();
+                        this.coalescedBatches.increment();
+                        return;
+                    case DROP:
+                        this.drop(events);
+                        return;
+                }
+            }
+
+            this.pendingBatches.addLast(new PendingBatch(events, System.currentTimeMillis()));
+            this.nrOfPendingEvents += events.size();
+
+            if (! this.isDelivering) {
+                try {
+                    // a single delivery is submitted at a time, so that batches are delivered in order
+                    this.isDelivering = true;
+                    this.executor.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    this.isDelivering = false;
+                    logger.error("Not delivering events to listener " + this.listener.getClass().getName() + " since the dispatcher is shut down");
+                    this.pendingBatches.removeLast();
+                    this.nrOfPendingEvents -= events.size();
+                    this.drop(events);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers the next pending batch and submits the delivery
+     * of the following one, so that a shared executor is not
+     * occupied by this listener until its queue is empty
+     */
+    protected void deliver() {
+        PendingBatch batch;
+        synchronized (this) {
+            batch = this.pendingBatches.pollFirst();
+            this.deliveringBatch = batch;
+
+            if (null == batch) {
+                this.isDelivering = false;
+                // wake up threads awaiting the termination
+                this.notifyAll();
+                return;
+            }
+
+            this.nrOfPendingEvents -= batch.events.size();
+            // wake up blocked dispatchers
+            this.notifyAll();
+        }
+
+        try {
+            this.listener.onChange(batch.events);
+        } catch (Exception e) {
+            logger.error("Listener " + this.listener.getClass().getName() + " failed to handle " + batch.events.size() + " events. Message: " + e.getMessage(), e);
+        }
+
+        this.deliveredBatches.increment();
+
+        try {
+            this.executor.execute(this::deliver);
+        } catch (RejectedExecutionException e) {
+            // the executor is shut down meanwhile: deliver the remaining batches on this thread
+            this.deliver();
+        }
+    }
+
+    protected void drop(List<IEvent> events) {
+        this.droppedBatches.increment();
+        this.droppedEvents.add(events.size());
+    }
+
+    /**
+     * Returns the listener to which events are delivered
+     *
+     * @return The listener
+     */
+    public IEventListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * Returns the policy applied once the queue is full
+     *
+     * @return The overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Returns the maximum number of queued batches
+     *
+     * @return The queue size
+     */
+    public int getQueueSize() {
+        return this.queueSize;
+    }
+
+    /**
+     * Returns the number of batches waiting to be delivered,
+     * excluding the one currently being delivered
+     *
+     * @return The number of pending batches
+     */
+    public synchronized int getNrOfPendingBatches() {
+        return this.pendingBatches.size();
+    }
+
+    /**
+     * Returns the number of events waiting to be delivered,
+     * excluding the ones currently being delivered
+     *
+     * @return The number of pending events
+     */
+    public synchronized int getNrOfPendingEvents() {
+        return this.nrOfPendingEvents;
+    }
+
+    /**
+     * Returns for how long the listener lags behind, i.e. the time since the oldest
+     * batch which is not completely handled by the listener yet was dispatched
+     *
+     * @return The lag in milliseconds or 0, if the listener handled all batches
+     */
+    public synchronized long getLag() {
+        PendingBatch oldestBatch = (null != this.deliveringBatch) ? this.deliveringBatch : this.pendingBatches.peekFirst();
+        if (null == oldestBatch) {
+            return 0L;
+        }
+
+        return Math.max(0L, System.currentTimeMillis() - oldestBatch.timestamp);
+    }
+
+    /**
+     * Returns the number of batches handled by the listener
+     *
+     * @return The number of delivered batches
+     */
+    public long getNrOfDeliveredBatches() {
+        return this.deliveredBatches.sum();
+    }
+
+    /**
+     * Returns the number of batches appended to a pending one
+     * since the queue was full (see {@link OverflowPolicy#COALESCE})
+     *
+     * @return The number of coalesced batches
+     */
+    public long getNrOfCoalescedBatches() {
+        return this.coalescedBatches.sum();
+    }
+
+    /**
+     * Returns the number of batches discarded since the queue was full
+     * (see {@link OverflowPolicy#DROP}) or the dispatcher was shut down
+     *
+     * @return The number of dropped batches
+     */
+    public long getNrOfDroppedBatches() {
+        return this.droppedBatches.sum();
+    }
+
+    /**
+     * Returns the number of events in all dropped batches
+     *
+     * @return The number of dropped events
+     */
+    public long getNrOfDroppedEvents() {
+        return this.droppedEvents.sum();
+    }
+
+    /**
+     * Stops the delivering thread once all pending batches are delivered.
+     * Batches dispatched afterwards are dropped.
+     * A shared executor is not shut down.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            this.isShutdown = true;
+            // wake up blocked dispatchers, which drop their batches now
+            this.notifyAll();
+        }
+
+        if (null != this.executorService) {
+            this.executorService.shutdown();
+        }
+    }
+
+    /**
+     * Waits until all pending batches are delivered after a shutdown
+     * and the thread owned by this dispatcher terminated
+     *
+     * @param timeout The maximum time to wait in milliseconds
+     *
+     * @return True, if all batches are delivered, false if the timeout elapsed before
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this) {
+            while (this.isDelivering) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                this.wait(remaining);
+            }
+
+            if (! this.isShutdown) {
+                return false;
+            }
+        }
+
+        if (null != this.executorService) {
+            // the delivering thread exits right after its last delivery
+            return this.executorService.awaitTermination(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        return true;
+    }
+}
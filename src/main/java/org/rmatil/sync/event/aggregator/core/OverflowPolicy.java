@@ -0,0 +1,27 @@
+package org.rmatil.sync.event.aggregator.core;
+
+/**
+ * Defines how a {@link ListenerDispatcher} handles a new batch
+ * of events once its queue of pending batches is full
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Blocks the aggregation until the listener took a batch from the queue.
+     * Meanwhile, new filesystem events are collapsed in the pending events
+     * of the event aggregator
+     */
+    BLOCK,
+
+    /**
+     * Appends the events of the new batch to the last pending one,
+     * so that the listener receives them in a single invocation.
+     * No events are lost, but the number of pending events is not bounded
+     */
+    COALESCE,
+
+    /**
+     * Discards the new batch and counts it as dropped
+     */
+    DROP
+}
@@ -1,137 +1,925 @@
 package org.rmatil.sync.event.aggregator.core;
 
 import name.mitterdorfer.perlock.PathChangeListener;
-import org.rmatil.sync.commons.hashing.Hash;
 import org.rmatil.sync.event.aggregator.api.IEventListener;
-import org.rmatil.sync.event.aggregator.config.Config;
 import org.rmatil.sync.event.aggregator.core.events.*;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentChunker;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentHashCache;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingMode;
+import org.rmatil.sync.event.aggregator.core.hashing.IHashProvider;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.rmatil.sync.event.aggregator.core.hashing.MerkleTree;
+import org.rmatil.sync.event.aggregator.core.hashing.WriteStabilityTracker;
+import org.rmatil.sync.event.aggregator.core.index.FileKeyTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.SynchronousQueue;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Listens for path element changes.
  * Incoming events are being added and hold until
- * one fetches and clears them.
+ * one fetches and clears them, either by invoking {@link PathEventListener#run()}
+ * directly or once the {@link FlushScheduler} decides to. Multiple events for the
+ * same path are collapsed once they are fetched (see {@link EventBag}).
+ * <p>
+ * Notifications are appended to an {@link EventRingBuffer} without locking, so that
+ * multiple path watchers notifying concurrently do not contend with each other
+ * or with flushing. Only if the ring buffer is full, the notifying thread moves
+ * all events of the ring buffer to the pending ones itself.
+ * <p>
+ * Hashes of created or modified path elements are not computed
+ * when being notified but only once they are requested (see {@link LazyHash}).
+ * Optionally, events of files which are still being written are kept pending
+ * until the files are stable (see {@link WriteStabilityTracker}).
+ * Renames of path elements whose identity is tracked are propagated as moves
+ * without hashing them at all (see {@link FileKeyTracker}).
+ * <p>
+ * The number of pending events can be limited (see {@link PathEventListener#setMaxPendingEvents(int)}).
+ * Once exceeded, the pending events are collapsed into the directories containing them.
+ * Further events within these dirty subtrees are discarded and the changes within them
+ * are computed on flushing by the {@link SubtreeRescanner}.
  */
 public class PathEventListener implements PathChangeListener, Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(PathEventListener.class);
 
     /**
-     * The list of events
+     * The maximum number of dirty subtrees. If exceeded,
+     * the subtrees are replaced by their parent directories
      */
-    protected final List<IEvent> eventBag;
+    public static final int MAX_DIRTY_SUBTREES = 1024;
+
+    /**
+     * The default number of events the ring buffer holds
+     */
+    public static final int DEFAULT_RING_BUFFER_CAPACITY = 65536;
+
+    /**
+     * The notifications which are not moved to the event bag yet
+     */
+    protected final EventRingBuffer ringBuffer;
+
+    /**
+     * The number of notifications which did not fit into the ring buffer
+     */
+    protected final LongAdder overflows;
+
+    /**
+     * The number of events in the event bag and the dirty subtrees as of the last
+     * time the ring buffer was drained. Read without holding the lock
+     */
+    protected volatile int nrOfDrainedEvents;
+
+    /**
+     * Guards draining the ring buffer, the event bag and the dirty subtrees.
+     * Only held to move events from the ring buffer or to swap the event bag,
+     * so that the path watchers notifying us are not blocked by flushing
+     */
+    protected final Object lock;
+
+    /**
+     * The pending events, collapsed per path. Guarded by the lock
+     */
+    protected EventBag eventBag;
+
+    /**
+     * The cleared event bag of the previous flush, which replaces
+     * the event bag on the next flush. Null while a flush is using it. Guarded by the lock
+     */
+    protected EventBag spareEventBag;
+
+    /**
+     * The directories in which events were discarded
+     * since the event bag was full. Guarded by the lock
+     */
+    protected Set<Path> dirtySubtrees;
+
+    /**
+     * The maximum number of pending events
+     */
+    protected volatile int maxPendingEvents;
+
+    /**
+     * Computes the changes within dirty subtrees. May be null,
+     * if the number of pending events is not limited
+     */
+    protected volatile SubtreeRescanner subtreeRescanner;
+
+    /**
+     * The number of events discarded since they are within a dirty subtree
+     */
+    protected final LongAdder collapsedEvents;
 
     /**
      * List of event listeners which are notified on changes
      */
     protected List<IEventListener> eventListeners;
 
+    /**
+     * The cache of hashes of unchanged files. May be null
+     */
+    protected volatile ContentHashCache contentHashCache;
+
+    /**
+     * Whether a fast digest is computed for created or modified path elements
+     */
+    protected volatile HashingMode hashingMode;
+
+    /**
+     * The hashes of directories derived from their children. May be null
+     */
+    protected volatile MerkleTree merkleTree;
+
+    /**
+     * Defers the events of files which are still being written. May be null
+     */
+    protected volatile WriteStabilityTracker writeStabilityTracker;
+
+    /**
+     * Splits created or modified files into content-defined chunks. May be null
+     */
+    protected volatile ContentChunker contentChunker;
+
+    /**
+     * Detects renames by the identity of the renamed path element. May be null
+     */
+    protected volatile FileKeyTracker fileKeyTracker;
+
+    /**
+     * Schedules the flush of pending events. May be null,
+     * if events are only flushed by invoking {@link PathEventListener#run()}
+     */
+    protected volatile FlushScheduler flushScheduler;
+
     public PathEventListener() {
-        this.eventBag = new ArrayList<>();
+        this(DEFAULT_RING_BUFFER_CAPACITY);
+    }
+
+    /**
+     * @param ringBufferCapacity The number of notifications held until they are moved to the pending events
+     *
+     * @throws IllegalArgumentException If the capacity is not positive
+     */
+    public PathEventListener(int ringBufferCapacity) {
+        this.ringBuffer = new EventRingBuffer(ringBufferCapacity);
+        this.overflows = new LongAdder();
+        this.lock = new Object();
+        this.eventBag = new EventBag();
+        this.spareEventBag = new EventBag();
+        this.dirtySubtrees = new HashSet<>();
+        this.maxPendingEvents = Integer.MAX_VALUE;
+        this.collapsedEvents = new LongAdder();
         this.eventListeners = new ArrayList<>();
+        this.hashingMode = HashingMode.FULL;
     }
 
     public void onPathCreated(Path path) {
-        logger.trace("Got notified about the creation of '" + path + "'");
+        if (logger.isTraceEnabled()) {
+            logger.trace("Got notified about the creation of '" + path + "'");
+        }
 
-		// only synchronize access to the event bag (and not he whole object by using
-		// synchronized on the method) to ensure, that the path listener which notifies us here
-		// is able to access this object
-        synchronized (this.eventBag) {
+        // the contents are only hashed once the hash is requested,
+        // i.e. not at all, if this event gets filtered later on
+        LazyHash hash = this.newLazyHash(path);
+        long timestamp = System.currentTimeMillis();
 
-            String hash = null;
-            try {
-                if (path.toFile().isFile() || path.toFile().isDirectory()) {
-                    hash = Hash.hash(Config.getDefaultConfiguration().getHashingAlgorithm(), path.toFile());
-                }
-            } catch (IOException e) {
-                logger.error("Could not hash on path creation: " + e.getMessage());
+        this.addEvent(new CreateEvent(path, path.toFile().getName(), timestamp, hash));
+    }
+
+    public void onPathModified(Path path) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("Got notified about the modifying of '" + path + "'");
+        }
+
+        // the contents are only hashed once the hash is requested,
+        // i.e. not at all, if this event gets filtered later on
+        LazyHash hash = this.newLazyHash(path);
+        long timestamp = System.currentTimeMillis();
+
+        this.addEvent(new ModifyEvent(path, path.toFile().getName(), timestamp, hash));
+    }
+
+    public void onPathDeleted(Path path) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("Got notified about the deletion of '" + path + "'");
+        }
+
+        MerkleTree merkleTree = this.merkleTree;
+        if (null != merkleTree) {
+            merkleTree.invalidate(path);
+        }
+
+        this.addEvent(new DeleteEvent(path, path.toFile().getName(), null, System.currentTimeMillis()));
+    }
+
+    /**
+     * Returns the handle to the hash of the given changed path element,
+     * which is only computed once it is requested
+     *
+     * @param path The changed path element
+     *
+     * @return The handle to the hash
+     */
+    protected LazyHash newLazyHash(Path path) {
+        return new LazyHash(path, this.getHashProvider(path), this.hashingMode, this.contentChunker);
+    }
+
+    /**
+     * Returns the provider of the hash of the given changed path element.
+     * Invalidates the hashes of the element and its parents in the merkle tree, if any
+     *
+     * @param path The changed path element
+     *
+     * @return The provider or null, if the element should be hashed directly
+     */
+    protected IHashProvider getHashProvider(Path path) {
+        IHashProvider hashProvider = this.contentHashCache;
+
+        MerkleTree merkleTree = this.merkleTree;
+        if (null != merkleTree) {
+            merkleTree.invalidate(path);
+            hashProvider = merkleTree;
+        }
+
+        WriteStabilityTracker writeStabilityTracker = this.writeStabilityTracker;
+        if (null != writeStabilityTracker) {
+            // hashes of files changing while being hashed are computed again
+            hashProvider = writeStabilityTracker.wrap(hashProvider);
+        }
+
+        return hashProvider;
+    }
+
+    /**
+     * Adds the given event to the pending ones and
+     * notifies the flush scheduler, if any
+     *
+     * @param event The event to add
+     */
+    protected void addEvent(IEvent event) {
+        if (! this.ringBuffer.offer(event)) {
+            this.overflows.increment();
+
+            // make room by moving the events to the event bag ourselves
+            synchronized (this.lock) {
+                this.drain();
+                this.addToEventBag(event);
+                this.nrOfDrainedEvents = this.eventBag.size() + this.dirtySubtrees.size();
             }
+        }
 
-            this.eventBag.add(new CreateEvent(path, path.toFile().getName(), hash, System.currentTimeMillis()));
+        FlushScheduler flushScheduler = this.flushScheduler;
+        if (null != flushScheduler) {
+            flushScheduler.onEvent(event, this.nrOfDrainedEvents + this.ringBuffer.size());
         }
     }
 
-    public void onPathModified(Path path) {
-        logger.trace("Got notified about the modifying of '" + path + "'");
+    /**
+     * Moves all events of the ring buffer to the event bag.
+     * Guarded by the lock
+     */
+    protected void drain() {
+        if (this.ringBuffer.drain(this::addToEventBag) > 0) {
+            this.nrOfDrainedEvents = this.eventBag.size() + this.dirtySubtrees.size();
+        }
+    }
 
-		// only synchronize access to the event bag (and not he whole object by using
-		// synchronized on the method) to ensure, that the path listener which notifies us here
-		// is able to access this object
-        synchronized (this.eventBag) {
+    /**
+     * Adds the given event to the event bag, unless it is within a dirty subtree.
+     * Collapses the event bag once the maximum number of pending events is exceeded.
+     * Guarded by the lock
+     *
+     * @param event The event to add
+     */
+    protected void addToEventBag(IEvent event) {
+        if (! this.dirtySubtrees.isEmpty() && this.isWithinDirtySubtree(event.getPath())) {
+            // the changes are computed on flushing the subtree
+            this.collapsedEvents.increment();
+            return;
+        }
 
-            String hash = null;
-            try {
-                if (path.toFile().isFile() || path.toFile().isDirectory()) {
-                    hash = Hash.hash(Config.getDefaultConfiguration().getHashingAlgorithm(), path.toFile());
-                }
-            } catch (IOException e) {
-                logger.error("Could not hash on path modification: " + e.getMessage());
+        this.eventBag.add(event);
+
+        SubtreeRescanner subtreeRescanner = this.subtreeRescanner;
+        if (this.eventBag.size() > this.maxPendingEvents && null != subtreeRescanner) {
+            this.collapse(subtreeRescanner.getRootPath());
+        }
+    }
+
+    /**
+     * Replaces all pending events by the directories containing them.
+     * Guarded by the lock
+     *
+     * @param rootPath The root of the watched folder
+     */
+    protected void collapse(Path rootPath) {
+        int nrOfEvents = this.eventBag.size();
+
+        for (IEvent event : this.eventBag.getEvents()) {
+            // the parent has to be rescanned to find out whether the element still exists
+            Path parent = event.getPath().getParent();
+            this.dirtySubtrees.add((null == parent || ! parent.startsWith(rootPath)) ? rootPath : parent);
+        }
+
+        this.collapsedEvents.add(nrOfEvents);
+        this.eventBag.clear();
+
+        // rescanning a subtree covers all nested ones
+        Set<Path> subtrees = PathEventListener.removeNested(this.dirtySubtrees);
+        while (subtrees.size() > MAX_DIRTY_SUBTREES) {
+            Set<Path> parents = new HashSet<>();
+            for (Path subtree : subtrees) {
+                Path parent = subtree.getParent();
+                parents.add((subtree.equals(rootPath) || null == parent) ? rootPath : parent);
             }
 
-            this.eventBag.add(new ModifyEvent(path, path.toFile().getName(), hash, System.currentTimeMillis()));
+            subtrees = PathEventListener.removeNested(parents);
         }
+        this.dirtySubtrees = subtrees;
+
+        logger.info("More than " + this.maxPendingEvents + " events are pending. Collapsed " + nrOfEvents + " events into " + subtrees.size() + " dirty subtrees");
     }
 
-    public void onPathDeleted(Path path) {
-        logger.trace("Got notified about the deletion of '" + path + "'");
+    /**
+     * Returns whether the given path is any dirty subtree or within one.
+     * Guarded by the lock
+     *
+     * @param path The path to check
+     *
+     * @return True, if the path is within a dirty subtree
+     */
+    protected boolean isWithinDirtySubtree(Path path) {
+        for (Path parent = path; null != parent; parent = parent.getParent()) {
+            if (this.dirtySubtrees.contains(parent)) {
+                return true;
+            }
+        }
 
-        synchronized (this.eventBag) {
-            this.eventBag.add(new DeleteEvent(path, path.toFile().getName(), null, System.currentTimeMillis()));
+        return false;
+    }
+
+    /**
+     * Returns the given paths without those nested in any other one
+     *
+     * @param paths The paths
+     *
+     * @return The topmost paths
+     */
+    protected static Set<Path> removeNested(Set<Path> paths) {
+        Set<Path> topmostPaths = new HashSet<>();
+        for (Path path : paths) {
+            boolean isNested = false;
+            for (Path parent = path.getParent(); null != parent && ! isNested; parent = parent.getParent()) {
+                isNested = paths.contains(parent);
+            }
+
+            if (! isNested) {
+                topmostPaths.add(path);
+            }
         }
+
+        return topmostPaths;
     }
 
     @Override
     public void run() {
         try {
-            List<IEvent> aggregatedEvents = new ArrayList<>();
+            EventBag eventBag;
+            Set<Path> dirtySubtrees;
 
-			// avoid concurrent modification exceptions while accessing the event bag
-            synchronized (this.eventBag) {
+            // only swap the event bag while holding the lock, so that new events
+            // are not blocked while the pending ones are collected
+            synchronized (this.lock) {
+                this.drain();
 
-                if (this.eventBag.size() < 1) {
+                if (this.eventBag.size() < 1 && this.dirtySubtrees.isEmpty()) {
                     return;
                 }
 
-                for (IEvent event : this.eventBag) {
-                    switch (event.getEventName()) {
-                        case CreateEvent.EVENT_NAME:
-                            aggregatedEvents.add(new CreateEvent((CreateEvent) event));
-                            break;
-                        case ModifyEvent.EVENT_NAME:
-                            aggregatedEvents.add(new ModifyEvent((ModifyEvent) event));
-                            break;
-                        case DeleteEvent.EVENT_NAME:
-                            aggregatedEvents.add(new DeleteEvent((DeleteEvent) event));
-                            break;
-                        case MoveEvent.EVENT_NAME:
-                            aggregatedEvents.add(new MoveEvent((MoveEvent) event));
+                eventBag = this.eventBag;
+                // a concurrent flush may still be using the spare event bag
+                this.eventBag = (null == this.spareEventBag) ? new EventBag() : this.spareEventBag;
+                this.spareEventBag = null;
+
+                dirtySubtrees = this.dirtySubtrees;
+                this.dirtySubtrees = new HashSet<>();
+                this.nrOfDrainedEvents = 0;
+            }
+
+            // events are not modified once created, so they are passed on as they are
+            List<IEvent> pendingEvents = eventBag.getEvents();
+
+            eventBag.clear();
+            synchronized (this.lock) {
+                this.spareEventBag = eventBag;
+            }
+
+            this.propagate(pendingEvents);
+            this.rescan(dirtySubtrees);
+
+        } catch (Exception e) {
+            logger.error("Thread error. Message: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Propagates the pending events of the given paths only, leaving the events
+     * of all other paths pending. Used to emit each path as soon as it settled,
+     * instead of all pending events at once (see {@link StreamingFlushScheduler}).
+     * <p>
+     * Since a move is notified as deletion and creation of different paths,
+     * all pending deletions and creations happening within the given correlation window
+     * around those of the given paths are propagated as well.
+     * Dirty subtrees are rescanned on each invocation.
+     *
+     * @param paths                 The settled paths
+     * @param moveCorrelationWindow The time in milliseconds around a deletion or creation in which a corresponding one is propagated as well
+     */
+    public void flush(Collection<Path> paths, long moveCorrelationWindow) {
+        try {
+            List<IEvent> pendingEvents = new ArrayList<>();
+            Set<Path> dirtySubtrees;
+
+            synchronized (this.lock) {
+                this.drain();
+
+                for (Path path : paths) {
+                    pendingEvents.addAll(this.eventBag.remove(path));
+                }
+
+                long from = Long.MAX_VALUE;
+                long to = Long.MIN_VALUE;
+                for (IEvent event : pendingEvents) {
+                    if (event instanceof DeleteEvent || event instanceof CreateEvent) {
+                        from = Math.min(from, event.getTimestamp() - moveCorrelationWindow);
+                        to = Math.max(to, event.getTimestamp() + moveCorrelationWindow);
                     }
                 }
 
-                this.eventBag.clear();
-            }
+                if (from <= to) {
+                    pendingEvents.addAll(this.eventBag.removeMoveCandidates(from, to));
+                }
 
-            Collections.sort(aggregatedEvents);
+                dirtySubtrees = this.dirtySubtrees;
+                if (! dirtySubtrees.isEmpty()) {
+                    this.dirtySubtrees = new HashSet<>();
+                }
 
-            // notify all listeners about our changes
-            for (IEventListener listener : this.eventListeners) {
-                listener.onChange(aggregatedEvents);
+                this.nrOfDrainedEvents = this.eventBag.size();
             }
 
+            if (pendingEvents.isEmpty() && dirtySubtrees.isEmpty()) {
+                return;
+            }
+
+            Collections.sort(pendingEvents);
+
+            this.propagate(pendingEvents);
+            this.rescan(dirtySubtrees);
+
         } catch (Exception e) {
             logger.error("Thread error. Message: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Removes the events of all files which are still being written from the given events
+     * and puts them back to the pending ones, so that they are not hashed before the files are stable.
+     * The flush scheduler is notified about them again, so that they are propagated on a later flush.
+     * Invoked outside of the lock, since the attributes of the files are read
+     *
+     * @param pendingEvents The events to propagate
+     *
+     * @return The number of deferred events
+     */
+    protected int deferUnstable(List<IEvent> pendingEvents) {
+        WriteStabilityTracker writeStabilityTracker = this.writeStabilityTracker;
+        if (null == writeStabilityTracker) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<Path, Boolean> stablePaths = new HashMap<>();
+        for (IEvent event : pendingEvents) {
+            if ((event instanceof CreateEvent || event instanceof ModifyEvent) && ! stablePaths.containsKey(event.getPath())) {
+                stablePaths.put(event.getPath(), writeStabilityTracker.isStable(event.getPath(), now));
+            }
+        }
+
+        // deletions of unstable paths are deferred as well, since they may be part of a move
+        List<IEvent> deferredEvents = new ArrayList<>();
+        for (Iterator<IEvent> iterator = pendingEvents.iterator(); iterator.hasNext(); ) {
+            IEvent event = iterator.next();
+            if (Boolean.FALSE.equals(stablePaths.get(event.getPath()))) {
+                deferredEvents.add(event);
+                iterator.remove();
+            }
+        }
+
+        if (deferredEvents.isEmpty()) {
+            return 0;
+        }
+
+        synchronized (this.lock) {
+            this.drain();
+            this.eventBag.addBefore(deferredEvents);
+            this.nrOfDrainedEvents = this.eventBag.size() + this.dirtySubtrees.size();
+        }
+
+        FlushScheduler flushScheduler = this.flushScheduler;
+        if (null != flushScheduler) {
+            for (IEvent event : deferredEvents) {
+                flushScheduler.onEvent(event, this.nrOfDrainedEvents + this.ringBuffer.size());
+            }
+        }
+
+        return deferredEvents.size();
+    }
+
+    /**
+     * Replaces the deletion and the creation of the same file, identified by its file key,
+     * by a move of it, so that a renamed file is neither hashed nor looked up in the object store.
+     * Directories and empty files are left to the detection by their hashes (see {@link FileKeyTracker.Identity#isDistinctive()}).
+     * Records the identities of all created or modified path elements for later renames.
+     * Invoked outside of the lock, since the attributes of the path elements are read
+     *
+     * @param pendingEvents The events to propagate
+     *
+     * @return The number of detected moves
+     */
+    protected int correlateMoves(List<IEvent> pendingEvents) {
+        FileKeyTracker fileKeyTracker = this.fileKeyTracker;
+        if (null == fileKeyTracker) {
+            return 0;
+        }
+
+        // the deleted path elements by their last recorded identity
+        Map<FileKeyTracker.Identity, IEvent> deleteEvents = new HashMap<>();
+        Set<FileKeyTracker.Identity> ambiguousIdentities = new HashSet<>();
+        for (IEvent event : pendingEvents) {
+            if (event instanceof DeleteEvent) {
+                FileKeyTracker.Identity identity = fileKeyTracker.getIdentity(event.getPath());
+                fileKeyTracker.remove(event.getPath());
+
+                if (null == identity || ! identity.isDistinctive()) {
+                    // e.g. a directory created after deleting another one may reuse its file key
+                    continue;
+                }
+
+                if (null != deleteEvents.put(identity, event)) {
+                    // multiple hard links of the same file were deleted: which one got moved is unknown
+                    ambiguousIdentities.add(identity);
+                }
+            }
+        }
+        deleteEvents.keySet().removeAll(ambiguousIdentities);
+
+        Set<IEvent> movedDeleteEvents = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ListIterator<IEvent> iterator = pendingEvents.listIterator(); iterator.hasNext(); ) {
+            IEvent event = iterator.next();
+            if (! (event instanceof CreateEvent) && ! (event instanceof ModifyEvent)) {
+                continue;
+            }
+
+            FileKeyTracker.Identity identity = fileKeyTracker.record(event.getPath());
+            if (! (event instanceof CreateEvent) || null == identity) {
+                continue;
+            }
+
+            IEvent deleteEvent = deleteEvents.get(identity);
+            if (null == deleteEvent || deleteEvent.getPath().equals(event.getPath())) {
+                continue;
+            }
+
+            deleteEvents.remove(identity);
+            movedDeleteEvents.add(deleteEvent);
+
+            // the contents did not change, hence its hash is only computed once requested
+            iterator.set(new MoveEvent(deleteEvent.getPath(), event.getPath(), event.getName(), event.getTimestamp(), event.getHashFuture()));
+            fileKeyTracker.recordMove();
+
+            if (logger.isTraceEnabled()) {
+                logger.trace("Detected the move from " + deleteEvent.getPath() + " to " + event.getPath() + " by its file key " + identity);
+            }
+        }
+
+        if (! movedDeleteEvents.isEmpty()) {
+            pendingEvents.removeIf(movedDeleteEvents::contains);
+        }
+
+        return movedDeleteEvents.size();
+    }
+
+    /**
+     * Propagates the given events, except for those of files which are still being written
+     *
+     * @param events The events to propagate
+     */
+    protected void propagate(List<IEvent> events) {
+        if (this.deferUnstable(events) > 0 && events.isEmpty()) {
+            return;
+        }
+
+        this.correlateMoves(events);
+        this.notifyListeners(events);
+    }
+
+    /**
+     * Computes the changes within the given dirty subtrees and propagates them
+     * in batches of at most the maximum number of pending events, so that
+     * a rescan of a large subtree does not hold all its changes at once.
+     * Invoked outside of the lock, so that new events are not blocked in the meantime
+     *
+     * @param dirtySubtrees The dirty subtrees to rescan
+     */
+    protected void rescan(Set<Path> dirtySubtrees) {
+        SubtreeRescanner subtreeRescanner = this.subtreeRescanner;
+        if (dirtySubtrees.isEmpty() || null == subtreeRescanner) {
+            return;
+        }
+
+        MerkleTree merkleTree = this.merkleTree;
+        if (null != merkleTree) {
+            for (Path subtree : dirtySubtrees) {
+                // the events of the subtree were discarded: its cached hashes may be outdated
+                merkleTree.invalidateSubtree(subtree);
+            }
+        }
+
+        int batchSize = this.maxPendingEvents;
+        List<List<IEvent>> batch = new ArrayList<>();
+        batch.add(new ArrayList<>());
+
+        subtreeRescanner.rescan(dirtySubtrees, System.currentTimeMillis(), this::newLazyHash, event -> {
+            List<IEvent> events = batch.get(0);
+            events.add(event);
+
+            if (events.size() >= batchSize) {
+                // listeners may keep the list of a batch
+                batch.set(0, new ArrayList<>());
+                Collections.sort(events);
+                this.propagate(events);
+            }
+        });
+
+        List<IEvent> events = batch.get(0);
+        if (! events.isEmpty()) {
+            Collections.sort(events);
+            this.propagate(events);
+        }
+    }
+
+    /**
+     * Notifies all listeners about the given events
+     *
+     * @param events The events to propagate
+     */
+    protected void notifyListeners(List<IEvent> events) {
+        for (IEventListener listener : this.eventListeners) {
+            listener.onChange(events);
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be flushed
+     *
+     * @return The number of pending events
+     */
+    public int getNrOfPendingEvents() {
+        synchronized (this.lock) {
+            this.drain();
+            return this.eventBag.size();
+        }
+    }
+
+    /**
+     * Returns an estimate of the number of events waiting to be flushed,
+     * including the dirty subtrees and the notifications in the ring buffer.
+     * Neither takes the lock nor drains the ring buffer, so that it can be polled,
+     * e.g. by metrics, without slowing down the path watchers
+     *
+     * @return The estimated number of pending events
+     */
+    public int getEstimatedNrOfPendingEvents() {
+        return this.nrOfDrainedEvents + this.ringBuffer.size();
+    }
+
+    /**
+     * Returns the number of directories whose changes are computed on the next flush
+     *
+     * @return The number of dirty subtrees
+     */
+    public int getNrOfDirtySubtrees() {
+        synchronized (this.lock) {
+            this.drain();
+            return this.dirtySubtrees.size();
+        }
+    }
+
+    /**
+     * Returns the number of events which were replaced by dirty subtrees
+     *
+     * @return The number of collapsed events
+     */
+    public long getNrOfCollapsedEvents() {
+        return this.collapsedEvents.sum();
+    }
+
+    /**
+     * Returns the number of notifications which did not fit into the ring buffer.
+     * Each of them blocked the notifying path watcher until the ring buffer was drained
+     *
+     * @return The number of overflows
+     */
+    public long getNrOfOverflows() {
+        return this.overflows.sum();
+    }
+
+    /**
+     * Returns the number of notifications the ring buffer holds
+     *
+     * @return The capacity of the ring buffer
+     */
+    public int getRingBufferCapacity() {
+        return this.ringBuffer.getCapacity();
+    }
+
+    /**
+     * Limits the number of pending events. Once exceeded, the pending events
+     * are collapsed into the directories containing them, which are rescanned on flushing.
+     * The changes found by the rescan are propagated in batches of at most this size.
+     * Only applies if a subtree rescanner is set
+     *
+     * @param maxPendingEvents The maximum number of pending events
+     *
+     * @throws IllegalArgumentException If the maximum is not positive
+     */
+    public void setMaxPendingEvents(int maxPendingEvents) {
+        if (maxPendingEvents < 1) {
+            throw new IllegalArgumentException("The maximum number of pending events must be at least 1");
+        }
+
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    /**
+     * Returns the maximum number of pending events
+     *
+     * @return The maximum number of pending events
+     */
+    public int getMaxPendingEvents() {
+        return this.maxPendingEvents;
+    }
+
+    /**
+     * Sets the rescanner computing the changes within dirty subtrees
+     *
+     * @param subtreeRescanner The rescanner or null, if the number of pending events should not be limited
+     */
+    public void setSubtreeRescanner(SubtreeRescanner subtreeRescanner) {
+        this.subtreeRescanner = subtreeRescanner;
+    }
+
+    /**
+     * Returns the rescanner computing the changes within dirty subtrees
+     *
+     * @return The rescanner or null, if the number of pending events is not limited
+     */
+    public SubtreeRescanner getSubtreeRescanner() {
+        return this.subtreeRescanner;
+    }
+
+    /**
+     * Sets the cache used to look up hashes of unchanged files
+     *
+     * @param contentHashCache The cache or null, if all files should be read
+     */
+    public void setContentHashCache(ContentHashCache contentHashCache) {
+        this.contentHashCache = contentHashCache;
+    }
+
+    /**
+     * Returns the cache used to look up hashes of unchanged files
+     *
+     * @return The cache or null, if all files are read
+     */
+    public ContentHashCache getContentHashCache() {
+        return this.contentHashCache;
+    }
+
+    /**
+     * Sets the tree maintaining the hashes of all elements below the watched root,
+     * so that directories are not hashed as a whole on each change
+     *
+     * @param merkleTree The tree or null, if directories should be hashed as a whole
+     */
+    public void setMerkleTree(MerkleTree merkleTree) {
+        this.merkleTree = merkleTree;
+    }
+
+    /**
+     * Returns the tree maintaining the hashes of all elements below the watched root
+     *
+     * @return The tree or null, if directories are hashed as a whole
+     */
+    public MerkleTree getMerkleTree() {
+        return this.merkleTree;
+    }
+
+    /**
+     * Sets the tracker deferring the events of files which are still being written
+     *
+     * @param writeStabilityTracker The tracker or null, if files should be hashed regardless of whether they are being written
+     */
+    public void setWriteStabilityTracker(WriteStabilityTracker writeStabilityTracker) {
+        this.writeStabilityTracker = writeStabilityTracker;
+    }
+
+    /**
+     * Returns the tracker deferring the events of files which are still being written
+     *
+     * @return The tracker or null, if files are hashed regardless of whether they are being written
+     */
+    public WriteStabilityTracker getWriteStabilityTracker() {
+        return this.writeStabilityTracker;
+    }
+
+    /**
+     * Sets the chunker splitting created or modified files into content-defined chunks
+     *
+     * @param contentChunker The chunker or null, if no chunks should be computed
+     */
+    public void setContentChunker(ContentChunker contentChunker) {
+        this.contentChunker = contentChunker;
+    }
+
+    /**
+     * Returns the chunker splitting created or modified files into content-defined chunks
+     *
+     * @return The chunker or null, if no chunks are computed
+     */
+    public ContentChunker getContentChunker() {
+        return this.contentChunker;
+    }
+
+    /**
+     * Sets the tracker detecting renames by the identity of the renamed path element
+     *
+     * @param fileKeyTracker The tracker or null, if renames should be detected by the hashes of the path elements only
+     */
+    public void setFileKeyTracker(FileKeyTracker fileKeyTracker) {
+        this.fileKeyTracker = fileKeyTracker;
+    }
+
+    /**
+     * Returns the tracker detecting renames by the identity of the renamed path element
+     *
+     * @return The tracker or null, if renames are detected by the hashes of the path elements only
+     */
+    public FileKeyTracker getFileKeyTracker() {
+        return this.fileKeyTracker;
+    }
+
+    /**
+     * Sets whether a fast digest is computed for created or modified path elements
+     *
+     * @param hashingMode The hashing mode
+     */
+    public void setHashingMode(HashingMode hashingMode) {
+        this.hashingMode = hashingMode;
+    }
+
+    /**
+     * Returns whether a fast digest is computed for created or modified path elements
+     *
+     * @return The hashing mode
+     */
+    public HashingMode getHashingMode() {
+        return this.hashingMode;
+    }
+
+    /**
+     * Sets the scheduler which is notified about each new event
+     * and flushes the pending events by invoking {@link PathEventListener#run()}
+     *
+     * @param flushScheduler The scheduler or null, if events are only flushed on invoking run
+     */
+    public void setFlushScheduler(FlushScheduler flushScheduler) {
+        this.flushScheduler = flushScheduler;
+    }
+
+    /**
+     * Returns the scheduler flushing the pending events
+     *
+     * @return The scheduler or null, if events are only flushed on invoking run
+     */
+    public FlushScheduler getFlushScheduler() {
+        return this.flushScheduler;
+    }
+
     /**
      * Adds the given event listener
      *
@@ -0,0 +1,234 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Schedules the flush of each path on its own, as soon as it settled.
+ * <p>
+ * A path settles once no further event arrived for it within the quiet period
+ * of the {@link FlushPolicy}, but at the latest after its maximum latency.
+ * Hence, a single change is propagated after the quiet period, even while
+ * other parts of the watched folder change permanently.
+ * The timers of all paths are held in a {@link TimingWheel}, which is advanced
+ * once per tick as long as any path is pending. The maximum batch size
+ * of the policy does not apply, since paths are flushed individually anyway.
+ * <p>
+ * Further events of a pending path only move its deadline without taking a lock.
+ * Only the first event of a path schedules a timer in the wheel while holding the lock.
+ * <p>
+ * Deleted paths settle after the move correlation window at the earliest,
+ * so that the creation of a move is pending once the deletion is flushed
+ * (see {@link PathEventListener#flush(Collection, long)}).
+ *
+ * @see EmissionMode#STREAMING
+ */
+public class StreamingFlushScheduler extends FlushScheduler {
+
+    /**
+     * The default time in milliseconds around a deletion or creation
+     * in which a corresponding one is propagated as well
+     */
+    public static final long DEFAULT_MOVE_CORRELATION_WINDOW = 50L;
+
+    /**
+     * The time in milliseconds covered by a bucket of the timing wheel
+     */
+    public static final long TICK_DURATION = 10L;
+
+    /**
+     * The number of buckets per level of the timing wheel
+     */
+    public static final int WHEEL_SIZE = 512;
+
+    /**
+     * The timer of a pending path
+     */
+    protected static class PathTimer {
+
+        /**
+         * The time of the first pending event of the path (in milliseconds)
+         */
+        protected final long firstEventTime;
+
+        /**
+         * The time at which the path settles (in milliseconds)
+         */
+        protected final AtomicLong deadline;
+
+        /**
+         * Whether the path settled, i.e. further events need a new timer
+         */
+        protected volatile boolean isSettled;
+
+        protected PathTimer(long firstEventTime, long deadline) {
+            this.firstEventTime = firstEventTime;
+            this.deadline = new AtomicLong(deadline);
+        }
+    }
+
+    /**
+     * Flushes the given settled paths
+     */
+    protected final Consumer<Set<Path>> pathFlush;
+
+    protected final long moveCorrelationWindow;
+
+    /**
+     * Holds a single timer for each pending path. Guarded by this
+     */
+    protected final TimingWheel<Path> timingWheel;
+
+    /**
+     * The timers of all pending paths. Modified while holding this
+     */
+    protected final Map<Path, PathTimer> pathTimers;
+
+    /**
+     * @param executorService       The executor on which the checks and the flush are run
+     * @param flushPolicy           The policy defining the quiet period and the maximum latency of each path
+     * @param moveCorrelationWindow The minimum time in milliseconds a deleted path waits for the creation of a move
+     * @param pathFlush             Flushes the given settled paths
+     *
+     * @throws IllegalArgumentException If the move correlation window is negative
+     */
+    public StreamingFlushScheduler(ScheduledExecutorService executorService, FlushPolicy flushPolicy, long moveCorrelationWindow, Consumer<Set<Path>> pathFlush) {
+        // all pending events are never flushed at once
+        super(executorService, flushPolicy, null);
+
+        if (moveCorrelationWindow < 0) {
+            throw new IllegalArgumentException("The move correlation window must not be negative");
+        }
+
+        this.pathFlush = pathFlush;
+        this.moveCorrelationWindow = moveCorrelationWindow;
+        this.timingWheel = new TimingWheel<>(TICK_DURATION, WHEEL_SIZE, this.now());
+        this.pathTimers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Restarts the quiet period of the path of the given event
+     *
+     * @param event             The new event
+     * @param nrOfPendingEvents The number of pending events including the new one. Unused
+     */
+    @Override
+    public void onEvent(IEvent event, int nrOfPendingEvents) {
+        long now = this.now();
+
+        long delay = this.flushPolicy.getQuietPeriod();
+        if (event instanceof DeleteEvent) {
+            // wait for the creation of a move
+            delay = Math.max(delay, this.moveCorrelationWindow);
+        }
+
+        PathTimer pathTimer = this.pathTimers.get(event.getPath());
+        if (null != pathTimer && this.restart(pathTimer, now + delay)) {
+            return;
+        }
+
+        synchronized (this) {
+            pathTimer = this.pathTimers.get(event.getPath());
+            if (null == pathTimer) {
+                pathTimer = new PathTimer(now, now + delay);
+                this.pathTimers.put(event.getPath(), pathTimer);
+                this.timingWheel.schedule(event.getPath(), pathTimer.deadline.get());
+            } else {
+                this.restart(pathTimer, now + delay);
+            }
+
+            if (null == this.scheduledCheck) {
+                this.schedule(TimeUnit.MILLISECONDS.toNanos(TICK_DURATION));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of paths which did not settle yet
+     *
+     * @return The number of pending paths
+     */
+    public int getNrOfPendingPaths() {
+        return this.pathTimers.size();
+    }
+
+    /**
+     * Returns the minimum time a deleted path waits for the creation of a move
+     *
+     * @return The move correlation window in milliseconds
+     */
+    public long getMoveCorrelationWindow() {
+        return this.moveCorrelationWindow;
+    }
+
+    @Override
+    protected void check() {
+        Set<Path> settledPaths = new LinkedHashSet<>();
+
+        synchronized (this) {
+            this.scheduledCheck = null;
+
+            if (this.isCancelled) {
+                return;
+            }
+
+            long now = this.now();
+            List<Path> restartedPaths = new ArrayList<>();
+
+            this.timingWheel.advance(now, path -> {
+                PathTimer pathTimer = this.pathTimers.get(path);
+                if (pathTimer.deadline.get() > now) {
+                    restartedPaths.add(path);
+                } else {
+                    settledPaths.add(path);
+                }
+            });
+
+            for (Path path : restartedPaths) {
+                this.timingWheel.schedule(path, this.pathTimers.get(path).deadline.get());
+            }
+
+            for (Path path : settledPaths) {
+                // events of the path notified before are flushed along with it
+                this.pathTimers.remove(path).isSettled = true;
+            }
+
+            if (this.timingWheel.size() > 0) {
+                this.schedule(TimeUnit.MILLISECONDS.toNanos(TICK_DURATION));
+            }
+        }
+
+        if (! settledPaths.isEmpty()) {
+            this.pathFlush.accept(settledPaths);
+        }
+    }
+
+    /**
+     * Moves the deadline of the given pending path, but not beyond its maximum latency
+     *
+     * @param pathTimer The timer of the path
+     * @param deadline  The end of the quiet period of the new event
+     *
+     * @return True, if the path did not settle yet. Otherwise, the path needs a new timer
+     */
+    protected boolean restart(PathTimer pathTimer, long deadline) {
+        // the timer in the wheel is moved to the new deadline once it expires
+        long cappedDeadline = Math.min(deadline, pathTimer.firstEventTime + this.flushPolicy.getMaxLatency());
+        pathTimer.deadline.accumulateAndGet(cappedDeadline, Math::max);
+
+        // settled after the deadline was read: the event is flushed along with the path
+        return ! pathTimer.isSettled;
+    }
+
+    protected long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,308 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.rmatil.sync.event.aggregator.core.index.FileIndex;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.version.api.DeleteType;
+import org.rmatil.sync.version.api.IObjectManager;
+import org.rmatil.sync.version.api.IObjectStore;
+import org.rmatil.sync.version.core.model.PathObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Computes the changes within directories whose events were not kept,
+ * by comparing their current contents with the paths known to the object store.
+ * <p>
+ * Since the object store does not know about the modification times of files,
+ * existing files are compared with their state in the {@link FileIndex}, if one is set.
+ * Only files whose size or modification time changed are reported as modified.
+ * Without an index, a ModifyEvent is created for each existing file. Unchanged files are filtered
+ * later on by their hash (see {@link org.rmatil.sync.event.aggregator.core.modifier.IgnoreSameHashModifier}),
+ * which is cheap as long as their hashes are cached.
+ * <p>
+ * Like a path watcher, only the topmost element of a deleted subtree is reported.
+ * Deleted children are added by the {@link org.rmatil.sync.event.aggregator.core.modifier.AddDirectoryContentModifier}.
+ * <p>
+ * Neither the visited paths nor the created and modified paths are collected: These changes are
+ * passed on as they are found, and deletions are found by checking whether the known paths
+ * within the subtrees still exist once they are walked. Only the topmost deleted elements
+ * are kept until the index of the object store is iterated. Hence, the memory used
+ * does not grow with the size of the subtrees.
+ *
+ * @see PathEventListener#setMaxPendingEvents(int)
+ */
+public class SubtreeRescanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubtreeRescanner.class);
+
+    /**
+     * The root of the synchronized folder
+     */
+    protected final Path rootPath;
+
+    protected final IObjectStore objectStore;
+
+    /**
+     * The state of all path elements as propagated to the listeners. May be null
+     */
+    protected final FileIndex fileIndex;
+
+    /**
+     * The metrics recording the reads of the object manager. May be null
+     */
+    protected volatile PipelineMetrics metrics;
+
+    /**
+     * @param rootPath    The root of the synchronized folder, as watched by the event aggregator
+     * @param objectStore The object store containing all known paths
+     */
+    public SubtreeRescanner(Path rootPath, IObjectStore objectStore) {
+        this(rootPath, objectStore, null);
+    }
+
+    /**
+     * @param rootPath    The root of the synchronized folder, as watched by the event aggregator
+     * @param objectStore The object store containing all known paths
+     * @param fileIndex   The index used to skip unchanged files, i.e. the one set on the event aggregator. May be null
+     */
+    public SubtreeRescanner(Path rootPath, IObjectStore objectStore, FileIndex fileIndex) {
+        this.rootPath = rootPath;
+        this.objectStore = objectStore;
+        this.fileIndex = fileIndex;
+    }
+
+    /**
+     * Returns the events of all changes within the given subtrees
+     *
+     * @param subtrees     The subtrees to rescan, resolved against the root path. Must not be nested
+     * @param timestamp    The timestamp of the created events
+     * @param hashProvider Returns the lazily computed hash of a created or modified path element
+     *
+     * @return The events of all changes
+     */
+    public List<IEvent> rescan(Collection<Path> subtrees, long timestamp, Function<Path, LazyHash> hashProvider) {
+        List<IEvent> events = new ArrayList<>();
+        this.rescan(subtrees, timestamp, hashProvider, events::add);
+
+        return events;
+    }
+
+    /**
+     * Passes the events of all changes within the given subtrees to the given consumer
+     * as they are found, without collecting them first
+     *
+     * @param subtrees     The subtrees to rescan, resolved against the root path. Must not be nested
+     * @param timestamp    The timestamp of the created events
+     * @param hashProvider Returns the lazily computed hash of a created or modified path element
+     * @param consumer     The consumer of the events
+     *
+     * @return The number of found changes
+     */
+    public int rescan(Collection<Path> subtrees, long timestamp, Function<Path, LazyHash> hashProvider, Consumer<IEvent> consumer) {
+        Set<String> relativeSubtrees = new HashSet<>();
+        for (Path subtree : subtrees) {
+            relativeSubtrees.add(this.relativize(subtree));
+        }
+
+        // all paths of the object store. Walked paths are within the subtrees anyway
+        IObjectManager objectManager = this.objectStore.getObjectManager();
+        Map<String, String> knownPaths = objectManager.getIndex().getPaths();
+
+        FileIndex fileIndex = this.fileIndex;
+        LongAdder nrOfChanges = new LongAdder();
+
+        for (Path subtree : subtrees) {
+            String relativeSubtree = this.relativize(subtree);
+            int subtreeDepth = SubtreeRescanner.getDepth(relativeSubtree);
+
+            try {
+                Files.walkFileTree(subtree, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        this.visit(dir, attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        this.visit(file, attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        if (e instanceof NoSuchFileException) {
+                            // deleted in the meantime or the whole subtree is deleted
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        logger.error("Failed to rescan " + file + ". Message: " + e.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    protected void visit(Path path, BasicFileAttributes attrs) {
+                        String relativePath = relativize(path);
+                        if (relativePath.isEmpty()) {
+                            // the root itself is not part of the object store
+                            return;
+                        }
+
+                        // children are processed later than their parents
+                        long childTimestamp = timestamp + SubtreeRescanner.getDepth(relativePath) - subtreeDepth;
+                        String name = path.getFileName().toString();
+
+                        if (! knownPaths.containsKey(relativePath)) {
+                            consumer.accept(new CreateEvent(path, name, childTimestamp, hashProvider.apply(path)));
+                            nrOfChanges.increment();
+                        } else if (attrs.isRegularFile() && (null == fileIndex || ! fileIndex.isUnchanged(relativePath, attrs))) {
+                            consumer.accept(new ModifyEvent(path, name, childTimestamp, hashProvider.apply(path)));
+                            nrOfChanges.increment();
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                logger.error("Failed to rescan subtree " + subtree + ". Message: " + e.getMessage());
+            }
+        }
+
+        // the index may be modified by the consumer, hence the deletions are passed on once it is iterated
+        List<Path> deletedPaths = new ArrayList<>();
+        for (Map.Entry<String, String> knownPath : knownPaths.entrySet()) {
+            String relativePath = knownPath.getKey();
+            if (! SubtreeRescanner.isWithin(relativeSubtrees, relativePath) || this.exists(relativePath)) {
+                continue;
+            }
+
+            // only the topmost deleted element is reported
+            String parent = SubtreeRescanner.getParent(relativePath);
+            if (null != parent && knownPaths.containsKey(parent) && SubtreeRescanner.isWithin(relativeSubtrees, parent) && ! this.exists(parent)) {
+                continue;
+            }
+
+            if (this.isDeleted(objectManager, relativePath, knownPath.getValue())) {
+                continue;
+            }
+
+            deletedPaths.add(this.rootPath.resolve(relativePath));
+        }
+
+        for (Path path : deletedPaths) {
+            consumer.accept(new DeleteEvent(path, path.getFileName().toString(), null, timestamp));
+            nrOfChanges.increment();
+        }
+
+        return nrOfChanges.intValue();
+    }
+
+    /**
+     * Returns the root of the synchronized folder
+     *
+     * @return The root path
+     */
+    public Path getRootPath() {
+        return this.rootPath;
+    }
+
+    /**
+     * Sets the metrics recording the time spent reading objects from the object manager.
+     * Set by the event aggregator once this rescanner is set on it
+     *
+     * @param metrics The metrics or null, if reads should not be recorded
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics recording the time spent reading objects from the object manager
+     *
+     * @return The metrics or null, if reads are not recorded
+     */
+    public PipelineMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns whether the object store already knows about the deletion of the given path
+     *
+     * @param objectManager The object manager
+     * @param relativePath  The path relative to the root
+     * @param fileNameHash  The hash of the path in the index
+     *
+     * @return True, if the path is deleted in the object store
+     */
+    protected boolean isDeleted(IObjectManager objectManager, String relativePath, String fileNameHash) {
+        try {
+            long start = System.nanoTime();
+            PathObject pathObject = objectManager.getObject(fileNameHash);
+            PipelineMetrics metrics = this.metrics;
+            if (null != metrics) {
+                metrics.recordObjectManagerLookup(System.nanoTime() - start);
+            }
+
+            return null != pathObject && null != pathObject.getDeleted() && DeleteType.DELETED == pathObject.getDeleted().getDeleteType();
+        } catch (InputOutputException e) {
+            logger.error("Failed to get object for path " + relativePath + ". Message: " + e.getMessage());
+            return false;
+        }
+    }
+
+    protected boolean exists(String relativePath) {
+        return Files.exists(this.rootPath.resolve(relativePath), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    protected String relativize(Path path) {
+        return this.rootPath.relativize(path).toString();
+    }
+
+    /**
+     * Returns whether the given path or any of its parents is one of the given subtrees
+     *
+     * @param subtrees The subtrees relative to the root
+     * @param path     The path relative to the root
+     *
+     * @return True, if the path is within any of the subtrees
+     */
+    protected static boolean isWithin(Set<String> subtrees, String path) {
+        // the root contains all paths
+        if (subtrees.contains("")) {
+            return true;
+        }
+
+        for (String parent = path; null != parent; parent = SubtreeRescanner.getParent(parent)) {
+            if (subtrees.contains(parent)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected static String getParent(String path) {
+        int index = path.lastIndexOf('/');
+
+        return (index < 0) ? null : path.substring(0, index);
+    }
+
+    protected static int getDepth(String path) {
+        if (path.isEmpty()) {
+            return 0;
+        }
+
+        return path.length() - path.replace("/", "").length() + 1;
+    }
+}
@@ -0,0 +1,220 @@
+package org.rmatil.sync.event.aggregator.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel holding a large number of timers.
+ * <p>
+ * Each level divides its interval into a fixed number of buckets, each covering
+ * one tick. A timer is put into the bucket of its deadline on the lowest level
+ * covering it, hence scheduling takes constant time regardless of the number of timers.
+ * Advancing the time expires the buckets passed on the lowest level. Once the lowest
+ * level completes a round, the bucket of the next level covering the new round
+ * is moved down to the lowest level.
+ * <p>
+ * Timers can not be cancelled. Instead, the owner of a key checks on expiry
+ * whether the key got rescheduled in the meantime.
+ * Timers expire up to one tick late, but never early.
+ * Timers whose deadline already passed expire on the next advance.
+ * <p>
+ * <i>Note</i>: This class is not thread-safe
+ *
+ * @param <K> The type of the keys of the timers
+ */
+public class TimingWheel<K> {
+
+    /**
+     * A scheduled timer
+     *
+     * @param <K> The type of the key
+     */
+    protected static class Timer<K> {
+
+        protected final K key;
+
+        protected final long deadline;
+
+        protected Timer(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * The time covered by a bucket
+     */
+    protected final long tickDuration;
+
+    protected final int wheelSize;
+
+    /**
+     * The time covered by all buckets of this level
+     */
+    protected final long interval;
+
+    protected final List<List<Timer<K>>> buckets;
+
+    /**
+     * Timers whose deadline already passed on scheduling
+     */
+    protected final List<Timer<K>> expiredTimers;
+
+    /**
+     * The start of the current tick
+     */
+    protected long currentTime;
+
+    /**
+     * The next level, covering a bucket of this level per tick. Created on demand
+     */
+    protected TimingWheel<K> overflowWheel;
+
+    /**
+     * The number of timers on this level
+     */
+    protected int size;
+
+    /**
+     * @param tickDuration The time covered by a bucket of the lowest level
+     * @param wheelSize    The number of buckets per level
+     * @param startTime    The current time
+     *
+     * @throws IllegalArgumentException If the tick duration or the wheel size is not positive
+     */
+    public TimingWheel(long tickDuration, int wheelSize, long startTime) {
+        if (tickDuration < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException("The tick duration and the wheel size must be positive");
+        }
+
+        this.tickDuration = tickDuration;
+        this.wheelSize = wheelSize;
+        this.interval = tickDuration * wheelSize;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            this.buckets.add(new ArrayList<>());
+        }
+        this.expiredTimers = new ArrayList<>();
+        this.currentTime = startTime - startTime % tickDuration;
+        this.size = 0;
+    }
+
+    /**
+     * Schedules a timer for the given key
+     *
+     * @param key      The key to pass on expiry
+     * @param deadline The time at which the timer expires
+     */
+    public void schedule(K key, long deadline) {
+        this.add(new Timer<>(key, deadline));
+    }
+
+    /**
+     * Advances the time and passes the keys of all expired timers to the given consumer
+     *
+     * @param now      The current time
+     * @param consumer The consumer of the expired keys
+     *
+     * @return The number of expired timers
+     */
+    public int advance(long now, Consumer<K> consumer) {
+        return this.advanceTimers(now, timer -> consumer.accept(timer.key));
+    }
+
+    /**
+     * Returns the number of scheduled timers
+     *
+     * @return The number of timers
+     */
+    public int size() {
+        return (null == this.overflowWheel) ? this.size : this.size + this.overflowWheel.size();
+    }
+
+    /**
+     * Returns the time covered by a bucket of the lowest level
+     *
+     * @return The tick duration
+     */
+    public long getTickDuration() {
+        return this.tickDuration;
+    }
+
+    protected int advanceTimers(long now, Consumer<Timer<K>> consumer) {
+        int nrOfExpiredTimers = this.expiredTimers.size();
+        for (Timer<K> timer : this.expiredTimers) {
+            consumer.accept(timer);
+        }
+        this.size -= this.expiredTimers.size();
+        this.expiredTimers.clear();
+
+        if (0 == this.size()) {
+            // nothing to expire in between
+            this.reset(now);
+            return nrOfExpiredTimers;
+        }
+
+        while (this.currentTime + this.tickDuration <= now) {
+            if (0 == this.size) {
+                // skip the empty buckets up to the next round
+                long nextRound = this.currentTime - this.currentTime % this.interval + this.interval;
+                if (nextRound > now || null == this.overflowWheel) {
+                    // no timers are left on any level, if there is no next one
+                    this.currentTime = now - now % this.tickDuration;
+                    break;
+                }
+
+                this.currentTime = nextRound;
+                this.overflowWheel.advanceTimers(this.currentTime + this.interval, this::add);
+                continue;
+            }
+
+            List<Timer<K>> bucket = this.buckets.get(this.getBucketIndex(this.currentTime));
+            for (Timer<K> timer : bucket) {
+                consumer.accept(timer);
+            }
+            nrOfExpiredTimers += bucket.size();
+            this.size -= bucket.size();
+            bucket.clear();
+
+            this.currentTime += this.tickDuration;
+
+            if (null != this.overflowWheel && 0 == this.currentTime % this.interval) {
+                // a new round starts: move the timers of the round down to this level
+                this.overflowWheel.advanceTimers(this.currentTime + this.interval, this::add);
+            }
+        }
+
+        return nrOfExpiredTimers;
+    }
+
+    protected void add(Timer<K> timer) {
+        if (timer.deadline >= this.currentTime + this.interval) {
+            if (null == this.overflowWheel) {
+                this.overflowWheel = new TimingWheel<>(this.interval, this.wheelSize, this.currentTime);
+            }
+
+            this.overflowWheel.add(timer);
+            return;
+        }
+
+        this.size++;
+
+        if (timer.deadline < this.currentTime) {
+            this.expiredTimers.add(timer);
+        } else {
+            this.buckets.get(this.getBucketIndex(timer.deadline)).add(timer);
+        }
+    }
+
+    protected void reset(long now) {
+        this.currentTime = now - now % this.tickDuration;
+        if (null != this.overflowWheel) {
+            this.overflowWheel.reset(now);
+        }
+    }
+
+    protected int getBucketIndex(long time) {
+        return (int) ((time / this.tickDuration) % this.wheelSize);
+    }
+}
@@ -2,6 +2,7 @@ package org.rmatil.sync.event.aggregator.core.aggregator;
 
 import org.rmatil.sync.commons.hashing.Hash;
 import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.EventBatch;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
 import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
 
@@ -16,29 +17,30 @@ public class EmptyHashAggregator implements IAggregator {
 
     @Override
     public List<IEvent> aggregate(List<IEvent> events) {
-        Collections.sort(events);
+        return this.aggregate(new EventBatch(events)).getEvents();
+    }
 
-        Set<IEvent> aggregatedEvents = new HashSet<>();
+    @Override
+    public EventBatch aggregate(EventBatch events) {
+        EventBatch aggregatedEvents = new EventBatch();
         List<IEvent> eventsToIgnore = new ArrayList<>();
 
         for (IEvent event : events) {
-            if (event instanceof CreateEvent && event.getHash().equals(Hash.EMPTY_SHA256_HASH)) {
+            if (event instanceof CreateEvent && Hash.EMPTY_SHA256_HASH.equals(event.getHash())) {
                 // find a modify event for this create event with a different hash
-                for (IEvent modifyEvent : events) {
-                    if (modifyEvent instanceof ModifyEvent &&
-                            event.getPath().toString().equals(modifyEvent.getPath().toString()) &&
-                            ! modifyEvent.getHash().equals(Hash.EMPTY_SHA256_HASH)) {
-                        // use the hash of the corresponding modify event
+                for (IEvent modifyEvent : events.getEventsForPath(event.getPath())) {
+                    if (modifyEvent instanceof ModifyEvent && ! Hash.EMPTY_SHA256_HASH.equals(modifyEvent.getHash())) {
+                        // use the hash of the corresponding modify event,
+                        // along with its chunks if any were computed
                         aggregatedEvents.add(
                                 new CreateEvent(
                                         event.getPath(),
                                         event.getName(),
-                                        modifyEvent.getHash(),
-                                        event.getTimestamp()
+                                        event.getTimestamp(),
+                                        modifyEvent.getHashFuture()
                                 )
                         );
 
-                        eventsToIgnore.add(event);
                         eventsToIgnore.add(modifyEvent);
 
                         // avoid using different modify events for the same create event multiple times
@@ -52,9 +54,6 @@ public class EmptyHashAggregator implements IAggregator {
 
         aggregatedEvents.removeAll(eventsToIgnore);
 
-        List<IEvent> uniqueEvents = new ArrayList<>(aggregatedEvents);
-        Collections.sort(uniqueEvents);
-
-        return uniqueEvents;
+        return aggregatedEvents;
     }
 }
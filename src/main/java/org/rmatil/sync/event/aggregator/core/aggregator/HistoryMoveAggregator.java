@@ -1,13 +1,11 @@
 package org.rmatil.sync.event.aggregator.core.aggregator;
 
-import org.rmatil.sync.commons.hashing.Hash;
 import org.rmatil.sync.commons.list.Lists;
-import org.rmatil.sync.event.aggregator.config.Config;
+import org.rmatil.sync.event.aggregator.core.cache.VersionHashCache;
 import org.rmatil.sync.event.aggregator.core.events.*;
-import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
 import org.rmatil.sync.version.api.IObjectManager;
-import org.rmatil.sync.version.core.model.PathObject;
-import org.rmatil.sync.version.core.model.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +19,9 @@ import java.util.*;
  * hash of the deleted file can be created anymore. Therefore, this
  * aggregator contacts the object manager for the hash of the last
  * stored version of the delete file, and if they match, creates the move event.
+ * <p>
+ * Renames of path elements whose identity was tracked are already propagated
+ * as move events, without any hash (see {@link org.rmatil.sync.event.aggregator.core.index.FileKeyTracker}).
  *
  * @see IObjectManager The object manager
  */
@@ -40,8 +41,31 @@ public class HistoryMoveAggregator implements IAggregator {
      */
     protected IObjectManager objectManager;
 
+    /**
+     * The cache for the last versions of the object manager
+     */
+    protected VersionHashCache versionHashCache;
+
+    /**
+     * Reads the last versions directly from the given object manager
+     *
+     * @param objectManager The object manager
+     */
     public HistoryMoveAggregator(IObjectManager objectManager) {
-        this.objectManager = objectManager;
+        this(new VersionHashCache(objectManager, 0L, VersionHashCache.DEFAULT_EXPIRE_AFTER_WRITE));
+    }
+
+    /**
+     * @param versionHashCache The cache for the last versions of the object manager
+     */
+    public HistoryMoveAggregator(VersionHashCache versionHashCache) {
+        this.objectManager = versionHashCache.getObjectManager();
+        this.versionHashCache = versionHashCache;
+    }
+
+    @Override
+    public void setMetrics(PipelineMetrics metrics) {
+        this.versionHashCache.setMetrics(metrics);
     }
 
     /**
@@ -61,50 +85,59 @@ public class HistoryMoveAggregator implements IAggregator {
     public List<IEvent> aggregate(List<IEvent> events) {
         Collections.sort(events);
 
-        Map<String, List<IEvent>> sameHashFileEvents = new HashMap<>();
+        // look up the versions of all deleted paths at once
+        List<String> deletedPaths = new ArrayList<>();
+        for (IEvent event : events) {
+            if (event instanceof DeleteEvent && null == event.getDigest()) {
+                deletedPaths.add(event.getPath().toString());
+            }
+        }
+
+        Map<String, String> lastVersionHashes = this.versionHashCache.getLastVersionHashes(deletedPaths);
+
+        // events without a hash are grouped by the null key
+        Map<HashDigest, List<IEvent>> sameHashFileEvents = new HashMap<>();
+
+        // the final aggregated events which we will return
+        List<IEvent> aggregatedEvents = new ArrayList<>();
 
         // add all events with the same file hash to the same place
         for (IEvent event : events) {
+            if (event instanceof MoveEvent) {
+                // moves are not aggregated any further. Moves detected by the identity
+                // of the moved element have no hash yet, which should not be computed here
+                aggregatedEvents.add(event);
+                continue;
+            }
+
             // enrich delete event with last stored hash of history to force a move event
             // when an add event with the same hash occurs
-            if (event instanceof DeleteEvent && null == event.getHash()) {
-                logger.trace("Looking for versions of deleted path " + event.getPath().toString());
-                try {
-                    PathObject object = this.objectManager.getObject(Hash.hash(Config.DEFAULT.getHashingAlgorithm(), event.getPath().toString()));
-                    if (null != object && object.getVersions().size() > 0) {
-                        Version lastVersion = object.getVersions().get(object.getVersions().size() - 1);
-                        logger.trace("Updating delete event with hash for path " + event.getPath().toString() + ". Hash is " + lastVersion.getHash());
-                        event = new DeleteEvent(
-                                event.getPath(),
-                                event.getName(),
-                                lastVersion.getHash(),
-                                event.getTimestamp()
-                        );
+            if (event instanceof DeleteEvent && null == event.getDigest()) {
+                String lastVersionHash = lastVersionHashes.get(event.getPath().toString());
+                if (null != lastVersionHash) {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("Updating delete event with hash for path " + event.getPath().toString() + ". Hash is " + lastVersionHash);
                     }
-                } catch (InputOutputException e) {
-                    logger.error("Failed to get versions of deleted path. Message: " + e.getMessage());
+                    event = new DeleteEvent(
+                            event.getPath(),
+                            event.getName(),
+                            lastVersionHash,
+                            event.getTimestamp()
+                    );
                 }
             }
 
-            if (null == event.getHash()) {
-                if (null == sameHashFileEvents.get("__empty_key")) {
-                    sameHashFileEvents.put("__empty_key", new ArrayList<>());
-                }
-
-                sameHashFileEvents.get("__empty_key").add(event);
-            } else {
-                if (null == sameHashFileEvents.get(event.getHash())) {
-                    sameHashFileEvents.put(event.getHash(), new ArrayList<>());
-                }
-
-                sameHashFileEvents.get(event.getHash()).add(event);
+            HashDigest digest = event.getDigest();
+            List<IEvent> sameHashEvents = sameHashFileEvents.get(digest);
+            if (null == sameHashEvents) {
+                sameHashEvents = new ArrayList<>();
+                sameHashFileEvents.put(digest, sameHashEvents);
             }
-        }
 
-        // the final aggregated events which we will return
-        List<IEvent> aggregatedEvents = new ArrayList<>();
+            sameHashEvents.add(event);
+        }
 
-        for (Map.Entry<String, List<IEvent>> entry : sameHashFileEvents.entrySet()) {
+        for (Map.Entry<HashDigest, List<IEvent>> entry : sameHashFileEvents.entrySet()) {
             if (entry.getValue().size() < 2) {
                 // only one event for the same hash
                 // -> no event aggregation
@@ -113,7 +146,6 @@ public class HistoryMoveAggregator implements IAggregator {
                 // add all events which we do not handle in this aggregator
                 // These events should not occur in between the deletion & creation event
                 aggregatedEvents.addAll(Lists.getInstances(entry.getValue(), ModifyEvent.class));
-                aggregatedEvents.addAll(Lists.getInstances(entry.getValue(), MoveEvent.class));
 
                 // -> delete & add => move
                 List<IEvent> deleteHits = Lists.getInstances(entry.getValue(), DeleteEvent.class);
@@ -134,7 +166,7 @@ public class HistoryMoveAggregator implements IAggregator {
                                 IEvent createEvent = iterator.next();
                                 if (createEvent.getPath().getFileName().equals(fileName) && deleteEvent.getTimestamp() <= createEvent.getTimestamp()) {
                                     // we found a hit with the same filename
-                                    MoveEvent moveEvent = new MoveEvent(deleteEvent.getPath(), createEvent.getPath(), createEvent.getName(), createEvent.getHash(), createEvent.getTimestamp());
+                                    MoveEvent moveEvent = new MoveEvent(deleteEvent.getPath(), createEvent.getPath(), createEvent.getName(), createEvent.getTimestamp(), createEvent.getHashFuture());
                                     aggregatedEvents.add(moveEvent);
                                     logger.trace("Creating moveEvent from " + deleteEvent.getPath() + " to " + createEvent.getPath());
 
@@ -170,9 +202,11 @@ public class HistoryMoveAggregator implements IAggregator {
 
                     // check timestamps: which was first?
                     if (deleteHit.getTimestamp() <= createHit.getTimestamp() || Math.abs(deleteHit.getTimestamp() - createHit.getTimestamp()) <= EVENT_TIMESTAMP_TOLERANCE) {
-                        MoveEvent moveEvent = new MoveEvent(deleteHit.getPath(), createHit.getPath(), createHit.getName(), createHit.getHash(), createHit.getTimestamp());
+                        MoveEvent moveEvent = new MoveEvent(deleteHit.getPath(), createHit.getPath(), createHit.getName(), createHit.getTimestamp(), createHit.getHashFuture());
                         aggregatedEvents.add(moveEvent);
-                        logger.trace("Creating moveEvent from " + deleteHit.getPath() + " to " + createHit.getPath());
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("Creating moveEvent from " + deleteHit.getPath() + " to " + createHit.getPath());
+                        }
                     } else {
                         // we just add both events unchanged to the results
                         aggregatedEvents.add(deleteHit);
@@ -1,6 +1,8 @@
 package org.rmatil.sync.event.aggregator.core.aggregator;
 
+import org.rmatil.sync.event.aggregator.core.events.EventBatch;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
 
 import java.util.List;
 
@@ -27,4 +29,30 @@ public interface IAggregator {
      */
     List<IEvent> aggregate(List<IEvent> events);
 
+    /**
+     * Aggregates events of the given batch.
+     * <p>
+     * By default, this delegates to {@link IAggregator#aggregate(List)}.
+     * Aggregators looking up related events should override it to
+     * make use of the indexes of the batch.
+     *
+     * @param events The batch of events to aggregate
+     *
+     * @return The aggregated batch of events
+     */
+    default EventBatch aggregate(EventBatch events) {
+        return new EventBatch(this.aggregate(events.getEvents()));
+    }
+
+    /**
+     * Sets the metrics recording the lookups of the object manager by this aggregator.
+     * Invoked by the event aggregator once the aggregator is added to it.
+     * <p>
+     * By default, nothing is recorded.
+     *
+     * @param metrics The metrics of the event aggregator
+     */
+    default void setMetrics(PipelineMetrics metrics) {
+    }
+
 }
@@ -0,0 +1,301 @@
+package org.rmatil.sync.event.aggregator.core.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.rmatil.sync.event.aggregator.api.IEventListener;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.MoveEvent;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.version.api.IObjectManager;
+import org.rmatil.sync.version.core.model.PathObject;
+import org.rmatil.sync.version.core.model.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read-through cache for the hash of the last version
+ * of path elements stored in the object manager.
+ * Paths without any stored version are cached too, so that
+ * repeated lookups of unknown paths do not hit the object store.
+ * <p>
+ * Since the versions are written by the consumer of the aggregated events,
+ * the cache has to be set on the event aggregator
+ * (see {@link org.rmatil.sync.event.aggregator.api.IEventAggregator#setVersionHashCache(VersionHashCache)}).
+ * The event aggregator invalidates the entries of all paths for which events are emitted
+ * before notifying any listener (see {@link VersionHashCache#onEmit(List)}).
+ * Since it is unknown when the consumer stored the new versions, the versions of these paths are
+ * read without caching them until the expiry duration elapsed. Hence, neither a stale version
+ * nor a missing one of a newly created path is cached.
+ * Entries expire after the same duration to bound the time a stale entry
+ * may be used if versions are written otherwise.
+ * <p>
+ * The same instance should be shared by all modifiers and aggregators
+ * accessing the object manager, so that elements read once are reused.
+ */
+public class VersionHashCache implements IEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(VersionHashCache.class);
+
+    /**
+     * The default maximum number of cached paths
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    /**
+     * The default duration after which entries expire (in milliseconds)
+     */
+    public static final long DEFAULT_EXPIRE_AFTER_WRITE = 60000L;
+
+    protected IObjectManager objectManager;
+
+    /**
+     * The hash of the last version by the path.
+     * An empty value denotes a path without a version
+     */
+    protected Cache<String, Optional<String>> cache;
+
+    /**
+     * The paths for which events were emitted recently,
+     * i.e. whose versions may be written by the consumer at any time
+     */
+    protected Cache<String, Boolean> emittedPaths;
+
+    /**
+     * The metrics recording the reads of the object manager. May be null
+     */
+    protected volatile PipelineMetrics metrics;
+
+    /**
+     * @param objectManager The object manager to read versions from
+     */
+    public VersionHashCache(IObjectManager objectManager) {
+        this(objectManager, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE);
+    }
+
+    /**
+     * @param objectManager    The object manager to read versions from
+     * @param maximumSize      The maximum number of cached paths. Use 0 to disable caching
+     * @param expireAfterWrite The duration after which entries expire (in milliseconds)
+     */
+    public VersionHashCache(IObjectManager objectManager, long maximumSize, long expireAfterWrite) {
+        this.objectManager = objectManager;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+                .build();
+        this.emittedPaths = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Returns the object manager from which versions are read
+     *
+     * @return The object manager
+     */
+    public IObjectManager getObjectManager() {
+        return this.objectManager;
+    }
+
+    /**
+     * Sets the metrics recording the time spent reading versions from the object manager,
+     * usually the ones of the event aggregator (see {@link org.rmatil.sync.event.aggregator.api.IEventAggregator#getMetrics()})
+     *
+     * @param metrics The metrics or null, if reads should not be recorded
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics recording the time spent reading versions from the object manager
+     *
+     * @return The metrics or null, if reads are not recorded
+     */
+    public PipelineMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the hash of the last version of the given path
+     *
+     * @param path The path relative to the synchronized folder
+     *
+     * @return The hash of the last version or null, if no version is stored
+     *
+     * @throws InputOutputException If reading the object from the object manager failed
+     */
+    public String getLastVersionHash(String path)
+            throws InputOutputException {
+        Optional<String> hash = this.cache.getIfPresent(path);
+        if (null == hash) {
+            hash = this.load(path, this.objectManager.getIndex().getPaths());
+            this.putIfNotEmitted(path, hash);
+        }
+
+        return hash.orElse(null);
+    }
+
+    /**
+     * Returns the hashes of the last versions of all given paths
+     * in one pass, reading only the paths not yet cached.
+     * Paths of which the object could not be read are not contained in the result.
+     * <p>
+     * The index of the object manager is read once for all paths. Since the object manager
+     * does not read several objects at once, the objects of the paths not cached are read one by one.
+     *
+     * @param paths The paths relative to the synchronized folder
+     *
+     * @return The hash of the last version by the path. The hash is null, if no version is stored
+     */
+    public Map<String, String> getLastVersionHashes(Collection<String> paths) {
+        Map<String, String> hashes = new HashMap<>();
+        Map<String, String> indexedPaths = null;
+
+        for (String path : paths) {
+            if (hashes.containsKey(path)) {
+                continue;
+            }
+
+            Optional<String> hash = this.cache.getIfPresent(path);
+            if (null == hash) {
+                if (null == indexedPaths) {
+                    indexedPaths = this.objectManager.getIndex().getPaths();
+                }
+
+                try {
+                    hash = this.load(path, indexedPaths);
+                } catch (InputOutputException e) {
+                    logger.error("Failed to get the last version of path " + path + ". Message: " + e.getMessage());
+                    continue;
+                }
+
+                this.putIfNotEmitted(path, hash);
+            }
+
+            hashes.put(path, hash.orElse(null));
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Caches the last version of the given object which
+     * already has been read from the object manager
+     *
+     * @param pathObject The object to cache
+     */
+    public void put(PathObject pathObject) {
+        this.putIfNotEmitted(pathObject.getAbsolutePath(), Optional.ofNullable(VersionHashCache.getLastVersionHash(pathObject)));
+    }
+
+    /**
+     * Removes the cached version of the given path
+     *
+     * @param path The path relative to the synchronized folder
+     */
+    public void invalidate(String path) {
+        this.cache.invalidate(path);
+    }
+
+    /**
+     * Removes all cached versions
+     */
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * Returns the number of cached paths
+     *
+     * @return The number of cached paths
+     */
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * Invalidates the cached versions of all paths affected by the given events and
+     * stops caching their versions for the expiry duration, since the consumer of the events
+     * is going to store new versions for them. Invoked by the event aggregator
+     * before notifying any listener
+     *
+     * @param events The events to emit
+     */
+    public void onEmit(List<IEvent> events) {
+        for (IEvent event : events) {
+            this.markEmitted(event.getPath().toString());
+
+            if (event instanceof MoveEvent) {
+                this.markEmitted(((MoveEvent) event).getNewPath().toString());
+            }
+        }
+    }
+
+    /**
+     * Invalidates the cached versions of all paths affected by the given events,
+     * since the consumer of the events is going to store new versions for them.
+     * Only required if the cache is registered as listener instead of being set on the event aggregator
+     *
+     * @param events The emitted events
+     */
+    @Override
+    public void onChange(List<IEvent> events) {
+        for (IEvent event : events) {
+            this.cache.invalidate(event.getPath().toString());
+
+            if (event instanceof MoveEvent) {
+                this.cache.invalidate(((MoveEvent) event).getNewPath().toString());
+            }
+        }
+    }
+
+    protected void markEmitted(String path) {
+        // marked first, so that a concurrent lookup either sees the mark or gets invalidated
+        this.emittedPaths.put(path, Boolean.TRUE);
+        this.cache.invalidate(path);
+    }
+
+    protected void putIfNotEmitted(String path, Optional<String> hash) {
+        this.cache.put(path, hash);
+
+        // the path may have been emitted while its version was read
+        if (null != this.emittedPaths.getIfPresent(path)) {
+            this.cache.invalidate(path);
+        }
+    }
+
+    protected Optional<String> load(String path, Map<String, String> indexedPaths)
+            throws InputOutputException {
+        long start = System.nanoTime();
+        try {
+            // paths unknown to the index do not have to be read at all
+            String fileNameHash = indexedPaths.get(path);
+            if (null == fileNameHash) {
+                return Optional.empty();
+            }
+
+            return Optional.ofNullable(VersionHashCache.getLastVersionHash(this.objectManager.getObject(fileNameHash)));
+        } finally {
+            PipelineMetrics metrics = this.metrics;
+            if (null != metrics) {
+                metrics.recordObjectManagerLookup(System.nanoTime() - start);
+            }
+        }
+    }
+
+    protected static String getLastVersionHash(PathObject pathObject) {
+        if (null == pathObject || null == pathObject.getVersions() || pathObject.getVersions().isEmpty()) {
+            return null;
+        }
+
+        Version lastVersion = pathObject.getVersions().get(pathObject.getVersions().size() - 1);
+
+        return lastVersion.getHash();
+    }
+}
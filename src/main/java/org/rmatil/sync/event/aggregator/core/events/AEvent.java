@@ -1,12 +1,27 @@
 package org.rmatil.sync.event.aggregator.core.events;
 
+import org.rmatil.sync.event.aggregator.core.hashing.Chunk;
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * The common base class used for eventBag
  */
 public abstract class AEvent implements IEvent {
 
+    private static final Logger logger = LoggerFactory.getLogger(AEvent.class);
+
     /**
      * The path element which was added/changed/removed
      */
@@ -18,10 +33,31 @@ public abstract class AEvent implements IEvent {
     protected String name;
 
     /**
-     * The hash of the path element
+     * The hash of the path element as it is serialized.
+     * Only set while writing and after reading this event,
+     * otherwise {@link AEvent#digest} holds the hash
      */
     protected String hash;
 
+    /**
+     * The hash of the path element in its compact representation.
+     * Not used for a {@link LazyHash}, which holds the digest itself
+     */
+    protected transient HashDigest digest;
+
+    /**
+     * The hash of the path element which may not be computed yet.
+     * If set, it takes precedence over {@link AEvent#hash}
+     */
+    protected transient Future<String> hashFuture;
+
+    /**
+     * The content-defined chunks of the path element as they are serialized.
+     * Only set while writing and after reading this event,
+     * otherwise they are computed by {@link AEvent#hashFuture}
+     */
+    protected List<Chunk> chunks;
+
     /**
      * A timestamp in milliseconds indicating the time
      * in which this event occurred
@@ -36,8 +72,148 @@ public abstract class AEvent implements IEvent {
         return this.name;
     }
 
+    /**
+     * Returns the hash of the path element.
+     * <p>
+     * <i>Note</i>: If the hash is not computed yet,
+     * this call blocks until it is available
+     *
+     * @return The hash of the path element
+     */
     public String getHash() {
-        return this.hash;
+        if (null == this.hashFuture) {
+            return (null == this.digest) ? this.hash : this.digest.toString();
+        }
+
+        try {
+            return this.hashFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for the hash of " + this.path + ". Message: " + e.getMessage());
+        } catch (ExecutionException e) {
+            logger.error("Could not compute the hash of " + this.path + ". Message: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the digest used to compare this event with other events.
+     * <p>
+     * <i>Note</i>: If the digest is not computed yet,
+     * this call blocks until it is available
+     *
+     * @return The digest of the path element
+     */
+    public String getFastHash() {
+        if (! (this.hashFuture instanceof LazyHash)) {
+            return this.getHash();
+        }
+
+        try {
+            return ((LazyHash) this.hashFuture).getFastHash();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for the digest of " + this.path + ". Message: " + e.getMessage());
+        } catch (ExecutionException e) {
+            logger.error("Could not compute the digest of " + this.path + ". Message: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the hash of the path element in its compact representation.
+     * Prefer this over {@link AEvent#getHash()} to compare hashes.
+     * <p>
+     * <i>Note</i>: If the hash is not computed yet,
+     * this call blocks until it is available
+     *
+     * @return The digest of the hash, null if there is no hash
+     */
+    @Override
+    public HashDigest getDigest() {
+        if (this.hashFuture instanceof LazyHash) {
+            try {
+                return ((LazyHash) this.hashFuture).getDigest();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while waiting for the hash of " + this.path + ". Message: " + e.getMessage());
+            } catch (ExecutionException e) {
+                logger.error("Could not compute the hash of " + this.path + ". Message: " + e.getMessage());
+            }
+
+            return null;
+        }
+
+        // events are not modified once the hash is known,
+        // so computing it concurrently yields the same digest
+        if (null == this.digest && null != this.hashFuture) {
+            this.digest = HashDigest.valueOf(this.getHash());
+        }
+
+        return this.digest;
+    }
+
+    /**
+     * Returns the digest used to compare this event with other events
+     * in its compact representation (see {@link AEvent#getFastHash()}).
+     * <p>
+     * <i>Note</i>: If the digest is not computed yet,
+     * this call blocks until it is available
+     *
+     * @return The digest of the path element
+     */
+    @Override
+    public HashDigest getFastDigest() {
+        if (! (this.hashFuture instanceof LazyHash)) {
+            return this.getDigest();
+        }
+
+        try {
+            return ((LazyHash) this.hashFuture).getFastDigest();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for the digest of " + this.path + ". Message: " + e.getMessage());
+        } catch (ExecutionException e) {
+            logger.error("Could not compute the digest of " + this.path + ". Message: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the content-defined chunks of the path element.
+     * <p>
+     * <i>Note</i>: If the chunks are not computed yet,
+     * this call blocks until they are available
+     *
+     * @return The chunks or null, if no chunks were computed
+     */
+    @Override
+    public List<Chunk> getChunks() {
+        if (! (this.hashFuture instanceof LazyHash)) {
+            return this.chunks;
+        }
+
+        try {
+            return ((LazyHash) this.hashFuture).getChunks();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for the chunks of " + this.path + ". Message: " + e.getMessage());
+        } catch (ExecutionException e) {
+            logger.error("Could not compute the chunks of " + this.path + ". Message: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    public Future<String> getHashFuture() {
+        if (null == this.hashFuture) {
+            return CompletableFuture.completedFuture(this.getHash());
+        }
+
+        return this.hashFuture;
     }
 
     public long getTimestamp() {
@@ -54,4 +230,38 @@ public abstract class AEvent implements IEvent {
     }
 
     public abstract String getEventName();
+
+    /**
+     * Resolves a hash and chunks which are still being computed
+     * before this event gets serialized
+     *
+     * @param out The stream to write to
+     *
+     * @throws IOException If writing fails
+     */
+    private void writeObject(ObjectOutputStream out)
+            throws IOException {
+        this.hash = this.getHash();
+        this.chunks = this.getChunks();
+        out.defaultWriteObject();
+        this.hash = null;
+        if (this.hashFuture instanceof LazyHash) {
+            this.chunks = null;
+        }
+    }
+
+    /**
+     * Restores the compact representation of the hash
+     *
+     * @param in The stream to read from
+     *
+     * @throws IOException            If reading fails
+     * @throws ClassNotFoundException If the class of a serialized object is unknown
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.digest = HashDigest.valueOf(this.hash);
+        this.hash = null;
+    }
 }
@@ -1,6 +1,9 @@
 package org.rmatil.sync.event.aggregator.core.events;
 
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+
 import java.nio.file.Path;
+import java.util.concurrent.Future;
 
 /**
  * The event fired when a new file is created
@@ -18,12 +21,23 @@ public class CreateEvent extends AEvent {
     public CreateEvent(Path path, String name, String hash, long timestamp) {
         super.path = path;
         super.name = name;
-        super.hash = hash;
+        super.digest = HashDigest.valueOf(hash);
         super.timestamp = timestamp;
     }
 
+    /**
+     * @param path The path which is created
+     * @param name The name of the path which is created
+     * @param timestamp The timestamp in milliseconds of this event
+     * @param hash The hash of the path content which may not be computed yet
+     */
+    public CreateEvent(Path path, String name, long timestamp, Future<String> hash) {
+        this(path, name, null, timestamp);
+        super.hashFuture = hash;
+    }
+
     public CreateEvent(CreateEvent createEvent) {
-        this(createEvent.getPath(), createEvent.getName(), createEvent.getHash(), createEvent.getTimestamp());
+        this(createEvent.getPath(), createEvent.getName(), createEvent.getTimestamp(), createEvent.getHashFuture());
     }
 
     public String getEventName() {
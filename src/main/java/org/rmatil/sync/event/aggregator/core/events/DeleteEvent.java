@@ -1,5 +1,7 @@
 package org.rmatil.sync.event.aggregator.core.events;
 
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+
 import java.nio.file.Path;
 
 public class DeleteEvent extends AEvent {
@@ -15,12 +17,13 @@ public class DeleteEvent extends AEvent {
     public DeleteEvent(Path path, String name, String hash, long timestamp) {
         super.path = path;
         super.name = name;
-        super.hash = hash;
+        super.digest = HashDigest.valueOf(hash);
         super.timestamp = timestamp;
     }
 
     public DeleteEvent(DeleteEvent deleteEvent) {
-        this(deleteEvent.getPath(), deleteEvent.getName(), deleteEvent.getHash(), deleteEvent.getTimestamp());
+        this(deleteEvent.getPath(), deleteEvent.getName(), null, deleteEvent.getTimestamp());
+        super.digest = deleteEvent.getDigest();
     }
 
     public String getEventName() {
@@ -0,0 +1,269 @@
+package org.rmatil.sync.event.aggregator.core.events;
+
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A batch of events which is passed through all modifiers
+ * and aggregators. Besides the events themselves, it maintains
+ * an index of the events by their path and by their hash,
+ * so that modifiers and aggregators do not have to scan
+ * the whole batch for related events.
+ * <p>
+ * The indexes are updated incrementally when events are
+ * added or removed. Since building the index by hash requires
+ * the hashes of all events, it is only built on first access.
+ * <p>
+ * <i>Note</i>: This class is not thread-safe
+ */
+public class EventBatch implements Iterable<IEvent> {
+
+    /**
+     * The events of this batch in insertion order
+     */
+    protected final Set<IEvent> events;
+
+    /**
+     * The events of this batch by their path
+     */
+    protected final Map<Path, List<IEvent>> eventsByPath;
+
+    /**
+     * The events of this batch by their hash.
+     * Null as long as nobody requested it
+     */
+    protected Map<HashDigest, List<IEvent>> eventsByHash;
+
+    public EventBatch() {
+        this.events = new LinkedHashSet<>();
+        this.eventsByPath = new HashMap<>();
+    }
+
+    /**
+     * @param events The events to add to the batch
+     */
+    public EventBatch(Collection<IEvent> events) {
+        this();
+        this.addAll(events);
+    }
+
+    /**
+     * Adds the given event to this batch.
+     * Adding the same event twice has no effect.
+     *
+     * @param event The event to add
+     */
+    public void add(IEvent event) {
+        if (! this.events.add(event)) {
+            return;
+        }
+
+        EventBatch.addToIndex(this.eventsByPath, event.getPath(), event);
+
+        if (null != this.eventsByHash) {
+            EventBatch.addToIndex(this.eventsByHash, event.getDigest(), event);
+        }
+    }
+
+    /**
+     * Adds all given events to this batch
+     *
+     * @param events The events to add
+     */
+    public void addAll(Collection<IEvent> events) {
+        for (IEvent event : events) {
+            this.add(event);
+        }
+    }
+
+    /**
+     * Removes the given event from this batch
+     *
+     * @param event The event to remove
+     *
+     * @return True, if the event was part of this batch
+     */
+    public boolean remove(IEvent event) {
+        if (! this.events.remove(event)) {
+            return false;
+        }
+
+        EventBatch.removeFromIndex(this.eventsByPath, event.getPath(), event);
+
+        if (null != this.eventsByHash) {
+            EventBatch.removeFromIndex(this.eventsByHash, event.getDigest(), event);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes all given events from this batch
+     *
+     * @param events The events to remove
+     */
+    public void removeAll(Collection<IEvent> events) {
+        for (IEvent event : events) {
+            this.remove(event);
+        }
+    }
+
+    /**
+     * Returns whether the given event is part of this batch
+     *
+     * @param event The event to check
+     *
+     * @return True, if the event is part of this batch
+     */
+    public boolean contains(IEvent event) {
+        return this.events.contains(event);
+    }
+
+    /**
+     * Returns a new list of all events, sorted by their timestamp
+     *
+     * @return The sorted events
+     */
+    public List<IEvent> getEvents() {
+        List<IEvent> sortedEvents = new ArrayList<>(this.events);
+        Collections.sort(sortedEvents);
+
+        return sortedEvents;
+    }
+
+    /**
+     * Returns all paths for which this batch contains events
+     *
+     * @return The paths of all events
+     */
+    public Set<Path> getPaths() {
+        return Collections.unmodifiableSet(this.eventsByPath.keySet());
+    }
+
+    /**
+     * Returns all events having the given path, sorted by their timestamp.
+     * For a MoveEvent, this is the path from which it was moved.
+     *
+     * @param path The path of the events
+     *
+     * @return The sorted events of the path, an empty list if there are none
+     */
+    public List<IEvent> getEventsForPath(Path path) {
+        return EventBatch.getSorted(this.eventsByPath, path);
+    }
+
+    /**
+     * Returns all hashes of the events in this batch.
+     * Events without a hash are represented by null.
+     *
+     * @return The hashes of all events
+     */
+    public Set<HashDigest> getHashes() {
+        return Collections.unmodifiableSet(this.getEventsByHash().keySet());
+    }
+
+    /**
+     * Returns all events having the given hash, sorted by their timestamp
+     *
+     * @param hash The hash of the events, null for events without a hash
+     *
+     * @return The sorted events having the hash, an empty list if there are none
+     */
+    public List<IEvent> getEventsForHash(String hash) {
+        return this.getEventsForDigest(HashDigest.valueOf(hash));
+    }
+
+    /**
+     * Returns all events having the given hash, sorted by their timestamp
+     *
+     * @param digest The digest of the hash, null for events without a hash
+     *
+     * @return The sorted events having the hash, an empty list if there are none
+     */
+    public List<IEvent> getEventsForDigest(HashDigest digest) {
+        return EventBatch.getSorted(this.getEventsByHash(), digest);
+    }
+
+    /**
+     * Returns the number of events in this batch
+     *
+     * @return The number of events
+     */
+    public int size() {
+        return this.events.size();
+    }
+
+    /**
+     * Returns whether this batch contains no events
+     *
+     * @return True, if there are no events
+     */
+    public boolean isEmpty() {
+        return this.events.isEmpty();
+    }
+
+    /**
+     * Iterates over a snapshot of the events sorted by their timestamp.
+     * Therefore, the batch may be modified while iterating.
+     *
+     * @return The iterator
+     */
+    @Override
+    public Iterator<IEvent> iterator() {
+        return this.getEvents().iterator();
+    }
+
+    protected Map<HashDigest, List<IEvent>> getEventsByHash() {
+        if (null == this.eventsByHash) {
+            this.eventsByHash = new HashMap<>();
+            for (IEvent event : this.events) {
+                EventBatch.addToIndex(this.eventsByHash, event.getDigest(), event);
+            }
+        }
+
+        return this.eventsByHash;
+    }
+
+    protected static <K> void addToIndex(Map<K, List<IEvent>> index, K key, IEvent event) {
+        List<IEvent> indexedEvents = index.get(key);
+        if (null == indexedEvents) {
+            indexedEvents = new ArrayList<>(1);
+            index.put(key, indexedEvents);
+        }
+
+        indexedEvents.add(event);
+    }
+
+    protected static <K> void removeFromIndex(Map<K, List<IEvent>> index, K key, IEvent event) {
+        List<IEvent> indexedEvents = index.get(key);
+        if (null == indexedEvents) {
+            return;
+        }
+
+        // remove by identity
+        for (Iterator<IEvent> iterator = indexedEvents.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() == event) {
+                iterator.remove();
+                break;
+            }
+        }
+
+        if (indexedEvents.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    protected static <K> List<IEvent> getSorted(Map<K, List<IEvent>> index, K key) {
+        List<IEvent> indexedEvents = index.get(key);
+        if (null == indexedEvents) {
+            return new ArrayList<>();
+        }
+
+        List<IEvent> sortedEvents = new ArrayList<>(indexedEvents);
+        Collections.sort(sortedEvents);
+
+        return sortedEvents;
+    }
+}
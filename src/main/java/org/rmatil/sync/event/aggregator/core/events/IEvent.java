@@ -1,7 +1,13 @@
 package org.rmatil.sync.event.aggregator.core.events;
 
+import org.rmatil.sync.event.aggregator.core.hashing.Chunk;
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+
 import java.io.Serializable;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 /**
  * An interface specifying an event which is
@@ -30,6 +36,62 @@ public interface IEvent extends Comparable<IEvent>, Serializable {
      */
     String getHash();
 
+    /**
+     * The digest used to compare this event with other events
+     * of the same batch for equality of their contents.
+     * Unless a fast digest is computed (see {@link org.rmatil.sync.event.aggregator.core.hashing.HashingMode#TWO_TIER}),
+     * this is the hash itself.
+     * <p>
+     * <i>Note</i>: Never compare it to the hashes of stored versions
+     *
+     * @return The digest of the path element
+     */
+    default String getFastHash() {
+        return this.getHash();
+    }
+
+    /**
+     * The hash of the path element in its compact representation,
+     * which is cheaper to compare than the hash itself
+     *
+     * @return The digest of the hash, null if there is no hash
+     */
+    default HashDigest getDigest() {
+        return HashDigest.valueOf(this.getHash());
+    }
+
+    /**
+     * The digest used to compare this event with other events
+     * in its compact representation (see {@link IEvent#getFastHash()})
+     *
+     * @return The digest of the path element
+     */
+    default HashDigest getFastDigest() {
+        return HashDigest.valueOf(this.getFastHash());
+    }
+
+    /**
+     * The content-defined chunks of the path element in the order of their offset,
+     * if a chunker is configured (see {@link org.rmatil.sync.event.aggregator.core.hashing.ContentChunker}).
+     * Listeners can use them to only transfer the chunks which changed.
+     *
+     * @return The chunks or null, if no chunks were computed
+     */
+    default List<Chunk> getChunks() {
+        return null;
+    }
+
+    /**
+     * The hash of the path element as a handle which
+     * may not be computed yet. Use this to pass the hash on
+     * to another event without computing it.
+     *
+     * @return The handle to the hash of the path element
+     */
+    default Future<String> getHashFuture() {
+        return CompletableFuture.completedFuture(this.getHash());
+    }
+
     /**
      * Returns the name of the event
      *
@@ -1,6 +1,9 @@
 package org.rmatil.sync.event.aggregator.core.events;
 
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+
 import java.nio.file.Path;
+import java.util.concurrent.Future;
 
 public class ModifyEvent extends AEvent {
 
@@ -15,12 +18,23 @@ public class ModifyEvent extends AEvent {
     public ModifyEvent(Path path, String name, String hash, long timestamp) {
         super.path = path;
         super.name = name;
-        super.hash = hash;
+        super.digest = HashDigest.valueOf(hash);
         super.timestamp = timestamp;
     }
 
+    /**
+     * @param path The path which is modified
+     * @param name The name of the path which is modified
+     * @param timestamp The timestamp in milliseconds of this event
+     * @param hash The hash of the path content which may not be computed yet
+     */
+    public ModifyEvent(Path path, String name, long timestamp, Future<String> hash) {
+        this(path, name, null, timestamp);
+        super.hashFuture = hash;
+    }
+
     public ModifyEvent(ModifyEvent modifyEvent) {
-        this(modifyEvent.getPath(), modifyEvent.getName(), modifyEvent.getHash(), modifyEvent.getTimestamp());
+        this(modifyEvent.getPath(), modifyEvent.getName(), modifyEvent.getTimestamp(), modifyEvent.getHashFuture());
     }
 
     public String getEventName() {
@@ -1,6 +1,9 @@
 package org.rmatil.sync.event.aggregator.core.events;
 
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+
 import java.nio.file.Path;
+import java.util.concurrent.Future;
 
 public class MoveEvent extends AEvent {
 
@@ -19,12 +22,27 @@ public class MoveEvent extends AEvent {
         super.path = oldPath;
         this.newPath = newPath;
         super.name = name;
-        super.hash = hash;
+        super.digest = HashDigest.valueOf(hash);
         super.timestamp = timestamp;
     }
 
+    /**
+     * @param oldPath The path which is modified
+     * @param newPath The new path to wich the oldPath was moved
+     * @param name The name of the path which is modified
+     * @param timestamp The timestamp in milliseconds of this event
+     * @param hash The hash of the path content which may not be computed yet
+     */
+    public MoveEvent(Path oldPath, Path newPath, String name, long timestamp, Future<String> hash) {
+        this(oldPath, newPath, name, null, timestamp);
+        super.hashFuture = hash;
+    }
+
     public MoveEvent(MoveEvent moveEvent) {
-        this(moveEvent.getPath(), moveEvent.getNewPath(), moveEvent.getName(), moveEvent.getHash(), moveEvent.getTimestamp());
+        this(moveEvent.getPath(), moveEvent.getNewPath(), moveEvent.getName(), null, moveEvent.getTimestamp());
+        // the hash of a move detected by the identity of the moved element is not computed until requested
+        super.digest = moveEvent.digest;
+        super.hashFuture = moveEvent.hashFuture;
     }
 
     public Path getNewPath() {
@@ -0,0 +1,88 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import java.io.Serializable;
+
+/**
+ * A content-defined chunk of a file (see {@link ContentChunker}).
+ * <p>
+ * Instances are immutable.
+ */
+public final class Chunk implements Serializable {
+
+    /**
+     * The position of the first byte of the chunk within the file
+     */
+    private final long offset;
+
+    /**
+     * The number of bytes of the chunk
+     */
+    private final int length;
+
+    /**
+     * The hex encoded SHA-256 hash of the bytes of the chunk
+     */
+    private final String hash;
+
+    /**
+     * @param offset The position of the first byte of the chunk within the file
+     * @param length The number of bytes of the chunk
+     * @param hash   The hex encoded SHA-256 hash of the bytes of the chunk
+     */
+    public Chunk(long offset, int length, String hash) {
+        this.offset = offset;
+        this.length = length;
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the position of the first byte of the chunk within the file
+     *
+     * @return The offset in bytes
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns the number of bytes of the chunk
+     *
+     * @return The length in bytes
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the SHA-256 hash of the bytes of the chunk
+     *
+     * @return The hex encoded hash
+     */
+    public String getHash() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (! (o instanceof Chunk)) {
+            return false;
+        }
+
+        Chunk other = (Chunk) o;
+        return this.offset == other.offset && this.length == other.length && this.hash.equals(other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.hash + "@" + this.offset + "+" + this.length;
+    }
+}
@@ -0,0 +1,459 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.rmatil.sync.commons.hashing.HashingAlgorithm;
+import org.rmatil.sync.event.aggregator.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Splits files into content-defined chunks and hashes each of them,
+ * so that listeners only have to transfer the chunks which changed.
+ * <p>
+ * Chunk boundaries are found by a gear hash rolling over the contents:
+ * A boundary is placed once the topmost bits of the hash are zero,
+ * but not before the minimum and at the latest at the maximum chunk size.
+ * Since the hash only depends on the last 64 bytes, inserting or removing bytes
+ * only changes the chunks around the modification, all others keep their boundaries.
+ * <p>
+ * The chunks of the previous version of each file are kept. Chunks whose
+ * fast fingerprint matches a chunk of the previous version reuse its hash,
+ * so that only the hashes of changed chunks are computed. The fingerprint is keyed
+ * by a random key of this JVM, hence chunks colliding with a previous one can not be crafted.
+ * If neither the size nor the modification time of a file changed, its chunks are returned without reading it.
+ * <p>
+ * The hash of the whole file is computed while reading it as well (see {@link ContentChunker#chunkFile(Path)}),
+ * so that a file is only read once to hash and to chunk it. Hence, every byte of a
+ * changed file still passes through SHA-256 once. A file changing while being read is read again,
+ * at most {@link WriteStabilityTracker#MAX_HASHING_ATTEMPTS} times. If it still changes,
+ * no hash of the whole file is returned, so that it is computed by the provider of the
+ * {@link LazyHash} instead, e.g. one wrapped by a {@link WriteStabilityTracker}.
+ */
+public class ContentChunker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentChunker.class);
+
+    /**
+     * The default minimum size of a chunk in bytes
+     */
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * The default average number of bytes after the minimum size until a boundary is found
+     */
+    public static final int DEFAULT_AVERAGE_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The default maximum size of a chunk in bytes
+     */
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * The default maximum number of files whose chunks are kept
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    /**
+     * The seed of the gear table. Must never change,
+     * otherwise the boundaries of all chunks change as well
+     */
+    protected static final long GEAR_SEED = 0x6765617248617368L;
+
+    /**
+     * The random value added to the rolling hash for each byte value
+     */
+    protected static final long[] GEAR = ContentChunker.createGearTable(GEAR_SEED);
+
+    protected static final HashFunction CHUNK_HASH_FUNCTION = Hashing.sha256();
+
+    /**
+     * The function identifying unchanged chunks of the previous version
+     */
+    protected static final HashFunction FINGERPRINT_FUNCTION = ContentChunker.createFingerprintFunction();
+
+    /**
+     * Whether the hash of a whole file equals the one of {@link HashingService#hash(Path)}
+     */
+    protected static final boolean HASHES_FILES = HashingAlgorithm.SHA_256 == Config.getDefaultConfiguration().getHashingAlgorithm();
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The chunks and the hash of a file, computed by reading it once
+     */
+    public static class ChunkedFile {
+
+        protected final List<Chunk> chunks;
+
+        protected final String hash;
+
+        /**
+         * @param chunks The chunks in the order of their offset
+         * @param hash   The hash of the whole file. May be null
+         */
+        public ChunkedFile(List<Chunk> chunks, String hash) {
+            this.chunks = chunks;
+            this.hash = hash;
+        }
+
+        public List<Chunk> getChunks() {
+            return this.chunks;
+        }
+
+        /**
+         * Returns the hash of the whole file, as computed by {@link HashingService#hash(Path)}
+         *
+         * @return The hash or null, if it has to be computed separately
+         */
+        public String getHash() {
+            return this.hash;
+        }
+    }
+
+    /**
+     * The chunks of the previous version of a file
+     */
+    protected static class Entry {
+
+        protected final long size;
+
+        /**
+         * The last modification time in nanoseconds
+         */
+        protected final long lastModified;
+
+        protected final List<Chunk> chunks;
+
+        /**
+         * The fingerprints of the chunks, in the same order
+         */
+        protected final List<HashCode> fingerprints;
+
+        /**
+         * The hash of the whole file. May be null
+         */
+        protected final String hash;
+
+        protected Entry(long size, long lastModified, List<Chunk> chunks, List<HashCode> fingerprints, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.chunks = chunks;
+            this.fingerprints = fingerprints;
+            this.hash = hash;
+        }
+    }
+
+    protected final int minChunkSize;
+
+    protected final int averageChunkSize;
+
+    protected final int maxChunkSize;
+
+    /**
+     * Selects the topmost bits of the rolling hash which must be zero at a boundary
+     */
+    protected final long boundaryMask;
+
+    /**
+     * The chunks of the previous version of each file
+     */
+    protected final Cache<Path, Entry> previousVersions;
+
+    /**
+     * The number of chunks hashed by SHA-256
+     */
+    protected final LongAdder hashedChunks;
+
+    /**
+     * The number of chunks whose hash was taken from the previous version
+     */
+    protected final LongAdder reusedChunks;
+
+    public ContentChunker() {
+        this(DEFAULT_MIN_CHUNK_SIZE, DEFAULT_AVERAGE_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param minChunkSize     The minimum size of a chunk in bytes
+     * @param averageChunkSize The average number of bytes after the minimum size until a boundary is found. Must be a power of two
+     * @param maxChunkSize     The maximum size of a chunk in bytes
+     * @param maximumSize      The maximum number of files whose chunks are kept
+     *
+     * @throws IllegalArgumentException If the sizes are not positive and ascending or the average size is not a power of two
+     */
+    public ContentChunker(int minChunkSize, int averageChunkSize, int maxChunkSize, long maximumSize) {
+        if (minChunkSize < 1 || minChunkSize > averageChunkSize || averageChunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("The minimum, average and maximum chunk size must be positive and ascending");
+        }
+
+        if (1 != Integer.bitCount(averageChunkSize)) {
+            throw new IllegalArgumentException("The average chunk size must be a power of two");
+        }
+
+        this.minChunkSize = minChunkSize;
+        this.averageChunkSize = averageChunkSize;
+        this.maxChunkSize = maxChunkSize;
+
+        int nrOfBits = Integer.numberOfTrailingZeros(averageChunkSize);
+        this.boundaryMask = (0 == nrOfBits) ? 0L : - 1L << (Long.SIZE - nrOfBits);
+
+        this.previousVersions = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.hashedChunks = new LongAdder();
+        this.reusedChunks = new LongAdder();
+    }
+
+    /**
+     * Splits the given file into content-defined chunks and hashes them
+     *
+     * @param path The file to chunk
+     *
+     * @return The chunks in the order of their offset or null, if the path is not a regular file or could not be read
+     */
+    public List<Chunk> chunk(Path path) {
+        ChunkedFile chunkedFile = this.chunkFile(path);
+
+        return (null == chunkedFile) ? null : chunkedFile.getChunks();
+    }
+
+    /**
+     * Splits the given file into content-defined chunks and hashes them
+     * as well as the whole file, reading it only once. If the file changes
+     * while being read, it is read again
+     *
+     * @param path The file to chunk
+     *
+     * @return The chunks and the hash or null, if the path is not a regular file or could not be read.
+     * The hash is null, if the file kept on changing while being read
+     */
+    public ChunkedFile chunkFile(Path path) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (! attributes.isRegularFile()) {
+            return null;
+        }
+
+        Entry previous = this.previousVersions.getIfPresent(path);
+        if (null != previous && ContentChunker.isUnchanged(previous, attributes)) {
+            this.reusedChunks.add(previous.chunks.size());
+            return new ChunkedFile(previous.chunks, previous.hash);
+        }
+
+        Map<HashCode, String> previousHashes = new HashMap<>();
+        if (null != previous) {
+            ContentChunker.addHashes(previousHashes, previous);
+        }
+
+        Entry entry = null;
+        BasicFileAttributes attributesAfterChunking = null;
+        long chunkingStart = 0L;
+        for (int attempt = 1; attempt <= WriteStabilityTracker.MAX_HASHING_ATTEMPTS; attempt++) {
+            chunkingStart = System.currentTimeMillis();
+            entry = this.read(path, attributes, previousHashes);
+            if (null == entry) {
+                return null;
+            }
+
+            try {
+                attributesAfterChunking = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                logger.trace("Not keeping the chunks of " + path + " since it could not be read after chunking. Message: " + e.getMessage());
+                attributesAfterChunking = null;
+                break;
+            }
+
+            if (ContentChunker.isUnchanged(entry, attributesAfterChunking)) {
+                break;
+            }
+
+            logger.debug("Chunking " + path + " again since it changed while being read (attempt " + attempt + ")");
+            // unchanged chunks of the discarded read do not have to be hashed again
+            ContentChunker.addHashes(previousHashes, entry);
+            attributes = attributesAfterChunking;
+        }
+
+        if (null == attributesAfterChunking || ! ContentChunker.isUnchanged(entry, attributesAfterChunking)) {
+            // the hash of the whole file may mix several versions. The fingerprints are still
+            // valid, but the attributes must not be used to skip reading it the next time
+            entry = new Entry(- 1L, - 1L, entry.chunks, entry.fingerprints, null);
+        } else if (chunkingStart - attributes.lastModifiedTime().toMillis() < ContentHashCache.RACY_INTERVAL) {
+            entry = new Entry(- 1L, - 1L, entry.chunks, entry.fingerprints, entry.hash);
+        }
+
+        if (null != attributesAfterChunking) {
+            this.previousVersions.put(path, entry);
+        }
+
+        return new ChunkedFile(entry.chunks, entry.hash);
+    }
+
+    /**
+     * Returns the minimum size of a chunk
+     *
+     * @return The minimum chunk size in bytes
+     */
+    public int getMinChunkSize() {
+        return this.minChunkSize;
+    }
+
+    /**
+     * Returns the average number of bytes after the minimum size until a boundary is found
+     *
+     * @return The average chunk size in bytes
+     */
+    public int getAverageChunkSize() {
+        return this.averageChunkSize;
+    }
+
+    /**
+     * Returns the maximum size of a chunk
+     *
+     * @return The maximum chunk size in bytes
+     */
+    public int getMaxChunkSize() {
+        return this.maxChunkSize;
+    }
+
+    /**
+     * Returns the number of chunks hashed by SHA-256
+     *
+     * @return The number of hashed chunks
+     */
+    public long getNrOfHashedChunks() {
+        return this.hashedChunks.sum();
+    }
+
+    /**
+     * Returns the number of chunks whose hash was taken from the previous version of their file
+     *
+     * @return The number of reused chunks
+     */
+    public long getNrOfReusedChunks() {
+        return this.reusedChunks.sum();
+    }
+
+    /**
+     * Reads the given file once, splitting it into chunks and hashing it
+     *
+     * @param path           The file to read
+     * @param attributes     The attributes of the file read before
+     * @param previousHashes The hashes of previously read chunks by their fingerprint
+     *
+     * @return The chunks of the file or null, if it could not be read
+     */
+    protected Entry read(Path path, BasicFileAttributes attributes, Map<HashCode, String> previousHashes) {
+        List<Chunk> chunks = new ArrayList<>();
+        List<HashCode> fingerprints = new ArrayList<>();
+        Hasher fileHasher = CHUNK_HASH_FUNCTION.newHasher();
+        long start = System.nanoTime();
+        long nrOfReadBytes = 0L;
+
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] chunk = new byte[this.maxChunkSize];
+            int length = 0;
+            long offset = 0L;
+            long hash = 0L;
+
+            int nrOfBytes;
+            while (- 1 != (nrOfBytes = in.read(buffer))) {
+                fileHasher.putBytes(buffer, 0, nrOfBytes);
+                nrOfReadBytes += nrOfBytes;
+
+                for (int i = 0; i < nrOfBytes; i++) {
+                    chunk[length++] = buffer[i];
+                    hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+
+                    if ((length >= this.minChunkSize && 0L == (hash & this.boundaryMask)) || length == this.maxChunkSize) {
+                        this.addChunk(chunks, fingerprints, previousHashes, chunk, offset, length);
+                        offset += length;
+                        length = 0;
+                        hash = 0L;
+                    }
+                }
+            }
+
+            if (length > 0) {
+                this.addChunk(chunks, fingerprints, previousHashes, chunk, offset, length);
+            }
+        } catch (IOException e) {
+            logger.error("Could not chunk path " + path + ": " + e.getMessage());
+            return null;
+        }
+
+        HashingService.recordHashedFile(nrOfReadBytes, System.nanoTime() - start);
+
+        return new Entry(
+                attributes.size(),
+                attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                Collections.unmodifiableList(chunks),
+                fingerprints,
+                HASHES_FILES ? fileHasher.hash().toString() : null
+        );
+    }
+
+    protected void addChunk(List<Chunk> chunks, List<HashCode> fingerprints, Map<HashCode, String> previousHashes, byte[] chunk, long offset, int length) {
+        HashCode fingerprint = FINGERPRINT_FUNCTION.hashBytes(chunk, 0, length);
+        String hash = previousHashes.get(fingerprint);
+
+        if (null == hash) {
+            hash = CHUNK_HASH_FUNCTION.hashBytes(chunk, 0, length).toString();
+            this.hashedChunks.increment();
+        } else {
+            this.reusedChunks.increment();
+        }
+
+        chunks.add(new Chunk(offset, length, hash));
+        fingerprints.add(fingerprint);
+    }
+
+    protected static void addHashes(Map<HashCode, String> hashes, Entry entry) {
+        for (int i = 0; i < entry.chunks.size(); i++) {
+            hashes.put(entry.fingerprints.get(i), entry.chunks.get(i).getHash());
+        }
+    }
+
+    protected static boolean isUnchanged(Entry entry, BasicFileAttributes attributes) {
+        return entry.size == attributes.size() &&
+                entry.lastModified == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    protected static HashFunction createFingerprintFunction() {
+        // fingerprints are only kept in memory, hence a new key is used on each start
+        SecureRandom random = new SecureRandom();
+
+        return Hashing.sipHash24(random.nextLong(), random.nextLong());
+    }
+
+    protected static long[] createGearTable(long seed) {
+        // the algorithm of java.util.Random is specified, hence the table is the same on all platforms
+        Random random = new Random(seed);
+        long[] gear = new long[256];
+        for (int i = 0; i < gear.length; i++) {
+            gear[i] = random.nextLong();
+        }
+
+        return gear;
+    }
+}
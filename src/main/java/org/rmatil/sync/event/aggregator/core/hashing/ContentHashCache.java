@@ -0,0 +1,281 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the hashes of regular files by their identity on the filesystem
+ * (see {@link BasicFileAttributes#fileKey()}), their size and their last modification time.
+ * If none of them changed since the file was hashed the last time,
+ * the cached hash is returned without reading the file again.
+ * Therefore, touching a file, changing its permissions or being notified
+ * multiple times about the same file does not require to hash it again.
+ * <p>
+ * Hashes are only cached if the file did not change while being hashed
+ * and if it was not modified within {@link ContentHashCache#RACY_INTERVAL} before.
+ * Otherwise, a modification within the resolution of the modification time
+ * could not be distinguished from the cached state.
+ * <p>
+ * Directories are never cached, since their hash depends on their children.
+ * <p>
+ * Optionally, the cache is persisted to a file so that it survives restarts.
+ */
+public class ContentHashCache implements IHashProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentHashCache.class);
+
+    /**
+     * The default maximum number of cached files
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 100000L;
+
+    /**
+     * Files modified within this interval (in milliseconds)
+     * before being hashed are not cached
+     */
+    public static final long RACY_INTERVAL = 1000L;
+
+    /**
+     * Identifies the format of a persisted cache
+     */
+    protected static final int FILE_FORMAT_VERSION = 1;
+
+    /**
+     * The cached state of a single file
+     */
+    protected static class Entry {
+
+        protected final long size;
+
+        /**
+         * The last modification time in nanoseconds
+         */
+        protected final long lastModified;
+
+        protected final String hash;
+
+        protected Entry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    protected final Cache<String, Entry> cache;
+
+    /**
+     * The file to which the cache is persisted. May be null
+     */
+    protected final Path persistenceFile;
+
+    protected final LongAdder hitCount;
+
+    protected final LongAdder missCount;
+
+    public ContentHashCache() {
+        this(DEFAULT_MAXIMUM_SIZE, null);
+    }
+
+    /**
+     * @param maximumSize     The maximum number of cached files
+     * @param persistenceFile The file to which the cache is persisted or null, if it should not be persisted
+     */
+    public ContentHashCache(long maximumSize, Path persistenceFile) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.persistenceFile = persistenceFile;
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+    }
+
+    /**
+     * Returns the hash of the given path element. The file
+     * is only read if it is not cached or changed since.
+     *
+     * @param path The path element to hash
+     *
+     * @return The hash or null, if the path is neither a file nor a directory or could not be read
+     *
+     * @see HashingService#hash(Path)
+     */
+    @Override
+    public String hash(Path path) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return HashingService.hash(path);
+        }
+
+        if (! attributes.isRegularFile()) {
+            return HashingService.hash(path);
+        }
+
+        String key = ContentHashCache.getKey(path, attributes);
+        Entry entry = this.cache.getIfPresent(key);
+
+        if (null != entry && ContentHashCache.isUnchanged(entry, attributes)) {
+            this.hitCount.increment();
+            return entry.hash;
+        }
+
+        this.missCount.increment();
+
+        long hashingStart = System.currentTimeMillis();
+        String hash = HashingService.hash(path);
+
+        if (null == hash) {
+            return null;
+        }
+
+        try {
+            BasicFileAttributes attributesAfterHashing = Files.readAttributes(path, BasicFileAttributes.class);
+            Entry newEntry = new Entry(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), hash);
+
+            if (ContentHashCache.isUnchanged(newEntry, attributesAfterHashing) &&
+                    hashingStart - attributes.lastModifiedTime().toMillis() >= RACY_INTERVAL) {
+                this.cache.put(key, newEntry);
+            }
+        } catch (IOException e) {
+            logger.trace("Not caching the hash of " + path + " since it could not be read after hashing. Message: " + e.getMessage());
+        }
+
+        return hash;
+    }
+
+    /**
+     * Returns the number of hashes returned from the cache
+     *
+     * @return The number of cache hits
+     */
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * Returns the number of files which had to be read
+     *
+     * @return The number of cache misses
+     */
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * Returns the number of cached files
+     *
+     * @return The number of cached files
+     */
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * Removes all cached hashes
+     */
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * Returns the file to which the cache is persisted
+     *
+     * @return The file or null, if the cache is not persisted
+     */
+    public Path getPersistenceFile() {
+        return this.persistenceFile;
+    }
+
+    /**
+     * Adds all entries of the persistence file to the cache.
+     * Does nothing if the cache is not persisted or the file does not exist yet.
+     *
+     * @throws IOException If reading the file failed
+     */
+    public void load()
+            throws IOException {
+        if (null == this.persistenceFile || ! Files.exists(this.persistenceFile)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.persistenceFile)))) {
+            int version = in.readInt();
+            if (FILE_FORMAT_VERSION != version) {
+                logger.info("Ignoring persisted hash cache " + this.persistenceFile + " having unknown format version " + version);
+                return;
+            }
+
+            int nrOfEntries = in.readInt();
+            for (int i = 0; i < nrOfEntries; i++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String hash = in.readUTF();
+
+                this.cache.put(key, new Entry(size, lastModified, hash));
+            }
+        }
+
+        logger.debug("Loaded " + this.cache.size() + " hashes from " + this.persistenceFile);
+    }
+
+    /**
+     * Writes all cached entries to the persistence file.
+     * Does nothing if the cache is not persisted.
+     *
+     * @throws IOException If writing the file failed
+     */
+    public void save()
+            throws IOException {
+        if (null == this.persistenceFile) {
+            return;
+        }
+
+        // write to a temporary file first to never leave a partially written cache behind
+        Path tmpFile = this.persistenceFile.resolveSibling(this.persistenceFile.getFileName() + ".tmp");
+        // entries changed concurrently may or may not be contained
+        Map<String, Entry> entries = new HashMap<>(this.cache.asMap());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().lastModified);
+                out.writeUTF(entry.getValue().hash);
+            }
+        }
+
+        Files.move(tmpFile, this.persistenceFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        logger.debug("Saved hash cache to " + this.persistenceFile);
+    }
+
+    protected static String getKey(Path path, BasicFileAttributes attributes) {
+        // not all filesystems provide a key identifying the file
+        Object fileKey = attributes.fileKey();
+        if (null == fileKey) {
+            return path.toAbsolutePath().toString();
+        }
+
+        return fileKey.toString();
+    }
+
+    protected static boolean isUnchanged(Entry entry, BasicFileAttributes attributes) {
+        return entry.size == attributes.size() &&
+                entry.lastModified == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,144 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import java.util.Arrays;
+
+/**
+ * A compact, immutable representation of a hash.
+ * <p>
+ * Hashes are passed around as hex strings, which take twice
+ * the space of their binary value plus the overhead of a string.
+ * Lowercase hex hashes whose length is a multiple of 16 characters
+ * (e.g. SHA-256 or the 128 bit fast digests) are therefore stored as longs.
+ * Any other value is kept as is, so that {@link HashDigest#toString()}
+ * always returns the original value.
+ * <p>
+ * Equality and hash code only compare the longs, the hash code is computed once.
+ * The hex string is built each time it is requested and not kept,
+ * so that the digest stays compact. Compare digests instead of their strings.
+ */
+public final class HashDigest {
+
+    /**
+     * The number of hex characters encoded in a single long
+     */
+    protected static final int HEX_CHARS_PER_WORD = 16;
+
+    protected static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The binary value of the hash. Null if the hash is not hex encoded
+     */
+    private final long[] words;
+
+    /**
+     * The original value of a hash which is not hex encoded
+     */
+    private final String value;
+
+    private final int hashCode;
+
+    private HashDigest(long[] words, String value) {
+        this.words = words;
+        this.value = value;
+        this.hashCode = (null == words) ? value.hashCode() : (int) (words[0] ^ (words[0] >>> 32));
+    }
+
+    /**
+     * Returns the digest of the given hash
+     *
+     * @param hash The hash, usually hex encoded. May be null
+     *
+     * @return The digest or null, if the hash is null
+     */
+    public static HashDigest valueOf(String hash) {
+        if (null == hash) {
+            return null;
+        }
+
+        if (hash.isEmpty() || 0 != hash.length() % HEX_CHARS_PER_WORD) {
+            return new HashDigest(null, hash);
+        }
+
+        long[] words = new long[hash.length() / HEX_CHARS_PER_WORD];
+        for (int i = 0; i < hash.length(); i++) {
+            int nibble = HashDigest.toNibble(hash.charAt(i));
+            if (nibble < 0) {
+                // not a canonical hex string, keep the original value
+                return new HashDigest(null, hash);
+            }
+
+            words[i / HEX_CHARS_PER_WORD] = (words[i / HEX_CHARS_PER_WORD] << 4) | nibble;
+        }
+
+        return new HashDigest(words, null);
+    }
+
+    /**
+     * Returns whether the hash is stored in its binary representation
+     *
+     * @return True, if the hash is hex encoded
+     */
+    public boolean isBinary() {
+        return null != this.words;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (! (o instanceof HashDigest)) {
+            return false;
+        }
+
+        HashDigest other = (HashDigest) o;
+
+        if (this.hashCode != other.hashCode) {
+            return false;
+        }
+
+        if (null != this.words) {
+            return Arrays.equals(this.words, other.words);
+        }
+
+        return this.value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    /**
+     * Returns the hash as it was passed to {@link HashDigest#valueOf(String)}
+     *
+     * @return The hash
+     */
+    @Override
+    public String toString() {
+        if (null == this.words) {
+            return this.value;
+        }
+
+        char[] chars = new char[this.words.length * HEX_CHARS_PER_WORD];
+        for (int i = 0; i < chars.length; i++) {
+            int shift = (HEX_CHARS_PER_WORD - 1 - i % HEX_CHARS_PER_WORD) * 4;
+            chars[i] = HEX_CHARS[(int) (this.words[i / HEX_CHARS_PER_WORD] >>> shift) & 0xF];
+        }
+
+        return new String(chars);
+    }
+
+    protected static int toNibble(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+
+        return - 1;
+    }
+}
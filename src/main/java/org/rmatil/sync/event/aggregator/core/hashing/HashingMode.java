@@ -0,0 +1,25 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+/**
+ * Defines which hashes are computed for changed path elements
+ */
+public enum HashingMode {
+
+    /**
+     * Only the hash of the configured hashing algorithm is computed
+     * (see {@link org.rmatil.sync.event.aggregator.config.Config#getHashingAlgorithm()})
+     * and used for all comparisons
+     */
+    FULL,
+
+    /**
+     * Modifiers compare events by a fast 128 bit non-cryptographic digest
+     * (see {@link HashingService#fastHash(java.nio.file.Path)}).
+     * The hash of the configured hashing algorithm is only computed for events
+     * passing all modifiers or which have to be compared to stored versions.
+     * <p>
+     * <i>Note</i>: The fast digest is not collision resistant.
+     * Do not use this mode if untrusted parties may write to the watched directory.
+     */
+    TWO_TIER
+}
@@ -0,0 +1,380 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.event.aggregator.config.Config;
+import org.rmatil.sync.event.aggregator.core.FairExecutor;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.MoveEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes hashes of path elements on a bounded pool of worker threads,
+ * so that the threads notifying about filesystem changes
+ * are not blocked by reading the contents of (large) files.
+ * <p>
+ * Hashes of events which are not computed yet (see {@link LazyHash})
+ * can be resolved in parallel using {@link HashingService#resolve(Collection)}.
+ * <p>
+ * If the queue of pending hash computations is full, the hash is computed
+ * on the thread submitting or resolving it, i.e. the one aggregating flushed events.
+ * This throttles the producer instead of growing the queue without limit.
+ */
+public class HashingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashingService.class);
+
+    /**
+     * The default number of worker threads
+     */
+    public static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default number of hash computations which may be queued
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /**
+     * The function computing fast digests
+     */
+    protected static final HashFunction FAST_HASH_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * The fast digest of an empty file
+     */
+    public static final String EMPTY_FAST_HASH = FAST_HASH_FUNCTION.hashBytes(new byte[0]).toString();
+
+    protected static final HashDigest EMPTY_HASH_DIGEST = HashDigest.valueOf(Hash.EMPTY_SHA256_HASH);
+
+    protected static final HashDigest EMPTY_FAST_HASH_DIGEST = HashDigest.valueOf(EMPTY_FAST_HASH);
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of bytes of all files hashed in this JVM
+     */
+    protected static final LongAdder HASHED_BYTES = new LongAdder();
+
+    /**
+     * The time spent hashing files in this JVM, summed up over all threads (in nanoseconds)
+     */
+    protected static final LongAdder HASHING_NANOS = new LongAdder();
+
+    /**
+     * The pool owned by this service. Null if the pool is shared
+     */
+    protected FairExecutor executorService;
+
+    /**
+     * The lane of the pool on which the hashes are computed
+     */
+    protected FairExecutor.Lane lane;
+
+    /**
+     * The cache of hashes of unchanged files. May be null
+     */
+    protected ContentHashCache contentHashCache;
+
+    /**
+     * @param poolSize  The number of worker threads computing hashes
+     * @param queueSize The maximum number of pending hash computations
+     */
+    public HashingService(int poolSize, int queueSize) {
+        this(poolSize, queueSize, null);
+    }
+
+    /**
+     * @param poolSize         The number of worker threads computing hashes
+     * @param queueSize        The maximum number of pending hash computations
+     * @param contentHashCache The cache of hashes of unchanged files. May be null
+     */
+    public HashingService(int poolSize, int queueSize, ContentHashCache contentHashCache) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The pool size must be at least 1");
+        }
+
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("The queue size must be at least 1");
+        }
+
+        this.executorService = new FairExecutor(poolSize, "event-aggregator-hashing-%d");
+        // the computation is run in the caller if the queue is full or the service is shut down.
+        // Otherwise, the returned future would never complete
+        this.lane = this.executorService.newLane(poolSize, queueSize);
+        this.contentHashCache = contentHashCache;
+    }
+
+    /**
+     * Computes the hashes on a lane of a pool shared with other services,
+     * e.g. the one of an {@link org.rmatil.sync.event.aggregator.core.AggregatorRuntime}
+     *
+     * @param lane             The lane on which hashes are computed. Its quota limits the number of threads used at the same time
+     * @param contentHashCache The cache of hashes of unchanged files. May be null
+     */
+    public HashingService(FairExecutor.Lane lane, ContentHashCache contentHashCache) {
+        this.executorService = null;
+        this.lane = lane;
+        this.contentHashCache = contentHashCache;
+    }
+
+    /**
+     * Submits the computation of the hash for the given path
+     *
+     * @param path The path to hash
+     *
+     * @return A future resolving to the hash of the path or null, if the path could not be hashed
+     */
+    public Future<String> submit(final Path path) {
+        FutureTask<String> hash = new FutureTask<>(() -> (null == this.contentHashCache) ? HashingService.hash(path) : this.contentHashCache.hash(path));
+        this.lane.execute(hash);
+
+        return hash;
+    }
+
+    /**
+     * Resolves all hashes and chunks of the given events which are not computed yet
+     * in parallel and waits until they are available.
+     * <p>
+     * <i>Note</i>: The calling thread computes hashes itself which
+     * are not yet picked up by a worker thread.
+     * Hashes of moved path elements are not resolved, since their contents did not change.
+     * They are only computed once requested.
+     *
+     * @param events The events of which the hashes should be resolved
+     */
+    public void resolve(Collection<IEvent> events) {
+        List<LazyHash> pendingHashes = new ArrayList<>();
+        for (IEvent event : events) {
+            if (event instanceof MoveEvent) {
+                continue;
+            }
+
+            Future<String> hash = event.getHashFuture();
+            if (! (hash instanceof LazyHash)) {
+                continue;
+            }
+
+            LazyHash lazyHash = (LazyHash) hash;
+
+            // the chunks are computed along with the hash
+            if (! lazyHash.isDone()) {
+                this.lane.execute(lazyHash);
+                pendingHashes.add(lazyHash);
+            }
+        }
+
+        for (LazyHash hash : pendingHashes) {
+            try {
+                hash.get();
+                hash.getChunks();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while resolving the hash of " + hash.getPath() + ". Message: " + e.getMessage());
+                return;
+            } catch (ExecutionException e) {
+                logger.error("Could not resolve the hash of " + hash.getPath() + ". Message: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the cache of hashes of unchanged files
+     *
+     * @return The cache or null, if hashes are not cached
+     */
+    public ContentHashCache getContentHashCache() {
+        return this.contentHashCache;
+    }
+
+    /**
+     * Returns the lane on which the hashes are computed. Other reads of the filesystem,
+     * e.g. walking created directories, may be run on it within the same quota of threads.
+     * Tasks exceeding the queue size are run by the caller
+     *
+     * @return The executor of the hash computations
+     */
+    public Executor getExecutor() {
+        return this.lane;
+    }
+
+    /**
+     * Returns the number of worker threads
+     *
+     * @return The number of worker threads
+     */
+    public int getPoolSize() {
+        return this.lane.getQuota();
+    }
+
+    /**
+     * Returns the number of hash computations waiting for a worker
+     *
+     * @return The number of queued hash computations
+     */
+    public int getQueueSize() {
+        return this.lane.getQueueSize();
+    }
+
+    /**
+     * Stops accepting new hash computations on the worker threads.
+     * Already queued computations are still completed.
+     * A shared pool is not shut down.
+     */
+    public void shutdown() {
+        this.lane.shutdown();
+
+        if (null != this.executorService) {
+            this.executorService.shutdown();
+        }
+    }
+
+    /**
+     * Computes the fast, non-cryptographic digest of the given path synchronously.
+     * Files are digested by their contents, directories by the names and
+     * digests of their children in the order of their names.
+     *
+     * @param path The path to digest
+     *
+     * @return The digest or null, if the path is neither a file nor a directory or could not be read
+     *
+     * @see HashingMode#TWO_TIER
+     */
+    public static String fastHash(Path path) {
+        try {
+            if (path.toFile().isFile()) {
+                long start = System.nanoTime();
+                long nrOfBytes = 0L;
+                Hasher hasher = FAST_HASH_FUNCTION.newHasher();
+                byte[] buffer = new byte[BUFFER_SIZE];
+
+                try (InputStream in = Files.newInputStream(path)) {
+                    int length;
+                    while (- 1 != (length = in.read(buffer))) {
+                        hasher.putBytes(buffer, 0, length);
+                        nrOfBytes += length;
+                    }
+                }
+
+                String hash = hasher.hash().toString();
+                HashingService.recordHashedFile(nrOfBytes, System.nanoTime() - start);
+
+                return hash;
+            }
+
+            if (path.toFile().isDirectory()) {
+                List<Path> children = new ArrayList<>();
+                try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(path)) {
+                    for (Path child : directoryStream) {
+                        children.add(child);
+                    }
+                }
+
+                Collections.sort(children);
+
+                Hasher hasher = FAST_HASH_FUNCTION.newHasher();
+                for (Path child : children) {
+                    hasher.putString(child.getFileName().toString(), StandardCharsets.UTF_8);
+                    hasher.putString(String.valueOf(HashingService.fastHash(child)), StandardCharsets.UTF_8);
+                }
+
+                return hasher.hash().toString();
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            logger.error("Could not digest path " + path + ": " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns whether the given hash is the one of an empty file,
+     * either as computed by the configured hashing algorithm or as fast digest
+     *
+     * @param hash The hash to check
+     *
+     * @return True, if the hash is the one of an empty file
+     */
+    public static boolean isEmptyHash(String hash) {
+        return Hash.EMPTY_SHA256_HASH.equals(hash) || EMPTY_FAST_HASH.equals(hash);
+    }
+
+    /**
+     * Returns whether the given digest is the one of an empty file,
+     * either as computed by the configured hashing algorithm or as fast digest
+     *
+     * @param digest The digest to check
+     *
+     * @return True, if the digest is the one of an empty file
+     */
+    public static boolean isEmptyHash(HashDigest digest) {
+        return EMPTY_HASH_DIGEST.equals(digest) || EMPTY_FAST_HASH_DIGEST.equals(digest);
+    }
+
+    /**
+     * Computes the hash of the given path synchronously.
+     *
+     * @param path The path to hash
+     *
+     * @return The hash or null, if the path is neither a file nor a directory or could not be read
+     */
+    public static String hash(Path path) {
+        try {
+            if (path.toFile().isFile()) {
+                long start = System.nanoTime();
+                String hash = Hash.hash(Config.getDefaultConfiguration().getHashingAlgorithm(), path.toFile());
+                HashingService.recordHashedFile(path.toFile().length(), System.nanoTime() - start);
+
+                return hash;
+            }
+
+            if (path.toFile().isDirectory()) {
+                return Hash.hash(Config.getDefaultConfiguration().getHashingAlgorithm(), path.toFile());
+            }
+        } catch (IOException e) {
+            logger.error("Could not hash path " + path + ": " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the number of bytes of all files hashed in this JVM,
+     * either by the configured hashing algorithm or as fast digest
+     *
+     * @return The number of hashed bytes
+     */
+    public static long getHashedBytes() {
+        return HASHED_BYTES.sum();
+    }
+
+    /**
+     * Returns the time spent hashing files in this JVM, summed up over all threads
+     *
+     * @return The hashing time in nanoseconds
+     */
+    public static long getHashingNanos() {
+        return HASHING_NANOS.sum();
+    }
+
+    protected static void recordHashedFile(long nrOfBytes, long nanos) {
+        HASHED_BYTES.add(nrOfBytes);
+        HASHING_NANOS.add(nanos);
+    }
+}
@@ -0,0 +1,19 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import java.nio.file.Path;
+
+/**
+ * Provides the hashes of path elements,
+ * possibly without reading their contents again
+ */
+public interface IHashProvider {
+
+    /**
+     * Returns the hash of the given path element
+     *
+     * @param path The path element to hash
+     *
+     * @return The hash or null, if the path is neither a file nor a directory or could not be read
+     */
+    String hash(Path path);
+}
@@ -0,0 +1,301 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A handle to the hash of a path element which is only
+ * computed once it is actually requested.
+ * <p>
+ * The hash is computed at most once: Either by the first
+ * thread requesting it or by a worker thread which got this handle
+ * submitted in advance. Concurrent requests wait for the running computation.
+ * <p>
+ * Using {@link HashingMode#TWO_TIER}, a fast digest used to compare
+ * events within the pipeline is computed independently of the hash
+ * (see {@link LazyHash#getFastHash()}).
+ * <p>
+ * Optionally, the content-defined chunks of a file are computed
+ * along with its hash (see {@link LazyHash#getChunks()}), so that the file is only read once.
+ * <p>
+ * Only the compact {@link HashDigest} of the hash is kept, its hex string
+ * is built each time it is requested (see {@link LazyHash#getDigest()}).
+ */
+public class LazyHash implements RunnableFuture<String> {
+
+    /**
+     * The path element to hash
+     */
+    protected final Path path;
+
+    /**
+     * The provider of the hash. May be null
+     */
+    protected final IHashProvider hashProvider;
+
+    protected final HashingMode hashingMode;
+
+    /**
+     * The digest of the hash of the path element
+     */
+    protected final FutureTask<HashDigest> digest;
+
+    /**
+     * The fast digest of the path element.
+     * The same as {@link LazyHash#digest}, if the hashing mode is {@link HashingMode#FULL}
+     */
+    protected final FutureTask<HashDigest> fastDigest;
+
+    /**
+     * Splits the path element into chunks. May be null
+     */
+    protected final ContentChunker contentChunker;
+
+    /**
+     * The chunks and the hash of the path element, computed by reading it once. Null if no chunker is used
+     */
+    protected final FutureTask<ContentChunker.ChunkedFile> chunkedFile;
+
+    /**
+     * The content-defined chunks of the path element. Null if no chunker is used
+     */
+    protected final FutureTask<List<Chunk>> chunks;
+
+    /**
+     * @param path The path element to hash
+     */
+    public LazyHash(final Path path) {
+        this(path, null);
+    }
+
+    /**
+     * @param path         The path element to hash
+     * @param hashProvider The provider of hashes, e.g. a {@link ContentHashCache}. May be null
+     */
+    public LazyHash(final Path path, final IHashProvider hashProvider) {
+        this(path, hashProvider, HashingMode.FULL);
+    }
+
+    /**
+     * @param path         The path element to hash
+     * @param hashProvider The provider of hashes, e.g. a {@link ContentHashCache}. May be null
+     * @param hashingMode  Whether a fast digest is computed for comparisons within the pipeline
+     */
+    public LazyHash(final Path path, final IHashProvider hashProvider, HashingMode hashingMode) {
+        this(path, hashProvider, hashingMode, null);
+    }
+
+    /**
+     * @param path           The path element to hash
+     * @param hashProvider   The provider of hashes, e.g. a {@link ContentHashCache}. May be null
+     * @param hashingMode    Whether a fast digest is computed for comparisons within the pipeline
+     * @param contentChunker Splits the path element into content-defined chunks. May be null
+     */
+    public LazyHash(final Path path, final IHashProvider hashProvider, HashingMode hashingMode, final ContentChunker contentChunker) {
+        this(path, hashProvider, hashingMode, contentChunker, (null == contentChunker) ? null : new FutureTask<>(() -> contentChunker.chunkFile(path)));
+    }
+
+    protected LazyHash(final Path path, final IHashProvider hashProvider, HashingMode hashingMode, ContentChunker contentChunker, final FutureTask<ContentChunker.ChunkedFile> chunkedFile) {
+        this.path = path;
+        this.hashProvider = hashProvider;
+        this.hashingMode = hashingMode;
+        this.digest = new FutureTask<>(() -> HashDigest.valueOf(LazyHash.computeHash(path, hashProvider, chunkedFile)));
+        this.fastDigest = (HashingMode.TWO_TIER == hashingMode) ? new FutureTask<>(() -> HashDigest.valueOf(HashingService.fastHash(path))) : this.digest;
+        this.contentChunker = contentChunker;
+        this.chunkedFile = chunkedFile;
+        this.chunks = (null == chunkedFile) ? null : new FutureTask<>(() -> {
+            ContentChunker.ChunkedFile chunked = LazyHash.getChunkedFile(chunkedFile);
+            return (null == chunked) ? null : chunked.getChunks();
+        });
+    }
+
+    /**
+     * Returns the path element which is hashed
+     *
+     * @return The path element
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * Returns the provider of the hash
+     *
+     * @return The provider or null, if the path element is hashed directly
+     */
+    public IHashProvider getHashProvider() {
+        return this.hashProvider;
+    }
+
+    /**
+     * Returns whether a fast digest is computed besides the hash
+     *
+     * @return The hashing mode
+     */
+    public HashingMode getHashingMode() {
+        return this.hashingMode;
+    }
+
+    /**
+     * Returns the chunker splitting the path element into chunks
+     *
+     * @return The chunker or null, if no chunks are computed
+     */
+    public ContentChunker getContentChunker() {
+        return this.contentChunker;
+    }
+
+    /**
+     * Returns the computation of the content-defined chunks, e.g. to run it on another thread
+     *
+     * @return The computation or null, if no chunks are computed
+     */
+    public FutureTask<List<Chunk>> getChunksFuture() {
+        return this.chunks;
+    }
+
+    /**
+     * Returns the content-defined chunks of the path element.
+     * Computes them in the calling thread, if no other thread is computing them yet.
+     *
+     * @return The chunks or null, if no chunks are computed or the path element is not a regular file
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting for another thread computing the chunks
+     * @throws ExecutionException   If the computation threw an exception
+     */
+    public List<Chunk> getChunks()
+            throws InterruptedException, ExecutionException {
+        if (null == this.chunks) {
+            return null;
+        }
+
+        // does nothing if the computation was already started
+        this.chunks.run();
+        return this.chunks.get();
+    }
+
+    /**
+     * Returns the digest used to compare path elements within the pipeline.
+     * Computes it in the calling thread, if no other thread is computing it yet.
+     * <p>
+     * <i>Note</i>: Using {@link HashingMode#FULL}, this is the hash itself.
+     * Otherwise, it must not be compared to hashes of stored versions.
+     *
+     * @return The digest of the path element or null, if it could not be hashed
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting for another thread computing the digest
+     * @throws ExecutionException   If the computation threw an exception
+     */
+    public String getFastHash()
+            throws InterruptedException, ExecutionException {
+        return LazyHash.toString(this.getFastDigest());
+    }
+
+    /**
+     * Returns the digest used to compare path elements within the pipeline
+     * in its compact representation (see {@link LazyHash#getFastHash()}).
+     *
+     * @return The digest of the path element or null, if it could not be hashed
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting for another thread computing the digest
+     * @throws ExecutionException   If the computation threw an exception
+     */
+    public HashDigest getFastDigest()
+            throws InterruptedException, ExecutionException {
+        // does nothing if the computation was already started
+        this.fastDigest.run();
+        return this.fastDigest.get();
+    }
+
+    /**
+     * Returns the hash of the path element in its compact representation.
+     * Computes it in the calling thread, if no other thread is computing it yet.
+     *
+     * @return The digest of the hash or null, if it could not be hashed
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting for another thread computing the hash
+     * @throws ExecutionException   If the computation threw an exception
+     */
+    public HashDigest getDigest()
+            throws InterruptedException, ExecutionException {
+        // does nothing if the computation was already started
+        this.digest.run();
+        return this.digest.get();
+    }
+
+    /**
+     * Computes the hash, if no other thread is computing it yet
+     */
+    @Override
+    public void run() {
+        this.digest.run();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return this.digest.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return this.digest.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return this.digest.isDone();
+    }
+
+    /**
+     * Computes the hash in the calling thread, if no other
+     * thread is computing it yet and returns the result.
+     *
+     * @return The hash of the path element or null, if it could not be hashed
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting for another thread computing the hash
+     * @throws ExecutionException   If the computation threw an exception
+     */
+    @Override
+    public String get()
+            throws InterruptedException, ExecutionException {
+        return LazyHash.toString(this.getDigest());
+    }
+
+    @Override
+    public String get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        this.digest.run();
+        return LazyHash.toString(this.digest.get(timeout, unit));
+    }
+
+    protected static String computeHash(Path path, IHashProvider hashProvider, FutureTask<ContentChunker.ChunkedFile> chunkedFile)
+            throws InterruptedException, ExecutionException {
+        if (null != chunkedFile) {
+            ContentChunker.ChunkedFile chunked = LazyHash.getChunkedFile(chunkedFile);
+            if (null != chunked && null != chunked.getHash()) {
+                // the file was hashed while chunking it
+                return chunked.getHash();
+            }
+        }
+
+        // not chunked or changing while being chunked, e.g. checked by a write stability tracker of the provider
+
+        return (null == hashProvider) ? HashingService.hash(path) : hashProvider.hash(path);
+    }
+
+    protected static String toString(HashDigest digest) {
+        return (null == digest) ? null : digest.toString();
+    }
+
+    protected static ContentChunker.ChunkedFile getChunkedFile(FutureTask<ContentChunker.ChunkedFile> chunkedFile)
+            throws InterruptedException, ExecutionException {
+        // does nothing if the computation was already started
+        chunkedFile.run();
+        return chunkedFile.get();
+    }
+}
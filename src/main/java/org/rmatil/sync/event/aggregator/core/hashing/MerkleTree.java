@@ -0,0 +1,323 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.event.aggregator.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Maintains the hashes of all path elements below the watched root
+ * which have been hashed once. The hash of a directory is derived from
+ * the names and hashes of its children, so that a change of a single element
+ * only requires to rehash the element itself and the directories on its path
+ * to the root instead of the whole subtree.
+ * <p>
+ * Cached hashes are only dropped on {@link MerkleTree#invalidate(Path)} or {@link MerkleTree#invalidateSubtree(Path)}.
+ * Therefore, all changes below the root must be reported, i.e. the tree
+ * has to be invalidated by the listener of the path watcher.
+ * <p>
+ * Hashes are computed without holding a lock, so that different elements are hashed concurrently.
+ * A computed hash is only cached if its element was not invalidated in the meantime.
+ * <p>
+ * <i>Note</i>: Directory hashes differ from the ones computed by
+ * {@link HashingService#hash(Path)}, which hashes the whole subtree.
+ */
+public class MerkleTree implements IHashProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(MerkleTree.class);
+
+    /**
+     * The cached hash of a path element
+     */
+    protected static class Stamp {
+
+        /**
+         * The number of invalidations of the element
+         */
+        protected final long version;
+
+        /**
+         * The hash of the element. Null, if it has to be computed
+         */
+        protected final String hash;
+
+        protected Stamp(long version, String hash) {
+            this.version = version;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * A path element of the tree
+     */
+    protected static class Node {
+
+        /**
+         * The children by their name.
+         * Null, if the element is not known to be a directory
+         */
+        protected volatile Map<String, Node> children;
+
+        /**
+         * The file key of the directory whose children are cached. May be null
+         */
+        protected volatile Object fileKey;
+
+        protected final AtomicReference<Stamp> stamp = new AtomicReference<>(new Stamp(0L, null));
+
+        protected Map<String, Node> getOrCreateChildren() {
+            Map<String, Node> children = this.children;
+            if (null == children) {
+                synchronized (this) {
+                    if (null == this.children) {
+                        this.children = new ConcurrentHashMap<>();
+                    }
+
+                    children = this.children;
+                }
+            }
+
+            return children;
+        }
+
+        protected void invalidate() {
+            this.stamp.updateAndGet(stamp -> new Stamp(stamp.version + 1L, null));
+        }
+    }
+
+    protected final Path rootDir;
+
+    /**
+     * The cache of hashes of unchanged files. May be null
+     */
+    protected final ContentHashCache contentHashCache;
+
+    protected final Node root;
+
+    /**
+     * @param rootDir          The watched root
+     * @param contentHashCache The cache used to hash files. May be null
+     */
+    public MerkleTree(Path rootDir, ContentHashCache contentHashCache) {
+        this.rootDir = rootDir.toAbsolutePath().normalize();
+        this.contentHashCache = contentHashCache;
+        this.root = new Node();
+    }
+
+    /**
+     * Returns the hash of the given path element.
+     * Only elements changed since they were hashed the last time are read.
+     *
+     * @param path The path element to hash
+     *
+     * @return The hash or null, if the path is neither a file nor a directory or could not be read
+     */
+    @Override
+    public String hash(Path path) {
+        Path relativePath = this.relativize(path);
+        if (null == relativePath) {
+            // not maintained by this tree
+            return this.hashFile(path);
+        }
+
+        Node node = this.root;
+        for (Path component : relativePath) {
+            if (component.toString().isEmpty()) {
+                continue;
+            }
+
+            node = node.getOrCreateChildren().computeIfAbsent(component.toString(), name -> new Node());
+        }
+
+        return this.computeHash(node, path);
+    }
+
+    /**
+     * Drops the hash of the given path element and of all directories on the path
+     * to the root. Has to be invoked for each created, modified or deleted element.
+     * <p>
+     * The hashes of the children of a directory are kept: once the directory is hashed again,
+     * its children are listed and reconciled with the cached ones. All cached children are dropped
+     * if the directory got replaced by another one
+     *
+     * @param path The changed path element
+     */
+    public void invalidate(Path path) {
+        Path relativePath = this.relativize(path);
+        if (null == relativePath) {
+            return;
+        }
+
+        List<Node> nodes = new ArrayList<>();
+        Node node = this.root;
+        for (Path component : relativePath) {
+            if (component.toString().isEmpty()) {
+                continue;
+            }
+
+            nodes.add(node);
+
+            Map<String, Node> children = node.children;
+            node = (null == children) ? null : children.get(component.toString());
+            if (null == node) {
+                // nothing is cached below
+                break;
+            }
+        }
+
+        if (null != node) {
+            nodes.add(node);
+        }
+
+        // from the element to the root, so that a directory hashed in the meantime
+        // either sees the invalidated children or is invalidated itself afterwards
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            nodes.get(i).invalidate();
+        }
+    }
+
+    /**
+     * Drops the hashes of the given path element, of all elements within it
+     * and of all directories on the path to the root, e.g. if changes within it may have been missed
+     *
+     * @param path The path element whose changes may have been missed
+     */
+    public void invalidateSubtree(Path path) {
+        Path relativePath = this.relativize(path);
+        if (null == relativePath) {
+            return;
+        }
+
+        Node node = this.root;
+        for (Path component : relativePath) {
+            if (component.toString().isEmpty()) {
+                continue;
+            }
+
+            Map<String, Node> children = node.children;
+            node = (null == children) ? null : children.get(component.toString());
+            if (null == node) {
+                // nothing is cached below
+                break;
+            }
+        }
+
+        if (null != node) {
+            // before invalidating, so that a directory hashed in the meantime
+            // using the dropped children is not cached
+            node.children = null;
+            node.fileKey = null;
+        }
+
+        this.invalidate(path);
+    }
+
+    /**
+     * Drops all hashes, e.g. if changes may have been missed
+     */
+    public void invalidateAll() {
+        this.root.children = null;
+        this.root.fileKey = null;
+        this.root.invalidate();
+    }
+
+    /**
+     * Returns the watched root
+     *
+     * @return The root directory
+     */
+    public Path getRootDir() {
+        return this.rootDir;
+    }
+
+    protected String computeHash(Node node, Path path) {
+        Stamp stamp = node.stamp.get();
+        if (null != stamp.hash) {
+            return stamp.hash;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            attributes = null;
+        }
+
+        String hash;
+        if (null == attributes || ! attributes.isDirectory()) {
+            node.children = null;
+            hash = this.hashFile(path);
+        } else {
+            hash = this.computeDirectoryHash(node, path, attributes.fileKey());
+        }
+
+        // not cached, if the element was invalidated while being hashed
+        if (null != hash) {
+            node.stamp.compareAndSet(stamp, new Stamp(stamp.version, hash));
+        }
+
+        return hash;
+    }
+
+    protected String computeDirectoryHash(Node node, Path path, Object fileKey) {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(path)) {
+            for (Path child : directoryStream) {
+                names.add(child.getFileName().toString());
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            logger.error("Could not list directory " + path + ": " + e.getMessage());
+            return null;
+        }
+
+        Collections.sort(names);
+
+        Map<String, Node> children = node.children;
+        if (null == children || ! Objects.equals(node.fileKey, fileKey)) {
+            // the cached children belong to another element
+            children = new ConcurrentHashMap<>();
+            node.children = children;
+            node.fileKey = fileKey;
+        }
+
+        StringBuilder childHashes = new StringBuilder();
+        for (String name : names) {
+            Node child = children.computeIfAbsent(name, key -> new Node());
+
+            String childHash = this.computeHash(child, path.resolve(name));
+            childHashes.append(name).append('\0').append((null == childHash) ? "" : childHash).append('\n');
+        }
+
+        // removed children are dropped
+        children.keySet().retainAll(new HashSet<>(names));
+
+        return Hash.hash(Config.getDefaultConfiguration().getHashingAlgorithm(), childHashes.toString());
+    }
+
+    protected String hashFile(Path path) {
+        return (null == this.contentHashCache) ? HashingService.hash(path) : this.contentHashCache.hash(path);
+    }
+
+    /**
+     * Returns the given path relative to the root
+     *
+     * @param path The path
+     *
+     * @return The relative path or null, if the path is not below the root
+     */
+    protected Path relativize(Path path) {
+        Path absolutePath = path.toAbsolutePath().normalize();
+        if (! absolutePath.startsWith(this.rootDir)) {
+            return null;
+        }
+
+        return this.rootDir.relativize(absolutePath);
+    }
+}
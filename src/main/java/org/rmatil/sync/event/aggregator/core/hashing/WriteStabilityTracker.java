@@ -0,0 +1,287 @@
+package org.rmatil.sync.event.aggregator.core.hashing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the size and the last modification time of files which are
+ * still being written, e.g. while a large file is copied into the watched folder.
+ * <p>
+ * A file is stable once neither its size nor its modification time changed
+ * within the stability interval. Events of unstable files are kept pending
+ * instead of being hashed (see {@link org.rmatil.sync.event.aggregator.core.PathEventListener#setWriteStabilityTracker(WriteStabilityTracker)}),
+ * so that a growing file is only hashed once it is complete instead of on each flush.
+ * Files which keep on changing for longer than the maximum delay are considered stable anyway.
+ * <p>
+ * Hashes computed by a provider wrapped by this tracker (see {@link WriteStabilityTracker#wrap(IHashProvider)})
+ * are discarded and computed again if the file changed while it was being hashed.
+ */
+public class WriteStabilityTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteStabilityTracker.class);
+
+    /**
+     * The default time in milliseconds a file must not change to be stable
+     */
+    public static final long DEFAULT_STABILITY_INTERVAL = 1000L;
+
+    /**
+     * The default maximum time in milliseconds the events of a file are deferred
+     */
+    public static final long DEFAULT_MAX_DELAY = 60000L;
+
+    /**
+     * The maximum number of times a file is hashed, if it changes while being hashed
+     */
+    public static final int MAX_HASHING_ATTEMPTS = 3;
+
+    /**
+     * The last observed state of an unstable file
+     */
+    protected static class Observation {
+
+        protected final long size;
+
+        /**
+         * The last modification time in nanoseconds
+         */
+        protected final long lastModified;
+
+        /**
+         * The time of the last observed change in milliseconds
+         */
+        protected final long changeTime;
+
+        /**
+         * The time the file was deferred the first time in milliseconds
+         */
+        protected final long firstDeferralTime;
+
+        protected Observation(long size, long lastModified, long changeTime, long firstDeferralTime) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.changeTime = changeTime;
+            this.firstDeferralTime = firstDeferralTime;
+        }
+    }
+
+    protected final long stabilityInterval;
+
+    protected final long maxDelay;
+
+    /**
+     * The last observed state of all files which were not stable yet
+     */
+    protected final Map<Path, Observation> observations;
+
+    /**
+     * The number of times a file was found to be unstable
+     */
+    protected final LongAdder deferrals;
+
+    /**
+     * The number of hashes discarded since the file changed while being hashed
+     */
+    protected final LongAdder rehashes;
+
+    public WriteStabilityTracker() {
+        this(DEFAULT_STABILITY_INTERVAL, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param stabilityInterval The time in milliseconds the size and modification time of a file must not change to be stable
+     * @param maxDelay          The maximum time in milliseconds a file is considered unstable
+     *
+     * @throws IllegalArgumentException If the stability interval is negative or exceeds the maximum delay
+     */
+    public WriteStabilityTracker(long stabilityInterval, long maxDelay) {
+        if (stabilityInterval < 0) {
+            throw new IllegalArgumentException("The stability interval must not be negative");
+        }
+
+        if (stabilityInterval > maxDelay) {
+            throw new IllegalArgumentException("The stability interval must not exceed the maximum delay");
+        }
+
+        this.stabilityInterval = stabilityInterval;
+        this.maxDelay = maxDelay;
+        this.observations = new ConcurrentHashMap<>();
+        this.deferrals = new LongAdder();
+        this.rehashes = new LongAdder();
+    }
+
+    /**
+     * Returns whether the given path did not change within the stability interval.
+     * Paths which do not exist (anymore) or which are not regular files are always stable.
+     *
+     * @param path The path to check
+     * @param now  The current time in milliseconds
+     *
+     * @return True, if the path can be hashed
+     */
+    public boolean isStable(Path path, long now) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // nothing to hash
+            this.observations.remove(path);
+            return true;
+        }
+
+        if (! attributes.isRegularFile()) {
+            this.observations.remove(path);
+            return true;
+        }
+
+        long lastModified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        long changeTime = attributes.lastModifiedTime().toMillis();
+        long firstDeferralTime = now;
+
+        Observation previous = this.observations.get(path);
+        if (null != previous) {
+            firstDeferralTime = previous.firstDeferralTime;
+
+            if (previous.size == attributes.size() && previous.lastModified == lastModified) {
+                changeTime = Math.max(changeTime, previous.changeTime);
+            } else if (lastModified == previous.lastModified) {
+                // written without updating the modification time
+                changeTime = now;
+            }
+        }
+
+        if (now - changeTime >= this.stabilityInterval || now - firstDeferralTime >= this.maxDelay) {
+            this.observations.remove(path);
+            return true;
+        }
+
+        this.observations.put(path, new Observation(attributes.size(), lastModified, changeTime, firstDeferralTime));
+        this.deferrals.increment();
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Deferring " + path + " since it is still being written");
+        }
+
+        return false;
+    }
+
+    /**
+     * Hashes the given path using the given provider. If the file changed
+     * while being hashed, the hash is discarded and computed again,
+     * at most {@link WriteStabilityTracker#MAX_HASHING_ATTEMPTS} times.
+     *
+     * @param path         The path to hash
+     * @param hashProvider The provider of the hash or null, if the path should be hashed directly
+     *
+     * @return The hash or null, if the path is neither a file nor a directory or could not be read
+     */
+    public String hash(Path path, IHashProvider hashProvider) {
+        String hash = null;
+
+        for (int attempt = 1; attempt <= MAX_HASHING_ATTEMPTS; attempt++) {
+            BasicFileAttributes attributes = WriteStabilityTracker.readFileAttributes(path);
+            hash = (null == hashProvider) ? HashingService.hash(path) : hashProvider.hash(path);
+
+            if (null == attributes || null == hash) {
+                // a directory or a path which could not be read
+                return hash;
+            }
+
+            BasicFileAttributes attributesAfterHashing = WriteStabilityTracker.readFileAttributes(path);
+            if (null != attributesAfterHashing &&
+                    attributes.size() == attributesAfterHashing.size() &&
+                    attributes.lastModifiedTime().equals(attributesAfterHashing.lastModifiedTime())) {
+                return hash;
+            }
+
+            this.rehashes.increment();
+            logger.debug("Discarding the hash of " + path + " since it changed while being hashed (attempt " + attempt + ")");
+        }
+
+        logger.warn("Could not hash " + path + " without it changing in " + MAX_HASHING_ATTEMPTS + " attempts");
+
+        return hash;
+    }
+
+    /**
+     * Returns a provider of hashes which are computed again
+     * if the file changed while being hashed
+     *
+     * @param hashProvider The provider computing the hashes or null, if paths should be hashed directly
+     *
+     * @return The wrapping provider
+     */
+    public IHashProvider wrap(IHashProvider hashProvider) {
+        return path -> this.hash(path, hashProvider);
+    }
+
+    /**
+     * Returns the time the size and modification time of a file must not change to be stable
+     *
+     * @return The stability interval in milliseconds
+     */
+    public long getStabilityInterval() {
+        return this.stabilityInterval;
+    }
+
+    /**
+     * Returns the maximum time a file is considered unstable
+     *
+     * @return The maximum delay in milliseconds
+     */
+    public long getMaxDelay() {
+        return this.maxDelay;
+    }
+
+    /**
+     * Returns the number of files currently considered unstable
+     *
+     * @return The number of unstable files
+     */
+    public int getNrOfUnstableFiles() {
+        return this.observations.size();
+    }
+
+    /**
+     * Returns the number of times the events of a file were deferred since it was unstable
+     *
+     * @return The number of deferrals
+     */
+    public long getNrOfDeferrals() {
+        return this.deferrals.sum();
+    }
+
+    /**
+     * Returns the number of hashes discarded since the file changed while being hashed
+     *
+     * @return The number of discarded hashes
+     */
+    public long getNrOfRehashes() {
+        return this.rehashes.sum();
+    }
+
+    /**
+     * Returns the attributes of the given regular file
+     *
+     * @param path The path to read
+     *
+     * @return The attributes or null, if the path is not a regular file or could not be read
+     */
+    protected static BasicFileAttributes readFileAttributes(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package org.rmatil.sync.event.aggregator.core.index;
+
+import name.mitterdorfer.perlock.PathChangeListener;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.MoveEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the state of all path elements below the watched root
+ * as propagated to the listeners: their path, identity on the filesystem
+ * (see {@link BasicFileAttributes#fileKey()}), size, last modification time and hash.
+ * <p>
+ * On start, the live tree is compared with the persisted state in parallel,
+ * so that only the changes which happened while the event aggregator
+ * was not running are reported (see {@link FileIndex#reconcile(PathChangeListener)}).
+ * Files whose size and modification time did not change are neither reported nor hashed.
+ * <p>
+ * The index is stored in a compact binary file which is read and written memory-mapped.
+ * If no index is persisted yet, the current tree is taken as the initial state without reporting any change.
+ */
+public class FileIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileIndex.class);
+
+    /**
+     * The default number of threads walking the tree on reconciling
+     */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Identifies an index file
+     */
+    protected static final int MAGIC = 0x46494458;
+
+    /**
+     * Identifies the format of a persisted index
+     */
+    protected static final int FILE_FORMAT_VERSION = 1;
+
+    protected static final byte FLAG_DIRECTORY = 1;
+
+    /**
+     * The state of a single path element
+     */
+    public static class Entry {
+
+        /**
+         * The identity on the filesystem or null, if not provided by the filesystem
+         */
+        protected final String fileKey;
+
+        protected final boolean isDirectory;
+
+        protected final long size;
+
+        /**
+         * The last modification time in nanoseconds
+         */
+        protected final long lastModified;
+
+        /**
+         * The hash or null, if not known
+         */
+        protected final String hash;
+
+        public Entry(String fileKey, boolean isDirectory, long size, long lastModified, String hash) {
+            this.fileKey = fileKey;
+            this.isDirectory = isDirectory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        public String getFileKey() {
+            return this.fileKey;
+        }
+
+        public boolean isDirectory() {
+            return this.isDirectory;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        public long getLastModified() {
+            return this.lastModified;
+        }
+
+        public String getHash() {
+            return this.hash;
+        }
+
+        /**
+         * Returns whether the given current state equals this one,
+         * ignoring the modification time of directories
+         *
+         * @param entry The current state
+         *
+         * @return True, if unchanged
+         */
+        protected boolean isUnchanged(Entry entry) {
+            if (this.isDirectory || entry.isDirectory) {
+                return this.isDirectory == entry.isDirectory;
+            }
+
+            return this.size == entry.size && this.lastModified == entry.lastModified;
+        }
+    }
+
+    /**
+     * The root of the watched folder
+     */
+    protected final Path rootPath;
+
+    /**
+     * The file to which the index is persisted
+     */
+    protected final Path indexFile;
+
+    protected final int parallelism;
+
+    /**
+     * The entries by their path relative to the root, sorted
+     * so that the contents of a directory are adjacent
+     */
+    protected final ConcurrentNavigableMap<String, Entry> entries;
+
+    /**
+     * Whether the entries were loaded from the index file
+     */
+    protected volatile boolean isLoaded;
+
+    /**
+     * @param rootPath  The root of the watched folder
+     * @param indexFile The file to which the index is persisted
+     */
+    public FileIndex(Path rootPath, Path indexFile) {
+        this(rootPath, indexFile, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param rootPath    The root of the watched folder
+     * @param indexFile   The file to which the index is persisted
+     * @param parallelism The number of threads walking the tree on reconciling
+     *
+     * @throws IllegalArgumentException If the parallelism is not positive
+     */
+    public FileIndex(Path rootPath, Path indexFile, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1");
+        }
+
+        this.rootPath = rootPath;
+        this.indexFile = indexFile;
+        this.parallelism = parallelism;
+        this.entries = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Reads the entries of the index file.
+     * Does nothing if the file does not exist yet.
+     *
+     * @throws IOException If reading the file failed
+     */
+    public void load()
+            throws IOException {
+        if (! Files.exists(this.indexFile)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(this.indexFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 12 || MAGIC != buffer.getInt()) {
+                logger.info("Ignoring file index " + this.indexFile + " having an unknown format");
+                return;
+            }
+
+            int version = buffer.getInt();
+            if (FILE_FORMAT_VERSION != version) {
+                logger.info("Ignoring file index " + this.indexFile + " having unknown format version " + version);
+                return;
+            }
+
+            Map<String, Entry> loadedEntries = new HashMap<>();
+            int nrOfEntries = buffer.getInt();
+            for (int i = 0; i < nrOfEntries; i++) {
+                String path = FileIndex.getString(buffer);
+                String fileKey = FileIndex.getString(buffer);
+                boolean isDirectory = FLAG_DIRECTORY == buffer.get();
+                long size = buffer.getLong();
+                long lastModified = buffer.getLong();
+                String hash = FileIndex.getString(buffer);
+
+                loadedEntries.put(path, new Entry(fileKey, isDirectory, size, lastModified, hash));
+            }
+
+            this.entries.clear();
+            this.entries.putAll(loadedEntries);
+            this.isLoaded = true;
+        } catch (RuntimeException e) {
+            // a truncated or corrupt file
+            throw new IOException("Failed to read file index " + this.indexFile + ": " + e.getMessage(), e);
+        }
+
+        logger.debug("Loaded " + this.entries.size() + " entries from " + this.indexFile);
+    }
+
+    /**
+     * Writes all entries to the index file
+     *
+     * @throws IOException If writing the file failed
+     */
+    public void save()
+            throws IOException {
+        // entries changed concurrently may or may not be contained
+        List<byte[]> records = new ArrayList<>(this.entries.size());
+        long fileSize = 12;
+        for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+            byte[] record = FileIndex.encode(entry.getKey(), entry.getValue());
+            records.add(record);
+            fileSize += record.length;
+        }
+
+        if (null != this.indexFile.getParent()) {
+            Files.createDirectories(this.indexFile.getParent());
+        }
+
+        // write to a temporary file first to never leave a partially written index behind
+        Path tmpFile = this.indexFile.resolveSibling(this.indexFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.putInt(MAGIC);
+            buffer.putInt(FILE_FORMAT_VERSION);
+            buffer.putInt(records.size());
+
+            for (byte[] record : records) {
+                buffer.put(record);
+            }
+
+            buffer.force();
+        }
+
+        Files.move(tmpFile, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        logger.debug("Saved " + records.size() + " entries to " + this.indexFile);
+    }
+
+    /**
+     * Compares the live tree with the indexed state and notifies the given listener
+     * about all differences. Afterwards, the index reflects the live tree.
+     * <p>
+     * Like a path watcher, only the topmost element of a deleted subtree is reported.
+     * If no index was loaded, the live tree is indexed without notifying about any change.
+     *
+     * @param changeListener The listener to notify about changes
+     *
+     * @return The number of reported changes
+     */
+    public int reconcile(PathChangeListener changeListener) {
+        long start = System.currentTimeMillis();
+
+        Map<String, Entry> liveEntries = new ConcurrentHashMap<>();
+        ForkJoinPool walkPool = new ForkJoinPool(this.parallelism);
+        try {
+            walkPool.invoke(new DirectoryWalk(this.rootPath, liveEntries));
+        } finally {
+            walkPool.shutdown();
+        }
+
+        if (! this.isLoaded) {
+            this.entries.clear();
+            this.entries.putAll(liveEntries);
+            this.isLoaded = true;
+            logger.info("Indexed " + liveEntries.size() + " path elements of " + this.rootPath + " in " + (System.currentTimeMillis() - start) + "ms");
+
+            return 0;
+        }
+
+        int nrOfChanges = 0;
+
+        // notify in order, so that parents are reported before their children
+        for (String path : new TreeSet<>(liveEntries.keySet())) {
+            Entry liveEntry = liveEntries.get(path);
+            Entry indexedEntry = this.entries.get(path);
+
+            if (null == indexedEntry) {
+                changeListener.onPathCreated(this.rootPath.resolve(path));
+                nrOfChanges++;
+            } else if (indexedEntry.isDirectory != liveEntry.isDirectory) {
+                // replaced by an element of another type
+                changeListener.onPathDeleted(this.rootPath.resolve(path));
+                changeListener.onPathCreated(this.rootPath.resolve(path));
+                nrOfChanges += 2;
+            } else if (! indexedEntry.isUnchanged(liveEntry)) {
+                changeListener.onPathModified(this.rootPath.resolve(path));
+                nrOfChanges++;
+            } else {
+                // keep the known hash
+                liveEntries.put(path, indexedEntry);
+            }
+        }
+
+        for (String path : this.entries.keySet()) {
+            if (liveEntries.containsKey(path)) {
+                continue;
+            }
+
+            String parent = FileIndex.getParent(path);
+            if (null != parent && this.entries.containsKey(parent) && ! liveEntries.containsKey(parent)) {
+                // reported by the deleted parent
+                continue;
+            }
+
+            changeListener.onPathDeleted(this.rootPath.resolve(path));
+            nrOfChanges++;
+        }
+
+        this.entries.clear();
+        this.entries.putAll(liveEntries);
+
+        logger.info("Reconciled " + liveEntries.size() + " path elements of " + this.rootPath + " in " + (System.currentTimeMillis() - start) + "ms. Found " + nrOfChanges + " changes");
+
+        return nrOfChanges;
+    }
+
+    /**
+     * Updates the index with the given events propagated to the listeners
+     *
+     * @param events The propagated events
+     */
+    public void update(List<IEvent> events) {
+        for (IEvent event : events) {
+            String path = this.relativize(event.getPath());
+
+            switch (event.getEventName()) {
+                case MoveEvent.EVENT_NAME:
+                    String newPath = this.relativize(((MoveEvent) event).getNewPath());
+                    Map<String, Entry> movedEntries = this.getSubtree(path);
+                    this.removeSubtree(path);
+
+                    for (Map.Entry<String, Entry> entry : movedEntries.entrySet()) {
+                        this.entries.put(newPath + entry.getKey().substring(path.length()), entry.getValue());
+                    }
+
+                    this.putMoved(newPath, movedEntries.get(path), event);
+                    break;
+                case DeleteEvent.EVENT_NAME:
+                    this.removeSubtree(path);
+                    break;
+                default:
+                    this.put(path, event.getHash());
+            }
+        }
+    }
+
+    /**
+     * Returns the indexed state of the given path element
+     *
+     * @param path The path relative to the root
+     *
+     * @return The state or null, if not indexed
+     */
+    public Entry getEntry(String path) {
+        return this.entries.get(path);
+    }
+
+    /**
+     * Returns whether the given path element is indexed with the given size and modification time,
+     * i.e. whether it did not change since its last propagated event
+     *
+     * @param path       The path relative to the root
+     * @param attributes The current attributes of the path element
+     *
+     * @return True, if indexed and unchanged
+     */
+    public boolean isUnchanged(String path, BasicFileAttributes attributes) {
+        Entry indexedEntry = this.entries.get(path);
+
+        return null != indexedEntry && indexedEntry.isUnchanged(FileIndex.toEntry(attributes, null));
+    }
+
+    /**
+     * Returns the number of indexed path elements
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the file to which the index is persisted
+     *
+     * @return The index file
+     */
+    public Path getIndexFile() {
+        return this.indexFile;
+    }
+
+    /**
+     * Returns the number of threads walking the tree on reconciling
+     *
+     * @return The parallelism
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Indexes the current state of the given path element
+     *
+     * @param path The path relative to the root
+     * @param hash The hash of the element or null, if not known
+     */
+    protected void put(String path, String hash) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(this.rootPath.resolve(path), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            this.entries.put(path, FileIndex.toEntry(attributes, hash));
+        } catch (IOException e) {
+            // deleted meanwhile: the deletion is propagated later on
+            this.entries.remove(path);
+        }
+    }
+
+    /**
+     * Updates the entry of the given moved path element. Keeps the hash of its entry
+     * before the move if it is unchanged (see {@link Entry#isUnchanged(Entry)}).
+     * Otherwise, the hash of the move is only indexed if it is already computed,
+     * so that a rename does not read the contents of the element
+     *
+     * @param newPath    The path to which the element was moved relative to the root
+     * @param movedEntry The entry of the element before the move. May be null
+     * @param moveEvent  The propagated move
+     */
+    protected void putMoved(String newPath, Entry movedEntry, IEvent moveEvent) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(this.rootPath.resolve(newPath), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            Entry entry = FileIndex.toEntry(attributes, null);
+
+            boolean isUnchanged = null != movedEntry && null != movedEntry.hash && movedEntry.isUnchanged(entry);
+
+            String hash = null;
+            if (isUnchanged) {
+                hash = movedEntry.hash;
+            } else if (moveEvent.getHashFuture().isDone()) {
+                hash = moveEvent.getHash();
+            }
+
+            this.entries.put(newPath, FileIndex.toEntry(attributes, hash));
+        } catch (IOException e) {
+            // deleted meanwhile: the deletion is propagated later on
+            this.entries.remove(newPath);
+        }
+    }
+
+    /**
+     * Returns the entries of the given path element and all its children
+     *
+     * @param path The path relative to the root
+     *
+     * @return A copy of the entries
+     */
+    protected Map<String, Entry> getSubtree(String path) {
+        // '0' follows '/', i.e. the range contains all paths starting with "path/"
+        Map<String, Entry> subtree = new HashMap<>(this.entries.subMap(path + "/", true, path + "0", false));
+
+        Entry entry = this.entries.get(path);
+        if (null != entry) {
+            subtree.put(path, entry);
+        }
+
+        return subtree;
+    }
+
+    /**
+     * Removes the entries of the given path element and all its children
+     *
+     * @param path The path relative to the root
+     */
+    protected void removeSubtree(String path) {
+        this.entries.subMap(path + "/", true, path + "0", false).clear();
+        this.entries.remove(path);
+    }
+
+    protected String relativize(Path path) {
+        if (path.startsWith(this.rootPath)) {
+            return this.rootPath.relativize(path).toString();
+        }
+
+        return path.toString();
+    }
+
+    protected static Entry toEntry(BasicFileAttributes attributes, String hash) {
+        Object fileKey = attributes.fileKey();
+
+        return new Entry(
+                (null == fileKey) ? null : fileKey.toString(),
+                attributes.isDirectory(),
+                attributes.size(),
+                attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                hash
+        );
+    }
+
+    protected static String getParent(String path) {
+        int index = path.lastIndexOf('/');
+
+        return (index < 0) ? null : path.substring(0, index);
+    }
+
+    protected static byte[] encode(String path, Entry entry) {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        byte[] fileKeyBytes = (null == entry.fileKey) ? new byte[0] : entry.fileKey.getBytes(StandardCharsets.UTF_8);
+        byte[] hashBytes = (null == entry.hash) ? new byte[0] : entry.hash.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 + pathBytes.length + 2 + fileKeyBytes.length + 1 + 8 + 8 + 2 + hashBytes.length);
+        FileIndex.putString(buffer, pathBytes);
+        FileIndex.putString(buffer, fileKeyBytes);
+        buffer.put(entry.isDirectory ? FLAG_DIRECTORY : 0);
+        buffer.putLong(entry.size);
+        buffer.putLong(entry.lastModified);
+        FileIndex.putString(buffer, hashBytes);
+
+        return buffer.array();
+    }
+
+    protected static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link FileIndex#putString(ByteBuffer, byte[])}
+     *
+     * @param buffer The buffer to read from
+     *
+     * @return The string or null, if empty
+     */
+    protected static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (0 == length) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the attributes of all children of a single directory
+     * and forks a walk for each of its subdirectories
+     */
+    protected class DirectoryWalk extends RecursiveAction {
+
+        protected final Path directory;
+
+        protected final Map<String, Entry> liveEntries;
+
+        protected DirectoryWalk(Path directory, Map<String, Entry> liveEntries) {
+            this.directory = directory;
+            this.liveEntries = liveEntries;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryWalk> subdirectoryWalks = new ArrayList<>();
+
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(this.directory)) {
+                for (Path child : directoryStream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        // deleted in the meantime
+                        continue;
+                    }
+
+                    this.liveEntries.put(rootPath.relativize(child).toString(), FileIndex.toEntry(attributes, null));
+
+                    if (attributes.isDirectory()) {
+                        subdirectoryWalks.add(new DirectoryWalk(child, this.liveEntries));
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                logger.error("Failed to list the contents of directory " + this.directory + ". Message: " + e.getMessage());
+            }
+
+            invokeAll(subdirectoryWalks);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package org.rmatil.sync.event.aggregator.core.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the identity of the watched path elements, i.e. their file key
+ * (see {@link BasicFileAttributes#fileKey()}), to detect renames without reading their contents.
+ * <p>
+ * Since the filesystem notifies about a rename by a deletion and a creation,
+ * the deleted path can not be read anymore. Its identity is therefore recorded while it still exists,
+ * i.e. when the watched folder is tracked initially and whenever it is created or modified.
+ * A created path element having the identity of a deleted one is the same element,
+ * hence their events are propagated as move (see {@link org.rmatil.sync.event.aggregator.core.PathEventListener#setFileKeyTracker(FileKeyTracker)}).
+ * <p>
+ * File keys of deleted files are reused by the filesystem. Therefore, the identity
+ * of a file consists of its size and its last modification time as well, both of which
+ * are kept on renaming. Since these do not distinguish directories and empty files,
+ * a reused file key can not be told apart from a rename for them
+ * (see {@link Identity#isDistinctive()}). Their renames are detected by their hashes instead.
+ * <p>
+ * <i>Note</i>: On filesystems which do not provide file keys, no renames are detected.
+ */
+public class FileKeyTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileKeyTracker.class);
+
+    /**
+     * The default maximum number of path elements whose identity is tracked
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000000L;
+
+    /**
+     * The identity of a path element
+     */
+    public static class Identity {
+
+        protected final Object fileKey;
+
+        protected final boolean isDirectory;
+
+        protected final long size;
+
+        /**
+         * The last modification time in nanoseconds
+         */
+        protected final long lastModified;
+
+        /**
+         * @param fileKey      The file key
+         * @param isDirectory  Whether the path element is a directory
+         * @param size         The size in bytes. Ignored for directories
+         * @param lastModified The last modification time in nanoseconds. Ignored for directories
+         */
+        public Identity(Object fileKey, boolean isDirectory, long size, long lastModified) {
+            this.fileKey = fileKey;
+            this.isDirectory = isDirectory;
+            // adding a child to a directory changes its size and modification time, but not its identity
+            this.size = isDirectory ? 0L : size;
+            this.lastModified = isDirectory ? 0L : lastModified;
+        }
+
+        public Object getFileKey() {
+            return this.fileKey;
+        }
+
+        public boolean isDirectory() {
+            return this.isDirectory;
+        }
+
+        /**
+         * Returns whether the identity distinguishes the path element from another one
+         * reusing its file key after its deletion. This is not the case for directories,
+         * whose identity consists of their file key only, and for empty files,
+         * which may be created within the resolution of the modification time
+         *
+         * @return True, if a path element having this identity is the same element
+         */
+        public boolean isDistinctive() {
+            return ! this.isDirectory && this.size > 0L;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (! (o instanceof Identity)) {
+                return false;
+            }
+
+            Identity identity = (Identity) o;
+
+            return this.isDirectory == identity.isDirectory &&
+                    this.size == identity.size &&
+                    this.lastModified == identity.lastModified &&
+                    this.fileKey.equals(identity.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.fileKey.hashCode() + Long.hashCode(this.size ^ this.lastModified);
+        }
+
+        @Override
+        public String toString() {
+            return this.fileKey + (this.isDirectory ? "/" : " (" + this.size + " bytes, modified " + this.lastModified + "ns)");
+        }
+    }
+
+    /**
+     * The last recorded identity of each path element
+     */
+    protected final Cache<Path, Identity> identities;
+
+    /**
+     * The number of renames detected by the identity
+     */
+    protected final LongAdder detectedMoves;
+
+    public FileKeyTracker() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize The maximum number of path elements whose identity is tracked
+     */
+    public FileKeyTracker(long maximumSize) {
+        this.identities = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.detectedMoves = new LongAdder();
+    }
+
+    /**
+     * Records the identities of the given path element and all its children.
+     * Symbolic links are not followed
+     *
+     * @param rootPath The path element to track
+     *
+     * @return The number of recorded path elements
+     */
+    public long track(Path rootPath) {
+        long start = System.currentTimeMillis();
+        LongAdder nrOfPaths = new LongAdder();
+
+        try {
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    this.visit(dir, attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    this.visit(file, attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // deleted in the meantime: the deletion is notified
+                    return FileVisitResult.CONTINUE;
+                }
+
+                protected void visit(Path path, BasicFileAttributes attrs) {
+                    if (FileKeyTracker.this.put(path, attrs)) {
+                        nrOfPaths.increment();
+                    }
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Could not track the identities within " + rootPath + ". Message: " + e.getMessage());
+        }
+
+        logger.info("Tracked the identities of " + nrOfPaths.sum() + " path elements within " + rootPath + " in " + (System.currentTimeMillis() - start) + "ms");
+
+        return nrOfPaths.sum();
+    }
+
+    /**
+     * Reads and records the current identity of the given path element
+     *
+     * @param path The path element to record
+     *
+     * @return The identity or null, if the path element does not exist or has no file key
+     */
+    public Identity record(Path path) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            this.identities.invalidate(path);
+            return null;
+        }
+
+        if (! this.put(path, attributes)) {
+            return null;
+        }
+
+        return this.identities.getIfPresent(path);
+    }
+
+    /**
+     * Returns the last recorded identity of the given path element.
+     * Does not access the filesystem, hence this is the identity of a deleted path element as well
+     *
+     * @param path The path element
+     *
+     * @return The identity or null, if none was recorded
+     */
+    public Identity getIdentity(Path path) {
+        return this.identities.getIfPresent(path);
+    }
+
+    /**
+     * Forgets the identity of the given path element, e.g. once its deletion is propagated
+     *
+     * @param path The path element
+     */
+    public void remove(Path path) {
+        this.identities.invalidate(path);
+    }
+
+    /**
+     * Records that a rename was detected by the identity of the renamed path element
+     */
+    public void recordMove() {
+        this.detectedMoves.increment();
+    }
+
+    /**
+     * Returns the number of renames detected by the identity of the renamed path element
+     *
+     * @return The number of detected moves
+     */
+    public long getNrOfDetectedMoves() {
+        return this.detectedMoves.sum();
+    }
+
+    /**
+     * Returns the number of path elements whose identity is recorded
+     *
+     * @return The number of tracked path elements
+     */
+    public long size() {
+        return this.identities.size();
+    }
+
+    protected boolean put(Path path, BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        if (null == fileKey) {
+            this.identities.invalidate(path);
+            return false;
+        }
+
+        this.identities.put(path, new Identity(
+                fileKey,
+                attributes.isDirectory(),
+                attributes.size(),
+                attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+        ));
+
+        return true;
+    }
+}
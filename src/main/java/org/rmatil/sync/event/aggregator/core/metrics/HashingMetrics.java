@@ -0,0 +1,79 @@
+package org.rmatil.sync.event.aggregator.core.metrics;
+
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the hashing speed of all event aggregators of the JVM.
+ * <p>
+ * Files are hashed by the static methods of the {@link HashingService},
+ * regardless of the event aggregator requesting the hash. Hence, the speed
+ * is collected for the whole JVM and should be registered once,
+ * instead of along with the {@link PipelineMetrics} of each event aggregator.
+ */
+public class HashingMetrics implements HashingMetricsMXBean {
+
+    /**
+     * The name under which this is registered via JMX. May be null
+     */
+    protected ObjectName objectName;
+
+    @Override
+    public long getHashedBytes() {
+        return HashingService.getHashedBytes();
+    }
+
+    @Override
+    public long getHashingNanos() {
+        return HashingService.getHashingNanos();
+    }
+
+    @Override
+    public double getHashingSpeed() {
+        long hashingNanos = this.getHashingNanos();
+        if (0L == hashingNanos) {
+            return 0d;
+        }
+
+        return this.getHashedBytes() * (double) TimeUnit.SECONDS.toNanos(1L) / hashingNanos;
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server
+     *
+     * @param objectName The object name, e.g. <code>org.rmatil.sync.event.aggregator:type=HashingMetrics</code>
+     *
+     * @throws JMException If the name is invalid or already registered
+     */
+    public synchronized void registerMBean(String objectName)
+            throws JMException {
+        ObjectName name = new ObjectName(objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        this.objectName = name;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server.
+     * Does nothing if they are not registered.
+     *
+     * @throws JMException If the metrics could not be unregistered
+     */
+    public synchronized void unregisterMBean()
+            throws JMException {
+        if (null == this.objectName) {
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        if (mBeanServer.isRegistered(this.objectName)) {
+            mBeanServer.unregisterMBean(this.objectName);
+        }
+
+        this.objectName = null;
+    }
+}
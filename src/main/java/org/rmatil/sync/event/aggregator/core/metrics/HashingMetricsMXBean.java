@@ -0,0 +1,35 @@
+package org.rmatil.sync.event.aggregator.core.metrics;
+
+/**
+ * The management interface of {@link HashingMetrics} exposed via JMX
+ *
+ * @see HashingMetrics#registerMBean(String)
+ */
+public interface HashingMetricsMXBean {
+
+    /**
+     * Returns the number of bytes read to hash files by all event aggregators of the JVM
+     *
+     * @return The number of hashed bytes
+     */
+    long getHashedBytes();
+
+    /**
+     * Returns the time spent hashing files by all event aggregators of the JVM, summed up over all threads
+     *
+     * @return The hashing time in nanoseconds
+     */
+    long getHashingNanos();
+
+    /**
+     * Returns the number of bytes a single thread hashes per second spent hashing,
+     * averaged over all event aggregators of the JVM.
+     * <p>
+     * <i>Note</i>: This is the speed of hashing itself, not the throughput
+     * of an event aggregator: Hashing on several threads does not increase it
+     * and time spent waiting for files to be hashed is not included
+     *
+     * @return The hashing speed in bytes per second
+     */
+    double getHashingSpeed();
+}
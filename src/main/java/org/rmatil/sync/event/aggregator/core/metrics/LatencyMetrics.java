@@ -0,0 +1,78 @@
+package org.rmatil.sync.event.aggregator.core.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates the number, the total and the maximum of measured durations.
+ * Recording does not allocate and scales with concurrent writers,
+ * so that it can stay enabled in production.
+ */
+public class LatencyMetrics {
+
+    protected final LongAdder count;
+
+    protected final LongAdder totalNanos;
+
+    protected final LongAccumulator maxNanos;
+
+    public LatencyMetrics() {
+        this.count = new LongAdder();
+        this.totalNanos = new LongAdder();
+        this.maxNanos = new LongAccumulator(Long::max, 0L);
+    }
+
+    /**
+     * Records a single measured duration
+     *
+     * @param nanos The duration in nanoseconds. Negative durations are recorded as 0
+     */
+    public void record(long nanos) {
+        long duration = Math.max(0L, nanos);
+
+        this.count.increment();
+        this.totalNanos.add(duration);
+        this.maxNanos.accumulate(duration);
+    }
+
+    /**
+     * Returns the number of recorded durations
+     *
+     * @return The number of recorded durations
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the sum of all recorded durations
+     *
+     * @return The sum in nanoseconds
+     */
+    public long getTotalNanos() {
+        return this.totalNanos.sum();
+    }
+
+    /**
+     * Returns the longest recorded duration
+     *
+     * @return The longest duration in nanoseconds or 0, if none is recorded
+     */
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * Returns the average of all recorded durations
+     *
+     * @return The average in nanoseconds or 0, if none is recorded
+     */
+    public double getMeanNanos() {
+        long count = this.getCount();
+        if (0L == count) {
+            return 0d;
+        }
+
+        return (double) this.getTotalNanos() / count;
+    }
+}
@@ -0,0 +1,246 @@
+package org.rmatil.sync.event.aggregator.core.metrics;
+
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Collects the metrics of the pipeline of an event aggregator:
+ * The latency and the number of incoming and outgoing events of each stage,
+ * the time spent reading from the object manager and the delay of events
+ * from the filesystem notification to the listeners.
+ * <p>
+ * Stages are registered on their first invocation. Afterwards, recording
+ * does neither allocate nor lock, so that the metrics can stay enabled in production.
+ * <p>
+ * <i>Note</i>: The hashing speed covers all event aggregators of the JVM,
+ * hence it is exposed once by the {@link HashingMetrics}.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+
+    /**
+     * The name of the stage resolving the hashes of events which passed all modifiers
+     */
+    public static final String HASHING_STAGE = "HashingService";
+
+    /**
+     * The name of the stage notifying the listeners
+     */
+    public static final String LISTENER_STAGE = "Listeners";
+
+    /**
+     * The metrics of each stage by the stage itself
+     */
+    protected final ConcurrentMap<Object, StageMetrics> stages;
+
+    /**
+     * The metrics of all stages in the order of their registration
+     */
+    protected final List<StageMetrics> stageMetrics;
+
+    protected final LongAdder batches;
+
+    protected final LongAdder eventsReceived;
+
+    protected final LongAdder eventsEmitted;
+
+    protected final LatencyMetrics objectManagerLookups;
+
+    protected final LatencyMetrics endToEndDelay;
+
+    /**
+     * Supplies an estimate of the number of events waiting to be aggregated.
+     * Polled by JMX, so it must neither block nor modify the pipeline
+     */
+    protected final IntSupplier pendingEvents;
+
+    /**
+     * The name under which this is registered via JMX. May be null
+     */
+    protected ObjectName objectName;
+
+    public PipelineMetrics() {
+        this(() -> 0);
+    }
+
+    /**
+     * @param pendingEvents Supplies an estimate of the number of events waiting to be aggregated
+     */
+    public PipelineMetrics(IntSupplier pendingEvents) {
+        this.stages = new ConcurrentHashMap<>();
+        this.stageMetrics = new CopyOnWriteArrayList<>();
+        this.batches = new LongAdder();
+        this.eventsReceived = new LongAdder();
+        this.eventsEmitted = new LongAdder();
+        this.objectManagerLookups = new LatencyMetrics();
+        this.endToEndDelay = new LatencyMetrics();
+        this.pendingEvents = pendingEvents;
+    }
+
+    /**
+     * Records a new batch of events entering the pipeline
+     *
+     * @param nrOfEvents The number of events in the batch
+     */
+    public void recordBatch(int nrOfEvents) {
+        this.batches.increment();
+        this.eventsReceived.add(nrOfEvents);
+    }
+
+    /**
+     * Records a single invocation of the given stage
+     *
+     * @param stage         The modifier, aggregator or the name of the stage
+     * @param nanos         The time spent in the stage in nanoseconds
+     * @param nrOfEventsIn  The number of events passed to the stage
+     * @param nrOfEventsOut The number of events returned by the stage
+     */
+    public void recordStage(Object stage, long nanos, int nrOfEventsIn, int nrOfEventsOut) {
+        StageMetrics metrics = this.stages.get(stage);
+        if (null == metrics) {
+            metrics = this.register(stage);
+        }
+
+        metrics.record(nanos, nrOfEventsIn, nrOfEventsOut);
+    }
+
+    /**
+     * Records a single read of the object manager
+     *
+     * @param nanos The duration of the read in nanoseconds
+     */
+    public void recordObjectManagerLookup(long nanos) {
+        this.objectManagerLookups.record(nanos);
+    }
+
+    /**
+     * Records the given events being propagated to the listeners.
+     * The end-to-end delay of each event is measured from its timestamp.
+     *
+     * @param events           The emitted events
+     * @param currentTimestamp The current time in milliseconds
+     */
+    public void recordEmitted(List<IEvent> events, long currentTimestamp) {
+        this.eventsEmitted.add(events.size());
+
+        for (IEvent event : events) {
+            this.endToEndDelay.record(TimeUnit.MILLISECONDS.toNanos(currentTimestamp - event.getTimestamp()));
+        }
+    }
+
+    /**
+     * Returns the metrics of the given stage
+     *
+     * @param stage The modifier, aggregator or the name of the stage
+     *
+     * @return The metrics or null, if the stage was not invoked yet
+     */
+    public StageMetrics getStageMetrics(Object stage) {
+        return this.stages.get(stage);
+    }
+
+    /**
+     * Removes the metrics of the given stage, e.g. once
+     * the modifier or aggregator is removed
+     *
+     * @param stage The modifier, aggregator or the name of the stage
+     */
+    public synchronized void removeStage(Object stage) {
+        StageMetrics metrics = this.stages.remove(stage);
+        if (null != metrics) {
+            this.stageMetrics.remove(metrics);
+        }
+    }
+
+    @Override
+    public long getBatches() {
+        return this.batches.sum();
+    }
+
+    @Override
+    public long getEventsReceived() {
+        return this.eventsReceived.sum();
+    }
+
+    @Override
+    public long getEventsEmitted() {
+        return this.eventsEmitted.sum();
+    }
+
+    @Override
+    public int getPendingEvents() {
+        return this.pendingEvents.getAsInt();
+    }
+
+    @Override
+    public List<StageMetrics> getStageMetrics() {
+        return new ArrayList<>(this.stageMetrics);
+    }
+
+    @Override
+    public LatencyMetrics getObjectManagerLookups() {
+        return this.objectManagerLookups;
+    }
+
+    @Override
+    public LatencyMetrics getEndToEndDelay() {
+        return this.endToEndDelay;
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server
+     *
+     * @param objectName The object name, e.g. <code>org.rmatil.sync.event.aggregator:type=PipelineMetrics</code>
+     *
+     * @throws JMException If the name is invalid or already registered
+     */
+    public synchronized void registerMBean(String objectName)
+            throws JMException {
+        ObjectName name = new ObjectName(objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        this.objectName = name;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server.
+     * Does nothing if they are not registered.
+     *
+     * @throws JMException If the metrics could not be unregistered
+     */
+    public synchronized void unregisterMBean()
+            throws JMException {
+        if (null == this.objectName) {
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        if (mBeanServer.isRegistered(this.objectName)) {
+            mBeanServer.unregisterMBean(this.objectName);
+        }
+
+        this.objectName = null;
+    }
+
+    protected synchronized StageMetrics register(Object stage) {
+        StageMetrics metrics = this.stages.get(stage);
+        if (null == metrics) {
+            String name = (stage instanceof String) ? (String) stage : stage.getClass().getName();
+            metrics = new StageMetrics(name);
+            this.stages.put(stage, metrics);
+            this.stageMetrics.add(metrics);
+        }
+
+        return metrics;
+    }
+}
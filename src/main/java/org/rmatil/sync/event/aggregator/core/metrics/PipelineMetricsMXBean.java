@@ -0,0 +1,61 @@
+package org.rmatil.sync.event.aggregator.core.metrics;
+
+import java.util.List;
+
+/**
+ * The management interface of {@link PipelineMetrics} exposed via JMX
+ *
+ * @see PipelineMetrics#registerMBean(String)
+ */
+public interface PipelineMetricsMXBean {
+
+    /**
+     * Returns the number of aggregated batches of events
+     *
+     * @return The number of batches
+     */
+    long getBatches();
+
+    /**
+     * Returns the number of events passed to the first stage
+     *
+     * @return The number of received events
+     */
+    long getEventsReceived();
+
+    /**
+     * Returns the number of events propagated to the listeners
+     *
+     * @return The number of emitted events
+     */
+    long getEventsEmitted();
+
+    /**
+     * Returns an estimate of the number of events waiting to be aggregated
+     *
+     * @return The number of pending events
+     */
+    int getPendingEvents();
+
+    /**
+     * Returns the metrics of each stage in the order of their first invocation
+     *
+     * @return The metrics of all stages
+     */
+    List<StageMetrics> getStageMetrics();
+
+    /**
+     * Returns the time spent reading versions from the object manager
+     *
+     * @return The latency of object manager lookups
+     */
+    LatencyMetrics getObjectManagerLookups();
+
+    /**
+     * Returns the delay of emitted events from being notified
+     * by the filesystem until being propagated to the listeners
+     *
+     * @return The end-to-end delay
+     */
+    LatencyMetrics getEndToEndDelay();
+}
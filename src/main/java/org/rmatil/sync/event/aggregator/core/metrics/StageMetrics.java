@@ -0,0 +1,77 @@
+package org.rmatil.sync.event.aggregator.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a single stage of the pipeline, i.e. a modifier,
+ * an aggregator, the resolution of hashes or the notification of listeners
+ */
+public class StageMetrics {
+
+    protected final String name;
+
+    protected final LatencyMetrics latency;
+
+    protected final LongAdder eventsIn;
+
+    protected final LongAdder eventsOut;
+
+    /**
+     * @param name The name of the stage
+     */
+    public StageMetrics(String name) {
+        this.name = name;
+        this.latency = new LatencyMetrics();
+        this.eventsIn = new LongAdder();
+        this.eventsOut = new LongAdder();
+    }
+
+    /**
+     * Records a single invocation of the stage
+     *
+     * @param nanos         The time spent in the stage in nanoseconds
+     * @param nrOfEventsIn  The number of events passed to the stage
+     * @param nrOfEventsOut The number of events returned by the stage
+     */
+    public void record(long nanos, int nrOfEventsIn, int nrOfEventsOut) {
+        this.latency.record(nanos);
+        this.eventsIn.add(nrOfEventsIn);
+        this.eventsOut.add(nrOfEventsOut);
+    }
+
+    /**
+     * Returns the name of the stage
+     *
+     * @return The name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the time spent per invocation of the stage
+     *
+     * @return The latency of the stage
+     */
+    public LatencyMetrics getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Returns the number of events passed to the stage
+     *
+     * @return The number of incoming events
+     */
+    public long getEventsIn() {
+        return this.eventsIn.sum();
+    }
+
+    /**
+     * Returns the number of events returned by the stage
+     *
+     * @return The number of outgoing events
+     */
+    public long getEventsOut() {
+        return this.eventsOut.sum();
+    }
+}
@@ -1,36 +1,127 @@
 package org.rmatil.sync.event.aggregator.core.modifier;
 
-import org.rmatil.sync.commons.hashing.Hash;
-import org.rmatil.sync.event.aggregator.config.Config;
+import org.rmatil.sync.event.aggregator.core.cache.VersionHashCache;
 import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
 import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentChunker;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentHashCache;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingMode;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.core.hashing.IHashProvider;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 import org.rmatil.sync.version.api.IObjectStore;
 import org.rmatil.sync.version.core.model.PathObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class AddDirectoryContentModifier implements IModifier {
 
     final static Logger logger = LoggerFactory.getLogger(AddDirectoryContentModifier.class);
 
+    /**
+     * The default number of threads walking created directories
+     */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
     protected IObjectStore objectStore;
 
     protected Path rootDir;
 
+    /**
+     * The cache which is filled with the versions of deleted children.
+     * May be null
+     */
+    protected VersionHashCache versionHashCache;
+
+    /**
+     * The cache of hashes of unchanged files.
+     * May be null
+     */
+    protected ContentHashCache contentHashCache;
+
+    /**
+     * The maximum number of threads walking created directories,
+     * unless the hashing service of the event aggregator is used
+     */
+    protected final int parallelism;
+
+    /**
+     * The hashing service of the event aggregator on whose threads
+     * created directories are walked. Null if used on its own
+     */
+    protected volatile HashingService hashingService;
+
+    /**
+     * The pool walking created directories, if no hashing service of the event aggregator is set.
+     * Created on demand and shut down on stopping
+     */
+    protected ExecutorService walkPool;
+
+    /**
+     * The metrics recording the reads of the object manager. May be null
+     */
+    protected volatile PipelineMetrics metrics;
+
     public AddDirectoryContentModifier(Path rootDir, IObjectStore objectStore) {
+        this(rootDir, objectStore, null);
+    }
+
+    /**
+     * @param rootDir          The root of the synchronized folder
+     * @param objectStore      The object store
+     * @param versionHashCache The cache to fill with the versions of deleted children,
+     *                         so that they do not have to be read again by later modifiers or aggregators
+     */
+    public AddDirectoryContentModifier(Path rootDir, IObjectStore objectStore, VersionHashCache versionHashCache) {
+        this(rootDir, objectStore, versionHashCache, null);
+    }
+
+    /**
+     * @param rootDir          The root of the synchronized folder
+     * @param objectStore      The object store
+     * @param versionHashCache The cache to fill with the versions of deleted children. May be null
+     * @param contentHashCache The cache of hashes of unchanged files used to hash created children,
+     *                         unless they are hashed like their directory. May be null
+     */
+    public AddDirectoryContentModifier(Path rootDir, IObjectStore objectStore, VersionHashCache versionHashCache, ContentHashCache contentHashCache) {
+        this(rootDir, objectStore, versionHashCache, contentHashCache, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param rootDir          The root of the synchronized folder
+     * @param objectStore      The object store
+     * @param versionHashCache The cache to fill with the versions of deleted children. May be null
+     * @param contentHashCache The cache of hashes of unchanged files used to hash created children,
+     *                         unless they are hashed like their directory. May be null
+     * @param parallelism      The maximum number of threads walking created directories, if used on its own
+     *
+     * @throws IllegalArgumentException If the parallelism is not positive
+     */
+    public AddDirectoryContentModifier(Path rootDir, IObjectStore objectStore, VersionHashCache versionHashCache, ContentHashCache contentHashCache, int parallelism) {
         this.objectStore = objectStore;
         this.rootDir = rootDir;
+        this.versionHashCache = versionHashCache;
+        this.contentHashCache = contentHashCache;
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive");
+        }
+
+        this.parallelism = parallelism;
     }
 
     @Override
@@ -38,12 +129,60 @@ public class AddDirectoryContentModifier implements IModifier {
         Collections.sort(events);
         List<IEvent> modifiedEvents = new ArrayList<>();
 
+        // index the paths of created elements once instead of scanning all events for each child
+        Set<Path> createPaths = new HashSet<>();
+        for (IEvent event : events) {
+            if (event instanceof CreateEvent) {
+                createPaths.add(event.getPath());
+            }
+        }
+
+        // walk all created directories in parallel
+        Walk walk = null;
+        Map<IEvent, DirectoryWalk> directoryWalks = new HashMap<>();
+        for (IEvent event : events) {
+            if (event instanceof CreateEvent && ! this.hasCreatedParent(createPaths, event.getPath())) {
+                Path directory = this.rootDir.resolve(event.getPath());
+                if (Files.isDirectory(directory)) {
+                    // the contents are hashed like the directory itself
+                    IHashProvider hashProvider = this.contentHashCache;
+                    HashingMode hashingMode = HashingMode.FULL;
+                    ContentChunker contentChunker = null;
+                    if (event.getHashFuture() instanceof LazyHash) {
+                        hashProvider = ((LazyHash) event.getHashFuture()).getHashProvider();
+                        hashingMode = ((LazyHash) event.getHashFuture()).getHashingMode();
+                        contentChunker = ((LazyHash) event.getHashFuture()).getContentChunker();
+                    }
+
+                    if (null == walk) {
+                        walk = new Walk(this.getWalkExecutor());
+                    }
+
+                    DirectoryWalk directoryWalk = new DirectoryWalk(walk, createPaths, directory, event.getTimestamp(), hashProvider, hashingMode, contentChunker);
+                    directoryWalks.put(event, directoryWalk);
+                    walk.submit(directoryWalk);
+                }
+            }
+        }
+
+        boolean isWalkCompleted = null == walk || walk.await();
+
         for (IEvent event : events) {
             if (event instanceof DeleteEvent) {
                 modifiedEvents.add(event);
                 try {
                     // create for each child of the path a delete event
+                    long start = System.nanoTime();
                     List<PathObject> deletedChildren = this.objectStore.getObjectManager().getChildren(event.getPath().toString());
+                    PipelineMetrics metrics = this.metrics;
+                    if (null != metrics) {
+                        metrics.recordObjectManagerLookup(System.nanoTime() - start);
+                    }
+
+                    if (null != this.versionHashCache) {
+                        deletedChildren.forEach(this.versionHashCache::put);
+                    }
+
                     modifiedEvents.addAll(
                             deletedChildren
                                     .stream()
@@ -54,53 +193,116 @@ public class AddDirectoryContentModifier implements IModifier {
                 }
             } else if (event instanceof CreateEvent) {
                 modifiedEvents.add(event);
-                // create createEvent for each file contained in the dir
-                if (this.rootDir.resolve(event.getPath()).toFile().isDirectory()) {
-                    modifiedEvents.addAll(createCreateEventForChildren(events, this.rootDir.resolve(event.getPath()).toFile(), event.getTimestamp()));
+                // add the createEvents for each file contained in the dir
+                DirectoryWalk directoryWalk = directoryWalks.get(event);
+                if (null != directoryWalk && isWalkCompleted) {
+                    modifiedEvents.addAll(directoryWalk.getEvents());
                 }
             } else {
                 modifiedEvents.add(event);
             }
         }
 
+        // the sort is stable: children on the same level keep the order of the walk
         Collections.sort(modifiedEvents);
         return modifiedEvents;
     }
 
-    protected List<IEvent> createCreateEventForChildren(final List<IEvent> origEvents, File parentDirectory, long timestamp) {
-        List<IEvent> events = new ArrayList<>();
-        if (null == parentDirectory) {
-            return events;
+    /**
+     * Returns the number of threads walking created directories, if used on its own
+     *
+     * @return The parallelism of the walk
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    @Override
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+        if (null != this.versionHashCache) {
+            this.versionHashCache.setMetrics(metrics);
         }
+    }
 
-        // traverse each file
-        for (File file : parentDirectory.listFiles()) {
+    @Override
+    public void setHashingService(HashingService hashingService) {
+        this.hashingService = hashingService;
+    }
 
-            boolean hasCreateEvent = false;
-            for (IEvent entry : origEvents) {
-                if (entry instanceof CreateEvent && entry.getPath().toString().equals(this.rootDir.relativize(file.toPath()).toString())) {
-                    hasCreateEvent = true;
-                }
-            }
+    /**
+     * Shuts down the pool walking created directories, if any.
+     * A new one is created once the next directory is walked on its own
+     */
+    @Override
+    public synchronized void stop() {
+        if (null != this.walkPool) {
+            this.walkPool.shutdown();
+            this.walkPool = null;
+        }
+    }
 
-            // only build a create event if none exists yet
-            if (! hasCreateEvent) {
-                try {
-                    logger.trace("Create createEvent for subfile " + file.toPath().toString() + " in parentDir " + parentDirectory.toString());
-                    // add additional n milliseconds such that the child contents are processed later than the parent ones
-                    events.add(new CreateEvent(this.rootDir.relativize(file.toPath()), file.getName(), Hash.hash(Config.DEFAULT.getHashingAlgorithm(), file), timestamp + Math.abs(this.getAdditionalMilliseconds(parentDirectory.toString(), file.toString()))));
-                } catch (IOException e) {
-                    logger.error("Could not hash contents of file " + file.toPath().toString());
-                }
-            }
+    /**
+     * Returns the executor walking created directories: The lane of the hashing threads
+     * of the event aggregator, if set. Otherwise, a pool owned by this modifier
+     *
+     * @return The executor of the walk
+     */
+    protected synchronized Executor getWalkExecutor() {
+        HashingService hashingService = this.hashingService;
+        if (null != hashingService) {
+            return hashingService.getExecutor();
+        }
 
-            if (file.isDirectory()) {
-                // add additional n milliseconds such that the child contents are processed later than the parent ones
-                events.addAll(this.createCreateEventForChildren(origEvents, file, timestamp + Math.abs(this.getAdditionalMilliseconds(parentDirectory.toString(), file.toString()))));
+        if (null == this.walkPool) {
+            this.walkPool = new ForkJoinPool(this.parallelism);
+        }
+
+        return this.walkPool;
+    }
+
+    /**
+     * Returns whether any parent of the given path is created too.
+     * Its content is then already added by walking the created parent.
+     *
+     * @param createPaths The paths of all created elements
+     * @param path        The path to check
+     *
+     * @return True, if a parent is created too
+     */
+    protected boolean hasCreatedParent(Set<Path> createPaths, Path path) {
+        for (Path parent = path.getParent(); null != parent; parent = parent.getParent()) {
+            if (createPaths.contains(parent)) {
+                return true;
             }
         }
 
-        return events;
+        return false;
+    }
+
+    /**
+     * Creates createEvents for all elements in the given directory
+     * and recursively in all its subdirectories, except for those
+     * for which a createEvent already exists.
+     * <p>
+     * Subdirectories are walked in parallel. The events are returned in a
+     * deterministic order: The entries of a directory are sorted by their name,
+     * each one followed by the events of its contents.
+     *
+     * @param createPaths     The paths of all created elements
+     * @param parentDirectory The directory to walk
+     * @param timestamp       The timestamp of the event of the directory
+     * @param hashProvider    The provider of the hashes of the created elements. May be null
+     * @param hashingMode     Whether a fast digest is computed for the created elements
+     *
+     * @return The created events
+     */
+    protected List<IEvent> createCreateEventForChildren(Set<Path> createPaths, Path parentDirectory, long timestamp, IHashProvider hashProvider, HashingMode hashingMode) {
+        Walk walk = new Walk(this.getWalkExecutor());
+        DirectoryWalk directoryWalk = new DirectoryWalk(walk, createPaths, parentDirectory, timestamp, hashProvider, hashingMode, null);
+        walk.submit(directoryWalk);
+
+        return walk.await() ? directoryWalk.getEvents() : new ArrayList<>();
     }
 
     /**
@@ -120,4 +322,191 @@ public class AddDirectoryContentModifier implements IModifier {
         // we add for each level one millisecond
         return Math.abs(nrOfSlashesInChild - nrOfSlashes);
     }
+
+    /**
+     * Tracks the directories of a walk which are not listed yet.
+     * No thread of the executor waits for another one, so that the walk
+     * does not block a shared pool, even if limited to a single thread
+     */
+    protected static class Walk {
+
+        protected final Executor executor;
+
+        /**
+         * The number of submitted directories which are not listed yet
+         */
+        protected final AtomicInteger nrOfPendingDirectories;
+
+        /**
+         * Released once all directories are listed
+         */
+        protected final CountDownLatch completion;
+
+        protected Walk(Executor executor) {
+            this.executor = executor;
+            this.nrOfPendingDirectories = new AtomicInteger(1);
+            this.completion = new CountDownLatch(1);
+        }
+
+        /**
+         * Lists the given directory on the executor, or on the calling thread if it is shut down
+         *
+         * @param directoryWalk The walk of the directory
+         */
+        protected void submit(DirectoryWalk directoryWalk) {
+            this.nrOfPendingDirectories.incrementAndGet();
+
+            Runnable task = () -> {
+                try {
+                    directoryWalk.run();
+                } finally {
+                    this.complete();
+                }
+            };
+
+            try {
+                this.executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+
+        /**
+         * Waits until all submitted directories and their subdirectories are listed
+         *
+         * @return True, if the walk completed. False, if interrupted while waiting
+         */
+        protected boolean await() {
+            // the submitting thread does not submit any further directory
+            this.complete();
+
+            try {
+                this.completion.await();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while walking created directories. Message: " + e.getMessage());
+                return false;
+            }
+        }
+
+        protected void complete() {
+            if (0 == this.nrOfPendingDirectories.decrementAndGet()) {
+                this.completion.countDown();
+            }
+        }
+    }
+
+    /**
+     * Lists a single directory and submits a walk for each of its subdirectories
+     */
+    protected class DirectoryWalk implements Runnable {
+
+        protected final Walk walk;
+
+        protected final Set<Path> createPaths;
+
+        protected final Path directory;
+
+        protected final long timestamp;
+
+        protected final IHashProvider hashProvider;
+
+        protected final HashingMode hashingMode;
+
+        /**
+         * Splits created files into chunks. May be null
+         */
+        protected final ContentChunker contentChunker;
+
+        /**
+         * The events of the entries of the directory, sorted by their name
+         */
+        protected final List<IEvent> childEvents;
+
+        /**
+         * The walks of the subdirectories, in the order of their names
+         */
+        protected final List<DirectoryWalk> subdirectoryWalks;
+
+        /**
+         * The number of child events preceding the contents of each subdirectory
+         */
+        protected final List<Integer> subdirectoryPositions;
+
+        protected DirectoryWalk(Walk walk, Set<Path> createPaths, Path directory, long timestamp, IHashProvider hashProvider, HashingMode hashingMode, ContentChunker contentChunker) {
+            this.walk = walk;
+            this.createPaths = createPaths;
+            this.directory = directory;
+            this.timestamp = timestamp;
+            this.hashProvider = hashProvider;
+            this.hashingMode = hashingMode;
+            this.contentChunker = contentChunker;
+            this.childEvents = new ArrayList<>();
+            this.subdirectoryWalks = new ArrayList<>();
+            this.subdirectoryPositions = new ArrayList<>();
+        }
+
+        @Override
+        public void run() {
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(this.directory)) {
+                for (Path child : directoryStream) {
+                    children.add(child);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                logger.error("Failed to list the contents of directory " + this.directory + ". Message: " + e.getMessage());
+            }
+
+            // the order of a directory listing is not defined
+            Collections.sort(children);
+
+            for (Path child : children) {
+                // add additional n milliseconds such that the child contents are processed later than the parent ones
+                long childTimestamp = this.timestamp + Math.abs(getAdditionalMilliseconds(this.directory.toString(), child.toString()));
+                Path relativeChild = rootDir.relativize(child);
+
+                // only build a create event if none exists yet
+                if (! this.createPaths.contains(relativeChild)) {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("Create createEvent for subfile " + child + " in parentDir " + this.directory);
+                    }
+                    // the contents are only hashed once the hash is requested
+                    this.childEvents.add(new CreateEvent(relativeChild, child.getFileName().toString(), childTimestamp, new LazyHash(child, this.hashProvider, this.hashingMode, this.contentChunker)));
+                }
+
+                if (Files.isDirectory(child)) {
+                    DirectoryWalk subdirectoryWalk = new DirectoryWalk(this.walk, this.createPaths, child, childTimestamp, this.hashProvider, this.hashingMode, this.contentChunker);
+                    this.subdirectoryWalks.add(subdirectoryWalk);
+                    this.subdirectoryPositions.add(this.childEvents.size());
+                    this.walk.submit(subdirectoryWalk);
+                }
+            }
+        }
+
+        /**
+         * Returns the events of this directory, each one followed by the events of its contents.
+         * Must only be called once the walk completed
+         *
+         * @return The events of the directory and all its subdirectories
+         */
+        protected List<IEvent> getEvents() {
+            if (this.subdirectoryWalks.isEmpty()) {
+                return this.childEvents;
+            }
+
+            // insert the contents of each subdirectory right after its own event
+            List<IEvent> events = new ArrayList<>(this.childEvents.size());
+            int position = 0;
+            for (int i = 0; i < this.subdirectoryWalks.size(); i++) {
+                int subdirectoryPosition = this.subdirectoryPositions.get(i);
+                events.addAll(this.childEvents.subList(position, subdirectoryPosition));
+                events.addAll(this.subdirectoryWalks.get(i).getEvents());
+                position = subdirectoryPosition;
+            }
+            events.addAll(this.childEvents.subList(position, this.childEvents.size()));
+
+            return events;
+        }
+    }
 }
@@ -1,11 +1,14 @@
 package org.rmatil.sync.event.aggregator.core.modifier;
 
-import org.rmatil.sync.commons.hashing.Hash;
 import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.EventBatch;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
 import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Modifies the list of events in such a way, that if
@@ -25,72 +28,59 @@ public class FixFileSystemCreationModifier implements IModifier {
 
     @Override
     public List<IEvent> modify(List<IEvent> events) {
-        // get events ordered by their timestamp
-        Collections.sort(events);
-
-        Map<String, Set<IEvent>> samePathEvents = new HashMap<>();
+        return this.modify(new EventBatch(events)).getEvents();
+    }
 
+    @Override
+    public EventBatch modify(EventBatch events) {
         for (IEvent event : events) {
-            String path = event.getPath().toString();
-            if (null == samePathEvents.get(path)) {
-                samePathEvents.put(path, new HashSet<>());
+            if (! (event instanceof CreateEvent)) {
+                continue;
             }
 
-            samePathEvents.get(path).add(event);
-        }
-
-
-        Set<IEvent> modifiedEvents = new HashSet<>();
-        List<IEvent> eventsToIgnore = new ArrayList<>();
-
-        for (Map.Entry<String, Set<IEvent>> entry : samePathEvents.entrySet()) {
-            for (IEvent event : entry.getValue()) {
-                if (event instanceof CreateEvent && ! event.getHash().equals(Hash.EMPTY_SHA256_HASH)) {
-                    // 1st case
-                    // - create event with correct hash
-                    // - modify event with empty hash
-                    // - modify event with correct hash
-                    // -> create event with correct hash
-
-                    modifiedEvents.add(event);
+            // look for modifications first: creates without any are only
+            // hashed later on in parallel, not one after another in here
+            List<IEvent> modifyEvents = new ArrayList<>();
+            for (IEvent pathEvent : events.getEventsForPath(event.getPath())) {
+                if (pathEvent instanceof ModifyEvent) {
+                    modifyEvents.add(pathEvent);
+                }
+            }
 
-                    IEvent emptyHashModifyEvent = null;
-                    IEvent correctHashModifyEvent = null;
+            if (modifyEvents.isEmpty()) {
+                continue;
+            }
 
-                    // now lets find a modify event with an empty hash and a second one with the correct hash
-                    for (IEvent modifyEvent : events) {
-                        if (modifyEvent instanceof ModifyEvent && modifyEvent.getPath().toString().equals(event.getPath().toString())) {
-                            if (modifyEvent.getHash().equals(Hash.EMPTY_SHA256_HASH)) {
-                                // found the empty hash modify event
-                                emptyHashModifyEvent = modifyEvent;
-                            } else if (modifyEvent.getHash().equals(event.getHash())) {
-                                // found the correct hash modify event
-                                correctHashModifyEvent = modifyEvent;
-                            }
-                        }
+            HashDigest createDigest = event.getFastDigest();
+            if (null != createDigest && ! HashingService.isEmptyHash(createDigest)) {
+                // 1st case
+                // - create event with correct hash
+                // - modify event with empty hash
+                // - modify event with correct hash
+                // -> create event with correct hash
+
+                IEvent emptyHashModifyEvent = null;
+                IEvent correctHashModifyEvent = null;
+
+                // now lets find a modify event with an empty hash and a second one with the correct hash
+                for (IEvent modifyEvent : modifyEvents) {
+                    if (HashingService.isEmptyHash(modifyEvent.getFastDigest())) {
+                        // found the empty hash modify event
+                        emptyHashModifyEvent = modifyEvent;
+                    } else if (createDigest.equals(modifyEvent.getFastDigest())) {
+                        // found the correct hash modify event
+                        correctHashModifyEvent = modifyEvent;
                     }
+                }
 
-
-                    if (null != emptyHashModifyEvent && null == correctHashModifyEvent) {
-                        // only a modification to an empty file is detected -> add this event
-                        modifiedEvents.add(emptyHashModifyEvent);
-                    } else if (null != emptyHashModifyEvent && null != correctHashModifyEvent) {
-                        // the empty hash modification is not required
-                        modifiedEvents.add(correctHashModifyEvent);
-                        eventsToIgnore.add(emptyHashModifyEvent);
-                    }
-                } else {
-                    modifiedEvents.add(event);
+                // if only a modification to an empty file is detected, this event is kept
+                if (null != emptyHashModifyEvent && null != correctHashModifyEvent) {
+                    // the empty hash modification is not required
+                    events.remove(emptyHashModifyEvent);
                 }
             }
         }
 
-        // remove all events which should have been ignored
-        modifiedEvents.removeAll(eventsToIgnore);
-
-        List<IEvent> uniqueEvents = new ArrayList<>(modifiedEvents);
-        Collections.sort(uniqueEvents);
-
-        return uniqueEvents;
+        return events;
     }
 }
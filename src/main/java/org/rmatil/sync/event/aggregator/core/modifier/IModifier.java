@@ -1,6 +1,9 @@
 package org.rmatil.sync.event.aggregator.core.modifier;
 
+import org.rmatil.sync.event.aggregator.core.events.EventBatch;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
 
 import java.util.List;
 
@@ -19,4 +22,52 @@ public interface IModifier {
      */
     List<IEvent> modify(List<IEvent> events);
 
+    /**
+     * Modify the given batch of events.
+     * <p>
+     * By default, this delegates to {@link IModifier#modify(List)}.
+     * Modifiers looking up related events should override it to
+     * make use of the indexes of the batch.
+     *
+     * @param events The batch of events to modify
+     *
+     * @return The modified batch of events
+     */
+    default EventBatch modify(EventBatch events) {
+        return new EventBatch(this.modify(events.getEvents()));
+    }
+
+    /**
+     * Releases the resources held by this modifier, e.g. its threads.
+     * Invoked once the event aggregator stopped. The modifier
+     * has to be usable again on the next start of the event aggregator.
+     * <p>
+     * By default, nothing is released.
+     */
+    default void stop() {
+    }
+
+    /**
+     * Sets the metrics recording the lookups of the object manager by this modifier.
+     * Invoked by the event aggregator once the modifier is added to it.
+     * <p>
+     * By default, nothing is recorded.
+     *
+     * @param metrics The metrics of the event aggregator
+     */
+    default void setMetrics(PipelineMetrics metrics) {
+    }
+
+    /**
+     * Sets the service of the event aggregator on which this modifier computes hashes,
+     * so that it uses the hashing threads and quota of the event aggregator instead of its own.
+     * Invoked by the event aggregator on each start and once the modifier is added while running.
+     * <p>
+     * By default, the service is not used.
+     *
+     * @param hashingService The hashing service of the event aggregator
+     */
+    default void setHashingService(HashingService hashingService) {
+    }
+
 }
@@ -32,7 +32,7 @@ public class IgnoreDirectoryModifier implements IModifier {
         for (IEvent event : events) {
             if (! (event instanceof ModifyEvent && this.rootDir.resolve(event.getPath()).toFile().isDirectory())) {
                 modifiedEvents.add(event);
-            } else {
+            } else if (logger.isTraceEnabled()) {
                 logger.trace("Ignoring modify event for directory " + event.getPath());
             }
         }
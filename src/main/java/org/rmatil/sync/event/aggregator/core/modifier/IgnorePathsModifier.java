@@ -4,9 +4,7 @@ import org.rmatil.sync.event.aggregator.core.events.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.file.FileSystems;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -14,13 +12,17 @@ import java.util.List;
 /**
  * Removes all events from the given list
  * which are in the specified list of ignored paths
+ * or which match any of the specified glob patterns.
+ * <p>
+ * The paths and patterns are compiled once into {@link IgnoreRules}.
+ * They may be replaced at runtime using {@link IgnorePathsModifier#setIgnoreRules(IgnoreRules)}
+ * and take effect on the next modification.
  */
 public class IgnorePathsModifier implements IModifier {
 
     final static Logger logger = LoggerFactory.getLogger(IgnorePathsModifier.class);
 
-    protected List<Path>   ignoredPaths;
-    protected List<String> ignoredPatterns;
+    protected volatile IgnoreRules ignoreRules;
 
     /**
      * @param ignoredPaths A list of paths (relative to the root of the sync folder) which are ignored
@@ -31,11 +33,36 @@ public class IgnorePathsModifier implements IModifier {
 
     /**
      * @param ignoredPaths    A list of paths (relative to the root of the sync folder) which are ignored
-     * @param ignoredPatterns A list of regex patterns
+     * @param ignoredPatterns A list of glob patterns
      */
     public IgnorePathsModifier(List<Path> ignoredPaths, List<String> ignoredPatterns) {
-        this.ignoredPaths = ignoredPaths;
-        this.ignoredPatterns = ignoredPatterns;
+        this(new IgnoreRules(ignoredPaths, ignoredPatterns));
+    }
+
+    /**
+     * @param ignoreRules The compiled ignored paths and patterns
+     */
+    public IgnorePathsModifier(IgnoreRules ignoreRules) {
+        this.ignoreRules = ignoreRules;
+    }
+
+    /**
+     * Returns the currently used ignore rules
+     *
+     * @return The ignore rules
+     */
+    public IgnoreRules getIgnoreRules() {
+        return this.ignoreRules;
+    }
+
+    /**
+     * Replaces the ignore rules. Events passed to this modifier
+     * afterwards are checked against the new rules
+     *
+     * @param ignoreRules The new ignore rules
+     */
+    public void setIgnoreRules(IgnoreRules ignoreRules) {
+        this.ignoreRules = ignoreRules;
     }
 
     @Override
@@ -43,58 +70,27 @@ public class IgnorePathsModifier implements IModifier {
         Collections.sort(events);
         List<IEvent> modifiedEvents = new ArrayList<>();
 
+        // use the same rules for the whole list, even if they are replaced concurrently
+        IgnoreRules rules = this.ignoreRules;
+
         for (IEvent event : events) {
-            boolean isChildOfIgnored = false;
-
-            for (Path path : ignoredPaths) {
-                if (event instanceof CreateEvent ||
-                        event instanceof ModifyEvent ||
-                        event instanceof DeleteEvent) {
-                    if (event.getPath().startsWith(path)) {
-                        isChildOfIgnored = true;
-                        logger.trace("Ignoring file " + event.getPath().toString() + " since it is stored in the ignored path " + path.toString());
-                        break;
-                    }
-                } else if (event instanceof MoveEvent) {
-                    if (event.getPath().startsWith(path) ||
-                            ((MoveEvent) event).getNewPath().startsWith(path)) {
-                        isChildOfIgnored = true;
-                        logger.trace("Ignoring the move of file " + event.getPath().toString() + " to " + ((MoveEvent) event).getNewPath() + " since it is stored in the ignored path " + path.toString());
-                        break;
-                    }
-                }
-            }
+            boolean isIgnored = rules.isIgnored(event.getPath());
 
-            if (! isChildOfIgnored) {
-                // check if the path is matching any ignored pattern
-                for (String pattern : this.ignoredPatterns) {
-                    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
-                    // resolve paths relative to the root dir
-                    if (event instanceof CreateEvent ||
-                            event instanceof ModifyEvent ||
-                            event instanceof DeleteEvent) {
-                        if (matcher.matches(event.getPath())) {
-                            isChildOfIgnored = true;
-                            logger.trace("Ignoring file " + event.getPath().toString() + " since it matches the registered glob pattern " + pattern);
-                            break;
-                        }
-                    } else if (event instanceof MoveEvent) {
-                        if (matcher.matches(event.getPath()) ||
-                                matcher.matches(((MoveEvent) event).getNewPath())) {
-                            isChildOfIgnored = true;
-                            logger.trace("Ignoring the move of file " + event.getPath().toString() + " to " + ((MoveEvent) event).getNewPath() + " since it matches the registered glob pattern " + pattern);
-                            break;
-                        }
-                    }
-                }
+            if (! isIgnored && event instanceof MoveEvent) {
+                isIgnored = rules.isIgnored(((MoveEvent) event).getNewPath());
             }
 
-            if (! isChildOfIgnored) {
+            if (! isIgnored) {
                 modifiedEvents.add(event);
+            } else if (logger.isTraceEnabled()) {
+                if (event instanceof MoveEvent) {
+                    logger.trace("Ignoring the move of file " + event.getPath().toString() + " to " + ((MoveEvent) event).getNewPath() + " since it is in an ignored path or matches an ignored pattern");
+                } else {
+                    logger.trace("Ignoring file " + event.getPath().toString() + " since it is in an ignored path or matches an ignored pattern");
+                }
             }
         }
 
-        Collections.sort(modifiedEvents);
         return modifiedEvents;
     }
 }
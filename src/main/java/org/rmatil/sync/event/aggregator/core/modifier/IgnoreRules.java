@@ -0,0 +1,420 @@
+package org.rmatil.sync.event.aggregator.core.modifier;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled set of ignored paths and glob patterns.
+ * <p>
+ * Ignored paths are stored in a trie of their path components,
+ * so that checking whether a path is a child of any ignored path
+ * only walks the components of that path once.
+ * <p>
+ * Glob patterns follow the syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}.
+ * Patterns without any wildcards are matched by a lookup in a set,
+ * patterns of the form <code>**suffix</code> by a walk over a trie of
+ * reversed suffixes. Likewise, patterns matching the suffix of the file name,
+ * i.e. <code>*suffix</code> and <code>**&#47;*suffix</code>, are matched by a walk over
+ * the file name in a trie of reversed suffixes. All other patterns
+ * are combined into a single regular expression.
+ * <p>
+ * Instances are immutable and therefore may be shared between threads.
+ */
+public class IgnoreRules {
+
+    private static final String REGEX_META_CHARS = ".^$+{[]|()";
+    private static final String GLOB_META_CHARS  = "\\*?[{";
+
+    private static final char EOL = 0;
+
+    /**
+     * A node of a trie
+     *
+     * @param <K> The type of the keys of the trie
+     */
+    protected static class Node<K> {
+
+        protected final Map<K, Node<K>> children = new HashMap<>();
+
+        /**
+         * Whether a rule ends at this node
+         */
+        protected boolean terminal;
+
+        protected Node<K> getOrCreateChild(K key) {
+            Node<K> child = this.children.get(key);
+            if (null == child) {
+                child = new Node<>();
+                this.children.put(key, child);
+            }
+
+            return child;
+        }
+    }
+
+    protected final List<Path> ignoredPaths;
+
+    protected final List<String> ignoredPatterns;
+
+    /**
+     * The ignored paths by their components.
+     * The first level is the root of the path
+     */
+    protected final Node<String> pathTrie;
+
+    /**
+     * Patterns without wildcards
+     */
+    protected final Set<String> literalPatterns;
+
+    /**
+     * The suffixes of patterns of the form <code>**suffix</code>,
+     * stored in reverse order
+     */
+    protected final Node<Character> suffixTrie;
+
+    /**
+     * The suffixes of patterns of the form <code>*suffix</code>,
+     * stored in reverse order. Only matches paths without a parent
+     */
+    protected final Node<Character> nameSuffixTrie;
+
+    /**
+     * The suffixes of patterns of the form <code>**&#47;*suffix</code>,
+     * stored in reverse order. Only matches paths having a parent
+     */
+    protected final Node<Character> nestedNameSuffixTrie;
+
+    /**
+     * All other patterns combined into one expression.
+     * Null, if there are none
+     */
+    protected final Pattern combinedPattern;
+
+    /**
+     * @param ignoredPaths    A list of paths (relative to the root of the sync folder) which are ignored
+     * @param ignoredPatterns A list of glob patterns
+     *
+     * @throws PatternSyntaxException If a pattern is invalid
+     */
+    public IgnoreRules(List<Path> ignoredPaths, List<String> ignoredPatterns) {
+        this.ignoredPaths = Collections.unmodifiableList(new ArrayList<>(ignoredPaths));
+        this.ignoredPatterns = Collections.unmodifiableList(new ArrayList<>(ignoredPatterns));
+
+        this.pathTrie = new Node<>();
+        for (Path ignoredPath : ignoredPaths) {
+            Node<String> node = this.pathTrie.getOrCreateChild(IgnoreRules.getRoot(ignoredPath));
+            for (Path component : ignoredPath) {
+                node = node.getOrCreateChild(component.toString());
+            }
+
+            node.terminal = true;
+        }
+
+        this.literalPatterns = new HashSet<>();
+        this.suffixTrie = new Node<>();
+        this.nameSuffixTrie = new Node<>();
+        this.nestedNameSuffixTrie = new Node<>();
+
+        StringJoiner combinedRegex = new StringJoiner("|", "^(?:", ")$");
+        boolean hasRegex = false;
+
+        for (String pattern : ignoredPatterns) {
+            if (IgnoreRules.isLiteral(pattern)) {
+                this.literalPatterns.add(pattern);
+            } else if (pattern.startsWith("**") && IgnoreRules.isLiteral(pattern.substring(2))) {
+                IgnoreRules.addReversed(this.suffixTrie, pattern.substring(2));
+            } else if (pattern.startsWith("**/*") && IgnoreRules.isNameSuffix(pattern.substring(4))) {
+                IgnoreRules.addReversed(this.nestedNameSuffixTrie, pattern.substring(4));
+            } else if (pattern.startsWith("*") && ! pattern.startsWith("**") && IgnoreRules.isNameSuffix(pattern.substring(1))) {
+                IgnoreRules.addReversed(this.nameSuffixTrie, pattern.substring(1));
+            } else {
+                combinedRegex.add(IgnoreRules.toRegex(pattern));
+                hasRegex = true;
+            }
+        }
+
+        this.combinedPattern = hasRegex ? Pattern.compile(combinedRegex.toString()) : null;
+    }
+
+    /**
+     * Returns the ignored paths
+     *
+     * @return The ignored paths
+     */
+    public List<Path> getIgnoredPaths() {
+        return this.ignoredPaths;
+    }
+
+    /**
+     * Returns the ignored glob patterns
+     *
+     * @return The ignored patterns
+     */
+    public List<String> getIgnoredPatterns() {
+        return this.ignoredPatterns;
+    }
+
+    /**
+     * Returns whether the given path is ignored, i.e. whether it
+     * is an ignored path, a child of it or matches any ignored pattern
+     *
+     * @param path The path to check
+     *
+     * @return True, if the path is ignored
+     */
+    public boolean isIgnored(Path path) {
+        return this.isInIgnoredPath(path) || this.matchesIgnoredPattern(path);
+    }
+
+    /**
+     * Returns whether the given path starts with any of the ignored paths
+     *
+     * @param path The path to check
+     *
+     * @return True, if the path is an ignored path or a child of it
+     */
+    public boolean isInIgnoredPath(Path path) {
+        Node<String> node = this.pathTrie.children.get(IgnoreRules.getRoot(path));
+        if (null == node) {
+            return false;
+        }
+
+        for (Path component : path) {
+            node = node.children.get(component.toString());
+            if (null == node) {
+                return false;
+            }
+
+            if (node.terminal) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns whether the given path matches any of the ignored patterns
+     *
+     * @param path The path to check
+     *
+     * @return True, if any pattern matches
+     */
+    public boolean matchesIgnoredPattern(Path path) {
+        String pathString = path.toString();
+
+        if (this.literalPatterns.contains(pathString)) {
+            return true;
+        }
+
+        Node<Character> node = this.suffixTrie;
+        for (int i = pathString.length() - 1; i >= 0 && ! node.terminal; i--) {
+            node = node.children.get(pathString.charAt(i));
+            if (null == node) {
+                break;
+            }
+        }
+
+        if (null != node && node.terminal) {
+            return true;
+        }
+
+        // the name suffix has to match the file name, i.e. the characters after the last separator
+        int lastSeparator = pathString.lastIndexOf('/');
+        node = (- 1 == lastSeparator) ? this.nameSuffixTrie : this.nestedNameSuffixTrie;
+        for (int i = pathString.length() - 1; ! node.terminal; i--) {
+            node = (i > lastSeparator) ? node.children.get(pathString.charAt(i)) : null;
+            if (null == node) {
+                break;
+            }
+        }
+
+        if (null != node && node.terminal) {
+            return true;
+        }
+
+        return null != this.combinedPattern && this.combinedPattern.matcher(pathString).matches();
+    }
+
+    protected static String getRoot(Path path) {
+        return (null == path.getRoot()) ? "" : path.getRoot().toString();
+    }
+
+    /**
+     * Returns whether the given glob only matches the end of a file name,
+     * i.e. has no wildcards nor separators. May be empty
+     *
+     * @param glob The glob to check
+     *
+     * @return True, if it is the literal suffix of a file name
+     */
+    protected static boolean isNameSuffix(String glob) {
+        return glob.isEmpty() || (IgnoreRules.isLiteral(glob) && - 1 == glob.indexOf('/'));
+    }
+
+    protected static void addReversed(Node<Character> trie, String suffix) {
+        Node<Character> node = trie;
+        for (int i = suffix.length() - 1; i >= 0; i--) {
+            node = node.getOrCreateChild(suffix.charAt(i));
+        }
+
+        node.terminal = true;
+    }
+
+    protected static boolean isLiteral(String glob) {
+        if (glob.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < glob.length(); i++) {
+            if (GLOB_META_CHARS.indexOf(glob.charAt(i)) != - 1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Translates the given glob pattern into a regular expression (without anchors)
+     * following the rules of the default filesystem on unix.
+     *
+     * @param glob The glob pattern
+     *
+     * @return The regular expression
+     *
+     * @throws PatternSyntaxException If the glob is invalid
+     */
+    protected static String toRegex(String glob) {
+        boolean inGroup = false;
+        StringBuilder regex = new StringBuilder("(?:");
+
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            switch (c) {
+                case '\\':
+                    // escape the next character
+                    if (i == glob.length()) {
+                        throw new PatternSyntaxException("No character to escape", glob, i - 1);
+                    }
+                    char next = glob.charAt(i);
+                    if (GLOB_META_CHARS.indexOf(next) != - 1 || REGEX_META_CHARS.indexOf(next) != - 1) {
+                        regex.append('\\');
+                    }
+                    regex.append(next);
+                    i++;
+                    break;
+                case '[':
+                    // a character class must not match the name separator
+                    regex.append("[[^/]&&[");
+                    if (IgnoreRules.next(glob, i) == '^') {
+                        regex.append("\\^");
+                        i++;
+                    } else {
+                        if (IgnoreRules.next(glob, i) == '!') {
+                            regex.append('^');
+                            i++;
+                        }
+                        if (IgnoreRules.next(glob, i) == '-') {
+                            regex.append('-');
+                            i++;
+                        }
+                    }
+                    boolean hasRangeStart = false;
+                    char last = 0;
+                    while (i < glob.length()) {
+                        c = glob.charAt(i++);
+                        if (c == ']') {
+                            break;
+                        }
+                        if (c == '/') {
+                            throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i - 1);
+                        }
+                        if (c == '\\' || c == '[' || c == '&' && IgnoreRules.next(glob, i) == '&') {
+                            regex.append('\\');
+                        }
+                        regex.append(c);
+
+                        if (c == '-') {
+                            if (! hasRangeStart) {
+                                throw new PatternSyntaxException("Invalid range", glob, i - 1);
+                            }
+                            if ((c = IgnoreRules.next(glob, i++)) == EOL || c == ']') {
+                                break;
+                            }
+                            if (c < last) {
+                                throw new PatternSyntaxException("Invalid range", glob, i - 3);
+                            }
+                            regex.append(c);
+                            hasRangeStart = false;
+                        } else {
+                            hasRangeStart = true;
+                            last = c;
+                        }
+                    }
+                    if (c != ']') {
+                        throw new PatternSyntaxException("Missing ']", glob, i - 1);
+                    }
+                    regex.append("]]");
+                    break;
+                case '{':
+                    if (inGroup) {
+                        throw new PatternSyntaxException("Cannot nest groups", glob, i - 1);
+                    }
+                    regex.append("(?:(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    if (inGroup) {
+                        regex.append("))");
+                        inGroup = false;
+                    } else {
+                        regex.append('}');
+                    }
+                    break;
+                case ',':
+                    if (inGroup) {
+                        regex.append(")|(?:");
+                    } else {
+                        regex.append(',');
+                    }
+                    break;
+                case '*':
+                    if (IgnoreRules.next(glob, i) == '*') {
+                        // crosses directory boundaries
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                default:
+                    if (REGEX_META_CHARS.indexOf(c) != - 1) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+            }
+        }
+
+        if (inGroup) {
+            throw new PatternSyntaxException("Missing '}", glob, i - 1);
+        }
+
+        return regex.append(')').toString();
+    }
+
+    private static char next(String glob, int i) {
+        if (i < glob.length()) {
+            return glob.charAt(i);
+        }
+
+        return EOL;
+    }
+}
@@ -1,26 +1,29 @@
 package org.rmatil.sync.event.aggregator.core.modifier;
 
+import org.rmatil.sync.event.aggregator.core.cache.VersionHashCache;
 import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.EventBatch;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
 import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
-import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
 import org.rmatil.sync.version.api.IObjectManager;
-import org.rmatil.sync.version.core.model.PathObject;
-import org.rmatil.sync.version.core.model.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.nio.file.Path;
+import java.util.*;
 
 /**
  * This modifier removes modify events which
  * have the same hash as the last one in the object store.
  * Additionally, it ignores all modify events which either have the same hash
  * as the create event for the same file or as another modify event.
+ * <p>
+ * The modified files which are compared to their last version are hashed
+ * in parallel on the hashing service of the event aggregator this modifier is added to.
+ * Used on its own, the modifier hashes them on a pool it owns.
  */
 public class IgnoreSameHashModifier implements IModifier {
 
@@ -28,102 +31,214 @@ public class IgnoreSameHashModifier implements IModifier {
 
     protected IObjectManager objectManager;
 
+    /**
+     * The cache for the last versions of the object manager
+     */
+    protected VersionHashCache versionHashCache;
+
+    /**
+     * The maximum number of threads hashing modified files,
+     * unless the hashing service of the event aggregator is used
+     */
+    protected final int parallelism;
+
+    /**
+     * The hashing service of the event aggregator. Null if used on its own
+     */
+    protected volatile HashingService sharedHashingService;
+
+    /**
+     * Hashes the modified files which are compared to their last version,
+     * if no hashing service of the event aggregator is set.
+     * Created on demand and shut down on stopping
+     */
+    protected HashingService hashingService;
+
+    /**
+     * Reads the last versions directly from the given object manager
+     *
+     * @param objectManager The object manager
+     */
     public IgnoreSameHashModifier(IObjectManager objectManager) {
-        this.objectManager = objectManager;
+        this(new VersionHashCache(objectManager, 0L, VersionHashCache.DEFAULT_EXPIRE_AFTER_WRITE));
+    }
+
+    /**
+     * @param versionHashCache The cache for the last versions of the object manager
+     */
+    public IgnoreSameHashModifier(VersionHashCache versionHashCache) {
+        this(versionHashCache, HashingService.DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param versionHashCache The cache for the last versions of the object manager
+     * @param parallelism      The maximum number of threads hashing modified files, if used on its own
+     *
+     * @throws IllegalArgumentException If the parallelism is not positive
+     */
+    public IgnoreSameHashModifier(VersionHashCache versionHashCache, int parallelism) {
+        this.objectManager = versionHashCache.getObjectManager();
+        this.versionHashCache = versionHashCache;
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive");
+        }
+
+        this.parallelism = parallelism;
     }
 
     @Override
     public List<IEvent> modify(List<IEvent> events) {
-        Collections.sort(events);
-        List<IEvent> modifiedEvents = new ArrayList<>();
-
-        List<IEvent> clone = events.stream().collect(Collectors.toList());
-        Iterator<IEvent> cloneItr = clone.iterator();
-
-        for (IEvent event : events) {
-            if (event instanceof ModifyEvent) {
-                // check whether the last hash in the object store
-                // is the same as the hash of the event
-
-                boolean ignoredDueToSameCreateHash = false;
-                // look for a create event for the same file
-                for (IEvent potentialCreateEvent : events) {
-                    if (potentialCreateEvent instanceof CreateEvent) {
-                        if (potentialCreateEvent.getPath().toString().equals(event.getPath().toString()) &&
-                                potentialCreateEvent.getHash().equals(event.getHash())) {
-                            // we found the create event with the same hash
-                            logger.info("Ignoring modify event for " + event.getPath() + " since its change (" + event.getHash() + ") is equal to the CreateEvent-Hash (" + potentialCreateEvent.getHash() + ")");
-                            ignoredDueToSameCreateHash = true;
-                            break;
-                        }
-                    }
+        return this.modify(new EventBatch(events)).getEvents();
+    }
+
+    @Override
+    public EventBatch modify(EventBatch events) {
+        List<IEvent> singleModifyEvents = new ArrayList<>();
+
+        // copy the paths, since the batch is modified while iterating
+        for (Path path : new ArrayList<>(events.getPaths())) {
+            List<IEvent> createEvents = new ArrayList<>();
+            List<IEvent> modifyEvents = new ArrayList<>();
+
+            for (IEvent event : events.getEventsForPath(path)) {
+                if (event instanceof CreateEvent) {
+                    createEvents.add(event);
+                } else if (event instanceof ModifyEvent) {
+                    modifyEvents.add(event);
                 }
+            }
 
-                // if own (i.e. event) event was previously removed
-                // we do not have to add it again
-                boolean ownEventWasPresent = false;
-                if (! ignoredDueToSameCreateHash) {
-                    while (cloneItr.hasNext()) {
-                        IEvent potentialSameHashModifyEvent = cloneItr.next();
-
-                        if (potentialSameHashModifyEvent instanceof ModifyEvent) {
-                            // do not compare the own event
-                            if (event == potentialSameHashModifyEvent) {
-                                ownEventWasPresent = true;
-                                cloneItr.remove();
-                                continue;
-                            }
-
-                            if (potentialSameHashModifyEvent.getPath().toString().equals(event.getPath().toString()) &&
-                                    potentialSameHashModifyEvent.getHash().equals(event.getHash())) {
-                                logger.info("Ignoring modify event for " + event.getPath() + " since its change (" + event.getHash() + ") is equal to another ModifyEvent-Hash");
-                                // remove element from list to avoid wrong
-                                // ignores of happening
-                                cloneItr.remove();
-                                ignoredDueToSameCreateHash = true;
-                                // but do not break here to remove all other matching events too
-                            }
-                        }
-                    }
+            if (modifyEvents.isEmpty()) {
+                // do not hash created elements without any modification here,
+                // their hashes are resolved later on in parallel
+                continue;
+            }
 
-                    if (ignoredDueToSameCreateHash) {
-                        modifiedEvents.add(event);
-                    }
+            if (createEvents.isEmpty() && 1 == modifyEvents.size()) {
+                // there is nothing to compare with within the batch: do not compute
+                // a fast digest, the last version is compared using the hash itself
+                singleModifyEvents.add(modifyEvents.get(0));
+                continue;
+            }
 
-                    // reset iterator
-                    cloneItr = clone.iterator();
+            // events of the same batch are compared by their digest
+            Map<HashDigest, List<IEvent>> sameHashModifyEvents = new LinkedHashMap<>();
+            for (IEvent event : modifyEvents) {
+                List<IEvent> sameHashEvents = sameHashModifyEvents.get(event.getFastDigest());
+                if (null == sameHashEvents) {
+                    sameHashEvents = new ArrayList<>();
+                    sameHashModifyEvents.put(event.getFastDigest(), sameHashEvents);
                 }
 
-                if (! ignoredDueToSameCreateHash) {
-                    // try to get information about the element from the ObjectStore
-                    logger.debug("Trying to get the path object for event " + event.getEventName() + ", " + event.getPath() + " having hash " + event.getHash());
+                sameHashEvents.add(event);
+            }
 
-                    try {
-                        PathObject pathObject = this.objectManager.getObjectForPath(event.getPath().toString());
+            Set<HashDigest> createHashes = new HashSet<>();
+            for (IEvent event : createEvents) {
+                createHashes.add(event.getFastDigest());
+            }
 
-                        Version lastVersion = (! pathObject.getVersions().isEmpty()) ? pathObject.getVersions().get(Math.max(0, pathObject.getVersions().size() - 1)) : null;
+            for (Map.Entry<HashDigest, List<IEvent>> entry : sameHashModifyEvents.entrySet()) {
+                List<IEvent> sameHashEvents = entry.getValue();
 
-                        if (null != lastVersion && lastVersion.getHash().equals(event.getHash())) {
-                            logger.info("Ignoring modify event for " + event.getPath() + " since its change (" + event.getHash() + ") is already stored in the ObjectStore");
-                        } else if (ownEventWasPresent) {
-                            // versions are not equal
-                            modifiedEvents.add(event);
-                        }
+                if (createHashes.contains(entry.getKey())) {
+                    // we found the create event with the same hash
+                    for (IEvent event : sameHashEvents) {
+                        logger.info("Ignoring modify event for " + event.getPath() + " since its change (" + event.getFastDigest() + ") is equal to the CreateEvent-Hash (" + entry.getKey() + ")");
+                        events.remove(event);
+                    }
 
-                    } catch (InputOutputException e) {
-                        logger.error("Failed to check whether the last hash is equal to the hash of the modify event for element " + event.getPath() + ". Message: " + e.getMessage() + ". Not ignoring this event...");
+                    continue;
+                }
 
-                        if (ownEventWasPresent) {
-                            modifiedEvents.add(event);
-                        }
+                if (sameHashEvents.size() > 1) {
+                    // keep the first event and ignore all others having the same hash
+                    for (IEvent event : sameHashEvents.subList(1, sameHashEvents.size())) {
+                        logger.info("Ignoring modify event for " + event.getPath() + " since its change (" + event.getFastDigest() + ") is equal to another ModifyEvent-Hash");
+                        events.remove(event);
                     }
+
+                    continue;
                 }
-            } else {
-                modifiedEvents.add(event);
+
+                // the last version has to be looked up in the object store
+                singleModifyEvents.add(sameHashEvents.get(0));
+            }
+        }
+
+        List<String> paths = new ArrayList<>();
+        for (IEvent event : singleModifyEvents) {
+            paths.add(event.getPath().toString());
+        }
+
+        // try to get information about the elements from the ObjectStore
+        Map<String, String> lastVersionHashes = this.versionHashCache.getLastVersionHashes(paths);
+
+        // only hash files having a last version to compare with, all of them in parallel.
+        // The others are hashed after all modifiers passed
+        List<IEvent> storedModifyEvents = new ArrayList<>();
+        for (IEvent event : singleModifyEvents) {
+            if (null != lastVersionHashes.get(event.getPath().toString())) {
+                storedModifyEvents.add(event);
             }
+        }
+
+        if (! storedModifyEvents.isEmpty()) {
+            this.getHashingService().resolve(storedModifyEvents);
+        }
+
+        for (IEvent event : singleModifyEvents) {
+            String path = event.getPath().toString();
+
+            if (! lastVersionHashes.containsKey(path)) {
+                logger.error("Failed to check whether the last hash is equal to the hash of the modify event for element " + event.getPath() + ". Not ignoring this event...");
+                continue;
+            }
+
+            // stored versions have to be compared using the hash itself
+            String lastVersionHash = lastVersionHashes.get(path);
+            if (null != lastVersionHash && lastVersionHash.equals(event.getHash())) {
+                logger.info("Ignoring modify event for " + event.getPath() + " since its change (" + event.getHash() + ") is already stored in the ObjectStore");
+                events.remove(event);
+            }
+        }
+
+        return events;
+    }
+
+    @Override
+    public void setMetrics(PipelineMetrics metrics) {
+        this.versionHashCache.setMetrics(metrics);
+    }
+
+    @Override
+    public void setHashingService(HashingService hashingService) {
+        this.sharedHashingService = hashingService;
+    }
+
+    /**
+     * Shuts down the pool owned by this modifier, if any.
+     * The hashing service of the event aggregator is shut down by the event aggregator itself
+     */
+    @Override
+    public synchronized void stop() {
+        if (null != this.hashingService) {
+            this.hashingService.shutdown();
+            this.hashingService = null;
+        }
+    }
+
+    protected synchronized HashingService getHashingService() {
+        HashingService sharedHashingService = this.sharedHashingService;
+        if (null != sharedHashingService) {
+            return sharedHashingService;
+        }
 
+        if (null == this.hashingService) {
+            this.hashingService = new HashingService(this.parallelism, HashingService.DEFAULT_QUEUE_SIZE);
         }
 
-        return modifiedEvents;
+        return this.hashingService;
     }
 }
@@ -35,15 +35,17 @@ public class RelativePathModifier implements IModifier {
         for (IEvent event : events) {
             Path relativePath = rootDir.relativize(event.getPath());
 
-            logger.trace("Relativizing path from " + event.getPath().toString() + " to " + relativePath.toString());
+            if (logger.isTraceEnabled()) {
+                logger.trace("Relativizing path from " + event.getPath().toString() + " to " + relativePath.toString());
+            }
 
             IEvent e = null;
             switch (event.getEventName()) {
                 case CreateEvent.EVENT_NAME:
-                    e = new CreateEvent(relativePath, event.getName(), event.getHash(), event.getTimestamp());
+                    e = new CreateEvent(relativePath, event.getName(), event.getTimestamp(), event.getHashFuture());
                     break;
                 case ModifyEvent.EVENT_NAME:
-                    e = new ModifyEvent(relativePath, event.getName(), event.getHash(), event.getTimestamp());
+                    e = new ModifyEvent(relativePath, event.getName(), event.getTimestamp(), event.getHashFuture());
                     break;
                 case DeleteEvent.EVENT_NAME:
                     e = new DeleteEvent(relativePath, event.getName(), event.getHash(), event.getTimestamp());
@@ -51,7 +53,7 @@ public class RelativePathModifier implements IModifier {
                 case MoveEvent.EVENT_NAME:
                     MoveEvent moveEvent = (MoveEvent) event;
                     Path newRelativePath = rootDir.relativize(moveEvent.getNewPath());
-                    e = new MoveEvent(relativePath, newRelativePath, moveEvent.getName(), moveEvent.getHash(), moveEvent.getTimestamp());
+                    e = new MoveEvent(relativePath, newRelativePath, moveEvent.getName(), moveEvent.getTimestamp(), moveEvent.getHashFuture());
             }
 
             modifiedEvents.add(e);
@@ -11,6 +11,7 @@ import java.util.concurrent.ExecutorService;
  *
  * @see APathWatcherFactory
  * @see PerlockPathWatcherFactory
+ * @see WatchServicePathWatcherFactory
  */
 public interface IPathWatcherFactory {
 
@@ -0,0 +1,378 @@
+package org.rmatil.sync.event.aggregator.core.pathwatcher;
+
+import name.mitterdorfer.perlock.PathChangeListener;
+import name.mitterdorfer.perlock.PathWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * A path watcher built directly on the {@link WatchService} of the default filesystem,
+ * i.e. on inotify on Linux.
+ * <p>
+ * Directories are registered in parallel on start. Ready keys are drained in batches,
+ * so that a burst of changes in many directories is handled in a single pass.
+ * <p>
+ * If the kernel or the watch service drop events of a directory, its key
+ * signals an {@link StandardWatchEventKinds#OVERFLOW}. Instead of losing these events,
+ * the watcher compares the contents of the directory with the state known before
+ * and notifies about all created, modified and deleted children.
+ * Therefore, the names and modification times of all watched elements are kept in memory.
+ */
+public class WatchServicePathWatcher implements PathWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatchServicePathWatcher.class);
+
+    protected final ExecutorService executorService;
+
+    protected final Path rootPath;
+
+    protected final PathChangeListener changeListener;
+
+    protected final boolean isRecursive;
+
+    protected final int registrationParallelism;
+
+    protected final int maxKeysPerDrain;
+
+    protected WatchService watchService;
+
+    /**
+     * Registers directories in parallel
+     */
+    protected ForkJoinPool registrationPool;
+
+    /**
+     * The key by each watched directory, sorted so that
+     * the directories of a subtree are next to each other
+     */
+    protected final ConcurrentNavigableMap<Path, WatchKey> directoryKeys;
+
+    /**
+     * The last modification time of each child by the watched directory
+     */
+    protected final Map<Path, Map<Path, Long>> snapshot;
+
+    protected final LongAdder overflowCount;
+
+    protected volatile boolean isRunning;
+
+    /**
+     * @param executorService         The executor on which the events are processed
+     * @param rootPath                The root path to watch
+     * @param changeListener          The listener to notify about changes
+     * @param isRecursive             Whether all subdirectories are watched too
+     * @param registrationParallelism The number of threads registering directories
+     * @param maxKeysPerDrain         The maximum number of ready keys processed in a single pass
+     */
+    public WatchServicePathWatcher(ExecutorService executorService, Path rootPath, PathChangeListener changeListener, boolean isRecursive, int registrationParallelism, int maxKeysPerDrain) {
+        this.executorService = executorService;
+        this.rootPath = rootPath;
+        this.changeListener = changeListener;
+        this.isRecursive = isRecursive;
+        this.registrationParallelism = registrationParallelism;
+        this.maxKeysPerDrain = maxKeysPerDrain;
+        this.directoryKeys = new ConcurrentSkipListMap<>();
+        this.snapshot = new ConcurrentHashMap<>();
+        this.overflowCount = new LongAdder();
+    }
+
+    @Override
+    public synchronized void start()
+            throws IOException {
+        if (this.isRunning) {
+            return;
+        }
+
+        this.watchService = this.rootPath.getFileSystem().newWatchService();
+        this.registrationPool = new ForkJoinPool(this.registrationParallelism);
+
+        try {
+            this.register(this.rootPath);
+        } catch (RuntimeException e) {
+            this.watchService.close();
+            this.registrationPool.shutdown();
+            throw new IOException("Could not register " + this.rootPath + ": " + e.getMessage(), e);
+        }
+
+        this.isRunning = true;
+        this.executorService.submit(this::processEvents);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (! this.isRunning) {
+            return;
+        }
+
+        this.isRunning = false;
+
+        try {
+            // wakes up the thread processing the events
+            this.watchService.close();
+        } catch (IOException e) {
+            logger.error("Could not close the watch service of " + this.rootPath + ". Message: " + e.getMessage());
+        }
+
+        this.registrationPool.shutdown();
+        this.directoryKeys.clear();
+        this.snapshot.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.isRunning;
+    }
+
+    /**
+     * Returns the number of overflows which caused a rescan of a directory
+     *
+     * @return The number of overflows
+     */
+    public long getOverflowCount() {
+        return this.overflowCount.sum();
+    }
+
+    /**
+     * Returns the number of watched directories
+     *
+     * @return The number of watched directories
+     */
+    public int getNrOfWatchedDirectories() {
+        return this.directoryKeys.size();
+    }
+
+    /**
+     * Waits for ready keys and processes all their events until the watcher is stopped
+     */
+    protected void processEvents() {
+        List<WatchKey> readyKeys = new ArrayList<>(this.maxKeysPerDrain);
+
+        while (this.isRunning) {
+            try {
+                WatchKey key = this.watchService.take();
+
+                // drain all keys which are ready meanwhile
+                do {
+                    readyKeys.add(key);
+                } while (readyKeys.size() < this.maxKeysPerDrain && null != (key = this.watchService.poll()));
+
+                for (WatchKey readyKey : readyKeys) {
+                    this.processKey(readyKey);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Failed to process the events of " + this.rootPath + ". Message: " + e.getMessage(), e);
+            } finally {
+                readyKeys.clear();
+            }
+        }
+    }
+
+    protected void processKey(WatchKey key) {
+        Path directory = (Path) key.watchable();
+        boolean hasOverflown = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (OVERFLOW == event.kind()) {
+                hasOverflown = true;
+                continue;
+            }
+
+            Path child = directory.resolve((Path) event.context());
+
+            if (ENTRY_CREATE == event.kind()) {
+                this.onCreated(directory, child);
+            } else if (ENTRY_MODIFY == event.kind()) {
+                this.updateSnapshot(directory, child);
+                this.changeListener.onPathModified(child);
+            } else if (ENTRY_DELETE == event.kind()) {
+                this.onDeleted(directory, child);
+            }
+        }
+
+        if (hasOverflown) {
+            // events of this directory are lost: find them by comparing with the known state
+            this.overflowCount.increment();
+            logger.info("Events of " + directory + " overflowed. Rescanning its contents");
+            this.rescan(directory);
+        }
+
+        if (! key.reset()) {
+            // the directory is not accessible anymore
+            this.directoryKeys.remove(directory);
+            this.snapshot.remove(directory);
+        }
+    }
+
+    protected void onCreated(Path directory, Path child) {
+        this.updateSnapshot(directory, child);
+
+        if (this.isRecursive && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+            this.register(child);
+        }
+
+        this.changeListener.onPathCreated(child);
+    }
+
+    protected void onDeleted(Path directory, Path child) {
+        Map<Path, Long> children = this.snapshot.get(directory);
+        if (null != children) {
+            children.remove(child);
+        }
+
+        this.unregister(child);
+        this.changeListener.onPathDeleted(child);
+    }
+
+    /**
+     * Compares the current contents of the given directory with the known ones
+     * and notifies about all differences
+     *
+     * @param directory The directory to rescan
+     */
+    protected void rescan(Path directory) {
+        Map<Path, Long> knownChildren = this.snapshot.get(directory);
+        if (null == knownChildren) {
+            return;
+        }
+
+        Map<Path, Long> currentChildren = new HashMap<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+            for (Path child : directoryStream) {
+                currentChildren.put(child, WatchServicePathWatcher.getLastModified(child));
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            logger.error("Could not rescan directory " + directory + ". Message: " + e.getMessage());
+            return;
+        }
+
+        for (Path knownChild : new ArrayList<>(knownChildren.keySet())) {
+            if (! currentChildren.containsKey(knownChild)) {
+                this.onDeleted(directory, knownChild);
+            }
+        }
+
+        for (Map.Entry<Path, Long> currentChild : currentChildren.entrySet()) {
+            Long lastModified = knownChildren.get(currentChild.getKey());
+
+            if (null == lastModified) {
+                this.onCreated(directory, currentChild.getKey());
+            } else if (! lastModified.equals(currentChild.getValue()) && ! this.directoryKeys.containsKey(currentChild.getKey())) {
+                knownChildren.put(currentChild.getKey(), currentChild.getValue());
+                this.changeListener.onPathModified(currentChild.getKey());
+            }
+        }
+    }
+
+    /**
+     * Registers the given directory and, if recursive, all its subdirectories in parallel
+     *
+     * @param directory The directory to register
+     */
+    protected void register(Path directory) {
+        this.registrationPool.invoke(new Registration(directory));
+    }
+
+    /**
+     * Stops watching the given directory and all its subdirectories
+     *
+     * @param path The deleted path
+     */
+    protected void unregister(Path path) {
+        if (! this.directoryKeys.containsKey(path)) {
+            // not a watched directory, e.g. a file
+            return;
+        }
+
+        // the paths having the deleted one as prefix are next to each other,
+        // among them the ones of its subtree
+        String prefix = path.toString();
+        Iterator<Map.Entry<Path, WatchKey>> iterator = this.directoryKeys.tailMap(path, true).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, WatchKey> entry = iterator.next();
+            if (! entry.getKey().toString().startsWith(prefix)) {
+                break;
+            }
+
+            if (entry.getKey().startsWith(path)) {
+                entry.getValue().cancel();
+                iterator.remove();
+                this.snapshot.remove(entry.getKey());
+            }
+        }
+    }
+
+    protected void updateSnapshot(Path directory, Path child) {
+        Map<Path, Long> children = this.snapshot.get(directory);
+        if (null != children) {
+            children.put(child, WatchServicePathWatcher.getLastModified(child));
+        }
+    }
+
+    protected static long getLastModified(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return - 1L;
+        }
+    }
+
+    /**
+     * Registers a single directory and forks the registration of each of its subdirectories
+     */
+    protected class Registration extends RecursiveAction {
+
+        protected final Path directory;
+
+        protected Registration(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            Map<Path, Long> children = new ConcurrentHashMap<>();
+            List<Registration> subdirectoryRegistrations = new ArrayList<>();
+
+            try {
+                // register before listing the contents, so that no child created meanwhile is missed
+                WatchKey key = this.directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                directoryKeys.put(this.directory, key);
+                snapshot.put(this.directory, children);
+
+                try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(this.directory)) {
+                    for (Path child : directoryStream) {
+                        children.put(child, WatchServicePathWatcher.getLastModified(child));
+
+                        if (isRecursive && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            subdirectoryRegistrations.add(new Registration(child));
+                        }
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // deleted in the meantime
+                return;
+            } catch (IOException | DirectoryIteratorException e) {
+                logger.error("Could not register directory " + this.directory + ". Message: " + e.getMessage());
+                if (this.directory.equals(rootPath)) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                return;
+            }
+
+            ForkJoinTask.invokeAll(subdirectoryRegistrations);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.rmatil.sync.event.aggregator.core.pathwatcher;
+
+import name.mitterdorfer.perlock.PathChangeListener;
+import name.mitterdorfer.perlock.PathWatcher;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A PathWatcherFactory using the {@link java.nio.file.WatchService}
+ * directly to watch a specified folder.
+ * In contrast to the Perlock Path Watcher, lost events are recovered
+ * by rescanning the affected directory (see {@link WatchServicePathWatcher})
+ */
+public class WatchServicePathWatcherFactory extends APathWatcherFactory {
+
+    /**
+     * The default number of threads registering directories
+     */
+    public static final int DEFAULT_REGISTRATION_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default maximum number of ready keys processed in a single pass
+     */
+    public static final int DEFAULT_MAX_KEYS_PER_DRAIN = 256;
+
+    protected final int registrationParallelism;
+
+    protected final int maxKeysPerDrain;
+
+    public WatchServicePathWatcherFactory() {
+        this(DEFAULT_REGISTRATION_PARALLELISM, DEFAULT_MAX_KEYS_PER_DRAIN);
+    }
+
+    /**
+     * @param registrationParallelism The number of threads registering directories
+     * @param maxKeysPerDrain         The maximum number of ready keys processed in a single pass
+     *
+     * @throws IllegalArgumentException If any of the values is not positive
+     */
+    public WatchServicePathWatcherFactory(int registrationParallelism, int maxKeysPerDrain) {
+        if (registrationParallelism < 1 || maxKeysPerDrain < 1) {
+            throw new IllegalArgumentException("The registration parallelism and the maximum number of keys per drain must be at least 1");
+        }
+
+        this.registrationParallelism = registrationParallelism;
+        this.maxKeysPerDrain = maxKeysPerDrain;
+    }
+
+    public PathWatcher createRecursiveWatcher(ExecutorService executorService, Path rootPath, PathChangeListener changeListener) {
+        return new WatchServicePathWatcher(executorService, rootPath, changeListener, true, this.registrationParallelism, this.maxKeysPerDrain);
+    }
+
+    public PathWatcher createNonRecursiveWatcher(ExecutorService executorService, Path rootPath, PathChangeListener changeListener) {
+        return new WatchServicePathWatcher(executorService, rootPath, changeListener, false, this.registrationParallelism, this.maxKeysPerDrain);
+    }
+
+    /**
+     * Returns the number of threads registering directories
+     *
+     * @return The registration parallelism
+     */
+    public int getRegistrationParallelism() {
+        return this.registrationParallelism;
+    }
+
+    /**
+     * Returns the maximum number of ready keys processed in a single pass
+     *
+     * @return The maximum number of keys per drain
+     */
+    public int getMaxKeysPerDrain() {
+        return this.maxKeysPerDrain;
+    }
+}
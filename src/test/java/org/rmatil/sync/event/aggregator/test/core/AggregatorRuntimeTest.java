@@ -0,0 +1,196 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.AggregatorRuntime;
+import org.rmatil.sync.event.aggregator.core.EventAggregator;
+import org.rmatil.sync.event.aggregator.core.FlushPolicy;
+import org.rmatil.sync.event.aggregator.core.OverflowPolicy;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.mocks.MockPathWatcherFactory;
+import org.rmatil.sync.event.aggregator.test.mocks.PathWatcherMock;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AggregatorRuntimeTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    private AggregatorRuntime runtime;
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @Before
+    public void before() {
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+        this.runtime = new AggregatorRuntime(1, 2, 2, 1, 1);
+    }
+
+    @After
+    public void after() {
+        this.runtime.shutdown();
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+    }
+
+    @Test
+    public void testSharedRuntime()
+            throws IOException, InterruptedException {
+        List<EventAggregator> eventAggregators = new ArrayList<>();
+        List<MockPathWatcherFactory> pathWatcherFactories = new ArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(3);
+
+        for (int i = 0; i < 3; i++) {
+            MockPathWatcherFactory pathWatcherFactory = new MockPathWatcherFactory();
+            EventAggregator eventAggregator = new EventAggregator(ROOT_TEST_DIR, pathWatcherFactory, this.runtime);
+            eventAggregator.setFlushPolicy(new FlushPolicy(50L, 200L, 100));
+            eventAggregator.addListener(changes -> delivered.countDown());
+            eventAggregator.start();
+
+            eventAggregators.add(eventAggregator);
+            pathWatcherFactories.add(pathWatcherFactory);
+        }
+
+        // all aggregators watch the same directory: the first one is notified about the creation
+        ((PathWatcherMock) pathWatcherFactories.get(0).getPathWatcherInstance()).mockFileCreation(ROOT_TEST_DIR);
+        for (MockPathWatcherFactory pathWatcherFactory : pathWatcherFactories.subList(1, pathWatcherFactories.size())) {
+            ((PathWatcherMock) pathWatcherFactory.getPathWatcherInstance()).mockFileModify(ROOT_TEST_DIR);
+        }
+
+        assertTrue("All event aggregators should deliver their events using the shared threads", delivered.await(2L, TimeUnit.SECONDS));
+
+        for (EventAggregator eventAggregator : eventAggregators) {
+            assertEquals("Runtime is not the configured one", this.runtime, eventAggregator.getRuntime());
+            eventAggregator.stop();
+        }
+    }
+
+    @Test
+    public void testMoreSlowListenersThanDispatchThreads()
+            throws IOException, InterruptedException {
+        AggregatorRuntime runtime = new AggregatorRuntime(1, 1, 2, 2, 1, 2);
+        List<EventAggregator> eventAggregators = new ArrayList<>();
+        List<MockPathWatcherFactory> pathWatcherFactories = new ArrayList<>();
+        List<AtomicLong> lastDeliveredTimestamps = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            MockPathWatcherFactory pathWatcherFactory = new MockPathWatcherFactory();
+            EventAggregator eventAggregator = new EventAggregator(ROOT_TEST_DIR, pathWatcherFactory, runtime);
+            eventAggregator.setFlushPolicy(new FlushPolicy(10L, 20L, 100));
+
+            // aggregations block while the single pending batch is not delivered yet
+            AtomicLong lastDeliveredTimestamp = new AtomicLong();
+            eventAggregator.addListener(changes -> {
+                for (IEvent event : changes) {
+                    lastDeliveredTimestamp.accumulateAndGet(event.getTimestamp(), Math::max);
+                }
+
+                try {
+                    Thread.sleep(100L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, OverflowPolicy.BLOCK, 1);
+            eventAggregator.start();
+
+            eventAggregators.add(eventAggregator);
+            pathWatcherFactories.add(pathWatcherFactory);
+            lastDeliveredTimestamps.add(lastDeliveredTimestamp);
+        }
+
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < 500L) {
+            for (MockPathWatcherFactory pathWatcherFactory : pathWatcherFactories) {
+                ((PathWatcherMock) pathWatcherFactory.getPathWatcherInstance()).mockFileModify(ROOT_TEST_DIR);
+            }
+            Thread.sleep(20L);
+        }
+
+        long lastTimestamp = System.currentTimeMillis();
+        for (MockPathWatcherFactory pathWatcherFactory : pathWatcherFactories) {
+            ((PathWatcherMock) pathWatcherFactory.getPathWatcherInstance()).mockFileModify(ROOT_TEST_DIR);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        boolean isDelivered = false;
+        while (! isDelivered && System.currentTimeMillis() < deadline) {
+            isDelivered = true;
+            for (AtomicLong lastDeliveredTimestamp : lastDeliveredTimestamps) {
+                isDelivered &= lastDeliveredTimestamp.get() >= lastTimestamp;
+            }
+            Thread.sleep(20L);
+        }
+
+        assertTrue("Aggregations waiting for slow listeners should not block the delivery to them", isDelivered);
+
+        for (EventAggregator eventAggregator : eventAggregators) {
+            eventAggregator.stop();
+        }
+        runtime.shutdown();
+    }
+
+    @Test
+    public void testNoFlushAfterStop()
+            throws IOException, InterruptedException {
+        MockPathWatcherFactory pathWatcherFactory = new MockPathWatcherFactory();
+        EventAggregator eventAggregator = new EventAggregator(ROOT_TEST_DIR, pathWatcherFactory, this.runtime);
+        eventAggregator.setFlushPolicy(new FlushPolicy(100L, 200L, 100));
+        AtomicLong nrOfDeliveredEvents = new AtomicLong();
+        eventAggregator.addListener(changes -> nrOfDeliveredEvents.addAndGet(changes.size()));
+        eventAggregator.start();
+
+        // the check is queued on the shared scheduler, which keeps running
+        ((PathWatcherMock) pathWatcherFactory.getPathWatcherInstance()).mockFileModify(ROOT_TEST_DIR);
+        eventAggregator.stop();
+
+        Thread.sleep(400L);
+
+        assertEquals("No events should be flushed after stopping", 0L, nrOfDeliveredEvents.get());
+
+        // flushes work again after restarting
+        eventAggregator.start();
+        ((PathWatcherMock) pathWatcherFactory.getPathWatcherInstance()).mockFileModify(ROOT_TEST_DIR);
+
+        long deadline = System.currentTimeMillis() + 2000L;
+        while (0L == nrOfDeliveredEvents.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+        }
+
+        assertTrue("Events should be flushed after restarting", nrOfDeliveredEvents.get() > 0L);
+        eventAggregator.stop();
+    }
+
+    @Test
+    public void testAccessor() {
+        assertNotNull("Scheduler should be created", this.runtime.getScheduler());
+        assertEquals("Hashing pool size is not the configured one", 2, this.runtime.getHashingPool().getNrOfThreads());
+        assertEquals("Dispatch pool size is not the configured one", 2, this.runtime.getDispatchPool().getNrOfThreads());
+        assertEquals("Hashing quota is not the configured one", 1, this.runtime.getHashingQuota());
+        assertEquals("Dispatch quota is not the configured one", 1, this.runtime.getDispatchQuota());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuota() {
+        new AggregatorRuntime(1, 1, 1, 0, 1);
+    }
+}
@@ -2,12 +2,19 @@ package org.rmatil.sync.event.aggregator.test.core;
 
 import org.junit.*;
 import org.rmatil.sync.event.aggregator.api.IEventAggregator;
+import org.rmatil.sync.event.aggregator.api.IEventListener;
 import org.rmatil.sync.event.aggregator.core.EventAggregator;
+import org.rmatil.sync.event.aggregator.core.FlushPolicy;
+import org.rmatil.sync.event.aggregator.core.SubtreeRescanner;
 import org.rmatil.sync.event.aggregator.core.aggregator.HistoryMoveAggregator;
 import org.rmatil.sync.event.aggregator.core.aggregator.IAggregator;
+import org.rmatil.sync.event.aggregator.core.cache.VersionHashCache;
 import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
 import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentHashCache;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingMode;
+import org.rmatil.sync.event.aggregator.core.hashing.MerkleTree;
 import org.rmatil.sync.event.aggregator.core.modifier.IModifier;
 import org.rmatil.sync.event.aggregator.core.modifier.IgnorePathsModifier;
 import org.rmatil.sync.event.aggregator.core.modifier.RelativePathModifier;
@@ -24,6 +31,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.isA;
@@ -106,6 +114,33 @@ public class EventAggregatorTest {
         assertEquals("Failed to assert that the eventBag is holding only the creation event", 1, eventListener.getEvents().size());
     }
 
+    @Test
+    public void testStopShutsDownListenerDispatchers()
+            throws IOException, InterruptedException {
+        List<Thread> deliveringThreads = new CopyOnWriteArrayList<>();
+        IEventListener threadRecordingListener = changes -> deliveringThreads.add(Thread.currentThread());
+        eventAggregator.addListener(threadRecordingListener);
+
+        pathWatcher.mockFileCreation(APathTest.ROOT_TEST_DIR);
+        Thread.sleep(APathTest.TIME_GAP_PUSH_WAIT_INTERVAL);
+        assertFalse("Events should be delivered by the dispatcher", deliveringThreads.isEmpty());
+
+        eventAggregator.stop();
+        for (Thread deliveringThread : deliveringThreads) {
+            assertFalse("No dispatcher thread should remain after stopping", deliveringThread.isAlive());
+        }
+
+        // listeners are still notified after a restart
+        deliveringThreads.clear();
+        eventAggregator.start();
+        pathWatcher = (PathWatcherMock) mockPathWatcherFactory.getPathWatcherInstance();
+        pathWatcher.mockFileModify(APathTest.ROOT_TEST_DIR);
+        Thread.sleep(APathTest.TIME_GAP_PUSH_WAIT_INTERVAL);
+        assertFalse("Events should be delivered after a restart", deliveringThreads.isEmpty());
+
+        eventAggregator.removeListener(threadRecordingListener);
+    }
+
     @Test
     public void aggregateModifyEvent() {
         // create file
@@ -179,8 +214,10 @@ public class EventAggregatorTest {
     @Test
     public void testAccessor() {
         assertEquals("Event listener are not correctly registered", 1, eventAggregator.getListeners().size());
+        assertNotNull("Listener should have a dispatcher", eventAggregator.getListenerDispatcher(eventListener));
         eventAggregator.removeListener(eventListener);
         assertEquals("Listeners are not correctly removed", 0, eventAggregator.getListeners().size());
+        assertNull("Dispatcher should be removed with its listener", eventAggregator.getListenerDispatcher(eventListener));
         eventAggregator.addListener(eventListener);
 
         IModifier modifier = new IgnorePathsModifier(new ArrayList<>());
@@ -194,6 +231,52 @@ public class EventAggregatorTest {
         assertEquals("Aggregators are not correctly removed", 0, eventAggregator.getAggregators().size());
 
         assertEquals("AggregationInterval is not correctly set", APathTest.TIME_GAP_PUSH_INTERVAL, eventAggregator.getAggregationInterval());
+        assertEquals("AggregationInterval should be the maximum latency", APathTest.TIME_GAP_PUSH_INTERVAL, eventAggregator.getFlushPolicy().getMaxLatency());
+
+        FlushPolicy flushPolicy = eventAggregator.getFlushPolicy();
+        FlushPolicy otherFlushPolicy = new FlushPolicy(10L, 100L, 5);
+        eventAggregator.setFlushPolicy(otherFlushPolicy);
+        assertEquals("FlushPolicy is not correctly set", otherFlushPolicy, eventAggregator.getFlushPolicy());
+        eventAggregator.setFlushPolicy(flushPolicy);
+
+        int hashingPoolSize = eventAggregator.getHashingPoolSize();
+        eventAggregator.setHashingPoolSize(3);
+        assertEquals("HashingPoolSize is not correctly set", 3, eventAggregator.getHashingPoolSize());
+        eventAggregator.setHashingPoolSize(hashingPoolSize);
+
+        int hashingQueueSize = eventAggregator.getHashingQueueSize();
+        eventAggregator.setHashingQueueSize(12);
+        assertEquals("HashingQueueSize is not correctly set", 12, eventAggregator.getHashingQueueSize());
+        eventAggregator.setHashingQueueSize(hashingQueueSize);
+
+        assertNull("MerkleTree should be disabled by default", eventAggregator.getMerkleTree());
+        MerkleTree merkleTree = new MerkleTree(APathTest.ROOT_TEST_DIR, null);
+        eventAggregator.setMerkleTree(merkleTree);
+        assertEquals("MerkleTree is not correctly set", merkleTree, eventAggregator.getMerkleTree());
+        eventAggregator.setMerkleTree(null);
+
+        assertEquals("HashingMode should be FULL by default", HashingMode.FULL, eventAggregator.getHashingMode());
+        eventAggregator.setHashingMode(HashingMode.TWO_TIER);
+        assertEquals("HashingMode is not correctly set", HashingMode.TWO_TIER, eventAggregator.getHashingMode());
+        eventAggregator.setHashingMode(HashingMode.FULL);
+
+        assertNull("ContentHashCache should be disabled by default", eventAggregator.getContentHashCache());
+        ContentHashCache contentHashCache = new ContentHashCache();
+        eventAggregator.setContentHashCache(contentHashCache);
+        assertEquals("ContentHashCache is not correctly set", contentHashCache, eventAggregator.getContentHashCache());
+        eventAggregator.setContentHashCache(null);
+
+        assertNotNull("Metrics should always be collected", eventAggregator.getMetrics());
+
+        VersionHashCache versionHashCache = new VersionHashCache(new ObjectManagerMock());
+        eventAggregator.setVersionHashCache(versionHashCache);
+        assertEquals("Lookups of the version hash cache should be recorded", eventAggregator.getMetrics(), versionHashCache.getMetrics());
+        eventAggregator.setVersionHashCache(null);
+
+        SubtreeRescanner subtreeRescanner = new SubtreeRescanner(APathTest.ROOT_TEST_DIR, null);
+        eventAggregator.setSubtreeRescanner(subtreeRescanner);
+        assertEquals("Lookups of the subtree rescanner should be recorded", eventAggregator.getMetrics(), subtreeRescanner.getMetrics());
+        eventAggregator.setSubtreeRescanner(null);
     }
 
 }
@@ -0,0 +1,157 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.EventBag;
+import org.rmatil.sync.event.aggregator.core.events.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.*;
+
+public class EventBagTest {
+
+    private static final Path   PATH     = Paths.get("/tmp/dir/someFile.txt");
+    private static final Path   PATH2    = Paths.get("/tmp/dir/someOtherFile.txt");
+    private static final String FILENAME = "someFile.txt";
+
+    private EventBag eventBag;
+
+    @Before
+    public void before() {
+        this.eventBag = new EventBag();
+    }
+
+    @Test
+    public void testCreateAndModify() {
+        this.eventBag.add(new CreateEvent(PATH, FILENAME, "hash1", 1L));
+        this.eventBag.add(new ModifyEvent(PATH, FILENAME, "hash2", 2L));
+        this.eventBag.add(new ModifyEvent(PATH, FILENAME, "hash3", 3L));
+
+        List<IEvent> events = this.eventBag.getEvents();
+
+        assertEquals("Bag should only contain the create event", 1, this.eventBag.size());
+        assertEquals("Events should only contain the create event", 1, events.size());
+        assertThat("Event should be create event", events.get(0), instanceOf(CreateEvent.class));
+        assertEquals("Timestamp of create event should be kept", 1L, events.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testMultipleModify() {
+        for (int i = 0; i < 10000; i++) {
+            this.eventBag.add(new ModifyEvent(PATH, FILENAME, "hash" + i, i));
+        }
+
+        List<IEvent> events = this.eventBag.getEvents();
+
+        assertEquals("Bag should only contain one modify event", 1, this.eventBag.size());
+        assertThat("Event should be modify event", events.get(0), instanceOf(ModifyEvent.class));
+        assertEquals("Only the last modify event should be kept", "hash9999", events.get(0).getHash());
+    }
+
+    @Test
+    public void testCreateAndDelete() {
+        this.eventBag.add(new CreateEvent(PATH, FILENAME, "hash1", 1L));
+        this.eventBag.add(new ModifyEvent(PATH, FILENAME, "hash2", 2L));
+        this.eventBag.add(new DeleteEvent(PATH, FILENAME, null, 3L));
+
+        assertTrue("Bag should be empty", this.eventBag.isEmpty());
+        assertTrue("Events should be empty", this.eventBag.getEvents().isEmpty());
+    }
+
+    @Test
+    public void testModifyAndDelete() {
+        this.eventBag.add(new ModifyEvent(PATH, FILENAME, "hash1", 1L));
+        this.eventBag.add(new DeleteEvent(PATH, FILENAME, null, 2L));
+
+        List<IEvent> events = this.eventBag.getEvents();
+
+        assertEquals("Bag should only contain the delete event", 1, this.eventBag.size());
+        assertThat("Event should be delete event", events.get(0), instanceOf(DeleteEvent.class));
+    }
+
+    @Test
+    public void testDeleteAndCreate() {
+        this.eventBag.add(new DeleteEvent(PATH, FILENAME, null, 1L));
+        this.eventBag.add(new CreateEvent(PATH, FILENAME, "hash1", 2L));
+        this.eventBag.add(new ModifyEvent(PATH, FILENAME, "hash2", 3L));
+
+        List<IEvent> events = this.eventBag.getEvents();
+
+        assertEquals("Bag should contain delete and create event", 2, this.eventBag.size());
+        assertThat("First event should be delete event", events.get(0), instanceOf(DeleteEvent.class));
+        assertThat("Second event should be create event", events.get(1), instanceOf(CreateEvent.class));
+
+        // deleting it again results only in the first delete event
+        this.eventBag.add(new DeleteEvent(PATH, FILENAME, null, 4L));
+
+        events = this.eventBag.getEvents();
+
+        assertEquals("Bag should only contain the delete event", 1, this.eventBag.size());
+        assertThat("Event should be delete event", events.get(0), instanceOf(DeleteEvent.class));
+        assertEquals("First delete event should be kept", 1L, events.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testDistinctPaths() {
+        this.eventBag.add(new CreateEvent(PATH, FILENAME, "hash1", 2L));
+        this.eventBag.add(new DeleteEvent(PATH2, FILENAME, null, 1L));
+        this.eventBag.add(new MoveEvent(PATH, PATH2, FILENAME, "hash1", 3L));
+
+        List<IEvent> events = this.eventBag.getEvents();
+
+        assertEquals("Bag should contain all events", 3, this.eventBag.size());
+        assertThat("Events should be sorted", events.get(0), instanceOf(DeleteEvent.class));
+        assertThat("Events should be sorted", events.get(1), instanceOf(CreateEvent.class));
+        assertThat("Events should be sorted", events.get(2), instanceOf(MoveEvent.class));
+
+        this.eventBag.clear();
+        assertTrue("Bag should be empty after clearing", this.eventBag.isEmpty());
+    }
+
+    @Test
+    public void testRemove() {
+        this.eventBag.add(new DeleteEvent(PATH, FILENAME, null, 1L));
+        this.eventBag.add(new CreateEvent(PATH, FILENAME, "hash1", 2L));
+        this.eventBag.add(new ModifyEvent(PATH2, FILENAME, "hash2", 3L));
+
+        List<IEvent> events = this.eventBag.remove(PATH);
+
+        assertEquals("All events of the path should be removed", 2, events.size());
+        assertThat("Delete event should be removed", events.get(0), instanceOf(DeleteEvent.class));
+        assertEquals("Events of other paths should be kept", 1, this.eventBag.size());
+        assertTrue("Nothing should be removed for a path without events", this.eventBag.remove(PATH).isEmpty());
+    }
+
+    @Test
+    public void testRemoveMoveCandidates() {
+        this.eventBag.add(new DeleteEvent(PATH, FILENAME, null, 10L));
+        this.eventBag.add(new CreateEvent(PATH2, FILENAME, "hash1", 20L));
+        this.eventBag.add(new ModifyEvent(Paths.get("/tmp/dir/modifiedFile.txt"), FILENAME, "hash2", 15L));
+        this.eventBag.add(new CreateEvent(Paths.get("/tmp/dir/laterFile.txt"), FILENAME, "hash3", 100L));
+
+        List<IEvent> events = this.eventBag.removeMoveCandidates(5L, 20L);
+
+        assertEquals("Deletions and creations within the range should be removed", 2, events.size());
+        assertEquals("Modifications and events out of range should be kept", 2, this.eventBag.size());
+    }
+
+    @Test
+    public void testAddBefore() {
+        this.eventBag.add(new DeleteEvent(PATH, FILENAME, null, 3L));
+        this.eventBag.add(new ModifyEvent(PATH2, FILENAME, "hash2", 4L));
+
+        // the path was created before it got deleted
+        this.eventBag.addBefore(Arrays.asList(new CreateEvent(PATH, FILENAME, "hash1", 1L), new CreateEvent(PATH2, FILENAME, "hash1", 2L)));
+
+        List<IEvent> events = this.eventBag.getEvents();
+
+        assertEquals("Temporarily created path should not produce an event", 1, this.eventBag.size());
+        assertThat("Later modification should be covered by the creation", events.get(0), instanceOf(CreateEvent.class));
+        assertEquals("Creation should be kept", PATH2, events.get(0).getPath());
+    }
+}
@@ -0,0 +1,101 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.EventRingBuffer;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventRingBufferTest {
+
+    private static final Path PATH = Paths.get("/tmp/dir");
+
+    @Test
+    public void testOfferAndDrain() {
+        EventRingBuffer ringBuffer = new EventRingBuffer(3);
+        assertEquals("Capacity should be rounded up to a power of two", 4, ringBuffer.getCapacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue("Event should fit into a free slot", ringBuffer.offer(this.createEvent(i)));
+        }
+
+        assertFalse("Overflow should be signalled once all slots are taken", ringBuffer.offer(this.createEvent(4)));
+        assertEquals("All slots should be taken", 4, ringBuffer.size());
+
+        List<IEvent> events = new ArrayList<>();
+        assertEquals("All events should be drained", 4, ringBuffer.drain(events::add));
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals("Events should be drained in order", i, events.get(i).getTimestamp());
+        }
+
+        assertEquals("Ring buffer should be empty", 0, ringBuffer.size());
+        assertEquals("Nothing should be drained from an empty ring buffer", 0, ringBuffer.drain(events::add));
+
+        // slots are reused in the next round
+        assertTrue("Drained slots should be free", ringBuffer.offer(this.createEvent(5)));
+        events.clear();
+        ringBuffer.drain(events::add);
+        assertEquals("Event of the next round should be drained", 5L, events.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testConcurrentProducers()
+            throws InterruptedException {
+        int nrOfProducers = 4;
+        int nrOfEventsPerProducer = 10000;
+
+        EventRingBuffer ringBuffer = new EventRingBuffer(64);
+        ExecutorService executorService = Executors.newFixedThreadPool(nrOfProducers);
+        CountDownLatch producersDone = new CountDownLatch(nrOfProducers);
+
+        for (int producer = 0; producer < nrOfProducers; producer++) {
+            final int offset = producer * nrOfEventsPerProducer;
+            executorService.execute(() -> {
+                for (int i = 0; i < nrOfEventsPerProducer; i++) {
+                    IEvent event = this.createEvent(offset + i);
+                    while (! ringBuffer.offer(event)) {
+                        Thread.yield();
+                    }
+                }
+
+                producersDone.countDown();
+            });
+        }
+
+        Set<Long> timestamps = new HashSet<>();
+        long[] lastTimestamps = new long[nrOfProducers];
+        Arrays.fill(lastTimestamps, - 1L);
+
+        while (producersDone.getCount() > 0 || ringBuffer.size() > 0) {
+            ringBuffer.drain(event -> {
+                int producer = (int) (event.getTimestamp() / nrOfEventsPerProducer);
+                assertTrue("Events of a producer should be drained in order", lastTimestamps[producer] < event.getTimestamp());
+                lastTimestamps[producer] = event.getTimestamp();
+                timestamps.add(event.getTimestamp());
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10L, TimeUnit.SECONDS));
+
+        assertEquals("All events should be drained exactly once", nrOfProducers * nrOfEventsPerProducer, timestamps.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new EventRingBuffer(0);
+    }
+
+    protected IEvent createEvent(long timestamp) {
+        return new DeleteEvent(PATH.resolve("file" + timestamp + ".txt"), "file" + timestamp + ".txt", null, timestamp);
+    }
+}
@@ -0,0 +1,177 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.FairExecutor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FairExecutorTest {
+
+    private FairExecutor fairExecutor;
+
+    @Before
+    public void before() {
+        this.fairExecutor = new FairExecutor(1, "fair-executor-test-%d");
+    }
+
+    @After
+    public void after() {
+        this.fairExecutor.shutdown();
+    }
+
+    @Test
+    public void testRoundRobin()
+            throws InterruptedException {
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(6);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // occupy the only thread until both lanes queued their tasks
+        FairExecutor.Lane blockingLane = this.fairExecutor.newLane(1, 10);
+        blockingLane.execute(() -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        FairExecutor.Lane busyLane = this.fairExecutor.newLane(1, 10);
+        FairExecutor.Lane otherLane = this.fairExecutor.newLane(1, 10);
+
+        for (int i = 0; i < 4; i++) {
+            busyLane.execute(() -> {
+                order.add("busy");
+                done.countDown();
+            });
+        }
+
+        for (int i = 0; i < 2; i++) {
+            otherLane.execute(() -> {
+                order.add("other");
+                done.countDown();
+            });
+        }
+
+        released.countDown();
+        assertTrue("All tasks should be run", done.await(1L, TimeUnit.SECONDS));
+
+        // the busy lane must not run all its tasks before the other one gets a turn
+        assertEquals("Lanes should be served round robin", "other", order.get(1));
+        assertEquals("Lanes should be served round robin", "other", order.get(3));
+    }
+
+    @Test
+    public void testQuota()
+            throws InterruptedException {
+        FairExecutor executor = new FairExecutor(4, "fair-executor-quota-test-%d");
+        FairExecutor.Lane lane = executor.newLane(2, 100);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            lane.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue("All tasks should be run", done.await(2L, TimeUnit.SECONDS));
+        assertTrue("Lane should not exceed its quota", maxRunning.get() <= 2);
+        assertEquals("Quota is not the configured one", 2, lane.getQuota());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testCallerRuns()
+            throws InterruptedException {
+        CountDownLatch released = new CountDownLatch(1);
+        FairExecutor.Lane lane = this.fairExecutor.newLane(1, 1);
+
+        lane.execute(() -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // wait until the blocking task is taken from the lane
+        long deadline = System.currentTimeMillis() + 1000L;
+        while (lane.getQueueSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+
+        lane.execute(() -> { });
+
+        Thread caller = Thread.currentThread();
+        AtomicInteger nrOfCallerRuns = new AtomicInteger();
+        lane.execute(() -> {
+            if (Thread.currentThread() == caller) {
+                nrOfCallerRuns.incrementAndGet();
+            }
+        });
+
+        assertEquals("Task should be run by the caller if the lane is full", 1, nrOfCallerRuns.get());
+
+        lane.shutdown();
+        lane.execute(() -> {
+            if (Thread.currentThread() == caller) {
+                nrOfCallerRuns.incrementAndGet();
+            }
+        });
+
+        assertEquals("Task should be run by the caller if the lane is shut down", 2, nrOfCallerRuns.get());
+        released.countDown();
+    }
+
+    @Test
+    public void testShutdownAndAwaitTermination()
+            throws InterruptedException {
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicInteger nrOfRuns = new AtomicInteger();
+        FairExecutor.Lane lane = this.fairExecutor.newLane(1, Integer.MAX_VALUE);
+
+        assertTrue("Task should be queued", lane.offer(() -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            nrOfRuns.incrementAndGet();
+        }));
+        assertTrue("Task should be queued", lane.offer(nrOfRuns::incrementAndGet));
+
+        assertFalse("Lane should not terminate before being shut down", lane.awaitTermination(50L));
+
+        lane.shutdown();
+        assertFalse("Task should not be queued once shut down", lane.offer(nrOfRuns::incrementAndGet));
+        assertFalse("Lane should not terminate while a task runs", lane.awaitTermination(50L));
+
+        released.countDown();
+        assertTrue("Lane should terminate once the queued tasks completed", lane.awaitTermination(1000L));
+        assertEquals("Only the tasks queued before shutting down should run", 2, nrOfRuns.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuota() {
+        this.fairExecutor.newLane(0, 1);
+    }
+}
@@ -0,0 +1,143 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.FlushPolicy;
+import org.rmatil.sync.event.aggregator.core.FlushScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FlushSchedulerTest {
+
+    private ScheduledExecutorService executorService;
+
+    private AtomicInteger nrOfFlushes;
+
+    @Before
+    public void before() {
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+        this.nrOfFlushes = new AtomicInteger();
+    }
+
+    @After
+    public void after() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void testIdle()
+            throws InterruptedException {
+        FlushScheduler flushScheduler = new FlushScheduler(this.executorService, new FlushPolicy(50L, 200L, 100), this.nrOfFlushes::incrementAndGet);
+
+        assertFalse("No check should be scheduled without events", flushScheduler.isScheduled());
+
+        Thread.sleep(300L);
+
+        assertEquals("Should not flush without events", 0, this.nrOfFlushes.get());
+    }
+
+    @Test
+    public void testQuietPeriod()
+            throws InterruptedException {
+        FlushScheduler flushScheduler = new FlushScheduler(this.executorService, new FlushPolicy(100L, 10000L, 100), this.nrOfFlushes::incrementAndGet);
+
+        flushScheduler.onEvent(1);
+        flushScheduler.onEvent(2);
+
+        assertTrue("A check should be scheduled", flushScheduler.isScheduled());
+        assertEquals("Should not flush before the quiet period elapsed", 0, this.nrOfFlushes.get());
+
+        Thread.sleep(400L);
+
+        assertEquals("Should flush once after the quiet period", 1, this.nrOfFlushes.get());
+        assertFalse("No check should be scheduled after flushing", flushScheduler.isScheduled());
+    }
+
+    @Test
+    public void testMaxLatency()
+            throws InterruptedException {
+        FlushScheduler flushScheduler = new FlushScheduler(this.executorService, new FlushPolicy(100L, 300L, 1000), this.nrOfFlushes::incrementAndGet);
+
+        // events keep on arriving within the quiet period
+        long start = System.currentTimeMillis();
+        int nrOfEvents = 0;
+        while (System.currentTimeMillis() - start < 600L) {
+            flushScheduler.onEvent(++ nrOfEvents);
+            Thread.sleep(20L);
+        }
+
+        assertTrue("Should flush after the maximum latency although events keep on arriving", this.nrOfFlushes.get() >= 1);
+    }
+
+    @Test
+    public void testMaxBatchSize()
+            throws InterruptedException {
+        FlushScheduler flushScheduler = new FlushScheduler(this.executorService, new FlushPolicy(5000L, 10000L, 3), this.nrOfFlushes::incrementAndGet);
+
+        flushScheduler.onEvent(1);
+        flushScheduler.onEvent(2);
+        flushScheduler.onEvent(3);
+
+        Thread.sleep(200L);
+
+        assertEquals("Should flush immediately once the maximum batch size is reached", 1, this.nrOfFlushes.get());
+    }
+
+    @Test
+    public void testConcurrentEvents()
+            throws InterruptedException {
+        FlushScheduler flushScheduler = new FlushScheduler(this.executorService, new FlushPolicy(50L, 10000L, 1000000), this.nrOfFlushes::incrementAndGet);
+        List<Thread> producers = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            Thread producer = new Thread(() -> {
+                for (int j = 1; j <= 10000; j++) {
+                    flushScheduler.onEvent(j);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        Thread.sleep(300L);
+
+        assertTrue("Should flush after the quiet period", this.nrOfFlushes.get() >= 1);
+        assertFalse("No check should be scheduled after flushing", flushScheduler.isScheduled());
+    }
+
+    @Test
+    public void testCancel()
+            throws InterruptedException {
+        FlushScheduler flushScheduler = new FlushScheduler(this.executorService, new FlushPolicy(50L, 200L, 100), this.nrOfFlushes::incrementAndGet);
+
+        flushScheduler.onEvent(1);
+        assertTrue("A check should be scheduled", flushScheduler.isScheduled());
+
+        flushScheduler.cancel();
+        assertTrue("Scheduler should be cancelled", flushScheduler.isCancelled());
+        assertFalse("The scheduled check should be cancelled", flushScheduler.isScheduled());
+
+        flushScheduler.onEvent(2);
+        assertFalse("No check should be scheduled once cancelled", flushScheduler.isScheduled());
+
+        Thread.sleep(300L);
+
+        assertEquals("Should not flush once cancelled", 0, this.nrOfFlushes.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFlushPolicy() {
+        new FlushPolicy(1000L, 100L, 10);
+    }
+}
@@ -0,0 +1,167 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.api.IEventListener;
+import org.rmatil.sync.event.aggregator.core.ListenerDispatcher;
+import org.rmatil.sync.event.aggregator.core.OverflowPolicy;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ListenerDispatcherTest {
+
+    /**
+     * Blocks on its first batch until released
+     */
+    private static class BlockingListener implements IEventListener {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        private final List<List<IEvent>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onChange(List<IEvent> changes) {
+            this.started.countDown();
+            try {
+                this.released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            this.batches.add(changes);
+        }
+    }
+
+    private BlockingListener listener;
+
+    private ListenerDispatcher dispatcher;
+
+    @Before
+    public void before() {
+        this.listener = new BlockingListener();
+    }
+
+    @After
+    public void after() {
+        this.listener.released.countDown();
+
+        if (null != this.dispatcher) {
+            this.dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testBlock()
+            throws InterruptedException {
+        this.dispatcher = new ListenerDispatcher(this.listener, OverflowPolicy.BLOCK, 1);
+
+        this.dispatcher.dispatch(createBatch("a"));
+        assertTrue("Listener should be invoked", this.listener.started.await(1L, TimeUnit.SECONDS));
+
+        // fills the queue while the listener is busy
+        this.dispatcher.dispatch(createBatch("b"));
+        assertEquals("Batch should be pending", 1, this.dispatcher.getNrOfPendingBatches());
+
+        Thread blockedThread = new Thread(() -> this.dispatcher.dispatch(createBatch("c")));
+        blockedThread.start();
+        blockedThread.join(200L);
+        assertTrue("Dispatching should block while the queue is full", blockedThread.isAlive());
+        assertTrue("Listener should lag behind", this.dispatcher.getLag() > 0L);
+
+        this.listener.released.countDown();
+        blockedThread.join(1000L);
+        assertFalse("Dispatching should continue once the queue has space", blockedThread.isAlive());
+
+        this.dispatcher.shutdown();
+        assertTrue("All batches should be delivered", this.dispatcher.awaitTermination(1000L));
+
+        assertEquals("All batches should be delivered", 3, this.listener.batches.size());
+        assertEquals("Batches should be delivered in order", Paths.get("c"), this.listener.batches.get(2).get(0).getPath());
+        assertEquals("No batch should be dropped", 0L, this.dispatcher.getNrOfDroppedBatches());
+        assertEquals("Listener should not lag behind anymore", 0L, this.dispatcher.getLag());
+    }
+
+    @Test
+    public void testCoalesce()
+            throws InterruptedException {
+        this.dispatcher = new ListenerDispatcher(this.listener, OverflowPolicy.COALESCE, 1);
+
+        this.dispatcher.dispatch(createBatch("a"));
+        assertTrue("Listener should be invoked", this.listener.started.await(1L, TimeUnit.SECONDS));
+
+        this.dispatcher.dispatch(createBatch("b"));
+        this.dispatcher.dispatch(createBatch("c"));
+        this.dispatcher.dispatch(createBatch("d"));
+
+        assertEquals("Batches should be coalesced into one", 1, this.dispatcher.getNrOfPendingBatches());
+        assertEquals("No event should be lost", 3, this.dispatcher.getNrOfPendingEvents());
+        assertEquals("Coalesced batches are not counted", 2L, this.dispatcher.getNrOfCoalescedBatches());
+
+        this.listener.released.countDown();
+        this.dispatcher.shutdown();
+        assertTrue("All batches should be delivered", this.dispatcher.awaitTermination(1000L));
+
+        assertEquals("Coalesced batches should be delivered once", 2, this.listener.batches.size());
+        assertEquals("Coalesced events should keep their order", Paths.get("d"), this.listener.batches.get(1).get(2).getPath());
+    }
+
+    @Test
+    public void testDrop()
+            throws InterruptedException {
+        this.dispatcher = new ListenerDispatcher(this.listener, OverflowPolicy.DROP, 1);
+
+        this.dispatcher.dispatch(createBatch("a"));
+        assertTrue("Listener should be invoked", this.listener.started.await(1L, TimeUnit.SECONDS));
+
+        this.dispatcher.dispatch(createBatch("b"));
+        this.dispatcher.dispatch(createBatch("c"));
+
+        assertEquals("Dropped batches are not counted", 1L, this.dispatcher.getNrOfDroppedBatches());
+        assertEquals("Dropped events are not counted", 1L, this.dispatcher.getNrOfDroppedEvents());
+
+        this.listener.released.countDown();
+        this.dispatcher.shutdown();
+        assertTrue("All batches should be delivered", this.dispatcher.awaitTermination(1000L));
+
+        assertEquals("Dropped batch should not be delivered", 2, this.listener.batches.size());
+        assertEquals("Delivered batches are not counted", 2L, this.dispatcher.getNrOfDeliveredBatches());
+    }
+
+    @Test
+    public void testSlowListenerDoesNotDelayOthers()
+            throws InterruptedException {
+        this.dispatcher = new ListenerDispatcher(this.listener);
+
+        CountDownLatch delivered = new CountDownLatch(1);
+        ListenerDispatcher otherDispatcher = new ListenerDispatcher(changes -> delivered.countDown());
+
+        List<IEvent> batch = createBatch("a");
+        this.dispatcher.dispatch(batch);
+        otherDispatcher.dispatch(batch);
+
+        assertTrue("Other listener should not wait for the blocked one", delivered.await(1L, TimeUnit.SECONDS));
+        otherDispatcher.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQueueSize() {
+        new ListenerDispatcher(this.listener, OverflowPolicy.BLOCK, 0);
+    }
+
+    private static List<IEvent> createBatch(String path) {
+        return new ArrayList<>(Collections.singletonList(new DeleteEvent(Paths.get(path), path, null, System.currentTimeMillis())));
+    }
+}
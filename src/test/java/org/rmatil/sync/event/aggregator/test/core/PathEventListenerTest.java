@@ -3,22 +3,36 @@ package org.rmatil.sync.event.aggregator.test.core;
 import org.junit.*;
 import org.rmatil.sync.event.aggregator.api.IEventListener;
 import org.rmatil.sync.event.aggregator.core.PathEventListener;
+import org.rmatil.sync.event.aggregator.core.SubtreeRescanner;
 import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
 import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
 import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+import org.rmatil.sync.event.aggregator.core.events.MoveEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.rmatil.sync.event.aggregator.core.hashing.WriteStabilityTracker;
+import org.rmatil.sync.event.aggregator.core.index.FileKeyTracker;
 import org.rmatil.sync.event.aggregator.test.config.Config;
 import org.rmatil.sync.event.aggregator.test.util.FileUtil;
 import org.rmatil.sync.event.aggregator.test.util.PathChangeEventListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.*;
 
 public class PathEventListenerTest {
@@ -95,14 +109,24 @@ public class PathEventListenerTest {
 
         listener.run();
 
-        assertEquals("Event bag does not contain create and modify event", 2, eventListener.getEvents().size());
+        // the modification is collapsed into the creation
+        assertEquals("Event bag does not contain only the create event", 1, eventListener.getEvents().size());
 
         IEvent createEvent = eventListener.getEvents().get(0);
 
         assertThat("Event is not instance of CreateEvent", createEvent, instanceOf(CreateEvent.class));
         assertEquals("CreateEvent does not contain the same path element", file, createEvent.getPath());
 
-        IEvent modifyEvent = eventListener.getEvents().get(1);
+        // modify an existing file
+        fileModify = FileUtil.modifyTestFile(ROOT_TEST_DIR);
+        listener.onPathModified(fileModify);
+        listener.onPathModified(fileModify);
+
+        listener.run();
+
+        assertEquals("Event bag does not contain only the last modify event", 1, eventListener.getEvents().size());
+
+        IEvent modifyEvent = eventListener.getEvents().get(0);
 
         assertThat("Event is not instance of ModifyEvent", modifyEvent, instanceOf(ModifyEvent.class));
         assertEquals("Event name is not equals", modifyEvent.getEventName(), ModifyEvent.EVENT_NAME);
@@ -122,14 +146,16 @@ public class PathEventListenerTest {
 
         listener.run();
 
-        assertEquals("Event bag does not contain create and delete event", 2, eventListener.getEvents().size());
+        // a temporarily created file does not produce any event
+        assertTrue("Event bag should not contain any event", eventListener.getEvents().isEmpty());
 
-        IEvent createEvent = eventListener.getEvents().get(0);
+        listener.onPathDeleted(fileDelete);
 
-        assertThat("Event is not instance of CreateEvent", createEvent, instanceOf(CreateEvent.class));
-        assertEquals("CreateEvent does not contain the same path element", file, createEvent.getPath());
+        listener.run();
 
-        IEvent deleteEvent = eventListener.getEvents().get(1);
+        assertEquals("Event bag does not contain the delete event", 1, eventListener.getEvents().size());
+
+        IEvent deleteEvent = eventListener.getEvents().get(0);
 
         assertThat("Event is not instance of ModifyEvent", deleteEvent, instanceOf(DeleteEvent.class));
         assertEquals("Event name is not equals", deleteEvent.getEventName(), DeleteEvent.EVENT_NAME);
@@ -138,6 +164,276 @@ public class PathEventListenerTest {
         assertNull("Hash is not null", deleteEvent.getHash());
     }
 
+    @Test
+    public void testMaxPendingEvents() {
+        PathEventListener boundedListener = new PathEventListener();
+        List<List<IEvent>> propagatedBatches = new ArrayList<>();
+        boundedListener.addListener(propagatedBatches::add);
+
+        Path dir = ROOT_TEST_DIR.resolve("dir");
+        Path otherDir = ROOT_TEST_DIR.resolve("otherDir");
+        List<Set<Path>> rescannedSubtrees = new ArrayList<>();
+
+        boundedListener.setMaxPendingEvents(2);
+        boundedListener.setSubtreeRescanner(new SubtreeRescanner(ROOT_TEST_DIR, null) {
+            @Override
+            public int rescan(Collection<Path> subtrees, long timestamp, Function<Path, LazyHash> hashProvider, Consumer<IEvent> consumer) {
+                rescannedSubtrees.add(new HashSet<>(subtrees));
+                for (int i = 0; i < 3; i++) {
+                    Path rescannedFile = dir.resolve("rescannedFile" + i + ".txt");
+                    consumer.accept(new ModifyEvent(rescannedFile, rescannedFile.getFileName().toString(), timestamp, hashProvider.apply(rescannedFile)));
+                }
+                return 3;
+            }
+        });
+
+        boundedListener.onPathCreated(dir.resolve("file1.txt"));
+        boundedListener.onPathCreated(dir.resolve("nestedDir/file2.txt"));
+        assertEquals("Events should be pending below the limit", 2, boundedListener.getNrOfPendingEvents());
+
+        boundedListener.onPathCreated(otherDir.resolve("file3.txt"));
+        assertEquals("Events should be collapsed once the limit is exceeded", 0, boundedListener.getNrOfPendingEvents());
+        assertEquals("Nested subtrees should be covered by their parent", 2, boundedListener.getNrOfDirtySubtrees());
+        assertEquals("All events should be collapsed", 3L, boundedListener.getNrOfCollapsedEvents());
+
+        // within a dirty subtree
+        boundedListener.onPathModified(dir.resolve("file1.txt"));
+        assertEquals("Event within dirty subtree should be discarded", 0, boundedListener.getNrOfPendingEvents());
+        assertEquals("Event within dirty subtree should be discarded", 4L, boundedListener.getNrOfCollapsedEvents());
+
+        boundedListener.onPathCreated(ROOT_TEST_DIR.resolve("file4.txt"));
+        assertEquals("Event outside of dirty subtrees should be pending", 1, boundedListener.getNrOfPendingEvents());
+
+        boundedListener.run();
+
+        assertEquals("Dirty subtrees should be rescanned once", 1, rescannedSubtrees.size());
+        assertEquals("Dirty subtrees should be rescanned", new HashSet<>(Arrays.asList(dir, otherDir)), rescannedSubtrees.get(0));
+        assertEquals("Pending events should be propagated before the rescanned ones", 1, propagatedBatches.get(0).size());
+        assertEquals("Pending events should be propagated before the rescanned ones", ROOT_TEST_DIR.resolve("file4.txt"), propagatedBatches.get(0).get(0).getPath());
+        assertEquals("Rescanned events should be propagated in batches of the maximum size", 3, propagatedBatches.size());
+        assertEquals("Rescanned events should be propagated in batches of the maximum size", 2, propagatedBatches.get(1).size());
+        assertEquals("Rescanned events should be propagated in batches of the maximum size", 1, propagatedBatches.get(2).size());
+        assertEquals("Dirty subtrees should be cleared", 0, boundedListener.getNrOfDirtySubtrees());
+
+        boundedListener.run();
+        assertEquals("Dirty subtrees should not be rescanned again", 1, rescannedSubtrees.size());
+    }
+
+    @Test
+    public void testSwapEventBag() {
+        PathEventListener swappingListener = new PathEventListener();
+        PathChangeEventListener swappingEventListener = new PathChangeEventListener();
+        swappingListener.addListener(swappingEventListener);
+
+        // flushes alternate between the event bags
+        for (int i = 0; i < 3; i++) {
+            Path deletedFile = ROOT_TEST_DIR.resolve("deletedFile" + i + ".txt");
+            swappingListener.onPathDeleted(deletedFile);
+            swappingListener.onPathDeleted(ROOT_TEST_DIR.resolve("otherDeletedFile.txt"));
+
+            swappingListener.run();
+
+            assertEquals("Only the events since the last flush should be propagated", 2, swappingEventListener.getEvents().size());
+            Set<Path> paths = new HashSet<>();
+            for (IEvent event : swappingEventListener.getEvents()) {
+                paths.add(event.getPath());
+            }
+
+            assertTrue("Events should be propagated", paths.contains(deletedFile));
+            assertEquals("No events should be pending after flushing", 0, swappingListener.getNrOfPendingEvents());
+        }
+    }
+
+    @Test
+    public void testRingBufferOverflow() {
+        PathEventListener smallListener = new PathEventListener(2);
+        PathChangeEventListener smallEventListener = new PathChangeEventListener();
+        smallListener.addListener(smallEventListener);
+
+        for (int i = 0; i < 3; i++) {
+            smallListener.onPathDeleted(ROOT_TEST_DIR.resolve("deletedFile" + i + ".txt"));
+        }
+
+        assertEquals("Notification exceeding the ring buffer should be counted", 1L, smallListener.getNrOfOverflows());
+        assertEquals("No notification should be lost on overflow", 3, smallListener.getNrOfPendingEvents());
+
+        smallListener.onPathDeleted(ROOT_TEST_DIR.resolve("deletedFile3.txt"));
+        smallListener.run();
+
+        assertEquals("All notifications should be propagated", 4, smallEventListener.getEvents().size());
+        assertEquals("Ring buffer should have room after draining", 1L, smallListener.getNrOfOverflows());
+    }
+
+    @Test
+    public void testEstimatedNrOfPendingEvents() {
+        AtomicInteger drains = new AtomicInteger();
+        PathEventListener countingListener = new PathEventListener(4) {
+            @Override
+            protected void drain() {
+                drains.incrementAndGet();
+                super.drain();
+            }
+        };
+
+        countingListener.onPathDeleted(ROOT_TEST_DIR.resolve("deletedFile0.txt"));
+        countingListener.onPathDeleted(ROOT_TEST_DIR.resolve("deletedFile1.txt"));
+
+        assertEquals("Notifications in the ring buffer should be estimated", 2, countingListener.getEstimatedNrOfPendingEvents());
+        assertEquals("Estimating should not drain the ring buffer", 0, drains.get());
+
+        assertEquals("Events should be pending", 2, countingListener.getNrOfPendingEvents());
+        assertEquals("Drained events should be estimated", 2, countingListener.getEstimatedNrOfPendingEvents());
+    }
+
+    @Test
+    public void testFlushPaths() {
+        PathEventListener streamingListener = new PathEventListener();
+        PathChangeEventListener streamingEventListener = new PathChangeEventListener();
+        streamingListener.addListener(streamingEventListener);
+
+        Path movedFile = ROOT_TEST_DIR.resolve("movedFile.txt");
+        Path targetFile = ROOT_TEST_DIR.resolve("targetDir/movedFile.txt");
+        Path otherFile = ROOT_TEST_DIR.resolve("otherFile.txt");
+
+        streamingListener.onPathDeleted(movedFile);
+        streamingListener.onPathCreated(targetFile);
+        streamingListener.onPathModified(otherFile);
+
+        streamingListener.flush(Collections.singleton(movedFile), 10000L);
+
+        assertEquals("Creation within the move correlation window should be propagated as well", 2, streamingEventListener.getEvents().size());
+        assertThat("Deletion should be propagated first", streamingEventListener.getEvents().get(0), instanceOf(DeleteEvent.class));
+        assertEquals("Events of other paths should stay pending", 1, streamingListener.getNrOfPendingEvents());
+
+        streamingListener.flush(Collections.singleton(targetFile), 10000L);
+        assertEquals("Already propagated paths should not be propagated again", 2, streamingEventListener.getEvents().size());
+
+        streamingListener.flush(Collections.singleton(otherFile), 10000L);
+        assertEquals("Settled path should be propagated", 1, streamingEventListener.getEvents().size());
+        assertThat("Modification should be propagated", streamingEventListener.getEvents().get(0), instanceOf(ModifyEvent.class));
+        assertEquals("No events should be pending", 0, streamingListener.getNrOfPendingEvents());
+    }
+
+    @Test
+    public void testDeferUnstableFiles()
+            throws IOException {
+        PathEventListener deferringListener = new PathEventListener();
+        PathChangeEventListener deferringEventListener = new PathChangeEventListener();
+        deferringListener.addListener(deferringEventListener);
+        WriteStabilityTracker writeStabilityTracker = new WriteStabilityTracker(10000L, 60000L);
+        deferringListener.setWriteStabilityTracker(writeStabilityTracker);
+
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        deferringListener.onPathCreated(file);
+        deferringListener.onPathDeleted(ROOT_TEST_DIR.resolve("deletedFile.txt"));
+
+        deferringListener.run();
+
+        assertEquals("Only events of stable paths should be propagated", 1, deferringEventListener.getEvents().size());
+        assertThat("Deletion should be propagated", deferringEventListener.getEvents().get(0), instanceOf(DeleteEvent.class));
+        assertEquals("Events of files being written should stay pending", 1, deferringListener.getNrOfPendingEvents());
+        assertEquals("Deferral should be counted", 1L, writeStabilityTracker.getNrOfDeferrals());
+
+        // the file got modified while it was pending
+        deferringListener.onPathModified(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 20000L));
+
+        deferringListener.run();
+
+        assertEquals("Event of the stable file should be propagated", 1, deferringEventListener.getEvents().size());
+        assertThat("Deferred creation should cover the modification", deferringEventListener.getEvents().get(0), instanceOf(CreateEvent.class));
+        assertEquals("No events should be pending", 0, deferringListener.getNrOfPendingEvents());
+    }
+
+    @Test
+    public void testCorrelateMovesByFileKey()
+            throws IOException {
+        PathEventListener trackingListener = new PathEventListener();
+        PathChangeEventListener trackingEventListener = new PathChangeEventListener();
+        trackingListener.addListener(trackingEventListener);
+        FileKeyTracker fileKeyTracker = new FileKeyTracker();
+        trackingListener.setFileKeyTracker(fileKeyTracker);
+
+        Path file = FileUtil.modifyTestFile(ROOT_TEST_DIR);
+        fileKeyTracker.track(ROOT_TEST_DIR);
+
+        Path movedFile = ROOT_TEST_DIR.resolve("movedFile.txt");
+        Files.move(file, movedFile);
+        Path otherFile = Files.write(ROOT_TEST_DIR.resolve("otherFile.txt"), "other".getBytes());
+
+        trackingListener.onPathDeleted(file);
+        trackingListener.onPathCreated(movedFile);
+        trackingListener.onPathCreated(otherFile);
+        trackingListener.onPathDeleted(ROOT_TEST_DIR.resolve("deletedFile.txt"));
+
+        trackingListener.run();
+
+        List<IEvent> events = trackingEventListener.getEvents();
+        assertEquals("Deletion and creation of the moved file should be replaced by a move", 3, events.size());
+        assertThat("Moved file should be propagated as move", events.get(0), instanceOf(MoveEvent.class));
+        assertEquals("Move should be from the deleted path", file, events.get(0).getPath());
+        assertEquals("Move should be to the created path", movedFile, ((MoveEvent) events.get(0)).getNewPath());
+        assertThat("Unrelated creation should be kept", events.get(1), instanceOf(CreateEvent.class));
+        assertThat("Unrelated deletion should be kept", events.get(2), instanceOf(DeleteEvent.class));
+        assertEquals("Move should be counted", 1L, fileKeyTracker.getNrOfDetectedMoves());
+
+        HashingService hashingService = new HashingService(1, 1);
+        hashingService.resolve(events);
+        hashingService.shutdown();
+
+        assertFalse("Moved file should not be hashed", events.get(0).getHashFuture().isDone());
+        assertTrue("Created file should be hashed", events.get(1).getHashFuture().isDone());
+
+        assertNull("Identity of the moved path should be forgotten", fileKeyTracker.getIdentity(file));
+        assertNotNull("Identity of the created file should be recorded", fileKeyTracker.getIdentity(otherFile));
+
+        Files.delete(movedFile);
+        Files.delete(otherFile);
+    }
+
+    @Test
+    public void testDoNotCorrelateReusedFileKeys()
+            throws IOException {
+        PathEventListener trackingListener = new PathEventListener();
+        PathChangeEventListener trackingEventListener = new PathChangeEventListener();
+        trackingListener.addListener(trackingEventListener);
+        FileKeyTracker fileKeyTracker = new FileKeyTracker();
+        trackingListener.setFileKeyTracker(fileKeyTracker);
+
+        Path deletedDir = Files.createDirectory(ROOT_TEST_DIR.resolve("deletedDir"));
+        Path emptyFile = Files.createFile(ROOT_TEST_DIR.resolve("emptyFile.txt"));
+        fileKeyTracker.track(ROOT_TEST_DIR);
+
+        // the filesystem may reuse the file key of the deleted directory immediately
+        Files.delete(deletedDir);
+        Path createdDir = Files.createDirectory(ROOT_TEST_DIR.resolve("createdDir"));
+        // a renamed element keeps its file key for sure, but neither its identity nor its contents differ from a new one
+        Path otherEmptyFile = ROOT_TEST_DIR.resolve("otherEmptyFile.txt");
+        Files.move(emptyFile, otherEmptyFile);
+
+        trackingListener.onPathDeleted(deletedDir);
+        trackingListener.onPathCreated(createdDir);
+        trackingListener.onPathDeleted(emptyFile);
+        trackingListener.onPathCreated(otherEmptyFile);
+
+        trackingListener.run();
+
+        List<IEvent> events = trackingEventListener.getEvents();
+        assertEquals("No deletion or creation should be replaced", 4, events.size());
+        for (IEvent event : events) {
+            assertThat("Directories and empty files should not be paired by their file key", event, not(instanceOf(MoveEvent.class)));
+        }
+        assertEquals("No move should be counted", 0L, fileKeyTracker.getNrOfDetectedMoves());
+
+        Files.delete(createdDir);
+        Files.delete(otherEmptyFile);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxPendingEvents() {
+        new PathEventListener().setMaxPendingEvents(0);
+    }
+
     @Test
     public void testAccessors() {
         assertEquals("listeners are not correctly registered", 1, listener.getListener().size());
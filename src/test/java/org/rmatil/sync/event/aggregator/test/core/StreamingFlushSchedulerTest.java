@@ -0,0 +1,185 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.FlushPolicy;
+import org.rmatil.sync.event.aggregator.core.StreamingFlushScheduler;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class StreamingFlushSchedulerTest {
+
+    private static final Path PATH  = Paths.get("/tmp/dir/someFile.txt");
+    private static final Path PATH2 = Paths.get("/tmp/dir/someOtherFile.txt");
+
+    /**
+     * The time of the scheduler with a manual clock
+     */
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private ScheduledExecutorService executorService;
+
+    private List<Set<Path>> flushedPaths;
+
+    @Before
+    public void before() {
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+        this.flushedPaths = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @After
+    public void after() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void testQuietPeriodPerPath()
+            throws InterruptedException {
+        StreamingFlushScheduler flushScheduler = new StreamingFlushScheduler(this.executorService, new FlushPolicy(100L, 10000L, 100), 0L, this.flushedPaths::add);
+
+        flushScheduler.onEvent(new ModifyEvent(PATH, "someFile.txt", null, System.currentTimeMillis()), 1);
+
+        // the other path keeps on changing within the quiet period
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < 500L) {
+            flushScheduler.onEvent(new ModifyEvent(PATH2, "someOtherFile.txt", null, System.currentTimeMillis()), 2);
+            Thread.sleep(20L);
+        }
+
+        assertEquals("Settled path should be flushed on its own", 1, this.flushedPaths.size());
+        assertEquals("Settled path should be flushed on its own", Collections.singleton(PATH), this.flushedPaths.get(0));
+        assertEquals("Changing path should still be pending", 1, flushScheduler.getNrOfPendingPaths());
+
+        Thread.sleep(300L);
+
+        assertEquals("Path should be flushed once it settled", 2, this.flushedPaths.size());
+        assertEquals("Path should be flushed once it settled", Collections.singleton(PATH2), this.flushedPaths.get(1));
+        assertFalse("No check should be scheduled without pending paths", flushScheduler.isScheduled());
+    }
+
+    @Test
+    public void testConcurrentEvents()
+            throws InterruptedException {
+        StreamingFlushScheduler flushScheduler = new StreamingFlushScheduler(this.executorService, new FlushPolicy(20L, 10000L, 100), 0L, this.flushedPaths::add);
+        Set<Path> paths = new HashSet<>();
+        List<Thread> producers = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            Path path = Paths.get("/tmp/dir/file" + i + ".txt");
+            paths.add(path);
+
+            // each path is notified by two threads, also while it settles
+            for (int j = 0; j < 2; j++) {
+                Thread producer = new Thread(() -> {
+                    long start = System.currentTimeMillis();
+                    while (System.currentTimeMillis() - start < 200L) {
+                        flushScheduler.onEvent(new ModifyEvent(path, path.getFileName().toString(), null, System.currentTimeMillis()), 1);
+                        Thread.yield();
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        Thread.sleep(300L);
+
+        Set<Path> allFlushedPaths = new HashSet<>();
+        synchronized (this.flushedPaths) {
+            this.flushedPaths.forEach(allFlushedPaths::addAll);
+        }
+
+        assertEquals("All paths should be flushed", paths, allFlushedPaths);
+        assertEquals("No path should be pending anymore", 0, flushScheduler.getNrOfPendingPaths());
+        assertFalse("No check should be scheduled without pending paths", flushScheduler.isScheduled());
+    }
+
+    @Test
+    public void testFlushLastPathBeforeRound() {
+        // the wheel starts 30ms before the end of its first round
+        CLOCK.set(StreamingFlushScheduler.TICK_DURATION * StreamingFlushScheduler.WHEEL_SIZE - 30L);
+        ManualClockScheduler flushScheduler = new ManualClockScheduler(this.executorService, new FlushPolicy(10L, 10000L, 100), this.flushedPaths::add);
+
+        flushScheduler.onEvent(new ModifyEvent(PATH, "someFile.txt", null, System.currentTimeMillis()), 1);
+
+        CLOCK.addAndGet(15L);
+        flushScheduler.check();
+        assertTrue("Path should not be flushed before its tick passed", this.flushedPaths.isEmpty());
+
+        // the path settles, then the check crosses the round
+        CLOCK.addAndGet(16L);
+        flushScheduler.check();
+
+        assertEquals("Path should be flushed although the round is crossed", 1, this.flushedPaths.size());
+        assertEquals("Path should be flushed although the round is crossed", Collections.singleton(PATH), this.flushedPaths.get(0));
+        assertEquals("No path should be pending", 0, flushScheduler.getNrOfPendingPaths());
+    }
+
+    @Test
+    public void testMaxLatency()
+            throws InterruptedException {
+        StreamingFlushScheduler flushScheduler = new StreamingFlushScheduler(this.executorService, new FlushPolicy(100L, 300L, 100), 0L, this.flushedPaths::add);
+
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < 600L) {
+            flushScheduler.onEvent(new ModifyEvent(PATH, "someFile.txt", null, System.currentTimeMillis()), 1);
+            Thread.sleep(20L);
+        }
+
+        assertTrue("Should flush after the maximum latency although events keep on arriving", this.flushedPaths.size() >= 1);
+    }
+
+    @Test
+    public void testMoveCorrelationWindow()
+            throws InterruptedException {
+        StreamingFlushScheduler flushScheduler = new StreamingFlushScheduler(this.executorService, new FlushPolicy(50L, 10000L, 100), 300L, this.flushedPaths::add);
+
+        flushScheduler.onEvent(new DeleteEvent(PATH, "someFile.txt", null, System.currentTimeMillis()), 1);
+
+        Thread.sleep(150L);
+        assertTrue("Deleted path should wait for the move correlation window", this.flushedPaths.isEmpty());
+
+        Thread.sleep(350L);
+        assertEquals("Deleted path should be flushed after the move correlation window", 1, this.flushedPaths.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMoveCorrelationWindow() {
+        new StreamingFlushScheduler(this.executorService, new FlushPolicy(), - 1L, this.flushedPaths::add);
+    }
+
+    /**
+     * A scheduler whose time only advances by {@link StreamingFlushSchedulerTest#CLOCK}
+     */
+    private static class ManualClockScheduler extends StreamingFlushScheduler {
+
+        public ManualClockScheduler(ScheduledExecutorService executorService, FlushPolicy flushPolicy, Consumer<Set<Path>> pathFlush) {
+            super(executorService, flushPolicy, 0L, pathFlush);
+        }
+
+        @Override
+        public void check() {
+            super.check();
+        }
+
+        @Override
+        protected long now() {
+            return CLOCK.get();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.PathEventListener;
+import org.rmatil.sync.event.aggregator.core.SubtreeRescanner;
+import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.rmatil.sync.event.aggregator.core.index.FileIndex;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+import org.rmatil.sync.persistence.core.tree.local.LocalStorageAdapter;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.version.core.ObjectStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.*;
+
+public class SubtreeRescannerTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    /**
+     * The synchronized folder, separated from the one of the object store
+     */
+    private static final Path SYNCED_DIR = ROOT_TEST_DIR.resolve("synced");
+
+    private static final Path OBJECT_STORE_DIR = ROOT_TEST_DIR.resolve("objectStore");
+
+    protected ObjectStore objectStore;
+
+    protected SubtreeRescanner subtreeRescanner;
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @Before
+    public void before()
+            throws IOException, InputOutputException {
+        FileUtil.delete(SYNCED_DIR.toFile());
+        FileUtil.delete(OBJECT_STORE_DIR.toFile());
+        Files.createDirectories(SYNCED_DIR.resolve("dir/nestedDir"));
+        Files.createDirectories(OBJECT_STORE_DIR);
+
+        this.objectStore = new ObjectStore(
+                new LocalStorageAdapter(SYNCED_DIR),
+                "index.json",
+                "object",
+                new LocalStorageAdapter(OBJECT_STORE_DIR)
+        );
+
+        this.subtreeRescanner = new SubtreeRescanner(SYNCED_DIR, this.objectStore);
+
+        Files.createFile(SYNCED_DIR.resolve("dir/unchangedFile.txt"));
+        this.objectStore.onCreateFile("dir", null);
+        this.objectStore.onCreateFile("dir/nestedDir", null);
+        this.objectStore.onCreateFile("dir/unchangedFile.txt", "someHash");
+        // known to the object store, but deleted on disk
+        this.objectStore.onCreateFile("dir/deletedDir", null);
+        this.objectStore.onCreateFile("dir/deletedDir/deletedFile.txt", "someOtherHash");
+        // not within the rescanned subtree
+        this.objectStore.onCreateFile("otherDir", null);
+    }
+
+    @Test
+    public void testRescan()
+            throws IOException {
+        Path createdFile = Files.createFile(SYNCED_DIR.resolve("dir/nestedDir/createdFile.txt"));
+
+        List<IEvent> events = this.subtreeRescanner.rescan(Collections.singleton(SYNCED_DIR.resolve("dir")), 1000L, LazyHash::new);
+
+        Map<Path, IEvent> eventsByPath = new HashMap<>();
+        for (IEvent event : events) {
+            assertNull("Only a single event should exist for each path", eventsByPath.put(event.getPath(), event));
+        }
+
+        assertEquals("Created, modified and topmost deleted path should be reported", 3, events.size());
+
+        assertThat("Created file should be reported", eventsByPath.get(createdFile), instanceOf(CreateEvent.class));
+        assertEquals("Nested elements should be processed later than their parents", 1002L, eventsByPath.get(createdFile).getTimestamp());
+        assertThat("Existing file should be reported as modified", eventsByPath.get(SYNCED_DIR.resolve("dir/unchangedFile.txt")), instanceOf(ModifyEvent.class));
+        assertThat("Deleted directory should be reported", eventsByPath.get(SYNCED_DIR.resolve("dir/deletedDir")), instanceOf(DeleteEvent.class));
+    }
+
+    @Test
+    public void testRescanSkipsIndexedFiles()
+            throws IOException, InputOutputException {
+        Path modifiedFile = Files.write(SYNCED_DIR.resolve("dir/modifiedFile.txt"), "initial".getBytes());
+        this.objectStore.onCreateFile("dir/modifiedFile.txt", "initialHash");
+
+        FileIndex fileIndex = new FileIndex(SYNCED_DIR, OBJECT_STORE_DIR.resolve("fileIndex.bin"));
+        fileIndex.reconcile(new PathEventListener());
+
+        Files.write(modifiedFile, "modified contents".getBytes());
+
+        List<IEvent> events = new ArrayList<>();
+        int nrOfChanges = new SubtreeRescanner(SYNCED_DIR, this.objectStore, fileIndex).rescan(Collections.singleton(SYNCED_DIR.resolve("dir")), 1000L, LazyHash::new, events::add);
+
+        assertEquals("All streamed changes should be counted", events.size(), nrOfChanges);
+        assertEquals("Only the modified file and the deleted directory should be reported", 2, events.size());
+        for (IEvent event : events) {
+            assertNotEquals("Unchanged file should not be reported", SYNCED_DIR.resolve("dir/unchangedFile.txt"), event.getPath());
+            if (event instanceof ModifyEvent) {
+                assertEquals("Modified file should be reported", modifiedFile, event.getPath());
+            }
+        }
+    }
+
+    @Test
+    public void testRescanDeletedSubtree() {
+        FileUtil.delete(SYNCED_DIR.resolve("dir").toFile());
+
+        List<IEvent> events = this.subtreeRescanner.rescan(Collections.singleton(SYNCED_DIR.resolve("dir")), 1000L, LazyHash::new);
+
+        assertEquals("Only the deleted subtree itself should be reported", 1, events.size());
+        assertThat("Deleted subtree should be reported", events.get(0), instanceOf(DeleteEvent.class));
+        assertEquals("Deleted subtree should be reported", SYNCED_DIR.resolve("dir"), events.get(0).getPath());
+    }
+
+    @Test
+    public void testRescanRoot()
+            throws IOException {
+        Path createdDir = Files.createDirectory(SYNCED_DIR.resolve("createdDir"));
+
+        List<IEvent> events = this.subtreeRescanner.rescan(Collections.singleton(SYNCED_DIR), 1000L, LazyHash::new);
+
+        boolean hasCreatedDir = false;
+        for (IEvent event : events) {
+            assertNotEquals("Root itself should not be reported", SYNCED_DIR, event.getPath());
+            hasCreatedDir |= (event instanceof CreateEvent && createdDir.equals(event.getPath()));
+        }
+
+        assertTrue("Created directory should be reported", hasCreatedDir);
+        assertEquals("Root should be the configured one", SYNCED_DIR, this.subtreeRescanner.getRootPath());
+    }
+}
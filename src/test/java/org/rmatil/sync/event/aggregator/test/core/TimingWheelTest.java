@@ -0,0 +1,102 @@
+package org.rmatil.sync.event.aggregator.test.core;
+
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testAdvance() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(10L, 8, 0L);
+
+        timingWheel.schedule("a", 25L);
+        timingWheel.schedule("b", 30L);
+        timingWheel.schedule("c", 75L);
+        assertEquals("All timers should be scheduled", 3, timingWheel.size());
+
+        List<String> expiredKeys = new ArrayList<>();
+        assertEquals("No timer should expire before its deadline", 0, timingWheel.advance(19L, expiredKeys::add));
+
+        assertEquals("Timer should expire once its tick passed", 1, timingWheel.advance(30L, expiredKeys::add));
+        assertEquals("Timer should expire once its tick passed", Arrays.asList("a"), expiredKeys);
+
+        assertEquals("Remaining timers should expire", 2, timingWheel.advance(80L, expiredKeys::add));
+        assertEquals("Timers should expire in order", Arrays.asList("a", "b", "c"), expiredKeys);
+        assertEquals("No timer should be scheduled", 0, timingWheel.size());
+    }
+
+    @Test
+    public void testOverflow() {
+        // a level covers 40 time units
+        TimingWheel<Long> timingWheel = new TimingWheel<>(10L, 4, 0L);
+        Random random = new Random(42L);
+
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long deadline = random.nextInt(100000);
+            deadlines.add(deadline);
+            timingWheel.schedule(deadline, deadline);
+        }
+
+        assertEquals("Timers on higher levels should be counted", 1000, timingWheel.size());
+
+        List<Long> expiredDeadlines = new ArrayList<>();
+        for (long now = 0L; now <= 100010L; now += 7L) {
+            final long currentTime = now;
+            timingWheel.advance(now, deadline -> {
+                assertTrue("Timer should not expire before its tick", deadline < currentTime);
+                assertTrue("Timer should expire at most one tick late", deadline >= currentTime - 7L - 10L);
+                expiredDeadlines.add(deadline);
+            });
+        }
+
+        assertEquals("All timers should expire exactly once", deadlines.size(), expiredDeadlines.size());
+        assertEquals("No timer should be scheduled", 0, timingWheel.size());
+    }
+
+    @Test
+    public void testIdle() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(10L, 8, 0L);
+
+        List<String> expiredKeys = new ArrayList<>();
+        assertEquals("Nothing should expire without timers", 0, timingWheel.advance(1000000L, expiredKeys::add));
+
+        // the wheel continues at the current time
+        timingWheel.schedule("a", 1000015L);
+        timingWheel.advance(1000009L, expiredKeys::add);
+        assertTrue("Timer should not expire before its deadline", expiredKeys.isEmpty());
+
+        timingWheel.advance(1000020L, expiredKeys::add);
+        assertEquals("Timer should expire after an idle period", Arrays.asList("a"), expiredKeys);
+    }
+
+    @Test
+    public void testLastTimerExpiresBeforeRound() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(10L, 512, 5090L);
+        timingWheel.schedule("p", 5100L);
+
+        List<String> expiredKeys = new ArrayList<>();
+        assertEquals("Timer should not expire before its tick passed", 0, timingWheel.advance(5105L, expiredKeys::add));
+
+        // the last timer expires, then the advance crosses a round without any higher level
+        assertEquals("Timer should expire before the round is crossed", 1, timingWheel.advance(5121L, expiredKeys::add));
+        assertEquals("Timer should expire before the round is crossed", Arrays.asList("p"), expiredKeys);
+        assertEquals("No timers should be left", 0, timingWheel.size());
+
+        timingWheel.schedule("q", 5130L);
+        timingWheel.advance(5140L, expiredKeys::add);
+        assertEquals("Wheel should continue after crossing the round", Arrays.asList("p", "q"), expiredKeys);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTickDuration() {
+        new TimingWheel<String>(0L, 8, 0L);
+    }
+}
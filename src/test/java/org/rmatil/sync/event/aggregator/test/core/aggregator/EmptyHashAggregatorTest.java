@@ -1,5 +1,6 @@
 package org.rmatil.sync.event.aggregator.test.core.aggregator;
 
+import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.rmatil.sync.commons.hashing.Hash;
@@ -8,6 +9,12 @@ import org.rmatil.sync.event.aggregator.core.aggregator.IAggregator;
 import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
 import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentChunker;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingMode;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -17,6 +24,7 @@ import java.util.List;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 
 public class EmptyHashAggregatorTest {
@@ -25,6 +33,8 @@ public class EmptyHashAggregatorTest {
     private static final String FILENAME = PATH.getFileName().toString();
     private static final String HASH     = "someHash";
 
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
 
     private static List<IEvent> events  = new ArrayList<>();
     private static List<IEvent> events2 = new ArrayList<>();
@@ -32,6 +42,8 @@ public class EmptyHashAggregatorTest {
 
     @BeforeClass
     public static void setUp() {
+        APathTest.setUp();
+
         CreateEvent createEvent = new CreateEvent(
                 PATH,
                 FILENAME,
@@ -77,6 +89,11 @@ public class EmptyHashAggregatorTest {
         events3.add(modifyEvent3);
     }
 
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
     @Test
     public void test() {
         IAggregator aggregator = new EmptyHashAggregator();
@@ -111,4 +128,22 @@ public class EmptyHashAggregatorTest {
         assertThat("Event should be ModifyEvent", aggregates.get(0), is(instanceOf(ModifyEvent.class)));
         assertThat("Event should be ModifyEvent", aggregates.get(1), is(instanceOf(ModifyEvent.class)));
     }
+
+    @Test
+    public void testChunksOfModifyEventKept() {
+        Path file = FileUtil.modifyTestFile(ROOT_TEST_DIR);
+
+        List<IEvent> chunkedEvents = new ArrayList<>();
+        chunkedEvents.add(new CreateEvent(PATH, FILENAME, Hash.EMPTY_SHA256_HASH, 123L));
+        chunkedEvents.add(new ModifyEvent(PATH, FILENAME, 1234L, new LazyHash(file, null, HashingMode.FULL, new ContentChunker())));
+
+        List<IEvent> aggregates = new EmptyHashAggregator().aggregate(chunkedEvents);
+
+        assertEquals("Size should be 1", 1, aggregates.size());
+        assertThat("Event should be CreateEvent", aggregates.get(0), is(instanceOf(CreateEvent.class)));
+        assertEquals("EventHash should be the one of the modify event", chunkedEvents.get(1).getHash(), aggregates.get(0).getHash());
+        assertNotNull("Chunks of the modify event should be attached to the create event", aggregates.get(0).getChunks());
+
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+    }
 }
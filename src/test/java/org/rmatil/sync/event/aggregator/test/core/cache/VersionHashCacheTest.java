@@ -0,0 +1,175 @@
+package org.rmatil.sync.event.aggregator.test.core.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.cache.VersionHashCache;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.MoveEvent;
+import org.rmatil.sync.event.aggregator.test.mocks.ObjectManagerMock;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.version.api.DeleteType;
+import org.rmatil.sync.version.api.PathType;
+import org.rmatil.sync.version.core.model.Delete;
+import org.rmatil.sync.version.core.model.Index;
+import org.rmatil.sync.version.core.model.PathObject;
+import org.rmatil.sync.version.core.model.Version;
+
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class VersionHashCacheTest {
+
+    /**
+     * Counts the objects read
+     */
+    private static class CountingObjectManagerMock extends ObjectManagerMock {
+
+        int reads = 0;
+
+        int indexReads = 0;
+
+        @Override
+        public Index getIndex() {
+            this.indexReads++;
+            return super.getIndex();
+        }
+
+        @Override
+        public PathObject getObject(String fileNameHash)
+                throws InputOutputException {
+            this.reads++;
+            return super.getObject(fileNameHash);
+        }
+    }
+
+    private CountingObjectManagerMock objectManager;
+
+    private VersionHashCache versionHashCache;
+
+    @Before
+    public void before()
+            throws InputOutputException {
+        this.objectManager = new CountingObjectManagerMock();
+        this.objectManager.writeObject(createPathObject("myFile.txt", "someHash"));
+        this.objectManager.writeObject(createPathObject("otherFile.txt", "otherHash"));
+
+        this.versionHashCache = new VersionHashCache(this.objectManager);
+    }
+
+    @Test
+    public void testReadThrough()
+            throws InputOutputException {
+        assertEquals("Hash should be the one of the last version", "someHash", this.versionHashCache.getLastVersionHash("path/to/myFile.txt"));
+        assertEquals("Hash should be the one of the last version", "someHash", this.versionHashCache.getLastVersionHash("path/to/myFile.txt"));
+        assertEquals("Object should only be read once", 1, this.objectManager.reads);
+
+        // unknown paths are cached without reading any object
+        assertNull("Unknown path should not have a version", this.versionHashCache.getLastVersionHash("path/to/unknown.txt"));
+        assertNull("Unknown path should not have a version", this.versionHashCache.getLastVersionHash("path/to/unknown.txt"));
+        assertEquals("No object should be read for unknown paths", 1, this.objectManager.reads);
+        assertEquals("Both paths should be cached", 2, this.versionHashCache.size());
+    }
+
+    @Test
+    public void testGetLastVersionHashes() {
+        Map<String, String> hashes = this.versionHashCache.getLastVersionHashes(Arrays.asList(
+                "path/to/myFile.txt",
+                "path/to/otherFile.txt",
+                "path/to/myFile.txt",
+                "path/to/unknown.txt"
+        ));
+
+        assertEquals("All distinct paths should be contained", 3, hashes.size());
+        assertEquals("Hash should be the one of the last version", "someHash", hashes.get("path/to/myFile.txt"));
+        assertEquals("Hash should be the one of the last version", "otherHash", hashes.get("path/to/otherFile.txt"));
+        assertTrue("Unknown path should be contained", hashes.containsKey("path/to/unknown.txt"));
+        assertNull("Unknown path should not have a version", hashes.get("path/to/unknown.txt"));
+        assertEquals("Each object should be read once", 2, this.objectManager.reads);
+        assertEquals("Index should be read once for all paths", 1, this.objectManager.indexReads);
+    }
+
+    @Test
+    public void testInvalidateFromEvents()
+            throws InputOutputException {
+        this.versionHashCache.getLastVersionHash("path/to/myFile.txt");
+        this.versionHashCache.getLastVersionHash("path/to/otherFile.txt");
+
+        List<IEvent> events = new ArrayList<>();
+        events.add(new MoveEvent(Paths.get("path/to/myFile.txt"), Paths.get("path/to/otherFile.txt"), "otherFile.txt", "someHash", System.currentTimeMillis()));
+        this.versionHashCache.onChange(events);
+
+        assertEquals("Entries of moved paths should be removed", 0, this.versionHashCache.size());
+
+        // a new version is written by the consumer of the events
+        this.objectManager.writeObject(createPathObject("otherFile.txt", "someHash"));
+        assertEquals("Hash should be read again", "someHash", this.versionHashCache.getLastVersionHash("path/to/otherFile.txt"));
+        assertEquals("Object should be read again", 3, this.objectManager.reads);
+    }
+
+    @Test
+    public void testOnEmit()
+            throws InputOutputException {
+        assertNull("Unknown path should not have a version", this.versionHashCache.getLastVersionHash("path/to/created.txt"));
+        this.versionHashCache.getLastVersionHash("path/to/myFile.txt");
+
+        List<IEvent> events = new ArrayList<>();
+        events.add(new MoveEvent(Paths.get("path/to/myFile.txt"), Paths.get("path/to/created.txt"), "created.txt", "someHash", System.currentTimeMillis()));
+        this.versionHashCache.onEmit(events);
+
+        assertEquals("Entries of emitted paths should be removed", 0, this.versionHashCache.size());
+        assertNull("Emitted path should not have a version yet", this.versionHashCache.getLastVersionHash("path/to/created.txt"));
+        assertEquals("Version of an emitted path should not be cached", 0, this.versionHashCache.size());
+
+        // the consumer of the events writes the version afterwards
+        this.objectManager.writeObject(createPathObject("created.txt", "someHash"));
+        assertEquals("Written version should be read", "someHash", this.versionHashCache.getLastVersionHash("path/to/created.txt"));
+        assertEquals("Written version should be read", "someHash", this.versionHashCache.getLastVersionHashes(Collections.singletonList("path/to/created.txt")).get("path/to/created.txt"));
+
+        this.versionHashCache.put(createPathObject("created.txt", "someHash"));
+        assertEquals("Version of an emitted path should not be cached", 0, this.versionHashCache.size());
+
+        // other paths are still cached
+        this.versionHashCache.getLastVersionHash("path/to/otherFile.txt");
+        assertEquals("Not emitted path should be cached", 1, this.versionHashCache.size());
+    }
+
+    @Test
+    public void testPut()
+            throws InputOutputException {
+        this.versionHashCache.put(createPathObject("deleted.txt", "deletedHash"));
+
+        assertEquals("Hash should be the one of the put object", "deletedHash", this.versionHashCache.getLastVersionHash("path/to/deleted.txt"));
+        assertEquals("No object should be read", 0, this.objectManager.reads);
+    }
+
+    @Test
+    public void testDisabled()
+            throws InputOutputException {
+        VersionHashCache disabledCache = new VersionHashCache(this.objectManager, 0L, VersionHashCache.DEFAULT_EXPIRE_AFTER_WRITE);
+
+        disabledCache.getLastVersionHash("path/to/myFile.txt");
+        disabledCache.getLastVersionHash("path/to/myFile.txt");
+
+        assertEquals("Object should be read each time", 2, this.objectManager.reads);
+        assertEquals("Nothing should be cached", 0, disabledCache.size());
+    }
+
+    private static PathObject createPathObject(String name, String hash) {
+        List<Version> versions = new ArrayList<>();
+        versions.add(new Version(hash));
+
+        return new PathObject(
+                name,
+                "path/to",
+                PathType.FILE,
+                null,
+                false,
+                new Delete(DeleteType.EXISTENT, new ArrayList<>()),
+                null,
+                new HashSet<>(),
+                versions
+        );
+    }
+}
@@ -0,0 +1,95 @@
+package org.rmatil.sync.event.aggregator.test.core.events;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.events.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventBatchTest {
+
+    private static final Path   PATH     = Paths.get("dir/someFile.txt");
+    private static final Path   PATH2    = Paths.get("dir/someOtherFile.txt");
+    private static final String FILENAME = "someFile.txt";
+
+    private EventBatch eventBatch;
+
+    private CreateEvent createEvent;
+    private ModifyEvent modifyEvent;
+    private DeleteEvent deleteEvent;
+
+    @Before
+    public void before() {
+        this.createEvent = new CreateEvent(PATH, FILENAME, "hash1", 1L);
+        this.modifyEvent = new ModifyEvent(PATH, FILENAME, "hash2", 3L);
+        this.deleteEvent = new DeleteEvent(PATH2, FILENAME, "hash1", 2L);
+
+        this.eventBatch = new EventBatch();
+        this.eventBatch.add(this.modifyEvent);
+        this.eventBatch.add(this.deleteEvent);
+        this.eventBatch.add(this.createEvent);
+    }
+
+    @Test
+    public void testGetEvents() {
+        List<IEvent> events = this.eventBatch.getEvents();
+
+        assertEquals("Batch should contain all events", 3, this.eventBatch.size());
+        assertSame("Events should be sorted", this.createEvent, events.get(0));
+        assertSame("Events should be sorted", this.deleteEvent, events.get(1));
+        assertSame("Events should be sorted", this.modifyEvent, events.get(2));
+
+        // adding the same event again has no effect
+        this.eventBatch.add(this.createEvent);
+        assertEquals("Batch should not contain duplicates", 3, this.eventBatch.size());
+    }
+
+    @Test
+    public void testEventsByPath() {
+        List<IEvent> events = this.eventBatch.getEventsForPath(PATH);
+
+        assertEquals("Path should have two events", 2, events.size());
+        assertSame("Events should be sorted", this.createEvent, events.get(0));
+        assertSame("Events should be sorted", this.modifyEvent, events.get(1));
+        assertEquals("Batch should contain two paths", 2, this.eventBatch.getPaths().size());
+
+        this.eventBatch.remove(this.createEvent);
+        assertEquals("Path should have one event", 1, this.eventBatch.getEventsForPath(PATH).size());
+
+        this.eventBatch.remove(this.modifyEvent);
+        assertTrue("Path should have no events", this.eventBatch.getEventsForPath(PATH).isEmpty());
+        assertFalse("Path should be removed", this.eventBatch.getPaths().contains(PATH));
+    }
+
+    @Test
+    public void testEventsByHash() {
+        List<IEvent> events = this.eventBatch.getEventsForHash("hash1");
+
+        assertEquals("Hash should have two events", 2, events.size());
+        assertSame("Events should be sorted", this.createEvent, events.get(0));
+        assertSame("Events should be sorted", this.deleteEvent, events.get(1));
+
+        // the index is updated once built
+        IEvent otherDeleteEvent = new DeleteEvent(PATH2, FILENAME, null, 4L);
+        this.eventBatch.add(otherDeleteEvent);
+        this.eventBatch.remove(this.createEvent);
+
+        assertEquals("Hash should have one event", 1, this.eventBatch.getEventsForHash("hash1").size());
+        assertSame("Event without hash should be indexed", otherDeleteEvent, this.eventBatch.getEventsForHash(null).get(0));
+        assertTrue("Hashes should contain null", this.eventBatch.getHashes().contains(null));
+    }
+
+    @Test
+    public void testModifyWhileIterating() {
+        for (IEvent event : this.eventBatch) {
+            this.eventBatch.remove(event);
+        }
+
+        assertTrue("Batch should be empty", this.eventBatch.isEmpty());
+        assertFalse("Removed event should not be contained", this.eventBatch.contains(this.createEvent));
+    }
+}
@@ -0,0 +1,207 @@
+package org.rmatil.sync.event.aggregator.test.core.hashing;
+
+import com.google.common.hash.HashCode;
+import org.junit.*;
+import org.rmatil.sync.event.aggregator.core.hashing.Chunk;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentChunker;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ContentChunkerTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    private static final Path FILE = ROOT_TEST_DIR.resolve("chunkedFile.bin");
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @After
+    public void after()
+            throws IOException {
+        Files.deleteIfExists(FILE);
+    }
+
+    @Test
+    public void testChunk()
+            throws IOException, NoSuchAlgorithmException {
+        ContentChunker contentChunker = new ContentChunker(1024, 4096, 16384, 100L);
+        byte[] contents = createContents(1024 * 1024, 1L);
+        Files.write(FILE, contents);
+
+        List<Chunk> chunks = contentChunker.chunk(FILE);
+
+        long offset = 0L;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            assertEquals("Chunks should be contiguous", offset, chunk.getOffset());
+            assertTrue("Chunk should not exceed the maximum size", chunk.getLength() <= 16384);
+            if (i < chunks.size() - 1) {
+                assertTrue("Chunk should not fall below the minimum size", chunk.getLength() >= 1024);
+            }
+
+            assertEquals("Hash should be the one of the chunk", sha256(contents, (int) chunk.getOffset(), chunk.getLength()), chunk.getHash());
+            offset += chunk.getLength();
+        }
+
+        assertEquals("Chunks should cover the whole file", contents.length, offset);
+        assertTrue("Boundaries should be found before the maximum size on average", chunks.size() > contents.length / 16384);
+        assertEquals("All chunks should be hashed", chunks.size(), contentChunker.getNrOfHashedChunks());
+    }
+
+    @Test
+    public void testReusePreviousVersion()
+            throws IOException {
+        ContentChunker contentChunker = new ContentChunker(1024, 4096, 16384, 100L);
+        byte[] contents = createContents(1024 * 1024, 2L);
+        Files.write(FILE, contents);
+        Files.setLastModifiedTime(FILE, FileTime.fromMillis(System.currentTimeMillis() - 10000L));
+
+        List<Chunk> chunks = contentChunker.chunk(FILE);
+        long nrOfHashedChunks = contentChunker.getNrOfHashedChunks();
+
+        assertSame("Chunks of an unchanged file should be returned without reading it", chunks, contentChunker.chunk(FILE));
+        assertEquals("Unchanged file should not be hashed again", nrOfHashedChunks, contentChunker.getNrOfHashedChunks());
+
+        // insert some bytes at the beginning, which shifts all offsets
+        byte[] modifiedContents = new byte[contents.length + 100];
+        System.arraycopy(createContents(100, 3L), 0, modifiedContents, 0, 100);
+        System.arraycopy(contents, 0, modifiedContents, 100, contents.length);
+        Files.write(FILE, modifiedContents);
+
+        List<Chunk> modifiedChunks = contentChunker.chunk(FILE);
+
+        Set<String> hashes = new HashSet<>();
+        for (Chunk chunk : chunks) {
+            hashes.add(chunk.getHash());
+        }
+
+        int nrOfUnchangedChunks = 0;
+        for (Chunk chunk : modifiedChunks) {
+            if (hashes.contains(chunk.getHash())) {
+                nrOfUnchangedChunks++;
+            }
+        }
+
+        assertTrue("Boundaries after the insertion should be kept", nrOfUnchangedChunks >= chunks.size() - 2);
+        assertTrue("Only chunks around the insertion should be hashed", contentChunker.getNrOfHashedChunks() - nrOfHashedChunks <= 2);
+        assertTrue("Hashes of unchanged chunks should be reused", contentChunker.getNrOfReusedChunks() >= chunks.size() - 2);
+    }
+
+    @Test
+    public void testChunkFile()
+            throws IOException, NoSuchAlgorithmException {
+        ContentChunker contentChunker = new ContentChunker(1024, 4096, 16384, 100L);
+        byte[] contents = createContents(100 * 1024, 4L);
+        Files.write(FILE, contents);
+
+        ContentChunker.ChunkedFile chunkedFile = contentChunker.chunkFile(FILE);
+
+        assertEquals("Hash of the whole file should be computed while chunking", HashingService.hash(FILE), chunkedFile.getHash());
+        assertEquals("Hash of the whole file should be computed while chunking", sha256(contents, 0, contents.length), chunkedFile.getHash());
+        assertEquals("Chunks should be the ones of the file", contentChunker.chunk(FILE), chunkedFile.getChunks());
+    }
+
+    @Test
+    public void testChunkFileChangingWhileRead()
+            throws IOException, NoSuchAlgorithmException {
+        Files.write(FILE, createContents(100 * 1024, 5L));
+        byte[] contents = createContents(100 * 1024 + 1, 6L);
+
+        // the file is replaced while it is read for the first time
+        ContentChunker contentChunker = new ChangingContentChunker(1, contents);
+        ContentChunker.ChunkedFile chunkedFile = contentChunker.chunkFile(FILE);
+
+        assertEquals("File should be read again after it changed", sha256(contents, 0, contents.length), chunkedFile.getHash());
+
+        // the file keeps on changing on each read
+        contentChunker = new ChangingContentChunker(Integer.MAX_VALUE, contents);
+        chunkedFile = contentChunker.chunkFile(FILE);
+
+        assertNotNull("Chunks should be returned", chunkedFile.getChunks());
+        assertNull("No hash should be returned for a file changing on each read", chunkedFile.getHash());
+    }
+
+    @Test
+    public void testNoRegularFile() {
+        assertNull("Directory should not be chunked", new ContentChunker().chunk(ROOT_TEST_DIR));
+        assertNull("Missing file should not be chunked", new ContentChunker().chunk(FILE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAverageChunkSize() {
+        new ContentChunker(1024, 5000, 16384, 100L);
+    }
+
+    /**
+     * Appends a byte to the file after reading it, a limited number of times
+     */
+    private static class ChangingContentChunker extends ContentChunker {
+
+        private int nrOfChanges;
+
+        private byte[] contents;
+
+        private ChangingContentChunker(int nrOfChanges, byte[] contents) {
+            super(1024, 4096, 16384, 100L);
+            this.nrOfChanges = nrOfChanges;
+            this.contents = contents;
+        }
+
+        @Override
+        protected Entry read(Path path, BasicFileAttributes attributes, Map<HashCode, String> previousHashes) {
+            Entry entry = super.read(path, attributes, previousHashes);
+
+            if (this.nrOfChanges-- > 0) {
+                try {
+                    Files.write(path, this.contents);
+                    Files.setLastModifiedTime(path, FileTime.fromMillis(attributes.lastModifiedTime().toMillis() - 10000L));
+                    this.contents = Arrays.copyOf(this.contents, this.contents.length + 1);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            return entry;
+        }
+    }
+
+    private static byte[] createContents(int length, long seed) {
+        byte[] contents = new byte[length];
+        new Random(seed).nextBytes(contents);
+
+        return contents;
+    }
+
+    private static String sha256(byte[] contents, int offset, int length)
+            throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        messageDigest.update(contents, offset, length);
+
+        StringBuilder hash = new StringBuilder();
+        for (byte b : messageDigest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+
+        return hash.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package org.rmatil.sync.event.aggregator.test.core.hashing;
+
+import org.junit.*;
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentHashCache;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+public class ContentHashCacheTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    private static final Path PERSISTENCE_FILE = ROOT_TEST_DIR.resolve("hashCache.bin");
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @After
+    public void after()
+            throws IOException {
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+        FileUtil.deleteTestDir(ROOT_TEST_DIR);
+        Files.deleteIfExists(PERSISTENCE_FILE);
+    }
+
+    @Test
+    public void testUnchangedFileIsNotHashedAgain()
+            throws IOException {
+        Path file = createOldTestFile();
+        ContentHashCache contentHashCache = new ContentHashCache();
+
+        String hash = contentHashCache.hash(file);
+        assertEquals("Hash should be computed", Hash.EMPTY_SHA256_HASH, hash);
+        assertEquals("First access should be a miss", 1, contentHashCache.getMissCount());
+
+        assertEquals("Cached hash should be returned", hash, contentHashCache.hash(file));
+        assertEquals("Second access should be a hit", 1, contentHashCache.getHitCount());
+
+        // a changed size requires to hash the file again
+        FileUtil.modifyTestFile(ROOT_TEST_DIR);
+        assertNotEquals("Changed file should be hashed again", hash, contentHashCache.hash(file));
+        assertEquals("Changed file should be a miss", 2, contentHashCache.getMissCount());
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIsNotCached() {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        ContentHashCache contentHashCache = new ContentHashCache();
+
+        contentHashCache.hash(file);
+        contentHashCache.hash(file);
+
+        assertEquals("Recently modified file should always be hashed", 2, contentHashCache.getMissCount());
+        assertEquals("Recently modified file should not be cached", 0, contentHashCache.size());
+    }
+
+    @Test
+    public void testDirectoryIsNotCached() {
+        Path dir = FileUtil.createTestDir(ROOT_TEST_DIR);
+        ContentHashCache contentHashCache = new ContentHashCache();
+
+        assertNotNull("Directory should be hashed", contentHashCache.hash(dir));
+        assertEquals("Directory should not be cached", 0, contentHashCache.size());
+        assertNull("Missing file should not have a hash", contentHashCache.hash(ROOT_TEST_DIR.resolve("missing.txt")));
+    }
+
+    @Test
+    public void testPersistence()
+            throws IOException {
+        Path file = createOldTestFile();
+
+        ContentHashCache contentHashCache = new ContentHashCache(ContentHashCache.DEFAULT_MAXIMUM_SIZE, PERSISTENCE_FILE);
+        String hash = contentHashCache.hash(file);
+        contentHashCache.save();
+
+        assertTrue("Cache should be persisted", Files.exists(PERSISTENCE_FILE));
+
+        ContentHashCache restoredCache = new ContentHashCache(ContentHashCache.DEFAULT_MAXIMUM_SIZE, PERSISTENCE_FILE);
+        restoredCache.load();
+
+        assertEquals("Restored cache should contain the entry", 1, restoredCache.size());
+        assertEquals("Restored cache should return the hash", hash, restoredCache.hash(file));
+        assertEquals("Restored entry should be a hit", 1, restoredCache.getHitCount());
+    }
+
+    /**
+     * Creates the test file having a modification time in the past,
+     * so that it is not considered to be changed while hashing
+     */
+    private static Path createOldTestFile()
+            throws IOException {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 10 * ContentHashCache.RACY_INTERVAL));
+
+        return file;
+    }
+}
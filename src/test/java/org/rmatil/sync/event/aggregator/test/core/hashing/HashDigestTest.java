@@ -0,0 +1,58 @@
+package org.rmatil.sync.event.aggregator.test.core.hashing;
+
+import org.junit.Test;
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.HashDigest;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class HashDigestTest {
+
+    @Test
+    public void testBinaryHash() {
+        HashDigest digest = HashDigest.valueOf(Hash.EMPTY_SHA256_HASH);
+
+        assertTrue("Hex hash should be stored as binary", digest.isBinary());
+        assertEquals("Hash should be restored", Hash.EMPTY_SHA256_HASH, digest.toString());
+        assertEquals("Equal hashes should be equal", digest, HashDigest.valueOf(Hash.EMPTY_SHA256_HASH));
+        assertEquals("Equal hashes should have the same hash code", digest.hashCode(), HashDigest.valueOf(Hash.EMPTY_SHA256_HASH).hashCode());
+
+        HashDigest fastDigest = HashDigest.valueOf(HashingService.EMPTY_FAST_HASH);
+        assertTrue("Fast digest should be stored as binary", fastDigest.isBinary());
+        assertEquals("Fast digest should be restored", HashingService.EMPTY_FAST_HASH, fastDigest.toString());
+        assertNotEquals("Different hashes should not be equal", digest, fastDigest);
+    }
+
+    @Test
+    public void testOtherHash() {
+        assertNull("No hash should not have a digest", HashDigest.valueOf(null));
+
+        HashDigest digest = HashDigest.valueOf("someHash");
+        assertFalse("Other values should be kept as is", digest.isBinary());
+        assertEquals("Other values should be restored", "someHash", digest.toString());
+        assertEquals("Equal values should be equal", digest, HashDigest.valueOf("someHash"));
+
+        // uppercase hex would not be restored as is
+        HashDigest upperCaseDigest = HashDigest.valueOf(Hash.EMPTY_SHA256_HASH.toUpperCase());
+        assertFalse("Uppercase hex should be kept as is", upperCaseDigest.isBinary());
+        assertEquals("Uppercase hex should be restored", Hash.EMPTY_SHA256_HASH.toUpperCase(), upperCaseDigest.toString());
+        assertNotEquals("Differently encoded hashes should not be equal", HashDigest.valueOf(Hash.EMPTY_SHA256_HASH), upperCaseDigest);
+    }
+
+    @Test
+    public void testEvents() {
+        Path path = Paths.get("dir/myFile.txt");
+        IEvent createEvent = new CreateEvent(path, "myFile.txt", Hash.EMPTY_SHA256_HASH, 1L);
+        IEvent modifyEvent = new ModifyEvent(Paths.get("dir/myFile.txt"), "myFile.txt", Hash.EMPTY_SHA256_HASH, 2L);
+
+        assertEquals("Hash should be restored", Hash.EMPTY_SHA256_HASH, createEvent.getHash());
+        assertEquals("Events should have equal digests", createEvent.getDigest(), modifyEvent.getDigest());
+    }
+}
@@ -0,0 +1,96 @@
+package org.rmatil.sync.event.aggregator.test.core.hashing;
+
+import org.junit.*;
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class HashingServiceTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @After
+    public void after() {
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+    }
+
+    @Test
+    public void testSubmit()
+            throws ExecutionException, InterruptedException {
+        HashingService hashingService = new HashingService(2, 1);
+
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+
+        // more computations than the queue can hold have to be computed too
+        List<Future<String>> hashes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            hashes.add(hashingService.submit(file));
+        }
+
+        for (Future<String> hash : hashes) {
+            assertEquals("Hash of empty file is not the empty hash", Hash.EMPTY_SHA256_HASH, hash.get());
+        }
+
+        assertEquals("Pool size is not the configured one", 2, hashingService.getPoolSize());
+
+        hashingService.shutdown();
+    }
+
+    @Test
+    public void testSubmitAfterShutdown()
+            throws ExecutionException, InterruptedException {
+        HashingService hashingService = new HashingService(1, 1);
+        hashingService.shutdown();
+
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+
+        assertEquals("Hash is not computed after shutdown", Hash.EMPTY_SHA256_HASH, hashingService.submit(file).get());
+    }
+
+    @Test
+    public void testHashOfNonExistingPath() {
+        assertNull("Hash of non existing path should be null", HashingService.hash(ROOT_TEST_DIR.resolve("nonExisting.txt")));
+    }
+
+    @Test
+    public void testFastHash() {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+
+        assertEquals("Fast digest of empty file is not the empty digest", HashingService.EMPTY_FAST_HASH, HashingService.fastHash(file));
+        assertTrue("Empty digest should be recognized", HashingService.isEmptyHash(HashingService.EMPTY_FAST_HASH));
+        assertTrue("Empty hash should be recognized", HashingService.isEmptyHash(Hash.EMPTY_SHA256_HASH));
+
+        FileUtil.modifyTestFile(ROOT_TEST_DIR);
+        String fastHash = HashingService.fastHash(file);
+
+        assertFalse("Fast digest of modified file should not be empty", HashingService.isEmptyHash(fastHash));
+        assertEquals("Fast digest should be deterministic", fastHash, HashingService.fastHash(file));
+        assertNotEquals("Fast digest of directory should differ from the one of its file", fastHash, HashingService.fastHash(ROOT_TEST_DIR));
+        assertNull("Fast digest of non existing path should be null", HashingService.fastHash(ROOT_TEST_DIR.resolve("nonExisting.txt")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPoolSize() {
+        new HashingService(0, 1);
+    }
+}
@@ -0,0 +1,165 @@
+package org.rmatil.sync.event.aggregator.test.core.hashing;
+
+import org.junit.*;
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentChunker;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingMode;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.rmatil.sync.event.aggregator.core.modifier.IgnorePathsModifier;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class LazyHashTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @After
+    public void after() {
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+    }
+
+    @Test
+    public void testComputedOnRequest()
+            throws ExecutionException, InterruptedException {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        LazyHash lazyHash = new LazyHash(file);
+
+        assertFalse("Hash should not be computed before requested", lazyHash.isDone());
+
+        // the hash reflects the contents at the time it is requested
+        FileUtil.modifyTestFile(ROOT_TEST_DIR);
+        String hash = lazyHash.get();
+
+        assertTrue("Hash should be computed after requested", lazyHash.isDone());
+        assertNotEquals("Hash should not be the one of the empty file", Hash.EMPTY_SHA256_HASH, hash);
+
+        // the hash is computed only once
+        FileUtil.modifyTestFile(ROOT_TEST_DIR);
+        assertEquals("Hash should not be computed again", hash, lazyHash.get());
+    }
+
+    @Test
+    public void testHashIsPassedOn() {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        LazyHash lazyHash = new LazyHash(file);
+
+        CreateEvent createEvent = new CreateEvent(file, file.getFileName().toString(), System.currentTimeMillis(), lazyHash);
+        CreateEvent copy = new CreateEvent(createEvent);
+
+        assertSame("Copied event should share the hash", lazyHash, copy.getHashFuture());
+        assertFalse("Copying should not compute the hash", lazyHash.isDone());
+
+        assertEquals("Hash of copy is not the hash of the empty file", Hash.EMPTY_SHA256_HASH, copy.getHash());
+        assertTrue("Hash should be computed", lazyHash.isDone());
+        assertSame("Events should share the digest of the hash", createEvent.getDigest(), copy.getDigest());
+    }
+
+    @Test
+    public void testFilteredEventIsNotHashed() {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        LazyHash lazyHash = new LazyHash(file);
+
+        List<Path> ignoredPaths = new ArrayList<>();
+        ignoredPaths.add(ROOT_TEST_DIR);
+
+        List<IEvent> events = new ArrayList<>();
+        events.add(new ModifyEvent(file, file.getFileName().toString(), System.currentTimeMillis(), lazyHash));
+
+        assertTrue("Event should be ignored", new IgnorePathsModifier(ignoredPaths).modify(events).isEmpty());
+        assertFalse("Ignored event should not have been hashed", lazyHash.isDone());
+    }
+
+    @Test
+    public void testTwoTier()
+            throws ExecutionException, InterruptedException {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        LazyHash lazyHash = new LazyHash(file, null, HashingMode.TWO_TIER);
+
+        ModifyEvent modifyEvent = new ModifyEvent(file, file.getFileName().toString(), System.currentTimeMillis(), lazyHash);
+
+        assertEquals("Fast digest is not the one of the empty file", HashingService.EMPTY_FAST_HASH, modifyEvent.getFastHash());
+        assertFalse("Hash should not be computed for the fast digest", lazyHash.isDone());
+
+        assertEquals("Hash is not the hash of the empty file", Hash.EMPTY_SHA256_HASH, modifyEvent.getHash());
+
+        // only the hash itself is used without a fast digest
+        LazyHash fullHash = new LazyHash(file);
+        assertEquals("Fast digest should be the hash itself", Hash.EMPTY_SHA256_HASH, fullHash.getFastHash());
+        assertTrue("Hash should be computed", fullHash.isDone());
+    }
+
+    @Test
+    public void testResolve() {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+
+        List<IEvent> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(new ModifyEvent(file, file.getFileName().toString(), System.currentTimeMillis(), new LazyHash(file)));
+        }
+
+        HashingService hashingService = new HashingService(2, 2);
+        hashingService.resolve(events);
+        hashingService.shutdown();
+
+        for (IEvent event : events) {
+            assertTrue("Hash should be resolved", event.getHashFuture().isDone());
+            assertEquals("Hash is not the hash of the empty file", Hash.EMPTY_SHA256_HASH, event.getHash());
+        }
+    }
+
+    @Test
+    public void testChunks() {
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        LazyHash lazyHash = new LazyHash(file, null, HashingMode.FULL, new ContentChunker());
+        ModifyEvent modifyEvent = new ModifyEvent(file, file.getFileName().toString(), System.currentTimeMillis(), lazyHash);
+
+        HashingService hashingService = new HashingService(2, 2);
+        hashingService.resolve(Collections.singletonList(modifyEvent));
+        hashingService.shutdown();
+
+        assertTrue("Chunks should be resolved", lazyHash.getChunksFuture().isDone());
+        assertNotNull("Chunks should be attached to the event", modifyEvent.getChunks());
+        assertTrue("Empty file should not have any chunk", modifyEvent.getChunks().isEmpty());
+
+        assertNull("Chunks should not be computed without a chunker", new ModifyEvent(file, file.getFileName().toString(), System.currentTimeMillis(), new LazyHash(file)).getChunks());
+    }
+
+    @Test
+    public void testChunksAndHashReadOnce()
+            throws IOException, InterruptedException, ExecutionException {
+        Path file = FileUtil.modifyTestFile(ROOT_TEST_DIR);
+        LazyHash lazyHash = new LazyHash(file, null, HashingMode.FULL, new ContentChunker());
+
+        long hashedBytes = HashingService.getHashedBytes();
+        String hash = lazyHash.get();
+        assertNotNull("Chunks should be computed along with the hash", lazyHash.getChunks());
+        assertEquals("File should be read once", Files.size(file), HashingService.getHashedBytes() - hashedBytes);
+
+        assertEquals("Hash should be the one of the whole file", HashingService.hash(file), hash);
+    }
+}
@@ -0,0 +1,196 @@
+package org.rmatil.sync.event.aggregator.test.core.hashing;
+
+import org.junit.*;
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.commons.hashing.HashingAlgorithm;
+import org.rmatil.sync.event.aggregator.core.hashing.ContentHashCache;
+import org.rmatil.sync.event.aggregator.core.hashing.MerkleTree;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class MerkleTreeTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    private static final Path DIR        = ROOT_TEST_DIR.resolve("merkleDir");
+    private static final Path FILE       = DIR.resolve("file1.txt");
+    private static final Path NESTED_DIR = DIR.resolve("nestedDir");
+    private static final Path NESTED     = NESTED_DIR.resolve("file2.txt");
+
+    private ContentHashCache contentHashCache;
+
+    private MerkleTree merkleTree;
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @Before
+    public void before()
+            throws IOException {
+        Files.createDirectories(NESTED_DIR);
+        Files.write(FILE, "file1".getBytes());
+        Files.write(NESTED, "file2".getBytes());
+
+        this.contentHashCache = new ContentHashCache();
+        this.merkleTree = new MerkleTree(ROOT_TEST_DIR, this.contentHashCache);
+    }
+
+    @After
+    public void after() {
+        FileUtil.delete(DIR.toFile());
+    }
+
+    @Test
+    public void testOnlyChangedElementIsHashedAgain()
+            throws IOException {
+        String hash = this.merkleTree.hash(DIR);
+        assertNotNull("Directory should be hashed", hash);
+        assertEquals("Each file should be hashed once", 2, this.contentHashCache.getMissCount());
+
+        assertEquals("Unchanged directory should have the same hash", hash, this.merkleTree.hash(DIR));
+        assertEquals("Unchanged files should not be hashed again", 2, this.contentHashCache.getMissCount());
+
+        Files.write(NESTED, "changed".getBytes());
+        this.merkleTree.invalidate(NESTED);
+
+        String changedHash = this.merkleTree.hash(DIR);
+        assertNotEquals("Changed directory should have another hash", hash, changedHash);
+        assertEquals("Only the changed file should be hashed again", 3, this.contentHashCache.getMissCount());
+
+        assertEquals("Hash should be the one of a new tree", new MerkleTree(ROOT_TEST_DIR, null).hash(DIR), changedHash);
+    }
+
+    @Test
+    public void testInvalidateSubtree()
+            throws IOException {
+        String hash = this.merkleTree.hash(DIR);
+
+        // a missed change is only found once the whole subtree is dropped
+        Files.write(NESTED, "changed".getBytes());
+        this.merkleTree.invalidate(DIR);
+        assertEquals("Cached children should be kept on invalidating the directory", hash, this.merkleTree.hash(DIR));
+
+        this.merkleTree.invalidateSubtree(DIR);
+        String changedHash = this.merkleTree.hash(DIR);
+        assertNotEquals("Changed directory should have another hash", hash, changedHash);
+        assertEquals("Hash should be the one of a new tree", new MerkleTree(ROOT_TEST_DIR, null).hash(DIR), changedHash);
+    }
+
+    @Test
+    public void testDelete()
+            throws IOException {
+        String hash = this.merkleTree.hash(DIR);
+        String nestedDirHash = this.merkleTree.hash(NESTED_DIR);
+
+        Files.delete(NESTED);
+        this.merkleTree.invalidate(NESTED);
+
+        assertNotEquals("Directory should have another hash", hash, this.merkleTree.hash(DIR));
+        assertNotEquals("Parent directory should have another hash", nestedDirHash, this.merkleTree.hash(NESTED_DIR));
+        assertNull("Deleted file should not have a hash", this.merkleTree.hash(NESTED));
+
+        // restoring the contents restores the hash
+        Files.write(NESTED, "file2".getBytes());
+        this.merkleTree.invalidate(NESTED);
+
+        assertEquals("Restored directory should have the initial hash", hash, this.merkleTree.hash(DIR));
+    }
+
+    @Test
+    public void testRename()
+            throws IOException {
+        String hash = this.merkleTree.hash(DIR);
+
+        Path renamedFile = DIR.resolve("file3.txt");
+        Files.move(FILE, renamedFile);
+        this.merkleTree.invalidate(FILE);
+        this.merkleTree.invalidate(renamedFile);
+
+        assertNotEquals("Names of children should be part of the hash", hash, this.merkleTree.hash(DIR));
+    }
+
+    @Test
+    public void testInvalidatedDirectoryKeepsChildren()
+            throws IOException {
+        String hash = this.merkleTree.hash(DIR);
+
+        Path createdFile = Files.write(NESTED_DIR.resolve("file3.txt"), "file3".getBytes());
+        this.merkleTree.invalidate(createdFile);
+        this.merkleTree.invalidate(NESTED_DIR);
+        this.merkleTree.invalidate(DIR);
+
+        assertNotEquals("Directory should have another hash", hash, this.merkleTree.hash(DIR));
+        assertEquals("Only the created file should be hashed", 3, this.contentHashCache.getMissCount());
+        assertEquals("Hash should be the one of a new tree", new MerkleTree(ROOT_TEST_DIR, null).hash(DIR), this.merkleTree.hash(DIR));
+    }
+
+    @Test
+    public void testReplacedDirectory()
+            throws IOException {
+        String nestedDirHash = this.merkleTree.hash(NESTED_DIR);
+
+        // replaced by another directory having a child of the same name, without reporting the child
+        Path otherDir = Files.createDirectory(DIR.resolve("otherDir"));
+        Files.write(otherDir.resolve("file2.txt"), "other".getBytes());
+        FileUtil.delete(NESTED_DIR.toFile());
+        Files.move(otherDir, NESTED_DIR);
+        this.merkleTree.invalidate(NESTED_DIR);
+
+        assertNotEquals("Children of the replaced directory should not be reused", nestedDirHash, this.merkleTree.hash(NESTED_DIR));
+        assertEquals("Hash should be the one of a new tree", new MerkleTree(ROOT_TEST_DIR, null).hash(NESTED_DIR), this.merkleTree.hash(NESTED_DIR));
+    }
+
+    @Test
+    public void testConcurrentHashing()
+            throws InterruptedException, ExecutionException, TimeoutException {
+        CountDownLatch fileHashing = new CountDownLatch(1);
+        CountDownLatch nestedHashed = new CountDownLatch(1);
+        MerkleTree blockingTree = new MerkleTree(ROOT_TEST_DIR, null) {
+            @Override
+            protected String hashFile(Path path) {
+                if (path.equals(FILE)) {
+                    fileHashing.countDown();
+                    try {
+                        // only completes if the other file is hashed in the meantime
+                        assertTrue("Other file should be hashed concurrently", nestedHashed.await(5L, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                return super.hashFile(path);
+            }
+        };
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<String> fileHash = executorService.submit(() -> blockingTree.hash(FILE));
+        assertTrue("File should be hashed", fileHashing.await(5L, TimeUnit.SECONDS));
+
+        assertNotNull("Nested file should be hashed", blockingTree.hash(NESTED));
+        nestedHashed.countDown();
+
+        assertEquals("Blocked file should be hashed", Hash.hash(HashingAlgorithm.SHA_256, "file1"), fileHash.get(5L, TimeUnit.SECONDS));
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testFile() {
+        assertEquals("File should be hashed by its contents", Hash.hash(HashingAlgorithm.SHA_256, "file1"), this.merkleTree.hash(FILE));
+        assertNull("Non existing file should not have a hash", this.merkleTree.hash(DIR.resolve("nonExisting.txt")));
+    }
+}
@@ -0,0 +1,118 @@
+package org.rmatil.sync.event.aggregator.test.core.hashing;
+
+import org.junit.*;
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.event.aggregator.core.hashing.IHashProvider;
+import org.rmatil.sync.event.aggregator.core.hashing.WriteStabilityTracker;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WriteStabilityTrackerTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @After
+    public void after()
+            throws IOException {
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+    }
+
+    @Test
+    public void testIsStable()
+            throws IOException {
+        WriteStabilityTracker writeStabilityTracker = new WriteStabilityTracker(1000L, 60000L);
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+
+        assertFalse("Recently modified file should be unstable", writeStabilityTracker.isStable(file, now));
+        assertEquals("Unstable file should be tracked", 1, writeStabilityTracker.getNrOfUnstableFiles());
+
+        // the file grows without updating its modification time
+        Files.write(file, "more content".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+
+        assertFalse("Grown file should be unstable", writeStabilityTracker.isStable(file, now + 1500L));
+        assertFalse("File should be unstable within the interval after its last change", writeStabilityTracker.isStable(file, now + 2000L));
+        assertTrue("Unchanged file should be stable after the interval", writeStabilityTracker.isStable(file, now + 2500L));
+        assertEquals("Stable file should not be tracked", 0, writeStabilityTracker.getNrOfUnstableFiles());
+        assertEquals("All deferrals should be counted", 3L, writeStabilityTracker.getNrOfDeferrals());
+    }
+
+    @Test
+    public void testMaxDelay()
+            throws IOException {
+        WriteStabilityTracker writeStabilityTracker = new WriteStabilityTracker(1000L, 5000L);
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        long now = System.currentTimeMillis();
+
+        for (long time = now; time < now + 5000L; time += 500L) {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+            assertFalse("Permanently changing file should be unstable", writeStabilityTracker.isStable(file, time));
+        }
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(now + 5000L));
+        assertTrue("File should be stable after the maximum delay", writeStabilityTracker.isStable(file, now + 5000L));
+    }
+
+    @Test
+    public void testNonExistingPathIsStable() {
+        WriteStabilityTracker writeStabilityTracker = new WriteStabilityTracker();
+
+        assertTrue("Deleted path should be stable", writeStabilityTracker.isStable(ROOT_TEST_DIR.resolve("deletedFile.txt"), System.currentTimeMillis()));
+        assertTrue("Directory should be stable", writeStabilityTracker.isStable(ROOT_TEST_DIR, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testRehashChangedFile()
+            throws IOException {
+        WriteStabilityTracker writeStabilityTracker = new WriteStabilityTracker();
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        AtomicInteger nrOfHashes = new AtomicInteger();
+
+        // the file is written while the first hash is computed
+        IHashProvider hashProvider = writeStabilityTracker.wrap(path -> {
+            if (1 == nrOfHashes.incrementAndGet()) {
+                try {
+                    Files.write(path, "more content".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+
+                return Hash.EMPTY_SHA256_HASH;
+            }
+
+            return "hashOfCompleteFile";
+        });
+
+        assertEquals("Hash of the complete file should be returned", "hashOfCompleteFile", hashProvider.hash(file));
+        assertEquals("File should be hashed again", 2, nrOfHashes.get());
+        assertEquals("Discarded hash should be counted", 1L, writeStabilityTracker.getNrOfRehashes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidStabilityInterval() {
+        new WriteStabilityTracker(1000L, 100L);
+    }
+}
@@ -0,0 +1,191 @@
+package org.rmatil.sync.event.aggregator.test.core.index;
+
+import name.mitterdorfer.perlock.PathChangeListener;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.events.MoveEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
+import org.rmatil.sync.event.aggregator.core.index.FileIndex;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class FileIndexTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    /**
+     * The indexed folder, not containing the index file
+     */
+    private static final Path INDEXED_DIR = ROOT_TEST_DIR.resolve("indexed");
+
+    private static final Path INDEX_FILE = ROOT_TEST_DIR.resolve("fileIndex.bin");
+
+    protected RecordingListener listener;
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @Before
+    public void before()
+            throws IOException {
+        FileUtil.delete(INDEXED_DIR.toFile());
+        Files.deleteIfExists(INDEX_FILE);
+
+        Files.createDirectories(INDEXED_DIR.resolve("dir/nestedDir"));
+        Files.write(INDEXED_DIR.resolve("dir/modifiedFile.txt"), "Hello World".getBytes());
+        Files.write(INDEXED_DIR.resolve("dir/unchangedFile.txt"), "Hello World".getBytes());
+        Files.write(INDEXED_DIR.resolve("dir/nestedDir/deletedFile.txt"), "Hello World".getBytes());
+
+        this.listener = new RecordingListener();
+    }
+
+    @Test
+    public void testInitialIndex() {
+        FileIndex fileIndex = new FileIndex(INDEXED_DIR, INDEX_FILE, 2);
+
+        assertEquals("No changes should be reported without persisted index", 0, fileIndex.reconcile(this.listener));
+        assertTrue("No changes should be reported without persisted index", this.listener.events.isEmpty());
+        assertEquals("All elements should be indexed", 5, fileIndex.size());
+        assertTrue("Directory should be indexed", fileIndex.getEntry("dir/nestedDir").isDirectory());
+        assertEquals("File should be indexed", 11L, fileIndex.getEntry("dir/unchangedFile.txt").getSize());
+    }
+
+    @Test
+    public void testReconcile()
+            throws IOException {
+        FileIndex fileIndex = new FileIndex(INDEXED_DIR, INDEX_FILE, 2);
+        fileIndex.reconcile(this.listener);
+        fileIndex.save();
+
+        // changes while not running
+        Files.write(INDEXED_DIR.resolve("dir/modifiedFile.txt"), "Hello World, again".getBytes());
+        Files.createFile(INDEXED_DIR.resolve("dir/createdFile.txt"));
+        FileUtil.delete(INDEXED_DIR.resolve("dir/nestedDir").toFile());
+
+        FileIndex loadedFileIndex = new FileIndex(INDEXED_DIR, INDEX_FILE, 2);
+        loadedFileIndex.load();
+        assertEquals("All entries should be loaded", 5, loadedFileIndex.size());
+
+        assertEquals("Only changes should be reported", 3, loadedFileIndex.reconcile(this.listener));
+        assertTrue("Creation should be reported", this.listener.events.contains("created " + INDEXED_DIR.resolve("dir/createdFile.txt")));
+        assertTrue("Modification should be reported", this.listener.events.contains("modified " + INDEXED_DIR.resolve("dir/modifiedFile.txt")));
+        assertTrue("Only topmost deletion should be reported", this.listener.events.contains("deleted " + INDEXED_DIR.resolve("dir/nestedDir")));
+
+        assertNull("Deleted file should not be indexed anymore", loadedFileIndex.getEntry("dir/nestedDir/deletedFile.txt"));
+        assertNotNull("Created file should be indexed", loadedFileIndex.getEntry("dir/createdFile.txt"));
+    }
+
+    @Test
+    public void testUpdate()
+            throws IOException {
+        FileIndex fileIndex = new FileIndex(INDEXED_DIR, INDEX_FILE, 2);
+        fileIndex.reconcile(this.listener);
+
+        Files.move(INDEXED_DIR.resolve("dir/nestedDir"), INDEXED_DIR.resolve("movedDir"));
+        Path createdFile = Files.createFile(INDEXED_DIR.resolve("createdFile.txt"));
+        Files.delete(INDEXED_DIR.resolve("dir/unchangedFile.txt"));
+
+        fileIndex.update(Arrays.asList(
+                new MoveEvent(Paths.get("dir/nestedDir"), Paths.get("movedDir"), "movedDir", "someHash", 1000L),
+                new CreateEvent(createdFile, "createdFile.txt", "someOtherHash", 1001L),
+                new DeleteEvent(Paths.get("dir/unchangedFile.txt"), "unchangedFile.txt", null, 1002L)
+        ));
+
+        assertNull("Moved directory should be removed", fileIndex.getEntry("dir/nestedDir"));
+        assertNull("Moved file should be removed", fileIndex.getEntry("dir/nestedDir/deletedFile.txt"));
+        assertNotNull("Moved directory should be indexed at its new path", fileIndex.getEntry("movedDir"));
+        assertNotNull("Moved file should be indexed at its new path", fileIndex.getEntry("movedDir/deletedFile.txt"));
+        assertEquals("Hash of created file should be indexed", "someOtherHash", fileIndex.getEntry("createdFile.txt").getHash());
+        assertNull("Deleted file should be removed", fileIndex.getEntry("dir/unchangedFile.txt"));
+    }
+
+    @Test
+    public void testMoveDoesNotHash()
+            throws IOException, InterruptedException, ExecutionException {
+        FileIndex fileIndex = new FileIndex(INDEXED_DIR, INDEX_FILE, 2);
+        fileIndex.reconcile(this.listener);
+        assertNull("Initial walk should not hash", fileIndex.getEntry("dir/unchangedFile.txt").getHash());
+
+        Files.move(INDEXED_DIR.resolve("dir/unchangedFile.txt"), INDEXED_DIR.resolve("movedFile.txt"));
+        LazyHash lazyHash = new LazyHash(INDEXED_DIR.resolve("movedFile.txt"));
+
+        fileIndex.update(Collections.singletonList(
+                new MoveEvent(Paths.get("dir/unchangedFile.txt"), Paths.get("movedFile.txt"), "movedFile.txt", 1000L, lazyHash)
+        ));
+
+        assertNotNull("Moved file should be indexed at its new path", fileIndex.getEntry("movedFile.txt"));
+        assertNull("Hash not computed yet should not be indexed", fileIndex.getEntry("movedFile.txt").getHash());
+        assertFalse("Moved file should not be hashed", lazyHash.isDone());
+
+        // once computed, the hash is indexed
+        String hash = lazyHash.get();
+        Files.move(INDEXED_DIR.resolve("movedFile.txt"), INDEXED_DIR.resolve("movedAgainFile.txt"));
+        fileIndex.update(Collections.singletonList(
+                new MoveEvent(Paths.get("movedFile.txt"), Paths.get("movedAgainFile.txt"), "movedAgainFile.txt", 1001L, lazyHash)
+        ));
+
+        assertEquals("Computed hash should be indexed", hash, fileIndex.getEntry("movedAgainFile.txt").getHash());
+    }
+
+    @Test
+    public void testIgnoreUnknownFormat()
+            throws IOException {
+        Files.write(INDEX_FILE, "Not an index at all".getBytes());
+
+        FileIndex fileIndex = new FileIndex(INDEXED_DIR, INDEX_FILE);
+        fileIndex.load();
+
+        assertEquals("Unknown file should be ignored", 0, fileIndex.size());
+        assertEquals("Initial index should not report changes", 0, fileIndex.reconcile(this.listener));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new FileIndex(INDEXED_DIR, INDEX_FILE, 0);
+    }
+
+    protected static class RecordingListener implements PathChangeListener {
+
+        protected final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onPathCreated(Path path) {
+            this.events.add("created " + path);
+        }
+
+        @Override
+        public void onPathModified(Path path) {
+            this.events.add("modified " + path);
+        }
+
+        @Override
+        public void onPathDeleted(Path path) {
+            this.events.add("deleted " + path);
+        }
+    }
+}
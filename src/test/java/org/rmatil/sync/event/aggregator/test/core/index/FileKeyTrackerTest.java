@@ -0,0 +1,96 @@
+package org.rmatil.sync.event.aggregator.test.core.index;
+
+import org.junit.*;
+import org.rmatil.sync.event.aggregator.core.index.FileKeyTracker;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class FileKeyTrackerTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    private static final Path DIR = ROOT_TEST_DIR.resolve("trackedDir");
+
+    private static final Path MOVED_DIR = ROOT_TEST_DIR.resolve("movedDir");
+
+    @BeforeClass
+    public static void setUp() {
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @After
+    public void after()
+            throws IOException {
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+        for (Path dir : new Path[]{DIR, MOVED_DIR}) {
+            Files.deleteIfExists(dir.resolve("nestedFile.txt"));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testTrack()
+            throws IOException {
+        FileKeyTracker fileKeyTracker = new FileKeyTracker();
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+        Files.createDirectory(DIR);
+        Path nestedFile = Files.write(DIR.resolve("nestedFile.txt"), "nested".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("Root, directory and both files should be tracked", 4L, fileKeyTracker.track(ROOT_TEST_DIR));
+        assertEquals("All tracked path elements should be recorded", 4L, fileKeyTracker.size());
+        assertNotNull("File should be recorded", fileKeyTracker.getIdentity(file));
+        assertNotNull("Nested file should be recorded", fileKeyTracker.getIdentity(nestedFile));
+        assertTrue("Directory should be recorded as such", fileKeyTracker.getIdentity(DIR).isDirectory());
+    }
+
+    @Test
+    public void testIdentityIsKeptOnRenaming()
+            throws IOException {
+        FileKeyTracker fileKeyTracker = new FileKeyTracker();
+        Files.createDirectory(DIR);
+        Path nestedFile = Files.write(DIR.resolve("nestedFile.txt"), "nested".getBytes(StandardCharsets.UTF_8));
+
+        FileKeyTracker.Identity fileIdentity = fileKeyTracker.record(nestedFile);
+        FileKeyTracker.Identity dirIdentity = fileKeyTracker.record(DIR);
+
+        Files.move(DIR, MOVED_DIR);
+
+        assertNull("Deleted path should not be readable", fileKeyTracker.record(DIR));
+        assertNull("Identity of the deleted path should be forgotten", fileKeyTracker.getIdentity(DIR));
+        assertEquals("Renamed directory should keep its identity", dirIdentity, fileKeyTracker.record(MOVED_DIR));
+        assertEquals("Renamed file should keep its identity", fileIdentity, fileKeyTracker.record(MOVED_DIR.resolve("nestedFile.txt")));
+    }
+
+    @Test
+    public void testIdentityChangesOnModifying()
+            throws IOException {
+        FileKeyTracker fileKeyTracker = new FileKeyTracker();
+        Path file = FileUtil.createTestFile(ROOT_TEST_DIR);
+
+        FileKeyTracker.Identity identity = fileKeyTracker.record(file);
+        assertSame("Identity should be recorded", identity, fileKeyTracker.getIdentity(file));
+
+        // a file reusing the file key of a deleted one differs in size
+        Files.write(file, "modified".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertNotEquals("Modified file should have another identity", identity, fileKeyTracker.record(file));
+        assertEquals("File key should not change", identity.getFileKey(), fileKeyTracker.getIdentity(file).getFileKey());
+
+        fileKeyTracker.remove(file);
+        assertNull("Removed identity should be forgotten", fileKeyTracker.getIdentity(file));
+    }
+}
@@ -0,0 +1,139 @@
+package org.rmatil.sync.event.aggregator.test.core.metrics;
+
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
+import org.rmatil.sync.event.aggregator.core.events.DeleteEvent;
+import org.rmatil.sync.event.aggregator.core.events.IEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.core.metrics.HashingMetrics;
+import org.rmatil.sync.event.aggregator.core.metrics.LatencyMetrics;
+import org.rmatil.sync.event.aggregator.core.metrics.PipelineMetrics;
+import org.rmatil.sync.event.aggregator.core.metrics.StageMetrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void testRecordStage() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        Object modifier = new Object();
+
+        assertNull("Stage should not be registered before its first invocation", metrics.getStageMetrics(modifier));
+
+        metrics.recordStage(modifier, 100L, 10, 8);
+        metrics.recordStage(modifier, 300L, 5, 5);
+        metrics.recordStage(PipelineMetrics.HASHING_STAGE, 50L, 13, 13);
+
+        StageMetrics stageMetrics = metrics.getStageMetrics(modifier);
+        assertNotNull("Stage should be registered", stageMetrics);
+        assertEquals("Name should be the class of the stage", Object.class.getName(), stageMetrics.getName());
+        assertEquals("Invocations are not counted", 2L, stageMetrics.getLatency().getCount());
+        assertEquals("Latency is not summed up", 400L, stageMetrics.getLatency().getTotalNanos());
+        assertEquals("Maximum latency is wrong", 300L, stageMetrics.getLatency().getMaxNanos());
+        assertEquals("Mean latency is wrong", 200d, stageMetrics.getLatency().getMeanNanos(), 0d);
+        assertEquals("Incoming events are not counted", 15L, stageMetrics.getEventsIn());
+        assertEquals("Outgoing events are not counted", 13L, stageMetrics.getEventsOut());
+
+        List<StageMetrics> allStages = metrics.getStageMetrics();
+        assertEquals("Both stages should be registered", 2, allStages.size());
+        assertEquals("Stages should be ordered by their first invocation", PipelineMetrics.HASHING_STAGE, allStages.get(1).getName());
+
+        metrics.removeStage(modifier);
+        assertNull("Stage should be removed", metrics.getStageMetrics(modifier));
+        assertEquals("Only the hashing stage should remain", 1, metrics.getStageMetrics().size());
+    }
+
+    @Test
+    public void testRecordEmitted() {
+        PipelineMetrics metrics = new PipelineMetrics(() -> 42);
+        long now = System.currentTimeMillis();
+
+        List<IEvent> events = new ArrayList<>();
+        events.add(new DeleteEvent(Paths.get("someFile.txt"), "someFile.txt", null, now - 100L));
+        events.add(new CreateEvent(Paths.get("otherFile.txt"), "otherFile.txt", null, now - 300L));
+
+        metrics.recordBatch(5);
+        metrics.recordEmitted(events, now);
+
+        assertEquals("Batches are not counted", 1L, metrics.getBatches());
+        assertEquals("Received events are not counted", 5L, metrics.getEventsReceived());
+        assertEquals("Emitted events are not counted", 2L, metrics.getEventsEmitted());
+        assertEquals("Pending events should be supplied", 42, metrics.getPendingEvents());
+
+        LatencyMetrics endToEndDelay = metrics.getEndToEndDelay();
+        assertEquals("Delay should be recorded per event", 2L, endToEndDelay.getCount());
+        assertEquals("Maximum delay is wrong", TimeUnit.MILLISECONDS.toNanos(300L), endToEndDelay.getMaxNanos());
+        assertEquals("Total delay is wrong", TimeUnit.MILLISECONDS.toNanos(400L), endToEndDelay.getTotalNanos());
+    }
+
+    @Test
+    public void testNegativeLatency() {
+        LatencyMetrics latencyMetrics = new LatencyMetrics();
+        latencyMetrics.record(- 10L);
+
+        assertEquals("Negative durations should be recorded", 1L, latencyMetrics.getCount());
+        assertEquals("Negative durations should be recorded as 0", 0L, latencyMetrics.getTotalNanos());
+    }
+
+    @Test
+    public void testMBean()
+            throws JMException {
+        PipelineMetrics metrics = new PipelineMetrics(() -> 3);
+        metrics.recordStage(PipelineMetrics.LISTENER_STAGE, 10L, 1, 1);
+        metrics.recordObjectManagerLookup(20L);
+
+        String name = "org.rmatil.sync.event.aggregator:type=PipelineMetrics,name=test";
+        metrics.registerMBean(name);
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+
+            assertTrue("Metrics should be registered", mBeanServer.isRegistered(objectName));
+            assertEquals("Pending events should be exposed", 3, mBeanServer.getAttribute(objectName, "PendingEvents"));
+
+            CompositeData lookups = (CompositeData) mBeanServer.getAttribute(objectName, "ObjectManagerLookups");
+            assertEquals("Object manager lookups should be exposed", 1L, lookups.get("count"));
+
+            CompositeData[] stages = (CompositeData[]) mBeanServer.getAttribute(objectName, "StageMetrics");
+            assertEquals("Stages should be exposed", 1, stages.length);
+            assertEquals("Stage names should be exposed", PipelineMetrics.LISTENER_STAGE, stages[0].get("name"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+
+        assertFalse("Metrics should be unregistered", ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name)));
+    }
+
+    @Test
+    public void testHashingMBean()
+            throws JMException {
+        HashingMetrics metrics = new HashingMetrics();
+
+        String name = "org.rmatil.sync.event.aggregator:type=HashingMetrics,name=test";
+        metrics.registerMBean(name);
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+
+            assertTrue("Metrics should be registered", mBeanServer.isRegistered(objectName));
+            assertEquals("Hashed bytes of the JVM should be exposed", HashingService.getHashedBytes(), mBeanServer.getAttribute(objectName, "HashedBytes"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+
+        assertFalse("Metrics should be unregistered", ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name)));
+    }
+}
@@ -2,6 +2,7 @@ package org.rmatil.sync.event.aggregator.test.core.modifier;
 
 import org.junit.*;
 import org.rmatil.sync.event.aggregator.core.events.*;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
 import org.rmatil.sync.event.aggregator.core.modifier.AddDirectoryContentModifier;
 import org.rmatil.sync.event.aggregator.test.config.Config;
 import org.rmatil.sync.event.aggregator.test.core.APathTest;
@@ -144,6 +145,44 @@ public class AddDirectoryContentModifierTest {
         assertThat("No move event should be inside results", events, not(hasItem(isA(MoveEvent.class))));
     }
 
+    @Test
+    public void testStop() {
+        Path relativePath = Config.DEFAULT.getRootTestDir().relativize(dir);
+        AddDirectoryContentModifier modifier = new AddDirectoryContentModifier(Config.DEFAULT.getRootTestDir(), objectStore, null, null, 2);
+
+        for (int i = 0; i < 2; i++) {
+            List<IEvent> events = new ArrayList<>();
+            events.add(new CreateEvent(relativePath, relativePath.getFileName().toString(), null, System.currentTimeMillis()));
+
+            assertEquals("Contents should be walked after stopping as well", 5, modifier.modify(events).size());
+            modifier.stop();
+        }
+
+        assertEquals("Parallelism should be kept", 2, modifier.getParallelism());
+    }
+
+    @Test
+    public void testWalkOnHashingService() {
+        Path relativePath = Config.DEFAULT.getRootTestDir().relativize(dir);
+        AddDirectoryContentModifier modifier = new AddDirectoryContentModifier(Config.DEFAULT.getRootTestDir(), objectStore);
+        // a single thread and queued directory: the walk must not wait on the thread it occupies
+        HashingService hashingService = new HashingService(1, 1);
+        modifier.setHashingService(hashingService);
+
+        List<IEvent> events = new ArrayList<>();
+        events.add(new CreateEvent(relativePath, relativePath.getFileName().toString(), null, System.currentTimeMillis()));
+
+        assertEquals("Contents should be walked on the hashing service", 5, modifier.modify(events).size());
+
+        modifier.stop();
+        hashingService.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new AddDirectoryContentModifier(Config.DEFAULT.getRootTestDir(), objectStore, null, null, 0);
+    }
+
     @Test
     public void testModifyCreateWithCreateEvent() {
         Path relativePath = Config.DEFAULT.getRootTestDir().relativize(dir);
@@ -183,6 +222,64 @@ public class AddDirectoryContentModifierTest {
         assertThat("No move event should be inside results", events, not(hasItem(isA(MoveEvent.class))));
     }
 
+    @Test
+    public void testModifyCreateWithNestedCreateEvent() {
+        Path relativePath = Config.DEFAULT.getRootTestDir().relativize(dir);
+        CreateEvent createEvent = new CreateEvent(
+                relativePath,
+                relativePath.getFileName().toString(),
+                null,
+                System.currentTimeMillis()
+        );
+
+        // the nested directory is contained in the walk of its parent
+        Path relativePathOfDirInDir = Config.DEFAULT.getRootTestDir().relativize(dirInDir);
+        CreateEvent nestedCreateEvent = new CreateEvent(
+                relativePathOfDirInDir,
+                relativePathOfDirInDir.getFileName().toString(),
+                null,
+                System.currentTimeMillis()
+        );
+
+        List<IEvent> events = new ArrayList<>();
+        events.add(createEvent);
+        events.add(nestedCreateEvent);
+
+        List<IEvent> results = addDirectoryContentModifier.modify(events);
+
+        // expected events
+        // 1: create event itself
+        // 2: fileInDir
+        // 3: file2InDir
+        // 4: dirInDir
+        // 5: fileInDirInDir
+        assertEquals("Contents of the nested directory should not be added twice", 5, results.size());
+    }
+
+    @Test
+    public void testModifyCreateOrder() {
+        Path relativePath = Config.DEFAULT.getRootTestDir().relativize(dir);
+        CreateEvent createEvent = new CreateEvent(
+                relativePath,
+                relativePath.getFileName().toString(),
+                null,
+                System.currentTimeMillis()
+        );
+
+        List<IEvent> events = new ArrayList<>();
+        events.add(createEvent);
+
+        List<IEvent> results = addDirectoryContentModifier.modify(events);
+
+        // parents first, entries of the same directory sorted by their name
+        assertEquals("Not expected number of results modified", 5, results.size());
+        assertEquals("Directory should be first", relativePath, results.get(0).getPath());
+        assertEquals("Files of the directory should be sorted", Config.DEFAULT.getRootTestDir().relativize(fileInDir), results.get(1).getPath());
+        assertEquals("Files of the directory should be sorted", Config.DEFAULT.getRootTestDir().relativize(file2InDir), results.get(2).getPath());
+        assertEquals("Files of the directory should be sorted", Config.DEFAULT.getRootTestDir().relativize(dirInDir), results.get(3).getPath());
+        assertEquals("Contents of the nested directory should be last", Config.DEFAULT.getRootTestDir().relativize(fileInDirInDir), results.get(4).getPath());
+    }
+
     @Test
     public void testModify() {
         Path relativePath = Config.DEFAULT.getRootTestDir().relativize(dir);
@@ -4,6 +4,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.rmatil.sync.event.aggregator.core.events.*;
 import org.rmatil.sync.event.aggregator.core.modifier.IgnorePathsModifier;
+import org.rmatil.sync.event.aggregator.core.modifier.IgnoreRules;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -111,4 +112,20 @@ public class IgnorePathsModifierTest {
         assertThat("2nd event is move event", modifiedEvents.get(1), instanceOf(MoveEvent.class));
         assertThat("3rd event is create event", modifiedEvents.get(2), instanceOf(CreateEvent.class));
     }
+
+    @Test
+    public void testReplaceIgnoreRules() {
+        IgnorePathsModifier modifier = new IgnorePathsModifier(new ArrayList<>());
+
+        List<IEvent> eventList = new ArrayList<>();
+        eventList.add(new CreateEvent(Paths.get("myFile.java"), "myFile.java", "someHash", System.currentTimeMillis()));
+
+        assertEquals("No event should be ignored", 1, modifier.modify(eventList).size());
+
+        List<String> ignoredPatterns = new ArrayList<>();
+        ignoredPatterns.add("*.java");
+        modifier.setIgnoreRules(new IgnoreRules(new ArrayList<>(), ignoredPatterns));
+
+        assertEquals("Event should be ignored by the new rules", 0, modifier.modify(eventList).size());
+    }
 }
@@ -0,0 +1,142 @@
+package org.rmatil.sync.event.aggregator.test.core.modifier;
+
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.modifier.IgnoreRules;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class IgnoreRulesTest {
+
+    @Test
+    public void testIgnoredPaths() {
+        List<Path> ignoredPaths = new ArrayList<>();
+        ignoredPaths.add(Paths.get("/tmp/dir/.sync"));
+        ignoredPaths.add(Paths.get("some/relative/dir"));
+
+        IgnoreRules ignoreRules = new IgnoreRules(ignoredPaths, new ArrayList<>());
+
+        assertTrue("Ignored path should be ignored", ignoreRules.isIgnored(Paths.get("/tmp/dir/.sync")));
+        assertTrue("Child should be ignored", ignoreRules.isIgnored(Paths.get("/tmp/dir/.sync/some/file.txt")));
+        assertTrue("Relative child should be ignored", ignoreRules.isIgnored(Paths.get("some/relative/dir/file.txt")));
+
+        assertFalse("Parent should not be ignored", ignoreRules.isIgnored(Paths.get("/tmp/dir")));
+        assertFalse("Sibling should not be ignored", ignoreRules.isIgnored(Paths.get("/tmp/dir/.syncing")));
+        assertFalse("Relative path should not match absolute one", ignoreRules.isIgnored(Paths.get("tmp/dir/.sync")));
+        assertFalse("Absolute path should not match relative one", ignoreRules.isIgnored(Paths.get("/some/relative/dir")));
+    }
+
+    @Test
+    public void testPatternsMatchLikePathMatcher() {
+        List<String> patterns = Arrays.asList(
+                "*.java",
+                "**_*",
+                ".DS_Store",
+                "**.swp",
+                "**Thumbs.db",
+                "dir/?.txt",
+                "**/{build,target}/**",
+                "[!a-c]*.log",
+                "\\*.escaped"
+        );
+
+        List<Path> paths = Arrays.asList(
+                Paths.get("myFile.java"),
+                Paths.get("path/to/myFile.java"),
+                Paths.get("path/to/file_with_underlines.txt"),
+                Paths.get(".DS_Store"),
+                Paths.get("path/.DS_Store"),
+                Paths.get("path/to/.myFile.swp"),
+                Paths.get("path/to/file.swpx"),
+                Paths.get("Thumbs.db"),
+                Paths.get("/tmp/dir/Thumbs.db"),
+                Paths.get("dir/a.txt"),
+                Paths.get("dir/ab.txt"),
+                Paths.get("project/build/classes/A.class"),
+                Paths.get("project/builder/A.class"),
+                Paths.get("debug.log"),
+                Paths.get("access.log"),
+                Paths.get("*.escaped"),
+                Paths.get("a.escaped")
+        );
+
+        IgnoreRules ignoreRules = new IgnoreRules(new ArrayList<>(), patterns);
+
+        for (Path path : paths) {
+            boolean expected = false;
+            for (String pattern : patterns) {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                expected |= matcher.matches(path);
+            }
+
+            assertEquals("Compiled patterns should match like the path matcher for " + path, expected, ignoreRules.isIgnored(path));
+        }
+    }
+
+    @Test
+    public void testManyNameSuffixPatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            patterns.add("**/*.nested" + i);
+            patterns.add("*.top" + i);
+        }
+        patterns.add("**/*.DS_Store");
+        patterns.add("**/*");
+
+        List<Path> paths = Arrays.asList(
+                Paths.get("file.nested42"),
+                Paths.get("path/to/file.nested42"),
+                Paths.get("path/to/file.nested42x"),
+                Paths.get("path/to/file.nested300"),
+                Paths.get("file.top299"),
+                Paths.get("path/to/file.top299"),
+                Paths.get("file.top2990"),
+                Paths.get(".DS_Store"),
+                Paths.get("path/.DS_Store"),
+                Paths.get("path.nested1/file"),
+                Paths.get("/abs/file.nested7")
+        );
+
+        NameSuffixIgnoreRules ignoreRules = new NameSuffixIgnoreRules(patterns.subList(0, patterns.size() - 1));
+        assertFalse("Name suffix patterns should not be compiled into a regular expression", ignoreRules.hasCombinedPattern());
+
+        for (Path path : paths) {
+            boolean expected = false;
+            for (String pattern : patterns.subList(0, patterns.size() - 1)) {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                expected |= matcher.matches(path);
+            }
+
+            assertEquals("Compiled patterns should match like the path matcher for " + path, expected, ignoreRules.isIgnored(path));
+        }
+
+        NameSuffixIgnoreRules allNestedIgnoreRules = new NameSuffixIgnoreRules(patterns);
+        assertFalse("Name suffix patterns should not be compiled into a regular expression", allNestedIgnoreRules.hasCombinedPattern());
+        assertTrue("Any nested path should match", allNestedIgnoreRules.isIgnored(Paths.get("path/file")));
+        assertFalse("Top level path should not match", allNestedIgnoreRules.isIgnored(Paths.get("file")));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidPattern() {
+        new IgnoreRules(new ArrayList<>(), Arrays.asList("{a,{b}}"));
+    }
+
+    protected static class NameSuffixIgnoreRules extends IgnoreRules {
+
+        public NameSuffixIgnoreRules(List<String> ignoredPatterns) {
+            super(new ArrayList<>(), ignoredPatterns);
+        }
+
+        public boolean hasCombinedPattern() {
+            return null != super.combinedPattern;
+        }
+    }
+}
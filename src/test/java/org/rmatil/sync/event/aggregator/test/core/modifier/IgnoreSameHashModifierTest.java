@@ -1,12 +1,19 @@
 package org.rmatil.sync.event.aggregator.test.core.modifier;
 
+import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.rmatil.sync.event.aggregator.core.events.CreateEvent;
 import org.rmatil.sync.event.aggregator.core.events.IEvent;
 import org.rmatil.sync.event.aggregator.core.events.ModifyEvent;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingMode;
+import org.rmatil.sync.event.aggregator.core.hashing.HashingService;
+import org.rmatil.sync.event.aggregator.core.hashing.LazyHash;
 import org.rmatil.sync.event.aggregator.core.modifier.IgnoreSameHashModifier;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
 import org.rmatil.sync.event.aggregator.test.mocks.ObjectManagerMock;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 import org.rmatil.sync.version.api.DeleteType;
 import org.rmatil.sync.version.api.IObjectManager;
@@ -15,6 +22,9 @@ import org.rmatil.sync.version.core.model.Delete;
 import org.rmatil.sync.version.core.model.PathObject;
 import org.rmatil.sync.version.core.model.Version;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -23,10 +33,15 @@ import java.util.List;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 public class IgnoreSameHashModifierTest {
 
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
     protected static IObjectManager         objectManagerMock;
     protected static IgnoreSameHashModifier modifier;
     protected static List<IEvent>           events;
@@ -35,6 +50,8 @@ public class IgnoreSameHashModifierTest {
     @BeforeClass
     public static void setUp()
             throws InputOutputException {
+        APathTest.setUp();
+
         List<String> deleteHistory = new ArrayList<>();
         deleteHistory.add("someDeleteHash");
 
@@ -235,6 +252,11 @@ public class IgnoreSameHashModifierTest {
         );
     }
 
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
     @Test
     public void test() {
         List<IEvent> modifiedEvents = modifier.modify(events);
@@ -259,4 +281,101 @@ public class IgnoreSameHashModifierTest {
 
         assertEquals("size should be 1", 1, modifiedEvents.size());
     }
+
+    @Test
+    public void testSingleModifyEventReadOnce()
+            throws IOException {
+        Path file = FileUtil.modifyTestFile(ROOT_TEST_DIR);
+
+        List<IEvent> singleEvents = new ArrayList<>();
+        singleEvents.add(
+                new ModifyEvent(
+                        Paths.get("path/to/myFile2.txt"),
+                        "myFile2.txt",
+                        System.currentTimeMillis(),
+                        new LazyHash(file, null, HashingMode.TWO_TIER)
+                )
+        );
+
+        long hashedBytes = HashingService.getHashedBytes();
+        List<IEvent> modifiedEvents = modifier.modify(singleEvents);
+
+        assertEquals("Event with a hash different from the last version should pass", 1, modifiedEvents.size());
+        assertEquals("File should only be read to compute its hash, not its fast digest", Files.size(file), HashingService.getHashedBytes() - hashedBytes);
+
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+    }
+
+    @Test
+    public void testStoredModifyEventResolved()
+            throws InputOutputException {
+        Path file = FileUtil.modifyTestFile(ROOT_TEST_DIR);
+
+        List<Version> versions = new ArrayList<>();
+        versions.add(new Version(HashingService.hash(file)));
+
+        objectManagerMock.writeObject(new PathObject(
+                "6thFile.txt",
+                "path/to",
+                PathType.FILE,
+                null,
+                false,
+                new Delete(
+                        DeleteType.EXISTENT,
+                        new ArrayList<>()
+                ),
+                null,
+                new HashSet<>(),
+                versions
+        ));
+
+        LazyHash lazyHash = new LazyHash(file);
+        List<IEvent> storedEvents = new ArrayList<>();
+        storedEvents.add(
+                new ModifyEvent(
+                        Paths.get("path/to/6thFile.txt"),
+                        "6thFile.txt",
+                        System.currentTimeMillis(),
+                        lazyHash
+                )
+        );
+
+        IgnoreSameHashModifier parallelModifier = new IgnoreSameHashModifier(objectManagerMock);
+        List<IEvent> modifiedEvents = parallelModifier.modify(storedEvents);
+        parallelModifier.stop();
+
+        assertTrue("Hash should be resolved by the modifier", lazyHash.isDone());
+        assertEquals("Event with the hash of the last version should be ignored", 0, modifiedEvents.size());
+
+        FileUtil.deleteTestFile(ROOT_TEST_DIR);
+    }
+
+    @Test
+    public void testSharedHashingServiceUsed() {
+        HashingService hashingService = new HashingService(1, 1);
+        HashingServiceModifier sharedModifier = new HashingServiceModifier(objectManagerMock);
+
+        sharedModifier.setHashingService(hashingService);
+        assertSame("Hashing service of the event aggregator should be used", hashingService, sharedModifier.getUsedHashingService());
+
+        sharedModifier.setHashingService(null);
+        assertNotSame("Modifier used on its own should hash on its own pool", hashingService, sharedModifier.getUsedHashingService());
+
+        sharedModifier.stop();
+        hashingService.shutdown();
+    }
+
+    /**
+     * Exposes the hashing service used by the modifier
+     */
+    protected static class HashingServiceModifier extends IgnoreSameHashModifier {
+
+        protected HashingServiceModifier(IObjectManager objectManager) {
+            super(objectManager);
+        }
+
+        protected HashingService getUsedHashingService() {
+            return this.getHashingService();
+        }
+    }
 }
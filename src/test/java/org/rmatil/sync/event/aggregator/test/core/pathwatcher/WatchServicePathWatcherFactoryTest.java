@@ -0,0 +1,218 @@
+package org.rmatil.sync.event.aggregator.test.core.pathwatcher;
+
+import name.mitterdorfer.perlock.PathChangeListener;
+import name.mitterdorfer.perlock.PathWatcher;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rmatil.sync.event.aggregator.core.PathEventListener;
+import org.rmatil.sync.event.aggregator.core.pathwatcher.WatchServicePathWatcher;
+import org.rmatil.sync.event.aggregator.core.pathwatcher.WatchServicePathWatcherFactory;
+import org.rmatil.sync.event.aggregator.test.config.Config;
+import org.rmatil.sync.event.aggregator.test.core.APathTest;
+import org.rmatil.sync.event.aggregator.test.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class WatchServicePathWatcherFactoryTest {
+
+    private static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    protected static WatchServicePathWatcherFactory pathWatcherFactory;
+
+    protected ExecutorService executorService;
+
+    protected RecordingListener listener;
+
+    @BeforeClass
+    public static void setUp() {
+        pathWatcherFactory = new WatchServicePathWatcherFactory(2, 16);
+
+        APathTest.setUp();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        APathTest.tearDown();
+    }
+
+    @Before
+    public void before()
+            throws IOException {
+        FileUtil.delete(ROOT_TEST_DIR.toFile());
+        Files.createDirectories(ROOT_TEST_DIR);
+        this.executorService = Executors.newSingleThreadExecutor();
+        this.listener = new RecordingListener();
+    }
+
+    @After
+    public void after() {
+        this.executorService.shutdownNow();
+        FileUtil.delete(ROOT_TEST_DIR.toFile());
+    }
+
+    @Test
+    public void testCreateWatchers() {
+        PathWatcher watcher1 = pathWatcherFactory.createNonRecursiveWatcher(this.executorService, ROOT_TEST_DIR, new PathEventListener());
+        assertFalse("Watcher is already running", watcher1.isRunning());
+
+        PathWatcher watcher2 = pathWatcherFactory.createRecursiveWatcher(this.executorService, ROOT_TEST_DIR, new PathEventListener());
+        assertFalse("Watcher 2 is already running", watcher2.isRunning());
+
+        assertEquals("Registration parallelism is not the configured one", 2, pathWatcherFactory.getRegistrationParallelism());
+        assertEquals("Max keys per drain is not the configured one", 16, pathWatcherFactory.getMaxKeysPerDrain());
+    }
+
+    @Test
+    public void testRecursiveWatcher()
+            throws IOException, InterruptedException {
+        Path existingDir = Files.createDirectories(ROOT_TEST_DIR.resolve("existingDir"));
+
+        WatchServicePathWatcher watcher = (WatchServicePathWatcher) pathWatcherFactory.createRecursiveWatcher(this.executorService, ROOT_TEST_DIR, this.listener);
+        watcher.start();
+        assertTrue("Watcher should be running", watcher.isRunning());
+        assertEquals("Root and existing directory should be watched", 2, watcher.getNrOfWatchedDirectories());
+
+        Path createdFile = FileUtil.createTestFile(existingDir);
+        assertTrue("Creation in existing subdirectory should be notified", this.listener.awaitCreated(createdFile));
+
+        Path createdDir = Files.createDirectory(ROOT_TEST_DIR.resolve("createdDir"));
+        assertTrue("Creation of directory should be notified", this.listener.awaitCreated(createdDir));
+
+        // the created directory must be registered before its contents are watched
+        long deadline = System.currentTimeMillis() + 2000L;
+        while (watcher.getNrOfWatchedDirectories() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        Path nestedFile = FileUtil.createTestFile(createdDir);
+        assertTrue("Creation in created subdirectory should be notified", this.listener.awaitCreated(nestedFile));
+
+        watcher.stop();
+        assertFalse("Watcher should be stopped", watcher.isRunning());
+    }
+
+    @Test
+    public void testRescan()
+            throws IOException, InterruptedException {
+        Path modifiedFile = FileUtil.createTestFile(ROOT_TEST_DIR);
+        Files.setLastModifiedTime(modifiedFile, FileTime.fromMillis(1000L));
+        Path deletedFile = Files.createFile(ROOT_TEST_DIR.resolve("deletedFile.txt"));
+
+        // does not process any events, as if all of them were lost
+        RescanningPathWatcher watcher = new RescanningPathWatcher(this.executorService, ROOT_TEST_DIR, this.listener);
+        watcher.start();
+
+        FileUtil.modifyTestFile(ROOT_TEST_DIR);
+        Files.delete(deletedFile);
+        Path createdDir = Files.createDirectory(ROOT_TEST_DIR.resolve("createdDir"));
+
+        watcher.rescan(ROOT_TEST_DIR);
+
+        assertEquals("Creation should be recovered", 1, this.listener.created.size());
+        assertEquals("Creation should be recovered", createdDir, this.listener.created.get(0));
+        assertEquals("Modification should be recovered", 1, this.listener.modified.size());
+        assertEquals("Modification should be recovered", modifiedFile, this.listener.modified.get(0));
+        assertEquals("Deletion should be recovered", 1, this.listener.deleted.size());
+        assertEquals("Deletion should be recovered", deletedFile, this.listener.deleted.get(0));
+        assertEquals("Created directory should be watched", 2, watcher.getNrOfWatchedDirectories());
+
+        // nothing changed since
+        watcher.rescan(ROOT_TEST_DIR);
+        assertEquals("No further events should be emitted", 3, this.listener.created.size() + this.listener.modified.size() + this.listener.deleted.size());
+
+        watcher.stop();
+    }
+
+    @Test
+    public void testUnregisterSubtree()
+            throws IOException {
+        Path deletedDir = Files.createDirectories(ROOT_TEST_DIR.resolve("dir").resolve("subDir"));
+        Files.createDirectories(ROOT_TEST_DIR.resolve("dir-sibling"));
+        Files.createDirectories(ROOT_TEST_DIR.resolve("dirSibling"));
+        Path deletedFile = FileUtil.createTestFile(ROOT_TEST_DIR);
+
+        RescanningPathWatcher watcher = new RescanningPathWatcher(this.executorService, ROOT_TEST_DIR, this.listener);
+        watcher.start();
+        assertEquals("All directories should be watched", 5, watcher.getNrOfWatchedDirectories());
+
+        watcher.unregister(deletedFile);
+        assertEquals("Deleting a file should not unregister any directory", 5, watcher.getNrOfWatchedDirectories());
+
+        watcher.unregister(deletedDir.getParent());
+        assertEquals("Only the deleted directory and its subdirectory should be unregistered", 3, watcher.getNrOfWatchedDirectories());
+
+        watcher.stop();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new WatchServicePathWatcherFactory(0, 1);
+    }
+
+    protected static class RescanningPathWatcher extends WatchServicePathWatcher {
+
+        public RescanningPathWatcher(ExecutorService executorService, Path rootPath, PathChangeListener changeListener) {
+            super(executorService, rootPath, changeListener, true, 1, 1);
+        }
+
+        @Override
+        protected void processEvents() {
+        }
+
+        @Override
+        public void rescan(Path directory) {
+            super.rescan(directory);
+        }
+
+        @Override
+        public void unregister(Path path) {
+            super.unregister(path);
+        }
+    }
+
+    protected static class RecordingListener implements PathChangeListener {
+
+        protected final List<Path> created = new CopyOnWriteArrayList<>();
+
+        protected final List<Path> modified = new CopyOnWriteArrayList<>();
+
+        protected final List<Path> deleted = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onPathCreated(Path path) {
+            this.created.add(path);
+        }
+
+        @Override
+        public void onPathModified(Path path) {
+            this.modified.add(path);
+        }
+
+        @Override
+        public void onPathDeleted(Path path) {
+            this.deleted.add(path);
+        }
+
+        protected boolean awaitCreated(Path path)
+                throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (! this.created.contains(path) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+
+            return this.created.contains(path);
+        }
+    }
+}